@@ -254,6 +254,27 @@ import java.util.List;
     global = false,
     category = CoreProperties.CATEGORY_SCM
   ),
+  @Property(
+    key = CoreProperties.SCM_BLAME_THREADS_KEY,
+    name = "Number of blame threads",
+    description = "Number of files blamed concurrently by the SCM Sensor, if the SCM plugin supports it. By default one thread per available processor, plus one.",
+    module = false,
+    project = true,
+    global = true,
+    category = CoreProperties.CATEGORY_SCM,
+    type = PropertyType.INTEGER
+  ),
+  @Property(
+    key = CoreProperties.SCM_BLAME_TIMEOUT_KEY,
+    defaultValue = "" + CoreProperties.SCM_BLAME_TIMEOUT_DEFAULT_VALUE,
+    name = "Blame timeout",
+    description = "Maximum time in seconds allowed to blame a single file, if the SCM plugin supports concurrent blame. Zero disables the timeout.",
+    module = false,
+    project = true,
+    global = true,
+    category = CoreProperties.CATEGORY_SCM,
+    type = PropertyType.INTEGER
+  ),
   @Property(
     key = CoreProperties.INDEX_ALL_FILES_KEY,
     defaultValue = "false",
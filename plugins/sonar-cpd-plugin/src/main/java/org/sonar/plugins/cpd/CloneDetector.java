@@ -0,0 +1,170 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.cpd;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.DeprecatedDefaultInputFile;
+import org.sonar.api.utils.SonarException;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.detector.suffixtree.SuffixTreeCloneDetectionAlgorithm;
+import org.sonar.duplications.index.CloneGroup;
+import org.sonar.duplications.index.CloneIndex;
+import org.sonar.plugins.cpd.index.SonarDuplicationsIndex;
+
+import javax.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Detection of the duplications of each file. Once populated, the index is only read, so that files
+ * can be processed by many threads. Results are handled in the order of files by the calling thread,
+ * as sensor context is not thread-safe.
+ */
+class CloneDetector {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CloneDetector.class);
+
+  /**
+   * Limit of time to analyse one file (in seconds).
+   */
+  private static final int TIMEOUT = 5 * 60;
+
+  interface Callback {
+    /**
+     * @param clones null if detection timed out
+     */
+    void handle(InputFile inputFile, @Nullable List<CloneGroup> clones);
+  }
+
+  private final int threads;
+  private final long timeoutMs;
+
+  CloneDetector(int threads) {
+    this(threads, TimeUnit.SECONDS.toMillis(TIMEOUT));
+  }
+
+  @VisibleForTesting
+  CloneDetector(int threads, long timeoutMs) {
+    this.threads = Math.max(1, threads);
+    this.timeoutMs = timeoutMs;
+  }
+
+  void detect(SonarDuplicationsIndex index, List<InputFile> sourceFiles, Callback callback) {
+    // blocks of other projects are loaded for a single file at a time
+    int nbThreads = index.loadsBlocksPerFile() ? 1 : threads;
+    int maxPendingFiles = index.loadsBlocksPerFile() ? 1 : (2 * nbThreads);
+    ExecutorService executorService = Executors.newFixedThreadPool(nbThreads,
+      new ThreadFactoryBuilder().setNameFormat("cpd-detection-%d").setDaemon(true).build());
+    Deque<PendingFile> pendingFiles = new ArrayDeque<PendingFile>();
+    try {
+      for (InputFile inputFile : sourceFiles) {
+        LOG.debug("Detection of duplications for {}", inputFile);
+        String resourceEffectiveKey = ((DeprecatedDefaultInputFile) inputFile).key();
+        Collection<Block> fileBlocks = index.getByInputFile(inputFile, resourceEffectiveKey);
+
+        Task task = new Task(index, fileBlocks);
+        pendingFiles.add(new PendingFile(inputFile, task, executorService.submit(task)));
+        if (pendingFiles.size() >= maxPendingFiles) {
+          complete(pendingFiles.poll(), callback);
+        }
+      }
+      while (!pendingFiles.isEmpty()) {
+        complete(pendingFiles.poll(), callback);
+      }
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  private void complete(PendingFile pendingFile, Callback callback) {
+    List<CloneGroup> clones;
+    try {
+      clones = pendingFile.await(timeoutMs);
+    } catch (TimeoutException e) {
+      clones = null;
+      pendingFile.future.cancel(true);
+      LOG.warn("Timeout during detection of duplications for " + pendingFile.inputFile, e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SonarException("Fail during detection of duplication for " + pendingFile.inputFile, e);
+    } catch (ExecutionException e) {
+      throw new SonarException("Fail during detection of duplication for " + pendingFile.inputFile, e);
+    }
+    callback.handle(pendingFile.inputFile, clones);
+  }
+
+  private static class PendingFile {
+    private final InputFile inputFile;
+    private final Task task;
+    private final Future<List<CloneGroup>> future;
+
+    PendingFile(InputFile inputFile, Task task, Future<List<CloneGroup>> future) {
+      this.inputFile = inputFile;
+      this.task = task;
+      this.future = future;
+    }
+
+    /**
+     * Timeout applies to the execution of detection, not to the time spent waiting for a thread
+     */
+    List<CloneGroup> await(long timeoutMs) throws InterruptedException, ExecutionException, TimeoutException {
+      while (task.startedAt == 0L && !future.isDone()) {
+        try {
+          return future.get(Math.min(timeoutMs, 1000L), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+          // not started yet
+        }
+      }
+      long remaining = task.startedAt + timeoutMs - System.currentTimeMillis();
+      return future.get(Math.max(0L, remaining), TimeUnit.MILLISECONDS);
+    }
+  }
+
+  static class Task implements Callable<List<CloneGroup>> {
+    private final CloneIndex index;
+    private final Collection<Block> fileBlocks;
+    private volatile long startedAt = 0L;
+
+    public Task(CloneIndex index, Collection<Block> fileBlocks) {
+      this.index = index;
+      this.fileBlocks = fileBlocks;
+    }
+
+    @Override
+    public List<CloneGroup> call() {
+      startedAt = System.currentTimeMillis();
+      return SuffixTreeCloneDetectionAlgorithm.detect(index, fileBlocks);
+    }
+  }
+}
@@ -25,6 +25,12 @@ import org.sonar.api.batch.sensor.SensorContext;
 
 public abstract class CpdEngine implements BatchExtension {
 
+  /**
+   * Number of threads used to chunk files (Java only) and to detect their duplications. Detection
+   * is sequential when cross-project detection is enabled and blocks of other projects are not preloaded.
+   */
+  public static final String THREADS_PROPERTY = "sonar.cpd.threads";
+
   abstract boolean isLanguageSupported(String language);
 
   abstract void analyse(String language, SensorContext context);
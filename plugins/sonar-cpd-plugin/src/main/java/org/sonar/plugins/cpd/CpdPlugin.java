@@ -57,6 +57,25 @@ public final class CpdPlugin extends SonarPlugin {
         .subCategory(CoreProperties.SUBCATEGORY_DUPLICATIONS)
         .type(PropertyType.BOOLEAN)
         .build(),
+      PropertyDefinition.builder(CpdEngine.THREADS_PROPERTY)
+        .defaultValue("1")
+        .name("Threads")
+        .description("Number of threads used to index files and to detect their duplications")
+        .hidden()
+        .category(CoreProperties.CATEGORY_GENERAL)
+        .subCategory(CoreProperties.SUBCATEGORY_DUPLICATIONS)
+        .type(PropertyType.INTEGER)
+        .build(),
+      PropertyDefinition.builder(IndexFactory.CROSS_PROJECT_PRELOAD_PROPERTY)
+        .defaultValue("true")
+        .name("Preload blocks of other projects")
+        .description("Load the blocks of other projects for all the files of a module by a single request, instead of "
+          + "one request per file. Only used by cross project duplication detection.")
+        .hidden()
+        .category(CoreProperties.CATEGORY_GENERAL)
+        .subCategory(CoreProperties.SUBCATEGORY_DUPLICATIONS)
+        .type(PropertyType.BOOLEAN)
+        .build(),
       PropertyDefinition.builder(CoreProperties.CPD_EXCLUSIONS)
         .defaultValue("")
         .name("Duplication Exclusions")
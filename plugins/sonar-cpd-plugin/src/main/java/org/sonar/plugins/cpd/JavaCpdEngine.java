@@ -20,8 +20,10 @@
 
 package org.sonar.plugins.cpd;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,9 +43,7 @@ import org.sonar.api.utils.KeyValueFormat;
 import org.sonar.api.utils.SonarException;
 import org.sonar.duplications.block.Block;
 import org.sonar.duplications.block.BlockChunker;
-import org.sonar.duplications.detector.suffixtree.SuffixTreeCloneDetectionAlgorithm;
 import org.sonar.duplications.index.CloneGroup;
-import org.sonar.duplications.index.CloneIndex;
 import org.sonar.duplications.index.ClonePart;
 import org.sonar.duplications.java.JavaStatementBuilder;
 import org.sonar.duplications.java.JavaTokenProducer;
@@ -59,13 +59,19 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.InputStreamReader;
 import java.io.Reader;
-import java.util.Collection;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class JavaCpdEngine extends CpdEngine {
 
@@ -73,11 +79,6 @@ public class JavaCpdEngine extends CpdEngine {
 
   private static final int BLOCK_SIZE = 10;
 
-  /**
-   * Limit of time to analyse one file (in seconds).
-   */
-  private static final int TIMEOUT = 5 * 60;
-
   private final IndexFactory indexFactory;
   private final FileSystem fs;
   private final Settings settings;
@@ -116,14 +117,84 @@ public class JavaCpdEngine extends CpdEngine {
     detect(index, context, sourceFiles);
   }
 
-  private SonarDuplicationsIndex createIndex(@Nullable Project project, String language, Iterable<InputFile> sourceFiles) {
+  private SonarDuplicationsIndex createIndex(@Nullable Project project, String language, List<InputFile> sourceFiles) {
     final SonarDuplicationsIndex index = indexFactory.create(project, language);
+    int threads = settings.getInt(THREADS_PROPERTY);
+    if (threads > 1) {
+      populateIndexConcurrently(index, sourceFiles, threads);
+    } else {
+      FileChunker chunker = new FileChunker(fs.encoding());
+      for (InputFile inputFile : sourceFiles) {
+        index.insert(inputFile, chunker.chunk(inputFile));
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Files are tokenized and chunked by a pool of threads, each one having its own chunkers. Blocks are
+   * inserted into index by the calling thread, in the order of files, as insertion is cheap and index is
+   * not thread-safe.
+   */
+  private void populateIndexConcurrently(SonarDuplicationsIndex index, List<InputFile> sourceFiles, int threads) {
+    final ThreadLocal<FileChunker> chunkers = new ThreadLocal<FileChunker>() {
+      @Override
+      protected FileChunker initialValue() {
+        return new FileChunker(fs.encoding());
+      }
+    };
+    ExecutorService executorService = Executors.newFixedThreadPool(threads,
+      new ThreadFactoryBuilder().setNameFormat("cpd-index-%d").setDaemon(true).build());
+    Deque<Future<List<Block>>> pendingFiles = new ArrayDeque<Future<List<Block>>>();
+    try {
+      int inserted = 0;
+      for (final InputFile inputFile : sourceFiles) {
+        pendingFiles.add(executorService.submit(new Callable<List<Block>>() {
+          @Override
+          public List<Block> call() {
+            return chunkers.get().chunk(inputFile);
+          }
+        }));
+        if (pendingFiles.size() >= 2 * threads) {
+          index.insert(sourceFiles.get(inserted), await(pendingFiles.poll(), sourceFiles.get(inserted)));
+          inserted++;
+        }
+      }
+      while (!pendingFiles.isEmpty()) {
+        index.insert(sourceFiles.get(inserted), await(pendingFiles.poll(), sourceFiles.get(inserted)));
+        inserted++;
+      }
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  private static List<Block> await(Future<List<Block>> future, InputFile inputFile) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SonarException("Fail to populate index from " + inputFile, e);
+    } catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause());
+      throw new SonarException("Fail to populate index from " + inputFile, e.getCause());
+    }
+  }
+
+  /**
+   * Chunkers are not shared between threads
+   */
+  private static class FileChunker {
+    private final Charset encoding;
+    private final TokenChunker tokenChunker = JavaTokenProducer.build();
+    private final StatementChunker statementChunker = JavaStatementBuilder.build();
+    private final BlockChunker blockChunker = new BlockChunker(BLOCK_SIZE);
 
-    TokenChunker tokenChunker = JavaTokenProducer.build();
-    StatementChunker statementChunker = JavaStatementBuilder.build();
-    BlockChunker blockChunker = new BlockChunker(BLOCK_SIZE);
+    FileChunker(Charset encoding) {
+      this.encoding = encoding;
+    }
 
-    for (InputFile inputFile : sourceFiles) {
+    List<Block> chunk(InputFile inputFile) {
       LOG.debug("Populating index from {}", inputFile);
       String resourceEffectiveKey = ((DeprecatedDefaultInputFile) inputFile).key();
 
@@ -131,7 +202,7 @@ public class JavaCpdEngine extends CpdEngine {
 
       Reader reader = null;
       try {
-        reader = new InputStreamReader(new FileInputStream(inputFile.file()), fs.encoding());
+        reader = new InputStreamReader(new FileInputStream(inputFile.file()), encoding);
         statements = statementChunker.chunk(tokenChunker.chunk(reader));
       } catch (FileNotFoundException e) {
         throw new SonarException("Cannot find file " + inputFile.file(), e);
@@ -139,54 +210,17 @@ public class JavaCpdEngine extends CpdEngine {
         IOUtils.closeQuietly(reader);
       }
 
-      List<Block> blocks = blockChunker.chunk(resourceEffectiveKey, statements);
-      index.insert(inputFile, blocks);
+      return blockChunker.chunk(resourceEffectiveKey, statements);
     }
-
-    return index;
   }
 
-  private void detect(SonarDuplicationsIndex index, org.sonar.api.batch.sensor.SensorContext context, List<InputFile> sourceFiles) {
-    ExecutorService executorService = Executors.newSingleThreadExecutor();
-    try {
-      for (InputFile inputFile : sourceFiles) {
-        LOG.debug("Detection of duplications for {}", inputFile);
-        String resourceEffectiveKey = ((DeprecatedDefaultInputFile) inputFile).key();
-
-        Collection<Block> fileBlocks = index.getByInputFile(inputFile, resourceEffectiveKey);
-
-        List<CloneGroup> clones;
-        try {
-          clones = executorService.submit(new Task(index, fileBlocks)).get(TIMEOUT, TimeUnit.SECONDS);
-        } catch (TimeoutException e) {
-          clones = null;
-          LOG.warn("Timeout during detection of duplications for " + inputFile, e);
-        } catch (InterruptedException e) {
-          throw new SonarException("Fail during detection of duplication for " + inputFile, e);
-        } catch (ExecutionException e) {
-          throw new SonarException("Fail during detection of duplication for " + inputFile, e);
-        }
-
+  private void detect(SonarDuplicationsIndex index, final org.sonar.api.batch.sensor.SensorContext context, List<InputFile> sourceFiles) {
+    new CloneDetector(settings.getInt(THREADS_PROPERTY)).detect(index, sourceFiles, new CloneDetector.Callback() {
+      @Override
+      public void handle(InputFile inputFile, @Nullable List<CloneGroup> clones) {
         save(context, inputFile, clones);
       }
-    } finally {
-      executorService.shutdown();
-    }
-  }
-
-  static class Task implements Callable<List<CloneGroup>> {
-    private final CloneIndex index;
-    private final Collection<Block> fileBlocks;
-
-    public Task(CloneIndex index, Collection<Block> fileBlocks) {
-      this.index = index;
-      this.fileBlocks = fileBlocks;
-    }
-
-    @Override
-    public List<CloneGroup> call() {
-      return SuffixTreeCloneDetectionAlgorithm.detect(index, fileBlocks);
-    }
+    });
   }
 
   static void save(org.sonar.api.batch.sensor.SensorContext context, InputFile inputFile, @Nullable Iterable<CloneGroup> duplications) {
@@ -0,0 +1,153 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.cpd.index;
+
+import com.google.common.primitives.UnsignedBytes;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable set of blocks of other projects, sorted by hash. Blocks are stored in arrays of primitives and
+ * are created only when looked up, so that candidates of a whole project can be kept in memory.
+ * Lookups are thread-safe.
+ */
+final class CandidateBlocks {
+
+  private static final Comparator<byte[]> HASH_COMPARATOR = UnsignedBytes.lexicographicalComparator();
+
+  // number of ints per block: resource, index in file, start line, end line
+  private static final int INTS_PER_BLOCK = 4;
+
+  private final String[] resourceKeys;
+  private final byte[][] hashes;
+  private final int[] data;
+
+  private CandidateBlocks(String[] resourceKeys, byte[][] hashes, int[] data) {
+    this.resourceKeys = resourceKeys;
+    this.hashes = hashes;
+    this.data = data;
+  }
+
+  int size() {
+    return hashes.length;
+  }
+
+  Collection<Block> getByHash(ByteArray hash) {
+    byte[] bytes = hash.getBytes();
+    int index = lowerBound(bytes);
+    if (index == hashes.length || HASH_COMPARATOR.compare(hashes[index], bytes) != 0) {
+      return Collections.emptyList();
+    }
+    List<Block> result = new ArrayList<Block>();
+    Block.Builder builder = Block.builder();
+    while (index < hashes.length && HASH_COMPARATOR.compare(hashes[index], bytes) == 0) {
+      int offset = index * INTS_PER_BLOCK;
+      result.add(builder
+        .setResourceId(resourceKeys[data[offset]])
+        .setBlockHash(hash)
+        .setIndexInFile(data[offset + 1])
+        .setLines(data[offset + 2], data[offset + 3])
+        .build());
+      index++;
+    }
+    return result;
+  }
+
+  /**
+   * Index of the first block whose hash is greater than or equal to the given one
+   */
+  private int lowerBound(byte[] hash) {
+    int low = 0;
+    int high = hashes.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (HASH_COMPARATOR.compare(hashes[mid], hash) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  static Builder builder() {
+    return new Builder();
+  }
+
+  static class Builder {
+    private final Map<String, Integer> resourceIndexes = new HashMap<String, Integer>();
+    private final List<String> resourceKeys = new ArrayList<String>();
+    private final List<byte[]> hashes = new ArrayList<byte[]>();
+    private int[] data = new int[INTS_PER_BLOCK * 64];
+
+    private Builder() {
+    }
+
+    Builder add(String hash, String resourceKey, int indexInFile, int startLine, int endLine) {
+      Integer resourceIndex = resourceIndexes.get(resourceKey);
+      if (resourceIndex == null) {
+        resourceIndex = resourceKeys.size();
+        resourceKeys.add(resourceKey);
+        resourceIndexes.put(resourceKey, resourceIndex);
+      }
+      int offset = hashes.size() * INTS_PER_BLOCK;
+      if (offset + INTS_PER_BLOCK > data.length) {
+        data = Arrays.copyOf(data, data.length * 2);
+      }
+      data[offset] = resourceIndex;
+      data[offset + 1] = indexInFile;
+      data[offset + 2] = startLine;
+      data[offset + 3] = endLine;
+      hashes.add(new ByteArray(hash).getBytes());
+      return this;
+    }
+
+    CandidateBlocks build() {
+      int size = hashes.size();
+      Integer[] order = new Integer[size];
+      for (int i = 0; i < size; i++) {
+        order[i] = i;
+      }
+      Arrays.sort(order, new Comparator<Integer>() {
+        @Override
+        public int compare(Integer i1, Integer i2) {
+          return HASH_COMPARATOR.compare(hashes.get(i1), hashes.get(i2));
+        }
+      });
+      byte[][] sortedHashes = new byte[size][];
+      int[] sortedData = new int[size * INTS_PER_BLOCK];
+      for (int i = 0; i < size; i++) {
+        int from = order[i];
+        sortedHashes[i] = hashes.get(from);
+        System.arraycopy(data, from * INTS_PER_BLOCK, sortedData, i * INTS_PER_BLOCK, INTS_PER_BLOCK);
+      }
+      return new CandidateBlocks(resourceKeys.toArray(new String[resourceKeys.size()]), sortedHashes, sortedData);
+    }
+  }
+}
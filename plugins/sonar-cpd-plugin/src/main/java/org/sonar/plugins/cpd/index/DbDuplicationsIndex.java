@@ -21,6 +21,8 @@ package org.sonar.plugins.cpd.index;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
 import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.fs.internal.DefaultInputFile;
 import org.sonar.api.database.DatabaseSession;
@@ -45,6 +47,8 @@ public class DbDuplicationsIndex {
   private static final String LAST = "last";
 
   private final Map<ByteArray, Collection<Block>> cache = Maps.newHashMap();
+  private final boolean preload;
+  private volatile CandidateBlocks candidates;
 
   private final int currentProjectSnapshotId;
   private final Integer lastSnapshotId;
@@ -55,6 +59,15 @@ public class DbDuplicationsIndex {
 
   public DbDuplicationsIndex(Project currentProject, DuplicationDao dao,
     String language, DatabaseSession session, ResourceCache resourceCache) {
+    this(currentProject, dao, language, session, resourceCache, false);
+  }
+
+  /**
+   * @param preload if true, blocks of other projects are loaded for all the files of current project by a single
+   * request, when preparing cache for the first time. All blocks of current project must have been inserted.
+   */
+  public DbDuplicationsIndex(Project currentProject, DuplicationDao dao,
+    String language, DatabaseSession session, ResourceCache resourceCache, boolean preload) {
     this.dao = dao;
     this.session = session;
     this.resourceCache = resourceCache;
@@ -62,6 +75,11 @@ public class DbDuplicationsIndex {
     this.currentProjectSnapshotId = resourceCache.get(currentProject.getEffectiveKey()).snapshotId();
     this.lastSnapshotId = lastSnapshot == null ? null : lastSnapshot.getId();
     this.languageKey = language;
+    this.preload = preload;
+  }
+
+  public boolean isPreloaded() {
+    return preload;
   }
 
   private Snapshot getLastSnapshot(int resourceId) {
@@ -77,6 +95,12 @@ public class DbDuplicationsIndex {
   }
 
   public void prepareCache(InputFile inputFile) {
+    if (preload) {
+      if (candidates == null) {
+        loadCandidates();
+      }
+      return;
+    }
     int resourceSnapshotId = getSnapshotIdFor(inputFile);
     List<DuplicationUnitDto> units = dao.selectCandidates(resourceSnapshotId, lastSnapshotId, languageKey);
     cache.clear();
@@ -106,7 +130,24 @@ public class DbDuplicationsIndex {
     }
   }
 
+  private synchronized void loadCandidates() {
+    if (candidates == null) {
+      final CandidateBlocks.Builder builder = CandidateBlocks.builder();
+      dao.selectCandidatesOfProject(currentProjectSnapshotId, lastSnapshotId, languageKey, new ResultHandler() {
+        @Override
+        public void handleResult(ResultContext context) {
+          DuplicationUnitDto unit = (DuplicationUnitDto) context.getResultObject();
+          builder.add(unit.getHash(), unit.getResourceKey(), unit.getIndexInFile(), unit.getStartLine(), unit.getEndLine());
+        }
+      });
+      candidates = builder.build();
+    }
+  }
+
   public Collection<Block> getByHash(ByteArray hash) {
+    if (preload) {
+      return candidates == null ? Collections.<Block>emptyList() : candidates.getByHash(hash);
+    }
     Collection<Block> result = cache.get(hash);
     if (result != null) {
       return result;
@@ -36,6 +36,12 @@ import javax.annotation.Nullable;
 
 public class IndexFactory implements BatchComponent {
 
+  /**
+   * When cross-project detection is enabled, load the blocks of other projects for all the files of the module
+   * by a single request instead of one request per file.
+   */
+  public static final String CROSS_PROJECT_PRELOAD_PROPERTY = "sonar.cpd.cross_project.preload";
+
   private static final Logger LOG = LoggerFactory.getLogger(IndexFactory.class);
 
   private final Settings settings;
@@ -61,7 +67,8 @@ public class IndexFactory implements BatchComponent {
 
   public SonarDuplicationsIndex create(@Nullable Project project, String languageKey) {
     if (verifyCrossProject(project, LOG) && dao != null && session != null) {
-      return new SonarDuplicationsIndex(new DbDuplicationsIndex(project, dao, languageKey, session, resourceCache));
+      boolean preload = settings.getBoolean(CROSS_PROJECT_PRELOAD_PROPERTY);
+      return new SonarDuplicationsIndex(new DbDuplicationsIndex(project, dao, languageKey, session, resourceCache, preload));
     }
     return new SonarDuplicationsIndex();
   }
@@ -43,6 +43,14 @@ public class SonarDuplicationsIndex extends AbstractCloneIndex {
     this.db = db;
   }
 
+  /**
+   * Blocks of other projects are loaded from db for the file being processed, see {@link #getByInputFile(InputFile, String)}.
+   * Files must then be processed one at a time.
+   */
+  public boolean loadsBlocksPerFile() {
+    return db != null && !db.isPreloaded();
+  }
+
   public void insert(InputFile inputFile, Collection<Block> blocks) {
     for (Block block : blocks) {
       mem.insert(block);
@@ -0,0 +1,136 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.cpd;
+
+import org.junit.Test;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.DeprecatedDefaultInputFile;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+import org.sonar.duplications.index.CloneGroup;
+import org.sonar.plugins.cpd.index.DbDuplicationsIndex;
+import org.sonar.plugins.cpd.index.SonarDuplicationsIndex;
+
+import javax.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CloneDetectorTest {
+
+  @Test
+  public void detect_concurrently_and_handle_files_in_order() throws Exception {
+    SonarDuplicationsIndex index = new SonarDuplicationsIndex();
+    List<InputFile> files = new ArrayList<InputFile>();
+    for (int i = 0; i < 20; i++) {
+      // files are duplicated two by two
+      files.add(newFile(index, "foo:File" + i + ".java", i / 2));
+    }
+
+    RecordingCallback callback = new RecordingCallback();
+    new CloneDetector(4).detect(index, files, callback);
+
+    assertThat(callback.files).isEqualTo(files);
+    for (List<CloneGroup> clones : callback.clones) {
+      assertThat(clones).hasSize(1);
+      assertThat(clones.get(0).getCloneParts()).hasSize(2);
+    }
+  }
+
+  @Test
+  public void detect_sequentially_on_cross_project_detection() throws Exception {
+    DbDuplicationsIndex db = mock(DbDuplicationsIndex.class);
+    SonarDuplicationsIndex index = new SonarDuplicationsIndex(db);
+    InputFile file1 = newFile(index, "foo:File1.java", 1);
+    InputFile file2 = newFile(index, "foo:File2.java", 2);
+
+    RecordingCallback callback = new RecordingCallback();
+    new CloneDetector(4).detect(index, Arrays.asList(file1, file2), callback);
+
+    assertThat(callback.files).containsExactly(file1, file2);
+    assertThat(callback.clones.get(0)).isEmpty();
+    verify(db).prepareCache(file1);
+    verify(db).prepareCache(file2);
+  }
+
+  @Test
+  public void detect_concurrently_when_blocks_of_other_projects_are_preloaded() throws Exception {
+    DbDuplicationsIndex db = mock(DbDuplicationsIndex.class);
+    when(db.isPreloaded()).thenReturn(true);
+    when(db.getByHash(any(ByteArray.class))).thenReturn(Collections.<Block>emptyList());
+    SonarDuplicationsIndex index = new SonarDuplicationsIndex(db);
+    List<InputFile> files = new ArrayList<InputFile>();
+    for (int i = 0; i < 10; i++) {
+      files.add(newFile(index, "foo:File" + i + ".java", 1));
+    }
+    assertThat(index.loadsBlocksPerFile()).isFalse();
+
+    RecordingCallback callback = new RecordingCallback();
+    new CloneDetector(4).detect(index, files, callback);
+
+    assertThat(callback.files).isEqualTo(files);
+    for (List<CloneGroup> clones : callback.clones) {
+      assertThat(clones).hasSize(1);
+    }
+  }
+
+  @Test
+  public void detect_nothing_on_empty_list_of_files() throws Exception {
+    RecordingCallback callback = new RecordingCallback();
+    new CloneDetector(4).detect(new SonarDuplicationsIndex(), Collections.<InputFile>emptyList(), callback);
+
+    assertThat(callback.files).isEmpty();
+  }
+
+  private static InputFile newFile(SonarDuplicationsIndex index, String key, int hashSeed) {
+    DeprecatedDefaultInputFile inputFile = new DeprecatedDefaultInputFile("foo", key.substring(key.indexOf(':') + 1));
+    List<Block> blocks = new ArrayList<Block>();
+    for (int i = 0; i < 3; i++) {
+      blocks.add(Block.builder()
+        .setResourceId(key)
+        .setBlockHash(new ByteArray(hashSeed * 100L + i))
+        .setIndexInFile(i)
+        .setLines(i + 1, i + 10)
+        .setUnit(i, i + 10)
+        .build());
+    }
+    index.insert(inputFile, blocks);
+    return inputFile;
+  }
+
+  private static class RecordingCallback implements CloneDetector.Callback {
+    private final List<InputFile> files = new ArrayList<InputFile>();
+    private final List<List<CloneGroup>> clones = new ArrayList<List<CloneGroup>>();
+
+    @Override
+    public void handle(InputFile inputFile, @Nullable List<CloneGroup> fileClones) {
+      files.add(inputFile);
+      clones.add(fileClones);
+    }
+  }
+}
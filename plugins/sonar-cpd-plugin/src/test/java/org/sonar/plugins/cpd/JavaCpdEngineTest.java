@@ -19,6 +19,7 @@
  */
 package org.sonar.plugins.cpd;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -28,6 +29,7 @@ import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.DefaultFileSystem;
 import org.sonar.api.batch.fs.internal.DeprecatedDefaultInputFile;
 import org.sonar.api.batch.sensor.SensorContext;
 import org.sonar.api.batch.sensor.SensorStorage;
@@ -35,16 +37,26 @@ import org.sonar.api.batch.sensor.duplication.DuplicationGroup;
 import org.sonar.api.batch.sensor.duplication.internal.DefaultDuplicationBuilder;
 import org.sonar.api.batch.sensor.measure.Measure;
 import org.sonar.api.batch.sensor.measure.internal.DefaultMeasure;
+import org.sonar.api.config.Settings;
 import org.sonar.api.measures.CoreMetrics;
+import org.sonar.duplications.block.Block;
 import org.sonar.duplications.index.CloneGroup;
 import org.sonar.duplications.index.ClonePart;
+import org.sonar.plugins.cpd.index.IndexFactory;
+import org.sonar.plugins.cpd.index.SonarDuplicationsIndex;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
@@ -157,6 +169,50 @@ public class JavaCpdEngineTest {
     inOrder.verify(duplicationBuilder).build();
   }
 
+  @Test
+  public void populate_index_concurrently() throws Exception {
+    SonarDuplicationsIndex sequentialIndex = analyse(1);
+    SonarDuplicationsIndex concurrentIndex = analyse(3);
+
+    for (int i = 0; i < 10; i++) {
+      String key = "foo:src/main/java/Foo" + i + ".java";
+      Collection<Block> blocks = concurrentIndex.getByInputFile(inputFile, key);
+      assertThat(blocks).isNotEmpty();
+      assertThat(blocks).isEqualTo(sequentialIndex.getByInputFile(inputFile, key));
+    }
+  }
+
+  private SonarDuplicationsIndex analyse(int threads) throws IOException {
+    DefaultFileSystem fs = new DefaultFileSystem();
+    fs.setBaseDir(temp.newFolder());
+    List<InputFile> files = new ArrayList<InputFile>();
+    for (int i = 0; i < 10; i++) {
+      String relativePath = "src/main/java/Foo" + i + ".java";
+      File file = new File(fs.baseDir(), relativePath);
+      StringBuilder source = new StringBuilder("public class Foo" + i + " {\n");
+      for (int j = 0; j < 20; j++) {
+        source.append("  int field").append(j).append(" = ").append(i * j).append(";\n");
+      }
+      FileUtils.write(file, source.append("}\n").toString());
+      DeprecatedDefaultInputFile javaFile = new DeprecatedDefaultInputFile("foo", relativePath);
+      javaFile.setFile(file).setLanguage("java").setType(InputFile.Type.MAIN).setLines(22);
+      fs.add(javaFile);
+      files.add(javaFile);
+    }
+    Settings settings = new Settings();
+    settings.setProperty(CpdEngine.THREADS_PROPERTY, threads);
+    SonarDuplicationsIndex index = spy(new SonarDuplicationsIndex());
+    IndexFactory indexFactory = mock(IndexFactory.class);
+    when(indexFactory.create(null, "java")).thenReturn(index);
+
+    new JavaCpdEngine(indexFactory, fs, settings).analyse("java", context);
+
+    for (InputFile file : files) {
+      verify(index).insert(eq(file), anyCollectionOf(Block.class));
+    }
+    return index;
+  }
+
   private CloneGroup newCloneGroup(ClonePart... parts) {
     return CloneGroup.builder().setLength(0).setOrigin(parts[0]).setParts(Arrays.asList(parts)).build();
   }
@@ -0,0 +1,90 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.cpd.index;
+
+import org.junit.Test;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+
+import java.util.Collection;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CandidateBlocksTest {
+
+  @Test
+  public void get_blocks_by_hash() {
+    CandidateBlocks candidates = CandidateBlocks.builder()
+      .add("cc", "bar", 0, 1, 10)
+      .add("aa", "foo", 0, 1, 10)
+      .add("ff", "foo", 1, 2, 11)
+      .add("aa", "bar", 3, 5, 15)
+      .build();
+
+    assertThat(candidates.size()).isEqualTo(4);
+
+    Collection<Block> blocks = candidates.getByHash(new ByteArray("aa"));
+    assertThat(blocks).hasSize(2);
+    for (Block block : blocks) {
+      assertThat(block.getBlockHash()).isEqualTo(new ByteArray("aa"));
+    }
+    assertThat(blocks).extracting("resourceId").containsOnly("foo", "bar");
+
+    Block block = candidates.getByHash(new ByteArray("ff")).iterator().next();
+    assertThat(block.getResourceId()).isEqualTo("foo");
+    assertThat(block.getIndexInFile()).isEqualTo(1);
+    assertThat(block.getStartLine()).isEqualTo(2);
+    assertThat(block.getEndLine()).isEqualTo(11);
+  }
+
+  @Test
+  public void get_nothing_on_unknown_hash() {
+    CandidateBlocks candidates = CandidateBlocks.builder()
+      .add("aa", "foo", 0, 1, 10)
+      .add("cc", "foo", 1, 2, 11)
+      .build();
+
+    assertThat(candidates.getByHash(new ByteArray("00"))).isEmpty();
+    assertThat(candidates.getByHash(new ByteArray("bb"))).isEmpty();
+    assertThat(candidates.getByHash(new ByteArray("ff"))).isEmpty();
+  }
+
+  @Test
+  public void empty_candidates() {
+    CandidateBlocks candidates = CandidateBlocks.builder().build();
+
+    assertThat(candidates.size()).isEqualTo(0);
+    assertThat(candidates.getByHash(new ByteArray("aa"))).isEmpty();
+  }
+
+  @Test
+  public void grow_storage() {
+    CandidateBlocks.Builder builder = CandidateBlocks.builder();
+    for (int i = 0; i < 1000; i++) {
+      builder.add(new ByteArray((long) i).toHexString(), "foo", i, i, i + 10);
+    }
+    CandidateBlocks candidates = builder.build();
+
+    assertThat(candidates.size()).isEqualTo(1000);
+    Block block = candidates.getByHash(new ByteArray(500L)).iterator().next();
+    assertThat(block.getIndexInFile()).isEqualTo(500);
+    assertThat(block.getEndLine()).isEqualTo(510);
+  }
+}
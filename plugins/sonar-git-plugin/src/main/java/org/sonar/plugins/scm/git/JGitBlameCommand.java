@@ -24,8 +24,10 @@ import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.diff.RawTextComparator;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.RepositoryBuilder;
+import org.picocontainer.Startable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sonar.api.batch.ThreadSafe;
 import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.scm.BlameCommand;
 import org.sonar.api.batch.scm.BlameLine;
@@ -34,65 +36,80 @@ import org.sonar.api.scan.filesystem.PathResolver;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.Map;
 
-public class JGitBlameCommand extends BlameCommand {
+@ThreadSafe
+public class JGitBlameCommand extends BlameCommand implements Startable {
 
   private static final Logger LOG = LoggerFactory.getLogger(JGitBlameCommand.class);
 
   private final PathResolver pathResolver;
 
+  /**
+   * Repositories are opened once and shared by all the threads blaming files, as opening a repository
+   * reads its pack indexes again. They are closed at the end of the analysis.
+   */
+  private final Map<File, Repository> repositoriesByBaseDir = new HashMap<File, Repository>();
+  private final Map<File, Repository> repositoriesByGitDir = new HashMap<File, Repository>();
+
   public JGitBlameCommand(PathResolver pathResolver) {
     this.pathResolver = pathResolver;
   }
 
   @Override
-  public void blame(BlameInput input, BlameOutput output) {
-    File basedir = input.fileSystem().baseDir();
-    Repository repo = buildRepository(basedir);
-    try {
-      Git git = Git.wrap(repo);
-      File gitBaseDir = repo.getWorkTree();
-      ExecutorService executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() + 1);
-      List<Future<Void>> tasks = submitTasks(input, output, git, gitBaseDir, executorService);
-      waitForTaskToComplete(tasks);
-    } finally {
+  public void start() {
+    // repositories are opened lazily
+  }
+
+  @Override
+  public synchronized void stop() {
+    for (Repository repo : repositoriesByGitDir.values()) {
       repo.close();
     }
+    repositoriesByGitDir.clear();
+    repositoriesByBaseDir.clear();
   }
 
-  private void waitForTaskToComplete(List<Future<Void>> tasks) {
-    for (Future<Void> task : tasks) {
-      try {
-        task.get();
-      } catch (ExecutionException e) {
-        // Unwrap ExecutionException
-        throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new IllegalStateException(e.getCause());
-      } catch (InterruptedException e) {
-        throw new IllegalStateException(e);
+  /**
+   * The command is declared thread-safe, so the batch blames files concurrently and this command only processes
+   * the given files sequentially.
+   */
+  @Override
+  public void blame(BlameInput input, BlameOutput output) {
+    Repository repo = repository(input.fileSystem().baseDir());
+    Git git = Git.wrap(repo);
+    File gitBaseDir = repo.getWorkTree();
+    try {
+      for (InputFile inputFile : input.filesToBlame()) {
+        blame(output, git, gitBaseDir, inputFile);
       }
+    } catch (GitAPIException e) {
+      throw new IllegalStateException("Unable to blame files with Git", e);
     }
   }
 
-  private List<Future<Void>> submitTasks(BlameInput input, BlameOutput output, Git git, File gitBaseDir, ExecutorService executorService) {
-    List<Future<Void>> tasks = new ArrayList<Future<Void>>();
-    for (InputFile inputFile : input.filesToBlame()) {
-      tasks.add(submitTask(output, git, gitBaseDir, inputFile, executorService));
+  private synchronized Repository repository(File basedir) {
+    Repository repo = repositoriesByBaseDir.get(basedir);
+    if (repo == null) {
+      RepositoryBuilder builder = new RepositoryBuilder()
+        .findGitDir(basedir)
+        .setMustExist(true);
+      // modules of a project usually share the same repository
+      repo = builder.getGitDir() == null ? null : repositoriesByGitDir.get(builder.getGitDir());
+      if (repo == null) {
+        repo = buildRepository(builder);
+        repositoriesByGitDir.put(repo.getDirectory(), repo);
+      }
+      repositoriesByBaseDir.put(basedir, repo);
     }
-    return tasks;
+    return repo;
   }
 
-  private Repository buildRepository(File basedir) {
+  private static Repository buildRepository(RepositoryBuilder builder) {
     try {
-      Repository repo = new RepositoryBuilder()
-        .findGitDir(basedir)
-        .setMustExist(true)
-        .build();
+      Repository repo = builder.build();
       // SONAR-6064 Force initialization of shallow commits to avoid later concurrent modification issue
       repo.getObjectDatabase().newReader().getShallowCommits();
       return repo;
@@ -101,16 +118,6 @@ public class JGitBlameCommand extends BlameCommand {
     }
   }
 
-  private Future<Void> submitTask(final BlameOutput output, final Git git, final File gitBaseDir, final InputFile inputFile, ExecutorService executorService) {
-    return executorService.submit(new Callable<Void>() {
-      @Override
-      public Void call() throws GitAPIException {
-        blame(output, git, gitBaseDir, inputFile);
-        return null;
-      }
-    });
-  }
-
   private void blame(BlameOutput output, Git git, File gitBaseDir, InputFile inputFile) throws GitAPIException {
     String filename = pathResolver.relativePath(gitBaseDir, inputFile.file());
     org.eclipse.jgit.blame.BlameResult blameResult = git.blame()
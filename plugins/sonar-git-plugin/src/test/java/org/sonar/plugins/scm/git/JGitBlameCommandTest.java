@@ -46,7 +46,10 @@ import java.util.Enumeration;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -120,6 +123,33 @@ public class JGitBlameCommandTest {
         new BlameLine().revision(revision).date(revisionDate).author(author)));
   }
 
+  @Test
+  public void blame_several_times_until_stopped() throws IOException {
+    File projectDir = temp.newFolder();
+    javaUnzip(new File("test-repos/dummy-git.zip"), projectDir);
+
+    JGitBlameCommand jGitBlameCommand = new JGitBlameCommand(new PathResolver());
+    jGitBlameCommand.start();
+
+    File baseDir = new File(projectDir, "dummy-git");
+    fs.setBaseDir(baseDir);
+    DefaultInputFile inputFile = new DefaultInputFile("foo", DUMMY_JAVA)
+      .setFile(new File(baseDir, DUMMY_JAVA));
+    fs.add(inputFile);
+
+    BlameOutput blameResult = mock(BlameOutput.class);
+    when(input.filesToBlame()).thenReturn(Arrays.<InputFile>asList(inputFile));
+    // the repository is opened by the first call and reused by the second one
+    jGitBlameCommand.blame(input, blameResult);
+    jGitBlameCommand.blame(input, blameResult);
+    jGitBlameCommand.stop();
+    // the repository is opened again
+    jGitBlameCommand.blame(input, blameResult);
+    jGitBlameCommand.stop();
+
+    verify(blameResult, times(3)).blameResult(eq(inputFile), anyListOf(BlameLine.class));
+  }
+
   @Test
   public void testBlameOnNestedModule() throws IOException {
     File projectDir = temp.newFolder();
@@ -22,6 +22,7 @@ package org.sonar.plugins.scm.svn;
 import com.google.common.annotations.VisibleForTesting;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sonar.api.batch.ThreadSafe;
 import org.sonar.api.batch.fs.FileSystem;
 import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.scm.BlameCommand;
@@ -31,17 +32,13 @@ import org.sonar.api.utils.command.CommandException;
 import org.sonar.api.utils.command.CommandExecutor;
 import org.sonar.api.utils.command.StreamConsumer;
 import org.sonar.api.utils.command.StringStreamConsumer;
+import org.sonar.api.utils.command.TimeoutException;
 
 import java.io.File;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map.Entry;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 
+@ThreadSafe
 public class SvnBlameCommand extends BlameCommand {
 
   private static final Logger LOG = LoggerFactory.getLogger(SvnBlameCommand.class);
@@ -57,36 +54,17 @@ public class SvnBlameCommand extends BlameCommand {
     this.configuration = configuration;
   }
 
+  /**
+   * The command is declared thread-safe, so the batch blames files concurrently and this command only processes
+   * the given files sequentially.
+   */
   @Override
   public void blame(final BlameInput input, final BlameOutput output) {
     FileSystem fs = input.fileSystem();
     LOG.debug("Working directory: " + fs.baseDir().getAbsolutePath());
-    ExecutorService executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() + 1);
-    List<Future<Void>> tasks = new ArrayList<Future<Void>>();
     for (InputFile inputFile : input.filesToBlame()) {
-      tasks.add(submitTask(fs, output, executorService, inputFile));
+      blame(fs, inputFile, output);
     }
-
-    for (Future<Void> task : tasks) {
-      try {
-        task.get();
-      } catch (ExecutionException e) {
-        // Unwrap ExecutionException
-        throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new IllegalStateException(e.getCause());
-      } catch (InterruptedException e) {
-        throw new IllegalStateException(e);
-      }
-    }
-  }
-
-  private Future<Void> submitTask(final FileSystem fs, final BlameOutput result, ExecutorService executorService, final InputFile inputFile) {
-    return executorService.submit(new Callable<Void>() {
-      @Override
-      public Void call() {
-        blame(fs, inputFile, result);
-        return null;
-      }
-    });
   }
 
   private void blame(final FileSystem fs, final InputFile inputFile, final BlameOutput output) {
@@ -97,6 +75,8 @@ public class SvnBlameCommand extends BlameCommand {
     int exitCode;
     try {
       exitCode = execute(cl, consumer, stderr);
+    } catch (TimeoutException e) {
+      throw new IllegalStateException("The svn blame command [" + cl.toString() + "] timed out", e);
     } catch (CommandException e) {
       // Unwrap CommandException
       throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new IllegalStateException(e.getCause());
@@ -114,7 +94,7 @@ public class SvnBlameCommand extends BlameCommand {
 
   private int execute(Command cl, StreamConsumer consumer, StreamConsumer stderr) {
     LOG.debug("Executing: " + cl);
-    return commandExecutor.execute(cl, consumer, stderr, -1);
+    return commandExecutor.execute(cl, consumer, stderr, configuration.blameTimeoutMillis());
   }
 
   @VisibleForTesting
@@ -31,6 +31,7 @@ import org.sonar.api.resources.Qualifiers;
 import javax.annotation.CheckForNull;
 
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 @InstantiationStrategy(InstantiationStrategy.PER_BATCH)
 public class SvnConfiguration implements BatchComponent {
@@ -123,4 +124,12 @@ public class SvnConfiguration implements BatchComponent {
     return settings.getBoolean(USE_MERGE_HISTORY_KEY);
   }
 
+  /**
+   * Timeout of the svn blame command of a single file, negative if there is no limit.
+   */
+  public long blameTimeoutMillis() {
+    int timeout = settings.hasKey(CoreProperties.SCM_BLAME_TIMEOUT_KEY) ? settings.getInt(CoreProperties.SCM_BLAME_TIMEOUT_KEY) : CoreProperties.SCM_BLAME_TIMEOUT_DEFAULT_VALUE;
+    return timeout > 0 ? TimeUnit.SECONDS.toMillis(timeout) : -1L;
+  }
+
 }
@@ -28,6 +28,7 @@ import org.junit.rules.ExpectedException;
 import org.junit.rules.TemporaryFolder;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
+import org.sonar.api.CoreProperties;
 import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.fs.internal.DefaultFileSystem;
 import org.sonar.api.batch.fs.internal.DefaultInputFile;
@@ -40,6 +41,7 @@ import org.sonar.api.utils.DateUtils;
 import org.sonar.api.utils.command.Command;
 import org.sonar.api.utils.command.CommandExecutor;
 import org.sonar.api.utils.command.StreamConsumer;
+import org.sonar.api.utils.command.TimeoutException;
 
 import java.io.File;
 import java.io.IOException;
@@ -49,6 +51,7 @@ import java.util.List;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -230,6 +233,29 @@ public class SvnBlameCommandTest {
     new SvnBlameCommand(commandExecutor, mock(SvnConfiguration.class)).blame(input, result);
   }
 
+  @Test
+  public void testExecutionTimeout() throws IOException {
+    File source = new File(baseDir, "src/foo.xoo");
+    FileUtils.write(source, "sample content");
+    DefaultInputFile inputFile = new DefaultInputFile("foo", "src/foo.xoo").setAbsolutePath(new File(baseDir, "src/foo.xoo").getAbsolutePath());
+    fs.add(inputFile);
+
+    BlameOutput result = mock(BlameOutput.class);
+    CommandExecutor commandExecutor = mock(CommandExecutor.class);
+    Command command = Command.create("svn");
+    when(commandExecutor.execute(any(Command.class), any(StreamConsumer.class), any(StreamConsumer.class), eq(10000L)))
+      .thenThrow(new TimeoutException(command, "Timeout exceeded: 10000 ms", null));
+
+    Settings settings = new Settings(new PropertyDefinitions(SvnConfiguration.getProperties()));
+    settings.setProperty(CoreProperties.SCM_BLAME_TIMEOUT_KEY, 10);
+
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("The svn blame command [svn blame --xml --non-interactive -x -w src/foo.xoo] timed out");
+
+    when(input.filesToBlame()).thenReturn(Arrays.<InputFile>asList(inputFile));
+    new SvnBlameCommand(commandExecutor, new SvnConfiguration(settings)).blame(input, result);
+  }
+
   @Test
   public void testAllParams() {
     CommandExecutor commandExecutor = mock(CommandExecutor.class);
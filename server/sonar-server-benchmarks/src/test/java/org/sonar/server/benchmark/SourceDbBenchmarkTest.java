@@ -30,6 +30,7 @@ import org.sonar.core.persistence.DbTester;
 import org.sonar.core.source.db.FileSourceDao;
 import org.sonar.core.source.db.FileSourceDto;
 import org.sonar.server.db.DbClient;
+import org.sonar.server.db.migrations.v51.FeedFileSourcesBinaryData;
 import org.sonar.server.source.index.SourceLineResultSetIterator;
 
 import java.io.IOException;
@@ -50,6 +51,8 @@ public class SourceDbBenchmarkTest {
   @Rule
   public DbTester dbTester = new DbTester();
 
+  private String lineHashes;
+
   @Test
   public void benchmark() throws Exception {
     prepareFileSources();
@@ -88,22 +91,24 @@ public class SourceDbBenchmarkTest {
   private void prepareFileSources() throws IOException {
     LOGGER.info("Populate table FILE_SOURCES");
     FileSourceDao dao = new FileSourceDao(dbTester.myBatis());
+    // this fake data is 3220 lines long
+    byte[] data = FeedFileSourcesBinaryData.toBinary(0L, IOUtils.toString(getClass().getResourceAsStream("SourceDbBenchmarkTest/data.txt")));
+    lineHashes = IOUtils.toString(getClass().getResourceAsStream("SourceDbBenchmarkTest/line_hashes.txt"));
     for (int i = 0; i < NUMBER_OF_FILES; i++) {
-      dao.insert(newFileSourceDto());
+      dao.insert(newFileSourceDto(data));
     }
   }
 
-  private FileSourceDto newFileSourceDto() throws IOException {
+  private FileSourceDto newFileSourceDto(byte[] data) {
     long now = System.currentTimeMillis();
     FileSourceDto dto = new FileSourceDto();
     dto.setCreatedAt(now);
     dto.setUpdatedAt(now);
     dto.setProjectUuid(PROJECT_UUID);
     dto.setFileUuid(Uuids.create());
-    // this fake data is 3220 lines long
-    dto.setData(IOUtils.toString(getClass().getResourceAsStream("SourceDbBenchmarkTest/data.txt")));
+    dto.setBinaryData(data);
     dto.setDataHash("49d7230271f2bd24c759e54bcd66547d");
-    dto.setLineHashes(IOUtils.toString(getClass().getResourceAsStream("SourceDbBenchmarkTest/line_hashes.txt")));
+    dto.setLineHashes(lineHashes);
     return dto;
   }
 }
@@ -36,12 +36,15 @@ public class BatchWs implements WebService {
   private final GlobalRepositoryAction globalRepositoryAction;
   private final ProjectRepositoryAction projectRepositoryAction;
   private final IssuesAction issuesAction;
+  private final LineHashesAction lineHashesAction;
 
-  public BatchWs(BatchIndex batchIndex, GlobalRepositoryAction globalRepositoryAction, ProjectRepositoryAction projectRepositoryAction, IssuesAction issuesAction) {
+  public BatchWs(BatchIndex batchIndex, GlobalRepositoryAction globalRepositoryAction, ProjectRepositoryAction projectRepositoryAction, IssuesAction issuesAction,
+    LineHashesAction lineHashesAction) {
     this.batchIndex = batchIndex;
     this.globalRepositoryAction = globalRepositoryAction;
     this.projectRepositoryAction = projectRepositoryAction;
     this.issuesAction = issuesAction;
+    this.lineHashesAction = lineHashesAction;
   }
 
   @Override
@@ -55,6 +58,7 @@ public class BatchWs implements WebService {
     globalRepositoryAction.define(controller);
     projectRepositoryAction.define(controller);
     issuesAction.define(controller);
+    lineHashesAction.define(controller);
 
     controller.done();
   }
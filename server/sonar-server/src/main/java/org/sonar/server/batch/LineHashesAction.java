@@ -0,0 +1,137 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.sonar.server.batch;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Resources;
+import org.sonar.api.server.ws.Request;
+import org.sonar.api.server.ws.RequestHandler;
+import org.sonar.api.server.ws.Response;
+import org.sonar.api.server.ws.WebService;
+import org.sonar.api.web.UserRole;
+import org.sonar.core.component.ComponentDto;
+import org.sonar.core.persistence.DbSession;
+import org.sonar.core.persistence.MyBatis;
+import org.sonar.core.source.db.FileSourceDao;
+import org.sonar.server.db.DbClient;
+import org.sonar.server.user.UserSession;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Line hashes of the files directly attached to a module, so that the batch does not request them file by file.
+ * Each file is written on a single line: the file key, a tabulation, then the line hashes separated by commas.
+ * Files are sorted by key and paged, so that the response, which is buffered before being sent, stays small.
+ */
+public class LineHashesAction implements RequestHandler {
+
+  private static final String PARAM_KEY = "key";
+  private static final String PARAM_AFTER = "after";
+  private static final String PARAM_PAGE_SIZE = "ps";
+  static final int DEFAULT_PAGE_SIZE = 500;
+  static final int MAX_PAGE_SIZE = 1000;
+
+  private final DbClient dbClient;
+
+  public LineHashesAction(DbClient dbClient) {
+    this.dbClient = dbClient;
+  }
+
+  void define(WebService.NewController controller) {
+    WebService.NewAction action = controller.createAction("line_hashes")
+      .setDescription("Return line hashes of the files directly attached to a project or module, sorted by file key. " +
+        "Require See Source Code permission on project")
+      .setSince("5.1")
+      .setInternal(true)
+      .setResponseExample(Resources.getResource(getClass(), "example-line-hashes.txt"))
+      .setHandler(this);
+
+    action
+      .createParam(PARAM_KEY)
+      .setRequired(true)
+      .setDescription("Project or module key")
+      .setExampleValue("org.codehaus.sonar:sonar");
+
+    action
+      .createParam(PARAM_AFTER)
+      .setDescription("Return only the files whose key is greater than this one, which is the last key of the previous page")
+      .setExampleValue("org.codehaus.sonar:sonar-server:src/main/java/org/sonar/server/source/SourceService.java");
+
+    action
+      .createParam(PARAM_PAGE_SIZE)
+      .setDescription("Maximum number of files. Can't be greater than " + MAX_PAGE_SIZE)
+      .setDefaultValue(String.valueOf(DEFAULT_PAGE_SIZE))
+      .setExampleValue("100");
+  }
+
+  @Override
+  public void handle(Request request, Response response) throws Exception {
+    String moduleKey = request.mandatoryParam(PARAM_KEY);
+    UserSession.get().checkComponentPermission(UserRole.CODEVIEWER, moduleKey);
+    String afterFileKey = request.param(PARAM_AFTER);
+    int pageSize = Math.min(request.mandatoryParamAsInt(PARAM_PAGE_SIZE), MAX_PAGE_SIZE);
+
+    response.stream().setMediaType("text/plain");
+    Writer writer = new BufferedWriter(new OutputStreamWriter(response.stream().output(), Charsets.UTF_8));
+    DbSession session = dbClient.openSession(false);
+    try {
+      ComponentDto moduleOrProject = dbClient.componentDao().getByKey(session, moduleKey);
+      dbClient.fileSourceDao().readLineHashesStreamsByModuleUuid(session, moduleOrProject.uuid(), afterFileKey, pageSize, new LineHashesWriter(writer));
+    } finally {
+      writer.close();
+      MyBatis.closeQuietly(session);
+    }
+  }
+
+  private static class LineHashesWriter implements FileSourceDao.LineHashesHandler {
+    private final Writer writer;
+    private final char[] buffer = new char[8192];
+
+    LineHashesWriter(Writer writer) {
+      this.writer = writer;
+    }
+
+    @Override
+    public void handle(String fileKey, Reader lineHashes) {
+      try {
+        writer.write(fileKey);
+        writer.write('\t');
+        int read = lineHashes.read(buffer);
+        while (read != -1) {
+          for (int i = 0; i < read; i++) {
+            if (buffer[i] == '\n') {
+              buffer[i] = ',';
+            }
+          }
+          writer.write(buffer, 0, read);
+          read = lineHashes.read(buffer);
+        }
+        writer.write('\n');
+      } catch (IOException e) {
+        throw new IllegalStateException(String.format("Can't read line hashes of file '%s'", fileKey), e);
+      }
+    }
+  }
+}
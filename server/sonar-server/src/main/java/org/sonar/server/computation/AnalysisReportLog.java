@@ -53,9 +53,20 @@ public class AnalysisReportLog implements ActivityLog {
       .put("submittedAt", formatDateTimeNullSafe(timeToDate(report.getCreatedAt())))
       .put("startedAt", formatDateTimeNullSafe(timeToDate(report.getStartedAt())))
       .put("finishedAt", formatDateTimeNullSafe(timeToDate(report.getFinishedAt())))
+      .put("waitingTime", waitingTime())
       .build();
   }
 
+  /**
+   * Time in milliseconds spent by the report in the queue before being processed
+   */
+  private String waitingTime() {
+    if (report.getCreatedAt() == null || report.getStartedAt() == null) {
+      return "";
+    }
+    return String.valueOf(report.getStartedAt() - report.getCreatedAt());
+  }
+
   @Override
   public String getAction() {
     return ACTION;
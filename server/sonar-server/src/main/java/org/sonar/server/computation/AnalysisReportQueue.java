@@ -20,6 +20,7 @@
 
 package org.sonar.server.computation;
 
+import org.apache.commons.io.FileUtils;
 import org.sonar.api.ServerComponent;
 import org.sonar.api.utils.System2;
 import org.sonar.core.computation.db.AnalysisReportDto;
@@ -31,8 +32,12 @@ import org.sonar.server.user.UserSession;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
+
+import java.io.File;
 import java.io.InputStream;
 import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static org.sonar.core.computation.db.AnalysisReportDto.Status.PENDING;
@@ -40,32 +45,85 @@ import static org.sonar.core.computation.db.AnalysisReportDto.Status.PENDING;
 public class AnalysisReportQueue implements ServerComponent {
 
   private final DbClient dbClient;
+  private final AnalysisReportStorage storage;
   private final System2 system2;
 
-  public AnalysisReportQueue(DbClient dbClient, System2 system2) {
+  /**
+   * One permit is released each time a report is added, so that waiting workers are woken up
+   * without polling the database.
+   */
+  private final Semaphore newReports = new Semaphore(0);
+
+  /**
+   * Time spent in the queue by the booked reports, displayed in the System Info page
+   */
+  private long bookedReports = 0L;
+  private long lastWaitingTime = 0L;
+  private long maxWaitingTime = 0L;
+
+  public AnalysisReportQueue(DbClient dbClient, AnalysisReportStorage storage, System2 system2) {
     this.dbClient = dbClient;
+    this.storage = storage;
     this.system2 = system2;
   }
 
   /**
-   * Adds a report to the queue and returns the generated key
+   * Adds a report to the queue and returns the generated key. The report data is streamed to
+   * the {@link AnalysisReportStorage} before the report becomes visible to workers.
    */
   public String add(String projectKey, Long snapshotId, @Nullable InputStream reportData) {
     // TODO security must not be handled here
     UserSession.get().checkGlobalPermission(GlobalPermissions.SCAN_EXECUTION);
 
+    return doAdd(projectKey, snapshotId, reportData == null ? null : storage.write(reportData));
+  }
+
+  /**
+   * Adds a report whose data is a temporary file of the {@link AnalysisReportStorage}, for example
+   * a report assembled by {@link AnalysisReportUploads}. The file is moved or deleted.
+   */
+  public String addUploaded(String projectKey, Long snapshotId, File reportFile) {
+    // TODO security must not be handled here
+    UserSession.get().checkGlobalPermission(GlobalPermissions.SCAN_EXECUTION);
+
+    return doAdd(projectKey, snapshotId, reportFile);
+  }
+
+  private String doAdd(String projectKey, Long snapshotId, @Nullable File reportFile) {
     AnalysisReportDto report = newPendingAnalysisReport(projectKey)
-      .setSnapshotId(snapshotId)
-      .setData(reportData);
+      .setSnapshotId(snapshotId);
     DbSession session = dbClient.openSession(false);
+    boolean saved = false;
     try {
       checkThatProjectExistsInDatabase(projectKey, session);
-      return insertInDb(report, session).getKey();
+      dbClient.analysisReportDao().insert(session, report);
+      if (reportFile != null) {
+        storage.save(reportFile, report.getId());
+      }
+      session.commit();
+      saved = true;
+      newReports.release();
+      return report.getKey();
     } finally {
       MyBatis.closeQuietly(session);
+      if (!saved) {
+        FileUtils.deleteQuietly(reportFile);
+        if (report.getId() != null) {
+          storage.delete(report.getId());
+        }
+      }
     }
   }
 
+  /**
+   * Blocks until a report is added to the queue or until the timeout elapses.
+   *
+   * @return true if a report has been added, false if the timeout elapsed
+   */
+  public boolean awaitNewReport(long timeout, TimeUnit unit) throws InterruptedException {
+    return newReports.tryAcquire(timeout, unit);
+  }
+
   private AnalysisReportDto newPendingAnalysisReport(String projectKey) {
     return new AnalysisReportDto()
       .setProjectKey(projectKey)
@@ -76,13 +134,6 @@ public class AnalysisReportQueue implements ServerComponent {
     dbClient.componentDao().getByKey(session, projectKey);
   }
 
-  private AnalysisReportDto insertInDb(AnalysisReportDto reportTemplate, DbSession session) {
-    AnalysisReportDto report = dbClient.analysisReportDao().insert(session, reportTemplate);
-    session.commit();
-
-    return report;
-  }
-
   public void remove(AnalysisReportDto report) {
     checkArgument(report.getStatus().isInFinalState());
 
@@ -91,6 +142,7 @@ public class AnalysisReportQueue implements ServerComponent {
       report.setFinishedAt(system2.now());
       dbClient.analysisReportDao().delete(session, report.getId());
       session.commit();
+      storage.delete(report.getId());
     } finally {
       MyBatis.closeQuietly(session);
     }
@@ -100,12 +152,45 @@ public class AnalysisReportQueue implements ServerComponent {
   public AnalysisReportDto pop() {
     DbSession session = dbClient.openSession(false);
     try {
-      return dbClient.analysisReportDao().pop(session);
+      AnalysisReportDto report = dbClient.analysisReportDao().pop(session);
+      if (report != null) {
+        recordWaitingTime(report);
+      }
+      return report;
     } finally {
       MyBatis.closeQuietly(session);
     }
   }
 
+  private synchronized void recordWaitingTime(AnalysisReportDto report) {
+    if (report.getCreatedAt() != null && report.getStartedAt() != null) {
+      bookedReports++;
+      lastWaitingTime = report.getStartedAt() - report.getCreatedAt();
+      maxWaitingTime = Math.max(maxWaitingTime, lastWaitingTime);
+    }
+  }
+
+  /**
+   * Number of reports booked by workers since server startup
+   */
+  public synchronized long getBookedReports() {
+    return bookedReports;
+  }
+
+  /**
+   * Time in milliseconds spent in the queue by the last booked report
+   */
+  public synchronized long getLastWaitingTime() {
+    return lastWaitingTime;
+  }
+
+  /**
+   * Maximum time in milliseconds spent in the queue by a report since server startup
+   */
+  public synchronized long getMaxWaitingTime() {
+    return maxWaitingTime;
+  }
+
   public List<AnalysisReportDto> findByProjectKey(String projectKey) {
     DbSession session = dbClient.openSession(false);
     try {
@@ -20,6 +20,8 @@
 
 package org.sonar.server.computation;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.picocontainer.Startable;
 import org.sonar.api.ServerComponent;
 import org.sonar.api.platform.ServerUpgradeStatus;
@@ -28,22 +30,35 @@ import org.sonar.core.persistence.MyBatis;
 import org.sonar.server.computation.db.AnalysisReportDao;
 import org.sonar.server.db.DbClient;
 
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Clean-up queue of reports at server startup:
  * <ul>
  *   <li>remove all reports if server being upgraded to a new version (we assume that
  *   format of reports is not forward-compatible)</li>
  *   <li>reset reports that were in status WORKING while server stopped</li>
+ *   <li>remove the files of reports that were being uploaded while server stopped</li>
  * </ul>
+ * While server is up, the uploads that are not completed by the batch are removed once
+ * they have been idle for {@link #UPLOAD_TTL_MINUTES} minutes.
  */
 public class AnalysisReportQueueCleaner implements Startable, ServerComponent {
 
+  static final long UPLOAD_TTL_MINUTES = 60L;
+  static final long EXPIRATION_PERIOD_MINUTES = 10L;
+
   private final ServerUpgradeStatus serverUpgradeStatus;
   private final DbClient dbClient;
+  private final AnalysisReportStorage storage;
+  private ScheduledExecutorService executorService;
 
-  public AnalysisReportQueueCleaner(ServerUpgradeStatus serverUpgradeStatus, DbClient dbClient) {
+  public AnalysisReportQueueCleaner(ServerUpgradeStatus serverUpgradeStatus, DbClient dbClient, AnalysisReportStorage storage) {
     this.serverUpgradeStatus = serverUpgradeStatus;
     this.dbClient = dbClient;
+    this.storage = storage;
   }
 
   @Override
@@ -53,18 +68,35 @@ public class AnalysisReportQueueCleaner implements Startable, ServerComponent {
     try {
       if (serverUpgradeStatus.isUpgraded()) {
         dao.truncate(session);
+        session.commit();
+        storage.deleteAll();
       } else {
         dao.resetAllToPendingStatus(session);
+        session.commit();
+        storage.deleteTemporaryFiles();
       }
-
-      session.commit();
     } finally {
       MyBatis.closeQuietly(session);
     }
+    executorService = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setNameFormat("analysis-report-cleaner-%d").setDaemon(true).build());
+    executorService.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        deleteExpiredUploads();
+      }
+    }, EXPIRATION_PERIOD_MINUTES, EXPIRATION_PERIOD_MINUTES, TimeUnit.MINUTES);
   }
 
   @Override
   public void stop() {
-    // do nothing
+    if (executorService != null) {
+      executorService.shutdownNow();
+    }
+  }
+
+  @VisibleForTesting
+  void deleteExpiredUploads() {
+    storage.deleteTemporaryFilesNotModifiedSince(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(UPLOAD_TTL_MINUTES));
   }
 }
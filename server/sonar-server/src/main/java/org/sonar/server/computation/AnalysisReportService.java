@@ -20,10 +20,12 @@
 
 package org.sonar.server.computation;
 
-import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Iterables;
-import org.apache.commons.io.IOUtils;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.sonar.api.config.Settings;
 import org.sonar.api.issue.internal.DefaultIssue;
 import org.sonar.api.issue.internal.FieldDiffs;
 import org.sonar.api.rule.RuleKey;
@@ -37,51 +39,147 @@ import org.sonar.server.computation.issue.IssueComputation;
 
 import javax.annotation.Nullable;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class AnalysisReportService {
 
+  /**
+   * Number of threads used to digest the issues of components. Default is 1, so components are processed sequentially.
+   */
+  public static final String PROPERTY_DIGEST_THREADS = "sonar.computation.digestThreads";
+
+  /**
+   * Number of components whose SCM authors are loaded with a single db request
+   */
+  static final int COMPONENTS_PER_BATCH = 100;
+
+  /**
+   * Maximum number of decoded issues kept in memory before being processed. A batch of components
+   * is split when it exceeds this number.
+   */
+  static final int MAX_ISSUES_PER_BATCH = 10000;
+
   private final IssueComputation issueComputation;
+  private final int threads;
 
-  public AnalysisReportService(IssueComputation issueComputation) {
+  public AnalysisReportService(IssueComputation issueComputation, Settings settings) {
     this.issueComputation = issueComputation;
+    this.threads = Math.max(1, settings.getInt(PROPERTY_DIGEST_THREADS));
   }
 
   public void digest(ComputationContext context) {
-    initComponents(context);
-    parseReport(context);
+    // report can be in JSON or binary format
+    ReportHelper helper = ReportHelper.create(context.getReportDirectory());
+    ReportComponents components = helper.getComponents();
+    context.addResources(components);
+    List<List<ReportComponent>> batches = Lists.partition(flatten(components.root(), new ArrayList<ReportComponent>()), COMPONENTS_PER_BATCH);
+    if (threads > 1) {
+      browseComponentsConcurrently(context, helper, batches);
+    } else {
+      for (List<ReportComponent> batch : batches) {
+        browseComponents(context, helper, batch);
+      }
+    }
+    issueComputation.afterReportProcessing();
   }
 
-  @VisibleForTesting
-  void initComponents(ComputationContext context) {
-    File file = new File(context.getReportDirectory(), "components.json");
+  /**
+   * Batches of components are independent, so they are processed by a bounded pool of threads. Rules, SCM accounts and lines
+   * caches are thread-safe.
+   */
+  private void browseComponentsConcurrently(final ComputationContext context, final ReportHelper helper, List<List<ReportComponent>> batches) {
+    // threads are named like the computation workers in order to log into the same file,
+    // see org.sonar.server.platform.SwitchLogbackAppender
+    ExecutorService executor = Executors.newFixedThreadPool(threads,
+      new ThreadFactoryBuilder().setNameFormat(ComputationThreadLauncher.THREAD_NAME_PREFIX + "digest-%d").build());
+    try {
+      List<Future<Void>> futures = new ArrayList<>();
+      for (final List<ReportComponent> batch : batches) {
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            browseComponents(context, helper, batch);
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while digesting issues", e);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
 
-    try (InputStream resourcesStream = new FileInputStream(file)) {
-      String json = IOUtils.toString(resourcesStream);
-      ReportComponents reportComponents = ReportComponents.fromJson(json);
-      context.addResources(reportComponents);
-    } catch (IOException e) {
-      throw new IllegalStateException("Failed to read issues", e);
+  /**
+   * Issues of each component are decoded once and kept in memory until the SCM authors of the components that have new
+   * issues are loaded at once.
+   */
+  private void browseComponents(ComputationContext context, ReportHelper helper, List<ReportComponent> batch) {
+    Map<ReportComponent, List<ReportIssue>> issuesByComponent = new LinkedHashMap<>();
+    int decodedIssues = 0;
+    for (ReportComponent component : batch) {
+      List<ReportIssue> issues = Lists.newArrayList(helper.getIssues(component.batchId()));
+      issuesByComponent.put(component, issues);
+      decodedIssues += issues.size();
+      if (decodedIssues >= MAX_ISSUES_PER_BATCH) {
+        browseComponentIssues(context, issuesByComponent);
+        issuesByComponent.clear();
+        decodedIssues = 0;
+      }
     }
+    browseComponentIssues(context, issuesByComponent);
   }
 
-  private void parseReport(ComputationContext context) {
-    ReportHelper helper = ReportHelper.create(context.getReportDirectory());
-    ReportComponent root = helper.getComponents().root();
-    browseComponent(context, helper, root);
-    issueComputation.afterReportProcessing();
+  private void browseComponentIssues(ComputationContext context, Map<ReportComponent, List<ReportIssue>> issuesByComponent) {
+    if (issuesByComponent.isEmpty()) {
+      return;
+    }
+    List<String> uuidsRequiringAuthors = new ArrayList<>();
+    for (Map.Entry<ReportComponent, List<ReportIssue>> entry : issuesByComponent.entrySet()) {
+      if (requiresLineAuthors(entry.getValue())) {
+        uuidsRequiringAuthors.add(entry.getKey().uuid());
+      }
+    }
+    issueComputation.prefetchLineAuthors(uuidsRequiringAuthors);
+    try {
+      for (Map.Entry<ReportComponent, List<ReportIssue>> entry : issuesByComponent.entrySet()) {
+        browseComponentIssues(context, entry.getKey(), entry.getValue());
+      }
+    } finally {
+      issueComputation.clearPrefetchedLineAuthors();
+    }
+  }
+
+  private static boolean requiresLineAuthors(List<ReportIssue> reportIssues) {
+    for (ReportIssue issue : reportIssues) {
+      if (issue.isNew() && issue.line() != null && issue.authorLogin() == null) {
+        return true;
+      }
+    }
+    return false;
   }
 
-  private void browseComponent(ComputationContext context, ReportHelper helper, ReportComponent component) {
-    Iterable<ReportIssue> reportIssues = helper.getIssues(component.batchId());
-    browseComponentIssues(context, component, reportIssues);
+  private static List<ReportComponent> flatten(ReportComponent component, List<ReportComponent> result) {
+    result.add(component);
     for (ReportComponent child : component.children()) {
-      browseComponent(context, helper, child);
+      flatten(child, result);
     }
+    return result;
   }
 
   private void browseComponentIssues(final ComputationContext context, ReportComponent component, Iterable<ReportIssue> reportIssues) {
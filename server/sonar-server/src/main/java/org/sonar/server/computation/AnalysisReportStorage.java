@@ -0,0 +1,182 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.sonar.server.computation;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.sonar.api.ServerComponent;
+import org.sonar.api.config.Settings;
+import org.sonar.api.utils.ZipUtils;
+import org.sonar.process.ProcessConstants;
+
+import javax.annotation.CheckForNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.regex.Pattern;
+
+/**
+ * Stores the zipped analysis reports in the directory "analysis_reports" of the server data directory.
+ * Only the metadata of reports are stored in database.
+ */
+public class AnalysisReportStorage implements ServerComponent {
+
+  private static final String TEMP_FILE_SUFFIX = ".tmp";
+  private static final String REPORT_FILE_SUFFIX = ".zip";
+  private static final Pattern TEMP_FILE_NAME = Pattern.compile("[a-zA-Z0-9_-]+");
+
+  private final File dir;
+
+  public AnalysisReportStorage(Settings settings) {
+    this(new File(dataDir(settings), "analysis_reports"));
+  }
+
+  @VisibleForTesting
+  AnalysisReportStorage(File dir) {
+    this.dir = dir;
+  }
+
+  private static String dataDir(Settings settings) {
+    String dataDir = settings.getString(ProcessConstants.PATH_DATA);
+    if (StringUtils.isBlank(dataDir)) {
+      return new File(settings.getString(ProcessConstants.PATH_HOME), "data").getAbsolutePath();
+    }
+    return dataDir;
+  }
+
+  /**
+   * Streams the report to a temporary file, which must then be attached to the report with {@link #save(File, long)}.
+   */
+  public File write(InputStream reportData) {
+    File tempFile = null;
+    try {
+      tempFile = newTemporaryFile("report");
+      OutputStream output = new FileOutputStream(tempFile);
+      try {
+        IOUtils.copyLarge(reportData, output);
+      } finally {
+        output.close();
+      }
+      return tempFile;
+    } catch (IOException e) {
+      FileUtils.deleteQuietly(tempFile);
+      throw new IllegalStateException("Fail to write analysis report in " + dir, e);
+    }
+  }
+
+  /**
+   * Creates an empty temporary file. Temporary files that are not saved are dropped
+   * by {@link #deleteTemporaryFiles()} at server startup, or when they expire.
+   */
+  public File newTemporaryFile(String prefix) throws IOException {
+    FileUtils.forceMkdir(dir);
+    return File.createTempFile(prefix, TEMP_FILE_SUFFIX, dir);
+  }
+
+  public String temporaryFileName(File tempFile) {
+    return StringUtils.removeEnd(tempFile.getName(), TEMP_FILE_SUFFIX);
+  }
+
+  /**
+   * Temporary file created by {@link #newTemporaryFile(String)}, or null if it does not exist
+   *
+   * @param name the name returned by {@link #temporaryFileName(File)}
+   */
+  @CheckForNull
+  public File temporaryFile(String name) {
+    if (!TEMP_FILE_NAME.matcher(name).matches()) {
+      return null;
+    }
+    File file = new File(dir, name + TEMP_FILE_SUFFIX);
+    return file.isFile() ? file : null;
+  }
+
+  public void save(File tempFile, long reportId) {
+    try {
+      Files.move(tempFile.toPath(), file(reportId).toPath(), StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to save analysis report " + reportId, e);
+    }
+  }
+
+  /**
+   * Extracts the report, if any, by reading the zip file in place.
+   */
+  public void decompress(long reportId, File toDir) {
+    File file = file(reportId);
+    if (file.exists()) {
+      try {
+        ZipUtils.unzip(file, toDir);
+      } catch (IOException e) {
+        throw new IllegalStateException(String.format("Failed to decompress report '%d'", reportId), e);
+      }
+    }
+  }
+
+  public void delete(long reportId) {
+    FileUtils.deleteQuietly(file(reportId));
+  }
+
+  /**
+   * Removes the temporary files of uploads that were interrupted
+   */
+  public void deleteTemporaryFiles() {
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (file.getName().endsWith(TEMP_FILE_SUFFIX)) {
+          FileUtils.deleteQuietly(file);
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes the temporary files that have not been modified since the given date, for example the uploads
+   * abandoned by the batch
+   */
+  public void deleteTemporaryFilesNotModifiedSince(long date) {
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (file.getName().endsWith(TEMP_FILE_SUFFIX) && file.lastModified() < date) {
+          FileUtils.deleteQuietly(file);
+        }
+      }
+    }
+  }
+
+  public void deleteAll() {
+    FileUtils.deleteQuietly(dir);
+  }
+
+  @VisibleForTesting
+  File file(long reportId) {
+    return new File(dir, reportId + REPORT_FILE_SUFFIX);
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.sonar.server.computation;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.sonar.api.ServerComponent;
+import org.sonar.server.exceptions.BadRequestException;
+import org.sonar.server.exceptions.NotFoundException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Assembles analysis reports that are uploaded in several parts. Each part is verified against its
+ * MD5 checksum before being appended, so a part that failed can be sent again without restarting
+ * the whole upload. Uploads are temporary files of {@link AnalysisReportStorage} until they are
+ * submitted to the {@link AnalysisReportQueue}. Abandoned uploads are dropped by {@link AnalysisReportQueueCleaner}.
+ */
+public class AnalysisReportUploads implements ServerComponent {
+
+  private static final String UPLOAD_PREFIX = "upload";
+
+  private final AnalysisReportStorage storage;
+
+  public AnalysisReportUploads(AnalysisReportStorage storage) {
+    this.storage = storage;
+  }
+
+  /**
+   * Starts a new upload with its first part. Nothing is kept if the part is not valid, so that a first part
+   * that is sent again does not leave an abandoned upload.
+   *
+   * @param offset   position of the part in the report, which must be 0
+   * @param checksum MD5 hexadecimal checksum of the part
+   * @return the id of the new upload
+   */
+  public String start(long offset, String checksum, InputStream part) {
+    if (offset != 0L) {
+      throw new BadRequestException(String.format("First part of an upload must be at offset 0, got %d", offset));
+    }
+    File upload = null;
+    boolean started = false;
+    try {
+      upload = storage.newTemporaryFile(UPLOAD_PREFIX);
+      checkChecksum(offset, checksum, copyAndDigest(part, upload));
+      started = true;
+      return storage.temporaryFileName(upload);
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to start upload of analysis report", e);
+    } finally {
+      if (!started) {
+        FileUtils.deleteQuietly(upload);
+      }
+    }
+  }
+
+  /**
+   * @return the number of bytes received so far, which is the offset of the next part
+   */
+  public long size(String uploadId) {
+    return upload(uploadId).length();
+  }
+
+  /**
+   * Appends a part to the upload. The bytes already received, for example when the acknowledgement of a
+   * previous attempt was lost, are ignored.
+   *
+   * @param offset   position of the part in the report
+   * @param checksum MD5 hexadecimal checksum of the part
+   * @return the number of bytes received so far, which is the offset of the next part
+   */
+  public long appendPart(String uploadId, long offset, String checksum, InputStream part) {
+    File upload = upload(uploadId);
+    File partFile = null;
+    try {
+      partFile = storage.newTemporaryFile("part");
+      checkChecksum(offset, checksum, copyAndDigest(part, partFile));
+      return append(upload, offset, partFile);
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to append part to upload " + uploadId, e);
+    } finally {
+      FileUtils.deleteQuietly(partFile);
+    }
+  }
+
+  /**
+   * @return the assembled report, which is moved to its final location when submitted to the queue
+   */
+  public File complete(String uploadId) {
+    return upload(uploadId);
+  }
+
+  private File upload(String uploadId) {
+    File upload = uploadId.startsWith(UPLOAD_PREFIX) ? storage.temporaryFile(uploadId) : null;
+    if (upload == null) {
+      throw new NotFoundException(String.format("Upload '%s' does not exist", uploadId));
+    }
+    return upload;
+  }
+
+  private static void checkChecksum(long offset, String expected, String actual) {
+    if (!actual.equalsIgnoreCase(expected)) {
+      throw new BadRequestException(String.format("Checksum of part at offset %d does not match: expected %s but got %s", offset, expected, actual));
+    }
+  }
+
+  private static String copyAndDigest(InputStream part, File toFile) throws IOException {
+    OutputStream output = new FileOutputStream(toFile);
+    try {
+      IOUtils.copyLarge(part, output);
+    } finally {
+      output.close();
+    }
+    InputStream input = new FileInputStream(toFile);
+    try {
+      return DigestUtils.md5Hex(input);
+    } finally {
+      input.close();
+    }
+  }
+
+  /**
+   * Appends are serialized so that concurrent retries of the same part can not corrupt the upload
+   */
+  private static synchronized long append(File upload, long offset, File partFile) throws IOException {
+    long received = upload.length();
+    if (offset > received) {
+      throw new BadRequestException(String.format("Part at offset %d is not contiguous, only %d bytes have been received", offset, received));
+    }
+    long alreadyReceived = received - offset;
+    if (alreadyReceived < partFile.length()) {
+      InputStream input = new FileInputStream(partFile);
+      OutputStream output = new FileOutputStream(upload, true);
+      try {
+        IOUtils.copyLarge(input, output, alreadyReceived, partFile.length() - alreadyReceived);
+      } finally {
+        IOUtils.closeQuietly(input);
+        output.close();
+      }
+    }
+    return upload.length();
+  }
+}
@@ -22,6 +22,7 @@ package org.sonar.server.computation;
 import org.sonar.core.issue.db.UpdateConflictResolver;
 import org.sonar.server.computation.issue.IssueCache;
 import org.sonar.server.computation.issue.IssueComputation;
+import org.sonar.server.computation.issue.LineAuthorsLoader;
 import org.sonar.server.computation.issue.RuleCache;
 import org.sonar.server.computation.issue.RuleCacheLoader;
 import org.sonar.server.computation.issue.ScmAccountCache;
@@ -47,6 +48,7 @@ public class ComputationComponents {
       // issues
       ScmAccountCacheLoader.class,
       ScmAccountCache.class,
+      LineAuthorsLoader.class,
       SourceLinesCache.class,
       IssueComputation.class,
       RuleCache.class,
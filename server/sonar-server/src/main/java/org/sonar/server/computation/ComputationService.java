@@ -48,13 +48,15 @@ public class ComputationService implements ServerComponent {
   private final ComputationSteps steps;
   private final ActivityService activityService;
   private final TempFolder tempFolder;
+  private final AnalysisReportStorage storage;
 
   public ComputationService(DbClient dbClient, ComputationSteps steps, ActivityService activityService,
-    TempFolder tempFolder) {
+    TempFolder tempFolder, AnalysisReportStorage storage) {
     this.dbClient = dbClient;
     this.steps = steps;
     this.activityService = activityService;
     this.tempFolder = tempFolder;
+    this.storage = storage;
   }
 
   public void process(AnalysisReportDto report) {
@@ -65,7 +67,7 @@ public class ComputationService implements ServerComponent {
     File reportDir = tempFolder.newDir();
     try {
       ComputationContext context = new ComputationContext(report, project, reportDir);
-      decompressReport(report, reportDir);
+      storage.decompress(report.getId(), reportDir);
       for (ComputationStep step : steps.orderedSteps()) {
         TimeProfiler stepProfiler = new TimeProfiler(LOG).start(step.getDescription());
         step.execute(context);
@@ -103,13 +105,4 @@ public class ComputationService implements ServerComponent {
       MyBatis.closeQuietly(session);
     }
   }
-
-  private void decompressReport(AnalysisReportDto report, File toDir) {
-    DbSession session = dbClient.openSession(false);
-    try {
-      dbClient.analysisReportDao().selectAndDecompressToDir(session, report.getId(), toDir);
-    } finally {
-      MyBatis.closeQuietly(session);
-    }
-  }
 }
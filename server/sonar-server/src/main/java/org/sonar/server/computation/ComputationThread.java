@@ -41,22 +41,31 @@ public class ComputationThread implements Runnable {
 
   @Override
   public void run() {
+    processNextReport();
+  }
+
+  /**
+   * @return true if a report has been popped from the queue, whatever the result of its processing
+   */
+  boolean processNextReport() {
     AnalysisReportDto report = null;
     try {
       report = queue.pop();
     } catch (Exception e) {
       LOG.error("Failed to pop the queue of analysis reports", e);
     }
-    if (report != null) {
-      try {
-        process(report);
-      } catch (Exception e) {
-        LOG.error(String.format(
-          "Failed to process analysis report %d of project %s", report.getId(), report.getProjectKey()), e);
-      } finally {
-        removeSilentlyFromQueue(report);
-      }
+    if (report == null) {
+      return false;
+    }
+    try {
+      process(report);
+    } catch (Exception e) {
+      LOG.error(String.format(
+        "Failed to process analysis report %d of project %s", report.getId(), report.getProjectKey()), e);
+    } finally {
+      removeSilentlyFromQueue(report);
     }
+    return true;
   }
 
   private void removeSilentlyFromQueue(AnalysisReportDto report) {
@@ -68,8 +77,8 @@ public class ComputationThread implements Runnable {
   }
 
   private void process(AnalysisReportDto report) {
-    ComponentContainer container = Platform.getInstance().getContainer();
-    ComponentContainer child = container.createChild();
+    // each worker has its own container, so that several reports can be processed concurrently
+    ComponentContainer child = Platform.getInstance().getContainer().createDetachedChild();
     child.addSingletons(ComputationSteps.orderedStepClasses());
     child.addSingletons(ComputationComponents.nonStepComponents());
     child.startComponents();
@@ -77,9 +86,6 @@ public class ComputationThread implements Runnable {
       child.getComponentByType(ComputationService.class).process(report);
     } finally {
       child.stopComponents();
-      // TODO not possible to have multiple children -> will be
-      // a problem when we will have multiple concurrent computation workers
-      container.removeChild();
     }
   }
 }
@@ -23,42 +23,70 @@ package org.sonar.server.computation;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.picocontainer.Startable;
+import org.sonar.api.Properties;
+import org.sonar.api.Property;
+import org.sonar.api.PropertyType;
 import org.sonar.api.ServerComponent;
+import org.sonar.api.config.Settings;
 import org.sonar.api.platform.Server;
 import org.sonar.api.platform.ServerStartHandler;
 
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
+@Properties({
+  @Property(
+    key = ComputationThreadLauncher.PROPERTY_WORKERS,
+    defaultValue = "1",
+    name = "Number of analysis reports processed concurrently",
+    description = "Zero disables the processing of analysis reports.",
+    type = PropertyType.INTEGER,
+    project = false,
+    global = false),
+  @Property(
+    key = AnalysisReportService.PROPERTY_DIGEST_THREADS,
+    defaultValue = "1",
+    name = "Number of threads used to digest the issues of an analysis report",
+    type = PropertyType.INTEGER,
+    project = false,
+    global = false)
+})
 public class ComputationThreadLauncher implements Startable, ServerComponent, ServerStartHandler {
 
   public static final String THREAD_NAME_PREFIX = "computation-";
+  public static final String PROPERTY_WORKERS = "sonar.computation.workers";
 
   private final AnalysisReportQueue queue;
-  private final ScheduledExecutorService executorService;
+  private final ExecutorService executorService;
+  private final int workers;
 
-  private final long delayBetweenTasks;
   private final long delayForFirstStart;
+  private final long minDelayBetweenPolls;
+  private final long maxDelayBetweenPolls;
   private final TimeUnit timeUnit;
 
-  public ComputationThreadLauncher(AnalysisReportQueue queue) {
-    this.queue = queue;
-    this.executorService = Executors.newSingleThreadScheduledExecutor(threadFactoryWithSpecificNameForLogging());
-
-    this.delayBetweenTasks = 10;
-    this.delayForFirstStart = 0;
-    this.timeUnit = TimeUnit.SECONDS;
+  public ComputationThreadLauncher(AnalysisReportQueue queue, Settings settings) {
+    this(queue, settings.getInt(PROPERTY_WORKERS), 0, 10, 300, TimeUnit.SECONDS);
   }
 
+  /**
+   * Workers are woken up as soon as a report is added to the queue. Polling the database is only a fallback,
+   * for example for reports that could not be booked. Its delay doubles each time no report is found, from
+   * {@code minDelayBetweenPolls} to {@code maxDelayBetweenPolls}.
+   */
   @VisibleForTesting
-  ComputationThreadLauncher(AnalysisReportQueue queue, long delayForFirstStart, long delayBetweenTasks, TimeUnit timeUnit) {
+  ComputationThreadLauncher(AnalysisReportQueue queue, int workers, long delayForFirstStart,
+    long minDelayBetweenPolls, long maxDelayBetweenPolls, TimeUnit timeUnit) {
     this.queue = queue;
-    this.executorService = Executors.newSingleThreadScheduledExecutor(threadFactoryWithSpecificNameForLogging());
+    // reports of a same project are never processed concurrently, see AnalysisReportDao#pop()
+    this.workers = Math.max(0, workers);
+    this.executorService = Executors.newFixedThreadPool(Math.max(1, this.workers), threadFactoryWithSpecificNameForLogging());
 
-    this.delayBetweenTasks = delayBetweenTasks;
     this.delayForFirstStart = delayForFirstStart;
+    this.minDelayBetweenPolls = minDelayBetweenPolls;
+    this.maxDelayBetweenPolls = Math.max(minDelayBetweenPolls, maxDelayBetweenPolls);
     this.timeUnit = timeUnit;
   }
 
@@ -69,16 +97,21 @@ public class ComputationThreadLauncher implements Startable, ServerComponent, Se
 
   @Override
   public void stop() {
-    executorService.shutdown();
-  }
-
-  public void startAnalysisTaskNow() {
-    executorService.execute(new ComputationThread(queue));
+    // interrupts the workers waiting for reports. Reports being processed are
+    // set back to pending at next startup by AnalysisReportQueueCleaner.
+    executorService.shutdownNow();
   }
 
   @Override
   public void onServerStart(Server server) {
-    executorService.scheduleAtFixedRate(new ComputationThread(queue), delayForFirstStart, delayBetweenTasks, timeUnit);
+    for (int i = 0; i < workers; i++) {
+      executorService.execute(new Worker());
+    }
+  }
+
+  @VisibleForTesting
+  int getWorkers() {
+    return workers;
   }
 
   /**
@@ -88,4 +121,25 @@ public class ComputationThreadLauncher implements Startable, ServerComponent, Se
     return new ThreadFactoryBuilder()
       .setNameFormat(THREAD_NAME_PREFIX + "%d").setPriority(Thread.MIN_PRIORITY).build();
   }
+
+  private class Worker implements Runnable {
+    @Override
+    public void run() {
+      ComputationThread thread = new ComputationThread(queue);
+      long delay = minDelayBetweenPolls;
+      try {
+        timeUnit.sleep(delayForFirstStart);
+        while (!Thread.currentThread().isInterrupted()) {
+          if (thread.processNextReport() || queue.awaitNewReport(delay, timeUnit)) {
+            delay = minDelayBetweenPolls;
+          } else {
+            delay = Math.min(delay * 2, maxDelayBetweenPolls);
+          }
+        }
+      } catch (InterruptedException e) {
+        // server is stopping
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
 }
@@ -21,24 +21,17 @@
 package org.sonar.server.computation.db;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.io.ByteStreams;
-import org.apache.commons.io.IOUtils;
 import org.sonar.api.utils.System2;
-import org.sonar.api.utils.ZipUtils;
 import org.sonar.core.computation.db.AnalysisReportDto;
 import org.sonar.core.computation.db.AnalysisReportMapper;
 import org.sonar.core.persistence.DaoComponent;
-import org.sonar.core.persistence.DatabaseUtils;
 import org.sonar.core.persistence.DbSession;
 
 import javax.annotation.CheckForNull;
-import javax.annotation.Nullable;
 
-import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
-import java.sql.*;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import static org.sonar.core.computation.db.AnalysisReportDto.Status.PENDING;
 import static org.sonar.core.computation.db.AnalysisReportDto.Status.WORKING;
@@ -76,15 +69,23 @@ public class AnalysisReportDao implements DaoComponent {
     return mapper(session).selectById(id);
   }
 
+  /**
+   * Books the oldest pending report whose project has no report being processed. When another worker books a
+   * candidate first, the next candidates are tried, except those of the same project, which is now busy.
+   */
   @CheckForNull
   public AnalysisReportDto pop(DbSession session) {
-    List<Long> reportIds = mapper(session).selectAvailables(PENDING, WORKING);
-    if (reportIds.isEmpty()) {
-      return null;
+    List<AnalysisReportDto> candidates = mapper(session).selectAvailables(PENDING, WORKING);
+    Set<String> triedProjectKeys = new HashSet<>();
+    for (AnalysisReportDto candidate : candidates) {
+      if (triedProjectKeys.add(candidate.getProjectKey())) {
+        AnalysisReportDto report = tryToPop(session, candidate.getId());
+        if (report != null) {
+          return report;
+        }
+      }
     }
-
-    long reportId = reportIds.get(0);
-    return tryToPop(session, reportId);
+    return null;
   }
 
   @VisibleForTesting
@@ -104,82 +105,17 @@ public class AnalysisReportDao implements DaoComponent {
     return mapper(session).selectAll();
   }
 
+  /**
+   * Inserts the report metadata and sets its generated id. The report data is not stored in database,
+   * see {@link org.sonar.server.computation.AnalysisReportStorage}.
+   */
   public AnalysisReportDto insert(DbSession session, AnalysisReportDto report) {
     report.setCreatedAt(system2.now());
     report.setUpdatedAt(system2.now());
-
-    Connection connection = session.getConnection();
-    PreparedStatement ps = null;
-    try {
-      ps = connection.prepareStatement(
-        "insert into analysis_reports " +
-          " (project_key, snapshot_id, report_status, report_data, created_at, updated_at, started_at, finished_at)" +
-          " values (?, ?, ?, ?, ?, ?, ?, ?)");
-      ps.setString(1, report.getProjectKey());
-      ps.setLong(2, report.getSnapshotId());
-      ps.setString(3, report.getStatus().toString());
-      setData(ps, 4, report.getData());
-      ps.setLong(5, report.getCreatedAt());
-      setLong(ps, 6, report.getUpdatedAt());
-      setLong(ps, 7, report.getStartedAt());
-      setLong(ps, 8, report.getFinishedAt());
-
-      ps.executeUpdate();
-      connection.commit();
-    } catch (SQLException | IOException e) {
-      throw new IllegalStateException(String.format("Failed to insert %s in the database", report), e);
-    } finally {
-      DatabaseUtils.closeQuietly(ps);
-    }
-
+    mapper(session).insert(report);
     return report;
   }
 
-  private void setLong(PreparedStatement ps, int index, @Nullable Long time) throws SQLException {
-    if (time == null) {
-      ps.setNull(index, Types.BIGINT);
-    } else {
-      ps.setLong(index, time);
-    }
-  }
-
-  private void setData(PreparedStatement ps, int parameterIndex, @Nullable InputStream reportDataStream) throws IOException, SQLException {
-    if (reportDataStream == null) {
-      ps.setBytes(parameterIndex, null);
-    } else {
-      ps.setBytes(parameterIndex, ByteStreams.toByteArray(reportDataStream));
-    }
-  }
-
-  @CheckForNull
-  public void selectAndDecompressToDir(DbSession session, long id, File toDir) {
-    Connection connection = session.getConnection();
-    InputStream stream = null;
-    PreparedStatement ps = null;
-    ResultSet rs = null;
-    try {
-      ps = connection.prepareStatement("select report_data from analysis_reports where id=?");
-      ps.setLong(1, id);
-
-      rs = ps.executeQuery();
-      if (rs.next()) {
-        stream = rs.getBinaryStream(1);
-        if (stream != null) {
-          ZipUtils.unzip(stream, toDir);
-        }
-      }
-      // TODO what to do if id not found or no stream ?
-    } catch (SQLException e) {
-      throw new IllegalStateException(String.format("Failed to read report '%d' in the database", id), e);
-    } catch (IOException e) {
-      throw new IllegalStateException(String.format("Failed to decompress report '%d'", id), e);
-    } finally {
-      IOUtils.closeQuietly(stream);
-      DatabaseUtils.closeQuietly(rs);
-      DatabaseUtils.closeQuietly(ps);
-    }
-  }
-
   public void delete(DbSession session, long id) {
     mapper(session).delete(id);
   }
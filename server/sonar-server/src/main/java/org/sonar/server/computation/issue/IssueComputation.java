@@ -24,6 +24,8 @@ import org.sonar.api.issue.internal.DefaultIssue;
 import org.sonar.core.rule.RuleDto;
 import org.sonar.server.util.cache.DiskCache;
 
+import java.util.Collection;
+
 public class IssueComputation {
 
   private final RuleCache ruleCache;
@@ -39,6 +41,17 @@ public class IssueComputation {
     this.finalIssuesAppender = issueCache.newAppender();
   }
 
+  /**
+   * Loads in a single db request the SCM authors of the next components processed by the calling thread
+   */
+  public void prefetchLineAuthors(Collection<String> componentUuids) {
+    linesCache.prefetch(componentUuids);
+  }
+
+  public void clearPrefetchedLineAuthors() {
+    linesCache.clearPrefetched();
+  }
+
   public void processComponentIssues(String componentUuid, Iterable<DefaultIssue> issues) {
     linesCache.init(componentUuid);
     for (DefaultIssue issue : issues) {
@@ -48,11 +61,20 @@ public class IssueComputation {
         copyRuleTags(issue);
         // TODO execute extension points
       }
-      finalIssuesAppender.append(issue);
+      append(issue);
     }
     linesCache.clear();
   }
 
+  /**
+   * Components can be processed concurrently, but issues are stored in a single file
+   */
+  private void append(DefaultIssue issue) {
+    synchronized (finalIssuesAppender) {
+      finalIssuesAppender.append(issue);
+    }
+  }
+
   public void afterReportProcessing() {
     finalIssuesAppender.close();
   }
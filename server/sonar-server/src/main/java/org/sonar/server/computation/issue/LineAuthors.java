@@ -0,0 +1,121 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.issue;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Last committers of the lines of a file. A file usually has a few distinct authors
+ * for a lot of lines, so each author is stored once and lines only reference
+ * its index.
+ */
+public class LineAuthors {
+
+  private static final int NO_AUTHOR = -1;
+
+  private final String[] authors;
+  private final int[] lines;
+
+  private LineAuthors(String[] authors, int[] lines) {
+    this.authors = authors;
+    this.lines = lines;
+  }
+
+  /**
+   * @param lineId starts at 1
+   * @return null if line has no author or does not exist
+   */
+  @CheckForNull
+  public String get(int lineId) {
+    if (lineId < 1 || lineId > lines.length) {
+      return null;
+    }
+    int index = lines[lineId - 1];
+    return index == NO_AUTHOR ? null : authors[index];
+  }
+
+  /**
+   * Number of lines
+   */
+  public int size() {
+    return lines.length;
+  }
+
+  /**
+   * Number of distinct authors
+   */
+  int countAuthors() {
+    return authors.length;
+  }
+
+  static Builder builder() {
+    return new Builder();
+  }
+
+  static class Builder {
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private final List<String> authors = new ArrayList<>();
+    private int[] lines = new int[64];
+    private int size = 0;
+
+    private Builder() {
+      // use LineAuthors#builder()
+    }
+
+    /**
+     * Adds the next line. Blank author is considered as no author.
+     */
+    Builder addLine(@Nullable String author) {
+      if (size == lines.length) {
+        int[] newLines = new int[lines.length * 2];
+        System.arraycopy(lines, 0, newLines, 0, size);
+        lines = newLines;
+      }
+      lines[size] = indexOf(author);
+      size++;
+      return this;
+    }
+
+    private int indexOf(@Nullable String author) {
+      if (author == null || author.isEmpty()) {
+        return NO_AUTHOR;
+      }
+      Integer index = indexes.get(author);
+      if (index == null) {
+        index = authors.size();
+        indexes.put(author, index);
+        authors.add(author);
+      }
+      return index;
+    }
+
+    LineAuthors build() {
+      int[] trimmed = new int[size];
+      System.arraycopy(lines, 0, trimmed, 0, size);
+      return new LineAuthors(authors.toArray(new String[authors.size()]), trimmed);
+    }
+  }
+}
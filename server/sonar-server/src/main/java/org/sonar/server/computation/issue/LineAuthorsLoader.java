@@ -0,0 +1,69 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.issue;
+
+import org.sonar.api.ServerComponent;
+import org.sonar.core.source.db.FileSourceDao;
+import org.sonar.core.source.db.FileSourceData;
+import org.sonar.server.db.DbClient;
+
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Loads the last committers of the lines of many files at once, from db table FILE_SOURCES.
+ * Only the column {@link FileSourceData.Column#SCM_AUTHOR} of the binary data is decoded, other columns
+ * are skipped without being inflated.
+ */
+public class LineAuthorsLoader implements ServerComponent {
+
+  private final DbClient dbClient;
+
+  public LineAuthorsLoader(DbClient dbClient) {
+    this.dbClient = dbClient;
+  }
+
+  /**
+   * @return authors per file uuid. Files that are not in db are not returned.
+   */
+  public Map<String, LineAuthors> load(Collection<String> fileUuids) {
+    final Map<String, LineAuthors> result = new HashMap<>();
+    if (!fileUuids.isEmpty()) {
+      dbClient.fileSourceDao().readDataStreams(fileUuids, new FileSourceDao.DataStreamHandler() {
+        @Override
+        public void handle(String fileUuid, InputStream data) {
+          result.put(fileUuid, parse(data));
+        }
+      });
+    }
+    return result;
+  }
+
+  static LineAuthors parse(InputStream data) {
+    FileSourceData authors = FileSourceData.decode(data, FileSourceData.Column.SCM_AUTHOR);
+    LineAuthors.Builder builder = LineAuthors.builder();
+    for (int line = 1; line <= authors.lines(); line++) {
+      builder.addLine(authors.getString(FileSourceData.Column.SCM_AUTHOR, line));
+    }
+    return builder.build();
+  }
+}
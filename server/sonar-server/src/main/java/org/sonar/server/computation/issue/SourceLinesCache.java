@@ -19,47 +19,54 @@
  */
 package org.sonar.server.computation.issue;
 
-import com.google.common.base.Function;
-import com.google.common.base.Strings;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
-import org.apache.commons.io.IOUtils;
-import org.sonar.core.source.db.FileSourceDto;
-import org.sonar.server.db.DbClient;
-
 import javax.annotation.CheckForNull;
 
-import java.io.Reader;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Cache of the lines of the currently processed file. Only a single file
- * is kept in memory at a time. Moreover data is loaded on demand to avoid
+ * is kept in memory at a time by each thread, so that components can be
+ * processed concurrently. Moreover data is loaded on demand to avoid
  * useless db trips.
  * <p/>
+ * Data of the next files to be processed can be loaded in advance with a single
+ * db request, see {@link #prefetch(java.util.Collection)}.
+ * <p/>
  * It assumes that db table FILE_SOURCES is up-to-date before using this
  * cache.
  */
 public class SourceLinesCache {
 
-  private final DbClient dbClient;
-  private final List<String> authors = new ArrayList<>();
-  private final FileDataParser parserFunction = new FileDataParser();
-  private boolean loaded = false;
-  private String currentFileUuid = null;
+  private final LineAuthorsLoader loader;
+  private final ThreadLocal<FileLines> currentFile = new ThreadLocal<FileLines>() {
+    @Override
+    protected FileLines initialValue() {
+      return new FileLines();
+    }
+  };
+
+  public SourceLinesCache(LineAuthorsLoader loader) {
+    this.loader = loader;
+  }
 
-  public SourceLinesCache(DbClient dbClient) {
-    this.dbClient = dbClient;
+  /**
+   * Loads the authors of the given files, which are going to be processed by the calling thread.
+   * Previously prefetched data is dropped.
+   */
+  public void prefetch(Collection<String> fileUuids) {
+    currentFile.get().prefetched = new HashMap<>(loader.load(fileUuids));
   }
 
   /**
-   * Marks the currently processed component
+   * Marks the component currently processed by the calling thread
    */
   void init(String fileUuid) {
-    loaded = false;
-    currentFileUuid = fileUuid;
+    FileLines file = currentFile.get();
+    file.uuid = fileUuid;
+    file.authors = file.prefetched.remove(fileUuid);
   }
 
   /**
@@ -68,56 +75,46 @@ public class SourceLinesCache {
    */
   @CheckForNull
   public String lineAuthor(int lineId) {
-    loadIfNeeded();
-    if (lineId <= authors.size()) {
-      String author = authors.get(lineId - 1);
-      return Strings.emptyToNull(author);
-    }
-    return null;
+    return loadIfNeeded().get(lineId);
   }
 
   /**
    * Load only on demand, to avoid useless db requests on files without any new issues
    */
-  private void loadIfNeeded() {
-    if (!loaded) {
-      dbClient.fileSourceDao().readDataStream(currentFileUuid, parserFunction);
-      loaded = true;
+  private LineAuthors loadIfNeeded() {
+    FileLines file = currentFile.get();
+    if (file.authors == null) {
+      LineAuthors authors = loader.load(Collections.singletonList(file.uuid)).get(file.uuid);
+      file.authors = authors != null ? authors : LineAuthors.builder().build();
     }
+    return file.authors;
   }
 
   /**
    * Makes cache eligible to GC
    */
   public void clear() {
-    authors.clear();
+    currentFile.get().authors = null;
+  }
+
+  /**
+   * Makes prefetched data eligible to GC
+   */
+  public void clearPrefetched() {
+    currentFile.get().prefetched = new HashMap<>();
   }
 
   /**
    * Number of lines in cache of the current file
    */
   int countLines() {
-    return authors.size();
+    LineAuthors authors = currentFile.get().authors;
+    return authors == null ? 0 : authors.size();
   }
 
-  class FileDataParser implements Function<Reader, Void> {
-    @Override
-    public Void apply(Reader input) {
-      CSVParser csvParser = null;
-      try {
-        csvParser = new CSVParser(input, CSVFormat.DEFAULT);
-        authors.clear();
-        for (CSVRecord csvRecord : csvParser) {
-          // do not keep all fields in memory
-          String author = csvRecord.get(FileSourceDto.CSV_INDEX_SCM_AUTHOR);
-          authors.add(author);
-        }
-        return null;
-      } catch (Exception e) {
-        throw new IllegalStateException("Fail to parse CSV data", e);
-      } finally {
-        IOUtils.closeQuietly(csvParser);
-      }
-    }
+  private static class FileLines {
+    private Map<String, LineAuthors> prefetched = new HashMap<>();
+    private LineAuthors authors = null;
+    private String uuid = null;
   }
 }
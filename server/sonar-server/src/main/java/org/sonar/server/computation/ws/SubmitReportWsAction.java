@@ -25,7 +25,7 @@ import org.sonar.api.server.ws.RequestHandler;
 import org.sonar.api.server.ws.Response;
 import org.sonar.api.server.ws.WebService;
 import org.sonar.server.computation.AnalysisReportQueue;
-import org.sonar.server.computation.ComputationThreadLauncher;
+import org.sonar.server.computation.AnalysisReportUploads;
 
 import java.io.InputStream;
 
@@ -35,13 +35,14 @@ public class SubmitReportWsAction implements ComputationWsAction, RequestHandler
   public static final String PARAM_PROJECT_KEY = "projectKey";
   public static final String PARAM_SNAPSHOT = "snapshot";
   public static final String PARAM_REPORT_DATA = "report";
+  public static final String PARAM_UPLOAD_ID = "uploadId";
 
   private final AnalysisReportQueue queue;
-  private final ComputationThreadLauncher workerLauncher;
+  private final AnalysisReportUploads uploads;
 
-  public SubmitReportWsAction(AnalysisReportQueue queue, ComputationThreadLauncher workerLauncher) {
+  public SubmitReportWsAction(AnalysisReportQueue queue, AnalysisReportUploads uploads) {
     this.queue = queue;
-    this.workerLauncher = workerLauncher;
+    this.uploads = uploads;
   }
 
   @Override
@@ -68,20 +69,32 @@ public class SubmitReportWsAction implements ComputationWsAction, RequestHandler
       .createParam(PARAM_REPORT_DATA)
       .setRequired(false)
       .setDescription("Report file. Format is not an API, it changes among SonarQube versions.");
+
+    action
+      .createParam(PARAM_UPLOAD_ID)
+      .setRequired(false)
+      .setDescription(String.format("Id of a report uploaded in several parts with the action '%s', instead of the parameter '%s'",
+        UploadReportPartWsAction.ACTION, PARAM_REPORT_DATA))
+      .setExampleValue("upload5478364019203467");
   }
 
   @Override
   public void handle(Request request, Response response) throws Exception {
     String projectKey = request.mandatoryParam(PARAM_PROJECT_KEY);
     long snapshotId = request.mandatoryParamAsLong(PARAM_SNAPSHOT);
-    try (InputStream reportData = request.paramAsInputStream(PARAM_REPORT_DATA)) {
-      String reportKey = queue.add(projectKey, snapshotId, reportData);
-      workerLauncher.startAnalysisTaskNow();
-      response.newJsonWriter()
-        .beginObject()
-        .prop("key", reportKey)
-        .endObject()
-        .close();
+    String uploadId = request.param(PARAM_UPLOAD_ID);
+    String reportKey;
+    if (uploadId != null) {
+      reportKey = queue.addUploaded(projectKey, snapshotId, uploads.complete(uploadId));
+    } else {
+      try (InputStream reportData = request.paramAsInputStream(PARAM_REPORT_DATA)) {
+        reportKey = queue.add(projectKey, snapshotId, reportData);
+      }
     }
+    response.newJsonWriter()
+      .beginObject()
+      .prop("key", reportKey)
+      .endObject()
+      .close();
   }
 }
@@ -0,0 +1,107 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.sonar.server.computation.ws;
+
+import org.sonar.api.server.ws.Request;
+import org.sonar.api.server.ws.RequestHandler;
+import org.sonar.api.server.ws.Response;
+import org.sonar.api.server.ws.WebService;
+import org.sonar.core.permission.GlobalPermissions;
+import org.sonar.server.computation.AnalysisReportUploads;
+import org.sonar.server.user.UserSession;
+
+import java.io.InputStream;
+
+public class UploadReportPartWsAction implements ComputationWsAction, RequestHandler {
+
+  public static final String ACTION = "upload_report_part";
+  public static final String PARAM_UPLOAD_ID = "uploadId";
+  public static final String PARAM_OFFSET = "offset";
+  public static final String PARAM_CHECKSUM = "checksum";
+  public static final String PARAM_PART = "part";
+
+  private final AnalysisReportUploads uploads;
+
+  public UploadReportPartWsAction(AnalysisReportUploads uploads) {
+    this.uploads = uploads;
+  }
+
+  @Override
+  public void define(WebService.NewController controller) {
+    WebService.NewAction action = controller.createAction(ACTION)
+      .setDescription(String.format("Upload a part of an analysis report. A part that failed can be uploaded again. " +
+        "The report is then submitted with the action '%s'.", SubmitReportWsAction.ACTION))
+      .setPost(true)
+      .setInternal(true)
+      .setHandler(this);
+
+    action
+      .createParam(PARAM_UPLOAD_ID)
+      .setRequired(false)
+      .setDescription("Id of the upload, as returned when uploading the first part. A new upload is started if not set.")
+      .setExampleValue("upload5478364019203467");
+
+    action
+      .createParam(PARAM_OFFSET)
+      .setRequired(true)
+      .setDescription("Position of the part in the report, in bytes")
+      .setExampleValue("10485760");
+
+    action
+      .createParam(PARAM_CHECKSUM)
+      .setRequired(true)
+      .setDescription("MD5 checksum of the part, in hexadecimal")
+      .setExampleValue("2d6c4f6bbe1cfa9a6d8fd2f1c2a5b8e4");
+
+    action
+      .createParam(PARAM_PART)
+      .setRequired(true)
+      .setDescription("Content of the part");
+  }
+
+  @Override
+  public void handle(Request request, Response response) throws Exception {
+    UserSession.get().checkGlobalPermission(GlobalPermissions.SCAN_EXECUTION);
+
+    String uploadId = request.param(PARAM_UPLOAD_ID);
+    long offset = request.mandatoryParamAsLong(PARAM_OFFSET);
+    String checksum = request.mandatoryParam(PARAM_CHECKSUM);
+    long size;
+    try (InputStream part = request.paramAsInputStream(PARAM_PART)) {
+      if (part == null) {
+        throw new IllegalArgumentException(String.format("Parameter '%s' is missing", PARAM_PART));
+      }
+      if (uploadId == null) {
+        // the upload is created only if the first part is valid
+        uploadId = uploads.start(offset, checksum, part);
+        size = uploads.size(uploadId);
+      } else {
+        size = uploads.appendPart(uploadId, offset, checksum, part);
+      }
+    }
+    response.newJsonWriter()
+      .beginObject()
+      .prop("uploadId", uploadId)
+      .prop("size", size)
+      .endObject()
+      .close();
+  }
+}
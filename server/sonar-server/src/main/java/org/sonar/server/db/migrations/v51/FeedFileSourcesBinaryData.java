@@ -0,0 +1,142 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.db.migrations.v51;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.sonar.api.utils.DateUtils;
+import org.sonar.core.persistence.Database;
+import org.sonar.core.source.db.FileSourceData;
+import org.sonar.core.source.db.FileSourceData.Column;
+import org.sonar.server.db.migrations.BaseDataChange;
+import org.sonar.server.db.migrations.MassUpdate;
+import org.sonar.server.db.migrations.Select;
+import org.sonar.server.db.migrations.SqlStatement;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Converts the CSV lines of FILE_SOURCES.DATA to the binary format of column BINARY_DATA,
+ * see {@link FileSourceData}.
+ */
+public class FeedFileSourcesBinaryData extends BaseDataChange {
+
+  /**
+   * Columns of the CSV format, in order. The source is always the last field.
+   */
+  private static final Column[] CSV_COLUMNS = {
+    Column.SCM_REVISION, Column.SCM_AUTHOR, Column.SCM_DATE,
+    Column.UT_LINE_HITS, Column.UT_CONDITIONS, Column.UT_COVERED_CONDITIONS,
+    Column.IT_LINE_HITS, Column.IT_CONDITIONS, Column.IT_COVERED_CONDITIONS,
+    Column.OVERALL_LINE_HITS, Column.OVERALL_CONDITIONS, Column.OVERALL_COVERED_CONDITIONS,
+    Column.HIGHLIGHTING, Column.SYMBOLS, Column.DUPLICATIONS
+  };
+
+  public FeedFileSourcesBinaryData(Database db) {
+    super(db);
+  }
+
+  @Override
+  public void execute(Context context) throws SQLException {
+    MassUpdate update = context.prepareMassUpdate().rowPluralName("file sources");
+    update.select("SELECT id, data FROM file_sources WHERE binary_data IS NULL");
+    update.update("UPDATE file_sources SET binary_data = ?, data_hash = ? WHERE id = ?");
+    update.execute(new MassUpdate.Handler() {
+      @Override
+      public boolean handle(Select.Row row, SqlStatement update) throws SQLException {
+        Long id = row.getLong(1);
+        byte[] binaryData = toBinary(id, row.getString(2));
+        update.setBytes(1, binaryData);
+        update.setString(2, binaryData != null ? DigestUtils.md5Hex(binaryData) : "0");
+        update.setLong(3, id);
+        return true;
+      }
+    });
+  }
+
+  /**
+   * Converts CSV data to binary data. Returns null if data is empty.
+   */
+  @CheckForNull
+  public static byte[] toBinary(Long fileSourceId, @Nullable String data) {
+    if (StringUtils.isEmpty(data)) {
+      return null;
+    }
+    List<CSVRecord> records;
+    CSVParser parser = null;
+    try {
+      parser = new CSVParser(new StringReader(data), CSVFormat.DEFAULT);
+      records = parser.getRecords();
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to parse data of file source " + fileSourceId, e);
+    } finally {
+      IOUtils.closeQuietly(parser);
+    }
+
+    FileSourceData.Builder builder = FileSourceData.newBuilder(records.size());
+    int line = 1;
+    for (CSVRecord record : records) {
+      for (int i = 0; i < CSV_COLUMNS.length && i < record.size() - 1; i++) {
+        setValue(builder, CSV_COLUMNS[i], line, StringUtils.defaultIfEmpty(record.get(i), null));
+      }
+      builder.setString(Column.SOURCE, line, record.get(record.size() - 1));
+      line++;
+    }
+    return builder.build().encode();
+  }
+
+  private static void setValue(FileSourceData.Builder builder, Column column, int line, @Nullable String value) {
+    switch (column.type()) {
+      case STRING:
+        builder.setString(column, line, value);
+        break;
+      case INTEGER:
+        builder.setInteger(column, line, value != null ? Integer.parseInt(value) : null);
+        break;
+      case DATE:
+        builder.setDate(column, line, DateUtils.parseDateTimeQuietly(value));
+        break;
+      case INTEGER_LIST:
+        builder.setIntegers(column, line, parseIntegers(value));
+        break;
+      default:
+        throw new IllegalStateException("Unsupported type of column " + column);
+    }
+  }
+
+  private static List<Integer> parseIntegers(@Nullable String value) {
+    List<Integer> result = new ArrayList<>();
+    for (String s : StringUtils.split(StringUtils.defaultString(value), ',')) {
+      result.add(Integer.parseInt(s));
+    }
+    return result;
+  }
+}
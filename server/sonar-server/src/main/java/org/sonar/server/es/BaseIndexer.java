@@ -22,8 +22,11 @@ package org.sonar.server.es;
 import com.google.common.base.Throwables;
 import com.google.common.util.concurrent.Uninterruptibles;
 import org.picocontainer.Startable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.sonar.api.ServerComponent;
 
+import java.util.Date;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -32,10 +35,13 @@ import java.util.concurrent.TimeUnit;
 
 public abstract class BaseIndexer implements ServerComponent, Startable {
 
+  private static final Logger LOG = LoggerFactory.getLogger(BaseIndexer.class);
+
   private final ThreadPoolExecutor executor;
   private final String indexName, typeName;
   protected final EsClient esClient;
   private volatile long lastUpdatedAt = 0L;
+  private volatile boolean checkpointSaved = false;
 
   protected BaseIndexer(EsClient client, long threadKeepAliveSeconds, String indexName, String typeName) {
     this.indexName = indexName;
@@ -54,6 +60,7 @@ public abstract class BaseIndexer implements ServerComponent, Startable {
           long l = doIndex(lastUpdatedAt);
           // l can be 0 if no documents were indexed
           lastUpdatedAt = Math.max(l, lastUpdatedAt);
+          clearCheckpoint();
         }
       }
     });
@@ -66,9 +73,33 @@ public abstract class BaseIndexer implements ServerComponent, Startable {
 
   protected abstract long doIndex(long lastUpdatedAt);
 
+  /**
+   * Saves that all the documents updated at or before the given date are indexed. When an indexing is interrupted,
+   * the next one starts from the last checkpoint instead of the date of the most recent indexed document, as older
+   * documents are not guaranteed to be indexed. Checkpoint is dropped when indexing completes.
+   */
+  protected void saveCheckpoint(long updatedAt) {
+    esClient.setCheckpoint(indexName, typeName, updatedAt);
+    checkpointSaved = true;
+  }
+
+  protected void clearCheckpoint() {
+    if (checkpointSaved) {
+      esClient.setCheckpoint(indexName, typeName, null);
+      checkpointSaved = false;
+    }
+  }
+
   @Override
   public void start() {
-    lastUpdatedAt = esClient.getLastUpdatedAt(indexName, typeName);
+    Long checkpoint = esClient.getCheckpoint(indexName, typeName);
+    if (checkpoint == null) {
+      lastUpdatedAt = esClient.getLastUpdatedAt(indexName, typeName);
+    } else {
+      LOG.info("Resume indexing of {}/{} from {}", indexName, typeName, new Date(checkpoint));
+      lastUpdatedAt = checkpoint;
+      checkpointSaved = true;
+    }
   }
 
   @Override
@@ -76,4 +107,37 @@ public abstract class BaseIndexer implements ServerComponent, Startable {
     executor.shutdown();
   }
 
+  /**
+   * Saves checkpoints while documents are read by ascending update date. Pending requests are flushed
+   * before each checkpoint.
+   */
+  protected class CheckpointTracker {
+    private final BulkIndexer bulk;
+    private final int interval;
+    private long previousUpdatedAt = 0L;
+    private int count = 0;
+
+    /**
+     * @param interval minimum number of calls to {@link #beforeAdd(long)} between two checkpoints
+     */
+    public CheckpointTracker(BulkIndexer bulk, int interval) {
+      this.bulk = bulk;
+      this.interval = interval;
+    }
+
+    /**
+     * Must be called before adding the requests of a document updated at the given date
+     */
+    public void beforeAdd(long updatedAt) {
+      if (count >= interval && updatedAt > previousUpdatedAt) {
+        // all the documents updated at or before previousUpdatedAt have been added
+        bulk.flush();
+        saveCheckpoint(previousUpdatedAt);
+        count = 0;
+      }
+      previousUpdatedAt = updatedAt;
+      count++;
+    }
+  }
+
 }
@@ -22,6 +22,7 @@ package org.sonar.server.es;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.elasticsearch.action.ActionRequest;
 import org.elasticsearch.action.admin.indices.settings.get.GetSettingsResponse;
 import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsRequestBuilder;
@@ -38,7 +39,12 @@ import org.sonar.server.util.ProgressLogger;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Helper to bulk requests in an efficient way :
@@ -46,6 +52,7 @@ import java.util.concurrent.atomic.AtomicLong;
  *   <li>bulk request is sent on the wire when its size is higher than 5Mb</li>
  *   <li>on large table indexing, replicas and automatic refresh can be temporarily disabled</li>
  *   <li>index refresh is optional (enabled by default)</li>
+ *   <li>bulk requests can be sent in background, so that caller keeps on adding requests while Elasticsearch is indexing</li>
  * </ul>
  */
 public class BulkIndexer implements Startable {
@@ -54,6 +61,11 @@ public class BulkIndexer implements Startable {
   private static final String REFRESH_INTERVAL_SETTING = "index.refresh_interval";
   private static final String ALREADY_STARTED_MESSAGE = "Bulk indexing is already started";
 
+  /**
+   * Number of concurrent bulk requests recommended for large indexing
+   */
+  public static final int LARGE_CONCURRENT_REQUESTS = 2;
+
   private final EsClient client;
   private final String indexName;
   private boolean large = false;
@@ -61,6 +73,10 @@ public class BulkIndexer implements Startable {
   private long flushByteSize = FLUSH_BYTE_SIZE;
   private BulkRequestBuilder bulkRequest = null;
   private Map<String, Object> largeInitialSettings = null;
+  private int concurrentRequests = 0;
+  private ExecutorService executor = null;
+  private Semaphore semaphore = null;
+  private final AtomicReference<RuntimeException> asyncFailure = new AtomicReference<>();
 
   private final AtomicLong counter = new AtomicLong(0L);
   private final ProgressLogger progress;
@@ -98,6 +114,22 @@ public class BulkIndexer implements Startable {
     return this;
   }
 
+  /**
+   * Maximum number of bulk requests sent in background while new requests are added. Caller is blocked
+   * by {@link #add(ActionRequest)} when this number is reached. Default value is zero, meaning that
+   * bulk requests are sent synchronously.
+   * <p/>
+   * Concurrent bulk requests are not guaranteed to be executed in order, so this mode must be used only
+   * when each document is indexed once, for example on large indexing. Failed items of a bulk request
+   * are retried before the next bulk request is sent by the same thread.
+   */
+  public BulkIndexer setConcurrentRequests(int i) {
+    Preconditions.checkState(bulkRequest == null, ALREADY_STARTED_MESSAGE);
+    Preconditions.checkArgument(i >= 0, "Number of concurrent requests must be positive or zero: " + i);
+    this.concurrentRequests = i;
+    return this;
+  }
+
   @Override
   public void start() {
     Preconditions.checkState(bulkRequest == null, ALREADY_STARTED_MESSAGE);
@@ -120,6 +152,12 @@ public class BulkIndexer implements Startable {
 
       updateSettings(bulkSettings);
     }
+    if (concurrentRequests > 0) {
+      asyncFailure.set(null);
+      semaphore = new Semaphore(concurrentRequests);
+      executor = Executors.newFixedThreadPool(concurrentRequests,
+        new ThreadFactoryBuilder().setNameFormat("BulkIndexer[" + indexName + "]-%d").setDaemon(true).build());
+    }
     bulkRequest = client.prepareBulk();
     counter.set(0L);
     progress.start();
@@ -129,20 +167,36 @@ public class BulkIndexer implements Startable {
     bulkRequest.request().add(request);
     counter.getAndIncrement();
     if (bulkRequest.request().estimatedSizeInBytes() >= flushByteSize) {
-      executeBulk(bulkRequest);
+      flush(bulkRequest);
       bulkRequest = client.prepareBulk();
     }
   }
 
+  /**
+   * Sends the pending requests and waits for the completion of the requests sent in background,
+   * so that all the requests added so far are executed. Indexing can then continue.
+   */
+  public void flush() {
+    if (bulkRequest.numberOfActions() > 0) {
+      flush(bulkRequest);
+      bulkRequest = client.prepareBulk();
+    }
+    awaitBackgroundRequests();
+    checkBackgroundFailure();
+  }
+
   @Override
   public void stop() {
     try {
       if (bulkRequest.numberOfActions() > 0) {
-        executeBulk(bulkRequest);
+        flush(bulkRequest);
       }
+      awaitBackgroundRequests();
     } finally {
       progress.stop();
+      shutdownExecutor();
     }
+    checkBackgroundFailure();
 
     if (refresh) {
       client.prepareRefresh(indexName).get();
@@ -164,6 +218,63 @@ public class BulkIndexer implements Startable {
     req.get();
   }
 
+  private void flush(final BulkRequestBuilder bulk) {
+    if (executor == null) {
+      executeBulk(bulk);
+      return;
+    }
+    checkBackgroundFailure();
+    acquire(1);
+    try {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            executeBulk(bulk);
+          } catch (RuntimeException e) {
+            asyncFailure.compareAndSet(null, e);
+          } finally {
+            semaphore.release();
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      semaphore.release();
+      throw new IllegalStateException("Fail to send bulk request to index " + indexName, e);
+    }
+  }
+
+  private void awaitBackgroundRequests() {
+    if (executor != null) {
+      acquire(concurrentRequests);
+      semaphore.release(concurrentRequests);
+    }
+  }
+
+  private void acquire(int permits) {
+    try {
+      semaphore.acquire(permits);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while indexing " + indexName, e);
+    }
+  }
+
+  private void shutdownExecutor() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+      semaphore = null;
+    }
+  }
+
+  private void checkBackgroundFailure() {
+    RuntimeException failure = asyncFailure.getAndSet(null);
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
   private void executeBulk(BulkRequestBuilder bulkRequest) {
     List<ActionRequest> retries = Lists.newArrayList();
     BulkResponse response = bulkRequest.get();
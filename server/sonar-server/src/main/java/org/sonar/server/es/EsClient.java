@@ -19,6 +19,8 @@
  */
 package org.sonar.server.es;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 import org.elasticsearch.action.admin.cluster.health.ClusterHealthRequestBuilder;
 import org.elasticsearch.action.admin.cluster.health.ClusterHealthStatus;
 import org.elasticsearch.action.admin.cluster.node.stats.NodesStatsRequestBuilder;
@@ -28,6 +30,7 @@ import org.elasticsearch.action.admin.cluster.stats.ClusterStatsResponse;
 import org.elasticsearch.action.admin.indices.create.CreateIndexRequestBuilder;
 import org.elasticsearch.action.admin.indices.exists.indices.IndicesExistsRequestBuilder;
 import org.elasticsearch.action.admin.indices.flush.FlushRequestBuilder;
+import org.elasticsearch.action.admin.indices.mapping.get.GetMappingsResponse;
 import org.elasticsearch.action.admin.indices.mapping.put.PutMappingRequestBuilder;
 import org.elasticsearch.action.admin.indices.optimize.OptimizeRequestBuilder;
 import org.elasticsearch.action.admin.indices.refresh.RefreshRequestBuilder;
@@ -42,7 +45,9 @@ import org.elasticsearch.action.index.IndexRequestBuilder;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchScrollRequestBuilder;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.metadata.MappingMetaData;
 import org.elasticsearch.common.Priority;
+import org.elasticsearch.common.collect.ImmutableOpenMap;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.aggregations.AggregationBuilders;
 import org.elasticsearch.search.aggregations.metrics.max.Max;
@@ -70,12 +75,21 @@ import org.sonar.server.es.request.ProxySearchScrollRequestBuilder;
 import org.sonar.server.search.ClusterHealth;
 import org.sonar.server.search.SearchClient;
 
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.Map;
+
 /**
  * Facade to connect to Elasticsearch node. Handles correctly errors (logging + exceptions
  * with context) and profiling of requests.
  */
 public class EsClient implements Startable {
 
+  private static final String META_FIELD = "_meta";
+  private static final String CHECKPOINT_META = "sonar_checkpoint";
+
   private final Profiling profiling;
   private final Client client;
 
@@ -206,6 +220,62 @@ public class EsClient implements Startable {
     return (long) max.getValue();
   }
 
+  /**
+   * Date of the last checkpoint saved by an indexing of the given type, or null if there is no
+   * indexing in progress. See {@link BaseIndexer}.
+   */
+  @CheckForNull
+  public Long getCheckpoint(String indexName, String typeName) {
+    Object checkpoint = getMappingMeta(indexName, typeName).get(CHECKPOINT_META);
+    return checkpoint == null ? null : ((Number) checkpoint).longValue();
+  }
+
+  /**
+   * The checkpoint is stored in the metadata of the mapping of the type, so that it is dropped
+   * along with the documents when the index is re-created.
+   */
+  public void setCheckpoint(String indexName, String typeName, @Nullable Long checkpoint) {
+    MappingMetaData mapping = getMapping(indexName, typeName);
+    Map<String, Object> source;
+    try {
+      source = Maps.newHashMap(mapping.sourceAsMap());
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format("Fail to read mapping of %s/%s", indexName, typeName), e);
+    }
+    Map<String, Object> meta = getMappingMeta(mapping);
+    if (checkpoint == null) {
+      meta.remove(CHECKPOINT_META);
+    } else {
+      meta.put(CHECKPOINT_META, checkpoint);
+    }
+    source.put(META_FIELD, meta);
+    preparePutMapping(indexName).setType(typeName).setSource(ImmutableMap.of(typeName, source)).get();
+  }
+
+  private Map<String, Object> getMappingMeta(String indexName, String typeName) {
+    return getMappingMeta(getMapping(indexName, typeName));
+  }
+
+  @SuppressWarnings("unchecked")
+  private Map<String, Object> getMappingMeta(MappingMetaData mapping) {
+    try {
+      Map<String, Object> meta = (Map<String, Object>) mapping.sourceAsMap().get(META_FIELD);
+      return meta == null ? Maps.<String, Object>newHashMap() : Maps.newHashMap(meta);
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format("Fail to read mapping of type %s", mapping.type()), e);
+    }
+  }
+
+  private MappingMetaData getMapping(String indexName, String typeName) {
+    GetMappingsResponse response = client.admin().indices().prepareGetMappings(indexName).setTypes(typeName).get();
+    ImmutableOpenMap<String, MappingMetaData> mappings = response.mappings().get(indexName);
+    MappingMetaData mapping = mappings == null ? null : mappings.get(typeName);
+    if (mapping == null) {
+      throw new IllegalStateException(String.format("Mapping of %s/%s does not exist", indexName, typeName));
+    }
+    return mapping;
+  }
+
   @Override
   public void start() {
     // nothing to do
@@ -30,11 +30,15 @@ import org.sonar.server.es.BaseIndexer;
 import org.sonar.server.es.BulkIndexer;
 import org.sonar.server.es.EsClient;
 
+import javax.annotation.Nullable;
+
 import java.sql.Connection;
 import java.util.Iterator;
 
 public class IssueIndexer extends BaseIndexer {
 
+  private static final int ISSUES_PER_CHECKPOINT = 10000;
+
   private final DbClient dbClient;
 
   public IssueIndexer(DbClient dbClient, EsClient esClient) {
@@ -44,11 +48,12 @@ public class IssueIndexer extends BaseIndexer {
 
   @Override
   protected long doIndex(long lastUpdatedAt) {
-    return doIndex(createBulkIndexer(false), lastUpdatedAt);
+    return doIndex(createBulkIndexer(lastUpdatedAt == 0L), lastUpdatedAt);
   }
 
   public void indexAll() {
     doIndex(createBulkIndexer(true), 0L);
+    clearCheckpoint();
   }
 
   /**
@@ -64,7 +69,7 @@ public class IssueIndexer extends BaseIndexer {
     long maxDate;
     try {
       IssueResultSetIterator rowIt = IssueResultSetIterator.create(dbClient, dbConnection, lastUpdatedAt);
-      maxDate = doIndex(bulk, rowIt);
+      maxDate = doIndex(bulk, rowIt, new CheckpointTracker(bulk, ISSUES_PER_CHECKPOINT));
       rowIt.close();
       return maxDate;
 
@@ -75,13 +80,22 @@ public class IssueIndexer extends BaseIndexer {
   }
 
   private long doIndex(BulkIndexer bulk, Iterator<IssueDoc> issues) {
+    return doIndex(bulk, issues, null);
+  }
+
+  /**
+   * @param checkpoints not null if issues are sorted by ascending update date
+   */
+  private long doIndex(BulkIndexer bulk, Iterator<IssueDoc> issues, @Nullable CheckpointTracker checkpoints) {
     bulk.start();
     long maxDate = 0L;
     while (issues.hasNext()) {
       IssueDoc issue = issues.next();
+      if (checkpoints != null) {
+        checkpoints.beforeAdd(issue.technicalUpdateDate().getTime());
+      }
       bulk.add(newUpsertRequest(issue));
 
-      // it's more efficient to sort programmatically than in SQL on some databases (MySQL for instance)
       maxDate = Math.max(maxDate, issue.updateDate().getTime());
     }
     bulk.stop();
@@ -102,6 +116,8 @@ public class IssueIndexer extends BaseIndexer {
   BulkIndexer createBulkIndexer(boolean large) {
     BulkIndexer bulk = new BulkIndexer(esClient, IssueIndexDefinition.INDEX);
     bulk.setLarge(large);
+    // each issue is indexed once, so database reading and indexing can overlap
+    bulk.setConcurrentRequests(large ? BulkIndexer.LARGE_CONCURRENT_REQUESTS : 0);
     return bulk;
   }
 
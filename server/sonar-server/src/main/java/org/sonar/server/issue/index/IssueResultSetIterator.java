@@ -85,11 +85,14 @@ class IssueResultSetIterator extends ResultSetIterator<IssueDoc> {
 
   private static final String SQL_AFTER_DATE = SQL_ALL + " where i.updated_at>?";
 
+  // issues are sorted by update date so that indexing can be resumed from the last checkpoint, see IssueIndexer
+  private static final String SQL_ORDER = " order by i.updated_at";
+
   private static final Splitter TAGS_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
 
   static IssueResultSetIterator create(DbClient dbClient, Connection connection, long afterDate) {
     try {
-      String sql = afterDate > 0L ? SQL_AFTER_DATE : SQL_ALL;
+      String sql = (afterDate > 0L ? SQL_AFTER_DATE : SQL_ALL) + SQL_ORDER;
       PreparedStatement stmt = dbClient.newScrollingSelectStatement(connection, sql);
       if (afterDate > 0L) {
         stmt.setLong(1, afterDate);
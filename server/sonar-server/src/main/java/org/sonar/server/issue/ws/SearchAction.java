@@ -19,11 +19,11 @@
  */
 package org.sonar.server.issue.ws;
 
-import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 import com.google.common.io.Resources;
 import org.apache.commons.lang.BooleanUtils;
+import org.picocontainer.Startable;
 import org.sonar.api.i18n.I18n;
 import org.sonar.api.issue.ActionPlan;
 import org.sonar.api.issue.Issue;
@@ -43,7 +43,6 @@ import org.sonar.api.utils.Durations;
 import org.sonar.api.utils.text.JsonWriter;
 import org.sonar.core.component.ComponentDto;
 import org.sonar.core.issue.db.IssueChangeDao;
-import org.sonar.core.persistence.DbSession;
 import org.sonar.markdown.Markdown;
 import org.sonar.server.db.DbClient;
 import org.sonar.server.issue.IssueQuery;
@@ -64,12 +63,12 @@ import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 
 import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.collect.Maps.newHashMap;
-import static com.google.common.collect.Sets.newHashSet;
 
-public class SearchAction extends SearchRequestHandler<IssueQuery, Issue> {
+public class SearchAction extends SearchRequestHandler<IssueQuery, Issue> implements Startable {
 
 
   public static final String SEARCH_ACTION = "search";
@@ -82,6 +81,12 @@ public class SearchAction extends SearchRequestHandler<IssueQuery, Issue> {
 
   private static final String EXTRA_FIELDS_PARAM = "extra_fields";
 
+  /**
+   * Maximum number of threads loading the data of returned issues, shared by all requests. When they are all busy,
+   * data is loaded by the request thread. See {@link SearchDataLoader#newExecutor(int)}.
+   */
+  private static final int LOADER_THREADS = 4;
+
   private static final String INTERNAL_PARAMETER_DISCLAIMER = "This parameter is mostly used by the Issues page, please prefer usage of the componentKeys parameter. ";
 
   private final IssueChangeDao issueChangeDao;
@@ -96,6 +101,7 @@ public class SearchAction extends SearchRequestHandler<IssueQuery, Issue> {
   private final I18n i18n;
   private final Durations durations;
   private final Languages languages;
+  private final ExecutorService executor = SearchDataLoader.newExecutor(LOADER_THREADS);
 
   public SearchAction(DbClient dbClient, IssueChangeDao issueChangeDao, IssueService service, IssueActionsWriter actionsWriter, IssueQueryService issueQueryService,
     RuleService ruleService, ActionPlanService actionPlanService, UserFinder userFinder, I18n i18n, Durations durations, Languages languages) {
@@ -113,6 +119,16 @@ public class SearchAction extends SearchRequestHandler<IssueQuery, Issue> {
     this.languages = languages;
   }
 
+  @Override
+  public void start() {
+    // threads are created on demand
+  }
+
+  @Override
+  public void stop() {
+    executor.shutdownNow();
+  }
+
   @Override
   protected void doDefinition(WebService.NewAction action) {
     action.setDescription("Get a list of issues. If the number of issues is greater than 10,000, only the first 10,000 ones are returned by the web service. " +
@@ -291,80 +307,48 @@ public class SearchAction extends SearchRequestHandler<IssueQuery, Issue> {
 
   @Override
   protected void doContextResponse(Request request, QueryContext context, Result<Issue> result, JsonWriter json) {
-    List<String> issueKeys = newArrayList();
-    Set<RuleKey> ruleKeys = newHashSet();
-    Set<String> projectUuids = newHashSet();
-    Set<String> componentUuids = newHashSet();
-    Set<String> actionPlanKeys = newHashSet();
-    List<String> userLogins = newArrayList();
-    Map<String, User> usersByLogin = newHashMap();
-    Map<String, ComponentDto> componentsByUuid = newHashMap();
-    Multimap<String, DefaultIssueComment> commentsByIssues = ArrayListMultimap.create();
-    Collection<ComponentDto> componentDtos = newHashSet();
-    List<ComponentDto> projectDtos = newArrayList();
-    Map<String, ComponentDto> projectsByComponentUuid = newHashMap();
+    SearchDataLoader data = new SearchDataLoader(dbClient, issueChangeDao, userFinder, actionPlanService, ruleService)
+      .setLoadRules(!request.mandatoryParamAsBoolean(IssueFilterParameters.HIDE_RULES));
 
     for (Issue issue : result.getHits()) {
       IssueDoc issueDoc = (IssueDoc) issue;
-      issueKeys.add(issue.key());
-      ruleKeys.add(issue.ruleKey());
-      projectUuids.add(issueDoc.projectUuid());
-      componentUuids.add(issueDoc.componentUuid());
-      actionPlanKeys.add(issue.actionPlanKey());
+      data.issueKeys().add(issue.key());
+      data.ruleKeys().add(issue.ruleKey());
+      data.projectUuids().add(issueDoc.projectUuid());
+      data.componentUuids().add(issueDoc.componentUuid());
+      data.actionPlanKeys().add(issue.actionPlanKey());
       if (issue.reporter() != null) {
-        userLogins.add(issue.reporter());
+        data.userLogins().add(issue.reporter());
       }
       if (issue.assignee() != null) {
-        userLogins.add(issue.assignee());
+        data.userLogins().add(issue.assignee());
       }
     }
 
-    collectRuleKeys(request, result, ruleKeys);
+    collectRuleKeys(request, result, data.ruleKeys());
 
-    collectFacetsData(request, result, projectUuids, componentUuids, userLogins, actionPlanKeys);
+    collectFacetsData(request, result, data.projectUuids(), data.componentUuids(), data.userLogins(), data.actionPlanKeys());
 
     UserSession userSession = UserSession.get();
     if (userSession.isLoggedIn()) {
-      userLogins.add(userSession.login());
+      data.userLogins().add(userSession.login());
     }
 
-    DbSession session = dbClient.openSession(false);
-    try {
-      List<DefaultIssueComment> comments = issueChangeDao.selectCommentsByIssues(session, issueKeys);
-      for (DefaultIssueComment issueComment : comments) {
-        userLogins.add(issueComment.userLogin());
-        commentsByIssues.put(issueComment.issueKey(), issueComment);
-      }
-      usersByLogin = getUsersByLogin(userLogins);
-
-      List<ComponentDto> fileDtos = dbClient.componentDao().getByUuids(session, componentUuids);
-      List<ComponentDto> subProjectDtos = dbClient.componentDao().findSubProjectsByComponentUuids(session, componentUuids);
-      componentDtos.addAll(fileDtos);
-      componentDtos.addAll(subProjectDtos);
-      for (ComponentDto component : componentDtos) {
-        projectUuids.add(component.projectUuid());
-      }
+    data.load(executor);
 
-      projectDtos = dbClient.componentDao().getByUuids(session, projectUuids);
-      componentDtos.addAll(projectDtos);
-      for (ComponentDto componentDto : componentDtos) {
-        componentsByUuid.put(componentDto.uuid(), componentDto);
-      }
-      projectsByComponentUuid = getProjectsByComponentUuid(componentDtos, projectDtos);
-
-      writeProjects(json, projectDtos);
-      writeComponents(json, componentDtos, projectsByComponentUuid);
-    } finally {
-      session.close();
+    Map<String, ComponentDto> componentsByUuid = newHashMap();
+    for (ComponentDto componentDto : data.components()) {
+      componentsByUuid.put(componentDto.uuid(), componentDto);
     }
+    Map<String, ComponentDto> projectsByComponentUuid = getProjectsByComponentUuid(data.components(), data.projects());
 
-    Map<String, ActionPlan> actionPlanByKeys = getActionPlanByKeys(actionPlanKeys);
-
-    writeIssues(result, commentsByIssues, usersByLogin, actionPlanByKeys, componentsByUuid, projectsByComponentUuid,
+    writeProjects(json, data.projects());
+    writeComponents(json, data.components(), projectsByComponentUuid);
+    writeIssues(result, data.commentsByIssues(), data.usersByLogin(), data.actionPlansByKey(), componentsByUuid, projectsByComponentUuid,
       request.paramAsStrings(EXTRA_FIELDS_PARAM), json);
-    writeRules(json, !request.mandatoryParamAsBoolean(IssueFilterParameters.HIDE_RULES) ? ruleService.getByKeys(ruleKeys) : Collections.<Rule>emptyList());
-    writeUsers(json, usersByLogin);
-    writeActionPlans(json, actionPlanByKeys.values());
+    writeRules(json, data.rules());
+    writeUsers(json, data.usersByLogin());
+    writeActionPlans(json, data.actionPlansByKey().values());
     writeLanguages(json);
 
     // TODO remove legacy paging. Handled by the SearchRequestHandler
@@ -420,7 +404,7 @@ public class SearchAction extends SearchRequestHandler<IssueQuery, Issue> {
     super.writeFacets(request, context, results, json);
   }
 
-  private void collectFacetsData(Request request, Result<Issue> result, Set<String> projectUuids, Set<String> componentUuids, List<String> userLogins, Set<String> actionPlanKeys) {
+  private void collectFacetsData(Request request, Result<Issue> result, Set<String> projectUuids, Set<String> componentUuids, Set<String> userLogins, Set<String> actionPlanKeys) {
     collectFacetKeys(result, IssueFilterParameters.PROJECT_UUIDS, projectUuids);
     collectParameterValues(request, IssueFilterParameters.PROJECT_UUIDS, projectUuids);
     collectFacetKeys(result, IssueFilterParameters.COMPONENT_UUIDS, componentUuids);
@@ -715,22 +699,6 @@ public class SearchAction extends SearchRequestHandler<IssueQuery, Issue> {
     }
   }
 
-  private Map<String, User> getUsersByLogin(List<String> userLogins) {
-    Map<String, User> usersByLogin = newHashMap();
-    for (User user : userFinder.findByLogins(userLogins)) {
-      usersByLogin.put(user.login(), user);
-    }
-    return usersByLogin;
-  }
-
-  private Map<String, ActionPlan> getActionPlanByKeys(Collection<String> actionPlanKeys) {
-    Map<String, ActionPlan> actionPlans = newHashMap();
-    for (ActionPlan actionPlan : actionPlanService.findByKeys(actionPlanKeys)) {
-      actionPlans.put(actionPlan.key(), actionPlan);
-    }
-    return actionPlans;
-  }
-
   private Map<String, ComponentDto> getProjectsByComponentUuid(Collection<ComponentDto> components, Collection<ComponentDto> projects) {
     Map<String, ComponentDto> projectsByUuid = buildProjectsByUuid(projects);
     return buildProjectsByComponentUuid(components, projectsByUuid);
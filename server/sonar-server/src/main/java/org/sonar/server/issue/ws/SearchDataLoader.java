@@ -0,0 +1,262 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.sonar.server.issue.ws;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.sonar.api.issue.ActionPlan;
+import org.sonar.api.issue.internal.DefaultIssueComment;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.user.User;
+import org.sonar.api.user.UserFinder;
+import org.sonar.core.component.ComponentDto;
+import org.sonar.core.issue.db.IssueChangeDao;
+import org.sonar.core.persistence.DbSession;
+import org.sonar.core.persistence.MyBatis;
+import org.sonar.server.db.DbClient;
+import org.sonar.server.issue.actionplan.ActionPlanService;
+import org.sonar.server.rule.Rule;
+import org.sonar.server.rule.RuleService;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
+import static com.google.common.collect.Sets.newHashSet;
+
+/**
+ * Loads the data referenced by the issues and facets returned by one request of {@link SearchAction}.
+ * Keys are first collected and deduplicated, then each kind of data is loaded with a single request.
+ * Comments and users, action plans and rules are loaded by the executor while components are loaded
+ * by the calling thread, as these loads do not depend on each other. Each load opens its own db session.
+ * <p/>
+ * Instances are not thread-safe and must not be shared between requests.
+ */
+class SearchDataLoader {
+
+  private final DbClient dbClient;
+  private final IssueChangeDao issueChangeDao;
+  private final UserFinder userFinder;
+  private final ActionPlanService actionPlanService;
+  private final RuleService ruleService;
+
+  private final Set<String> issueKeys = newHashSet();
+  private final Set<RuleKey> ruleKeys = newHashSet();
+  private final Set<String> projectUuids = newHashSet();
+  private final Set<String> componentUuids = newHashSet();
+  private final Set<String> actionPlanKeys = newHashSet();
+  private final Set<String> userLogins = newHashSet();
+  private boolean loadRules = true;
+
+  private Multimap<String, DefaultIssueComment> commentsByIssues = ArrayListMultimap.create();
+  private Map<String, User> usersByLogin = newHashMap();
+  private Map<String, ActionPlan> actionPlansByKey = newHashMap();
+  private List<Rule> rules = Collections.emptyList();
+  private Collection<ComponentDto> components = newHashSet();
+  private List<ComponentDto> projects = newArrayList();
+
+  SearchDataLoader(DbClient dbClient, IssueChangeDao issueChangeDao, UserFinder userFinder, ActionPlanService actionPlanService, RuleService ruleService) {
+    this.dbClient = dbClient;
+    this.issueChangeDao = issueChangeDao;
+    this.userFinder = userFinder;
+    this.actionPlanService = actionPlanService;
+    this.ruleService = ruleService;
+  }
+
+  Set<String> issueKeys() {
+    return issueKeys;
+  }
+
+  Set<RuleKey> ruleKeys() {
+    return ruleKeys;
+  }
+
+  Set<String> projectUuids() {
+    return projectUuids;
+  }
+
+  Set<String> componentUuids() {
+    return componentUuids;
+  }
+
+  Set<String> actionPlanKeys() {
+    return actionPlanKeys;
+  }
+
+  Set<String> userLogins() {
+    return userLogins;
+  }
+
+  SearchDataLoader setLoadRules(boolean loadRules) {
+    this.loadRules = loadRules;
+    return this;
+  }
+
+  /**
+   * Executor shared by all the requests. It does not queue tasks: when its threads are all busy, a task is
+   * executed by the request thread. Requests therefore never wait for each other, and the number of db
+   * sessions opened in addition to those of request threads is bounded by {@code maxThreads}.
+   */
+  static ExecutorService newExecutor(int maxThreads) {
+    return new ThreadPoolExecutor(0, maxThreads, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+      new ThreadFactoryBuilder().setNameFormat("issue-search-%d").setDaemon(true).build(),
+      new CallerRunsPolicy());
+  }
+
+  /**
+   * Unlike {@link ThreadPoolExecutor.CallerRunsPolicy}, the task is also executed when the executor is shut down,
+   * otherwise the request would wait forever for its result.
+   */
+  private static class CallerRunsPolicy implements RejectedExecutionHandler {
+    @Override
+    public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+      task.run();
+    }
+  }
+
+  void load(ExecutorService executor) {
+    List<Future<Void>> futures = newArrayList();
+    futures.add(executor.submit(new Callable<Void>() {
+      @Override
+      public Void call() {
+        loadCommentsAndUsers();
+        return null;
+      }
+    }));
+    futures.add(executor.submit(new Callable<Void>() {
+      @Override
+      public Void call() {
+        loadActionPlans();
+        return null;
+      }
+    }));
+    if (loadRules) {
+      futures.add(executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() {
+          rules = ruleService.getByKeys(ruleKeys);
+          return null;
+        }
+      }));
+    }
+    try {
+      loadComponents();
+      for (Future<Void> future : futures) {
+        await(future);
+      }
+    } finally {
+      for (Future<Void> future : futures) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  private static void await(Future<Void> future) {
+    try {
+      future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while loading data of issues", e);
+    } catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause());
+      throw new IllegalStateException("Fail to load data of issues", e.getCause());
+    }
+  }
+
+  private void loadCommentsAndUsers() {
+    Set<String> logins = newHashSet(userLogins);
+    DbSession session = dbClient.openSession(false);
+    try {
+      for (DefaultIssueComment issueComment : issueChangeDao.selectCommentsByIssues(session, issueKeys)) {
+        logins.add(issueComment.userLogin());
+        commentsByIssues.put(issueComment.issueKey(), issueComment);
+      }
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+    for (User user : userFinder.findByLogins(newArrayList(logins))) {
+      usersByLogin.put(user.login(), user);
+    }
+  }
+
+  private void loadActionPlans() {
+    for (ActionPlan actionPlan : actionPlanService.findByKeys(actionPlanKeys)) {
+      actionPlansByKey.put(actionPlan.key(), actionPlan);
+    }
+  }
+
+  private void loadComponents() {
+    Set<String> allProjectUuids = newHashSet(projectUuids);
+    DbSession session = dbClient.openSession(false);
+    try {
+      components.addAll(dbClient.componentDao().getByUuids(session, componentUuids));
+      components.addAll(dbClient.componentDao().findSubProjectsByComponentUuids(session, componentUuids));
+      for (ComponentDto component : components) {
+        allProjectUuids.add(component.projectUuid());
+      }
+      projects = dbClient.componentDao().getByUuids(session, allProjectUuids);
+      components.addAll(projects);
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
+
+  Multimap<String, DefaultIssueComment> commentsByIssues() {
+    return commentsByIssues;
+  }
+
+  Map<String, User> usersByLogin() {
+    return usersByLogin;
+  }
+
+  Map<String, ActionPlan> actionPlansByKey() {
+    return actionPlansByKey;
+  }
+
+  List<Rule> rules() {
+    return rules;
+  }
+
+  /**
+   * Files, sub-projects and projects
+   */
+  Collection<ComponentDto> components() {
+    return components;
+  }
+
+  List<ComponentDto> projects() {
+    return projects;
+  }
+}
@@ -89,6 +89,8 @@ import org.sonar.server.component.db.ComponentDao;
 import org.sonar.server.component.db.SnapshotDao;
 import org.sonar.server.component.ws.*;
 import org.sonar.server.computation.AnalysisReportQueue;
+import org.sonar.server.computation.AnalysisReportStorage;
+import org.sonar.server.computation.AnalysisReportUploads;
 import org.sonar.server.computation.AnalysisReportQueueCleaner;
 import org.sonar.server.computation.ComputationThreadLauncher;
 import org.sonar.server.computation.db.AnalysisReportDao;
@@ -164,6 +166,7 @@ import org.sonar.server.rule.ws.*;
 import org.sonar.server.rule.ws.SearchAction;
 import org.sonar.server.rule.ws.TagsAction;
 import org.sonar.server.search.*;
+import org.sonar.server.source.DecoratedSourceCache;
 import org.sonar.server.source.HtmlSourceDecorator;
 import org.sonar.server.source.SourceService;
 import org.sonar.server.source.index.SourceLineIndex;
@@ -355,7 +358,9 @@ class ServerComponents {
     pico.addSingleton(ProjectRepositoryAction.class);
     pico.addSingleton(ProjectRepositoryLoader.class);
     pico.addSingleton(SubmitReportWsAction.class);
+    pico.addSingleton(UploadReportPartWsAction.class);
     pico.addSingleton(IssuesAction.class);
+    pico.addSingleton(LineHashesAction.class);
     pico.addSingleton(BatchWs.class);
 
     // update center
@@ -577,6 +582,7 @@ class ServerComponents {
 
     // source
     pico.addSingleton(HtmlSourceDecorator.class);
+    pico.addSingleton(DecoratedSourceCache.class);
     pico.addSingleton(SourceService.class);
     pico.addSingleton(SourcesWs.class);
     pico.addSingleton(ShowAction.class);
@@ -636,7 +642,9 @@ class ServerComponents {
     pico.addSingleton(FileDesignWidget.class);
 
     // Compute engine
+    pico.addSingleton(AnalysisReportStorage.class);
     pico.addSingleton(AnalysisReportQueue.class);
+    pico.addSingleton(AnalysisReportUploads.class);
     pico.addSingleton(ComputationThreadLauncher.class);
     pico.addSingleton(ComputationWebService.class);
     pico.addSingleton(IsQueueEmptyWebService.class);
@@ -19,6 +19,9 @@
  */
 package org.sonar.server.search;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.elasticsearch.action.ActionRequest;
 import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
 import org.elasticsearch.action.admin.indices.refresh.RefreshRequestBuilder;
@@ -28,6 +31,7 @@ import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.update.UpdateRequest;
+import org.picocontainer.Startable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.ServerComponent;
@@ -36,23 +40,74 @@ import org.sonar.core.cluster.WorkQueue;
 import org.sonar.server.search.action.IndexAction;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class IndexQueue implements ServerComponent, WorkQueue<IndexAction<?>> {
+/**
+ * Normalizes actions into Elasticsearch requests and sends them by bulks.
+ * <ul>
+ *   <li>actions are normalized concurrently by a pool of threads shared by all the callers of {@link #enqueue(List)}</li>
+ *   <li>requests are dispatched into lanes according to the id of the document they apply to. Bulks of a lane are sent
+ *   one after the other, so that requests on a document keep their order, whereas the lanes are processed concurrently</li>
+ *   <li>the number of pending bulks is bounded. Callers wait when the limit is reached</li>
+ * </ul>
+ */
+public class IndexQueue implements ServerComponent, WorkQueue<IndexAction<?>>, Startable {
 
   private final SearchClient searchClient;
   private final ComponentContainer container;
 
   private static final Logger LOGGER = LoggerFactory.getLogger(IndexQueue.class);
 
-  private static final Integer CONCURRENT_NORMALIZATION_FACTOR = 1;
+  private static final int CONCURRENT_NORMALIZATION_FACTOR = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+  private static final int NORMALIZATION_TIMEOUT_MINUTES = 20;
+
+  @VisibleForTesting
+  static final int ACTIONS_PER_NORMALIZATION = 500;
+
+  @VisibleForTesting
+  static final int MAX_BULK_SIZE = 1000;
+
+  private static final int CONCURRENT_BULKS = 2;
+  private static final int MAX_PENDING_BULKS = 2 * CONCURRENT_BULKS;
+
+  private final ExecutorService normalizationExecutor;
+  private final List<ExecutorService> bulkExecutors = new ArrayList<ExecutorService>();
+  private final Semaphore pendingBulks = new Semaphore(MAX_PENDING_BULKS);
+  private final Stats stats = new Stats();
 
   public IndexQueue(SearchClient searchClient, ComponentContainer container) {
     this.searchClient = searchClient;
     this.container = container;
+    this.normalizationExecutor = Executors.newFixedThreadPool(CONCURRENT_NORMALIZATION_FACTOR,
+      new ThreadFactoryBuilder().setNameFormat("IndexQueue-normalization-%d").setDaemon(true).build());
+    for (int i = 0; i < CONCURRENT_BULKS; i++) {
+      bulkExecutors.add(Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setNameFormat("IndexQueue-bulk-" + i).setDaemon(true).build()));
+    }
+  }
+
+  @Override
+  public void start() {
+    // nothing to do
+  }
+
+  @Override
+  public void stop() {
+    normalizationExecutor.shutdownNow();
+    for (ExecutorService bulkExecutor : bulkExecutors) {
+      bulkExecutor.shutdownNow();
+    }
+  }
+
+  public Stats getStats() {
+    return stats;
   }
 
   @Override
@@ -60,6 +115,15 @@ public class IndexQueue implements ServerComponent, WorkQueue<IndexAction<?>> {
     if (actions.isEmpty()) {
       return;
     }
+    stats.pendingActions.addAndGet(actions.size());
+    try {
+      doEnqueue(actions);
+    } finally {
+      stats.pendingActions.addAndGet(-actions.size());
+    }
+  }
+
+  private void doEnqueue(List<IndexAction<?>> actions) {
     boolean refreshRequired = false;
 
     Map<String, Index> indexes = getIndexMap();
@@ -73,28 +137,31 @@ public class IndexQueue implements ServerComponent, WorkQueue<IndexAction<?>> {
       }
     }
 
-    BulkRequestBuilder bulkRequestBuilder = searchClient.prepareBulk();
-
-    long normTime = processActionsIntoQueries(bulkRequestBuilder, actions);
-
-    if (bulkRequestBuilder.numberOfActions() > 0) {
-      // execute the request
-      long indexTime = System.currentTimeMillis();
-      BulkResponse response = bulkRequestBuilder.setRefresh(false).get();
+    Bulks bulks = new Bulks();
+    long normTime = 0;
+    for (List<IndexAction<?>> partition : Lists.partition(actions, ACTIONS_PER_NORMALIZATION)) {
+      long start = System.currentTimeMillis();
+      List<ActionRequest> requests = normalize(partition);
+      normTime += System.currentTimeMillis() - start;
+      for (ActionRequest request : requests) {
+        bulks.add(request);
+      }
+    }
+    stats.normalizationTime.addAndGet(normTime);
 
-      indexTime = System.currentTimeMillis() - indexTime;
+    long indexTime = System.currentTimeMillis();
+    int nbRequests = bulks.flushAndAwait();
+    indexTime = System.currentTimeMillis() - indexTime;
 
-      long refreshTime = 0;
-      if (refreshRequired) {
-        refreshTime = this.refreshRequiredIndex(indices);
-      }
+    long refreshTime = 0;
+    if (nbRequests > 0 && refreshRequired) {
+      refreshTime = this.refreshRequiredIndex(indices);
+      stats.refreshTime.addAndGet(refreshTime);
+    }
 
+    if (nbRequests > 0) {
       LOGGER.debug("-- submitted {} items with {}ms in normalization, {}ms indexing and {}ms refresh({}). Total: {}ms",
-        bulkRequestBuilder.numberOfActions(), normTime, indexTime, refreshTime, indices, (normTime + indexTime + refreshTime));
-
-      if (response.hasFailures()) {
-        throw new IllegalStateException("Errors while indexing stack: " + response.buildFailureMessage());
-      }
+        nbRequests, normTime, indexTime, refreshTime, indices, (normTime + indexTime + refreshTime));
     }
   }
 
@@ -113,35 +180,20 @@ public class IndexQueue implements ServerComponent, WorkQueue<IndexAction<?>> {
     return System.currentTimeMillis() - refreshTime;
   }
 
-  private long processActionsIntoQueries(BulkRequestBuilder bulkRequestBuilder, List<IndexAction<?>> actions) {
-    long normTime = System.currentTimeMillis();
+  /**
+   * Returns the requests of the actions, in the order of the actions
+   */
+  private List<ActionRequest> normalize(List<IndexAction<?>> actions) {
     try {
-      boolean hasInlineRefreshRequest = false;
-      ExecutorService executorService = Executors.newFixedThreadPool(CONCURRENT_NORMALIZATION_FACTOR);
-      // invokeAll() blocks until ALL tasks submitted to executor complete
-      List<Future<List<? extends ActionRequest>>> requests = (List) executorService.invokeAll(actions, 20, TimeUnit.MINUTES);
+      List<ActionRequest> result = new ArrayList<ActionRequest>();
+      List<Future<List<? extends ActionRequest>>> requests = (List) normalizationExecutor.invokeAll(actions, NORMALIZATION_TIMEOUT_MINUTES, TimeUnit.MINUTES);
       for (Future<List<? extends ActionRequest>> updates : requests) {
-        for (ActionRequest update : updates.get()) {
-
-          if (IndexRequest.class.isAssignableFrom(update.getClass())) {
-            bulkRequestBuilder.add((IndexRequest) update);
-          } else if (UpdateRequest.class.isAssignableFrom(update.getClass())) {
-            bulkRequestBuilder.add((UpdateRequest) update);
-          } else if (DeleteRequest.class.isAssignableFrom(update.getClass())) {
-            bulkRequestBuilder.add((DeleteRequest) update);
-          } else if (RefreshRequest.class.isAssignableFrom(update.getClass())) {
-            hasInlineRefreshRequest = true;
-          } else {
-            throw new IllegalStateException("Un-managed request type: " + update.getClass());
-          }
-        }
+        result.addAll(updates.get());
       }
-      executorService.shutdown();
-      bulkRequestBuilder.setRefresh(hasInlineRefreshRequest);
+      return result;
     } catch (Exception e) {
       throw new IllegalStateException("Could not execute normalization for stack", e);
     }
-    return System.currentTimeMillis() - normTime;
   }
 
   private Map<String, Index> getIndexMap() {
@@ -151,4 +203,169 @@ public class IndexQueue implements ServerComponent, WorkQueue<IndexAction<?>> {
     }
     return indexes;
   }
+
+  private static String documentOf(ActionRequest request) {
+    if (request instanceof IndexRequest) {
+      IndexRequest indexRequest = (IndexRequest) request;
+      return indexRequest.index() + "/" + indexRequest.type() + "/" + indexRequest.id();
+    } else if (request instanceof UpdateRequest) {
+      UpdateRequest updateRequest = (UpdateRequest) request;
+      return updateRequest.index() + "/" + updateRequest.type() + "/" + updateRequest.id();
+    } else {
+      DeleteRequest deleteRequest = (DeleteRequest) request;
+      return deleteRequest.index() + "/" + deleteRequest.type() + "/" + deleteRequest.id();
+    }
+  }
+
+  /**
+   * Bulks of a single call to {@link #enqueue(List)}
+   */
+  private class Bulks {
+    private final BulkRequestBuilder[] lanes = new BulkRequestBuilder[CONCURRENT_BULKS];
+    private final List<Future<BulkResponse>> submitted = new ArrayList<Future<BulkResponse>>();
+    private int nbRequests = 0;
+
+    void add(ActionRequest request) {
+      if (request instanceof RefreshRequest) {
+        // indices are refreshed at the end of enqueue() when actions require it
+        return;
+      }
+      if (!(request instanceof IndexRequest || request instanceof UpdateRequest || request instanceof DeleteRequest)) {
+        throw new IllegalStateException("Un-managed request type: " + request.getClass());
+      }
+      int lane = (documentOf(request).hashCode() & Integer.MAX_VALUE) % CONCURRENT_BULKS;
+      BulkRequestBuilder bulk = lanes[lane];
+      if (bulk == null) {
+        bulk = searchClient.prepareBulk().setRefresh(false);
+        lanes[lane] = bulk;
+      }
+      if (request instanceof IndexRequest) {
+        bulk.add((IndexRequest) request);
+      } else if (request instanceof UpdateRequest) {
+        bulk.add((UpdateRequest) request);
+      } else {
+        bulk.add((DeleteRequest) request);
+      }
+      nbRequests++;
+      if (bulk.numberOfActions() >= MAX_BULK_SIZE) {
+        submit(lane);
+      }
+    }
+
+    private void submit(int lane) {
+      final BulkRequestBuilder bulk = lanes[lane];
+      lanes[lane] = null;
+      try {
+        pendingBulks.acquire();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting for pending bulks", e);
+      }
+      stats.pendingBulks.incrementAndGet();
+      boolean submittedToLane = false;
+      try {
+        submitted.add(bulkExecutors.get(lane).submit(new Callable<BulkResponse>() {
+          @Override
+          public BulkResponse call() {
+            long start = System.currentTimeMillis();
+            try {
+              return bulk.get();
+            } finally {
+              stats.indexingTime.addAndGet(System.currentTimeMillis() - start);
+              stats.pendingBulks.decrementAndGet();
+              stats.bulks.incrementAndGet();
+              pendingBulks.release();
+            }
+          }
+        }));
+        submittedToLane = true;
+      } finally {
+        if (!submittedToLane) {
+          stats.pendingBulks.decrementAndGet();
+          pendingBulks.release();
+        }
+      }
+    }
+
+    /**
+     * Sends the remaining requests and waits for all the bulks. Returns the total number of requests.
+     */
+    int flushAndAwait() {
+      for (int lane = 0; lane < lanes.length; lane++) {
+        if (lanes[lane] != null) {
+          submit(lane);
+        }
+      }
+      List<String> failures = new ArrayList<String>();
+      for (Future<BulkResponse> future : submitted) {
+        BulkResponse response = await(future);
+        if (response.hasFailures()) {
+          failures.add(response.buildFailureMessage());
+        }
+      }
+      if (!failures.isEmpty()) {
+        throw new IllegalStateException("Errors while indexing stack: " + failures);
+      }
+      return nbRequests;
+    }
+
+    private BulkResponse await(Future<BulkResponse> future) {
+      try {
+        return future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while indexing stack", e);
+      } catch (ExecutionException e) {
+        throw new IllegalStateException("Fail to index stack", e.getCause());
+      }
+    }
+  }
+
+  /**
+   * Metrics of the queue, since server startup. Durations are in milliseconds.
+   */
+  public static class Stats {
+    private final AtomicLong pendingActions = new AtomicLong();
+    private final AtomicLong pendingBulks = new AtomicLong();
+    private final AtomicLong bulks = new AtomicLong();
+    private final AtomicLong normalizationTime = new AtomicLong();
+    private final AtomicLong indexingTime = new AtomicLong();
+    private final AtomicLong refreshTime = new AtomicLong();
+
+    /**
+     * Number of actions being normalized or indexed
+     */
+    public long getPendingActions() {
+      return pendingActions.get();
+    }
+
+    /**
+     * Number of bulks waiting to be sent or being sent
+     */
+    public long getPendingBulks() {
+      return pendingBulks.get();
+    }
+
+    /**
+     * Number of bulks sent
+     */
+    public long getBulks() {
+      return bulks.get();
+    }
+
+    public long getNormalizationTime() {
+      return normalizationTime.get();
+    }
+
+    /**
+     * Sum of the durations of bulks. As bulks are sent concurrently, it can be greater than elapsed time.
+     */
+    public long getIndexingTime() {
+      return indexingTime.get();
+    }
+
+    public long getRefreshTime() {
+      return refreshTime.get();
+    }
+  }
 }
@@ -19,6 +19,8 @@
  */
 package org.sonar.server.search;
 
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.core.persistence.DbSession;
@@ -30,14 +32,28 @@ import org.sonar.server.issue.index.IssueIndexer;
 import org.sonar.server.qualityprofile.index.ActiveRuleIndex;
 import org.sonar.server.rule.index.RuleIndex;
 import org.sonar.server.source.index.SourceLineIndexer;
+import org.sonar.server.user.DoPrivileged;
 import org.sonar.server.user.index.UserIndexer;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+/**
+ * Synchronizes indices with database at startup. Indices are independent, so they are synchronized
+ * concurrently by a bounded pool of threads.
+ */
 public class IndexSynchronizer {
 
   private static final Logger LOG = LoggerFactory.getLogger(IndexSynchronizer.class);
 
+  private static final int THREADS = 3;
+
   private final DbClient db;
   private final IndexClient index;
   private final SourceLineIndexer sourceLineIndexer;
@@ -56,25 +72,78 @@ public class IndexSynchronizer {
   }
 
   public void execute() {
+    List<Task> tasks = new ArrayList<Task>();
+    tasks.add(new Task() {
+      @Override
+      void doExecute() {
+        synchronize(db.ruleDao(), index.get(RuleIndex.class));
+      }
+    });
+    tasks.add(new Task() {
+      @Override
+      void doExecute() {
+        synchronize(db.activeRuleDao(), index.get(ActiveRuleIndex.class));
+      }
+    });
+    tasks.add(new Task() {
+      @Override
+      void doExecute() {
+        synchronize(db.activityDao(), index.get(ActivityIndex.class));
+      }
+    });
+    tasks.add(new Task() {
+      @Override
+      void doExecute() {
+        LOG.info("Index issues");
+        // authorization documents are the parents of issue documents
+        issueAuthorizationIndexer.index();
+        issueIndexer.index();
+      }
+    });
+    tasks.add(new Task() {
+      @Override
+      void doExecute() {
+        LOG.info("Index source files");
+        sourceLineIndexer.index();
+      }
+    });
+    tasks.add(new Task() {
+      @Override
+      void doExecute() {
+        LOG.info("Index users");
+        userIndexer.index();
+      }
+    });
+    execute(tasks);
+  }
+
+  private static void execute(List<Task> tasks) {
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS,
+      new ThreadFactoryBuilder().setNameFormat("IndexSynchronizer-%d").setDaemon(true).build());
+    try {
+      List<Future<Void>> futures = executor.invokeAll(tasks);
+      // all tasks are completed, the first failure is raised
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while synchronizing indices", e);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private void synchronize(Dao dao, Index index) {
     DbSession session = db.openSession(false);
     try {
-      synchronize(session, db.ruleDao(), index.get(RuleIndex.class));
-      synchronize(session, db.activeRuleDao(), index.get(ActiveRuleIndex.class));
-      synchronize(session, db.activityDao(), index.get(ActivityIndex.class));
+      synchronize(session, dao, index);
       session.commit();
     } finally {
       session.close();
     }
-
-    LOG.info("Index issues");
-    issueAuthorizationIndexer.index();
-    issueIndexer.index();
-
-    LOG.info("Index source files");
-    sourceLineIndexer.index();
-
-    LOG.info("Index users");
-    userIndexer.index();
   }
 
   void synchronize(DbSession session, Dao dao, Index index) {
@@ -88,4 +157,22 @@ public class IndexSynchronizer {
       dao.synchronizeAfter(session, lastSynch);
     }
   }
+
+  /**
+   * Synchronization is executed in a privileged section, so are the tasks
+   */
+  private abstract static class Task implements Callable<Void> {
+    @Override
+    public Void call() {
+      DoPrivileged.execute(new DoPrivileged.Task() {
+        @Override
+        protected void doPrivileged() {
+          doExecute();
+        }
+      });
+      return null;
+    }
+
+    abstract void doExecute();
+  }
 }
@@ -0,0 +1,153 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.sonar.server.source;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import org.sonar.api.ServerComponent;
+import org.sonar.server.source.index.SourceLineDoc;
+
+import javax.annotation.CheckForNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Least recently used cache of the HTML code computed by {@link HtmlSourceDecorator}. Entries are
+ * ranges of lines of a file, identified by the file UUID, the date of indexation of the lines
+ * and the numbers of the first and last lines, so that a file is decorated again only when it changes.
+ * Size of cache is bounded by the number of characters of the cached HTML code. Hits, misses and size
+ * are displayed in the System Info page.
+ */
+public class DecoratedSourceCache implements ServerComponent {
+
+  /**
+   * About 20Mb, as a character takes two bytes
+   */
+  private static final long DEFAULT_MAX_CHARS = 10L * 1024 * 1024;
+
+  private final HtmlSourceDecorator decorator;
+  private final long maxChars;
+  private final Map<String, List<String>> entries = new LinkedHashMap<String, List<String>>(16, 0.75f, true);
+  private long chars = 0L;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  public DecoratedSourceCache(HtmlSourceDecorator decorator) {
+    this(decorator, DEFAULT_MAX_CHARS);
+  }
+
+  @VisibleForTesting
+  DecoratedSourceCache(HtmlSourceDecorator decorator, long maxChars) {
+    this.decorator = decorator;
+    this.maxChars = maxChars;
+  }
+
+  /**
+   * Decorated source of consecutive lines of the same file. Lines with no source are decorated as null.
+   */
+  public List<String> getDecoratedSourceAsHtml(List<SourceLineDoc> lines) {
+    if (lines.isEmpty()) {
+      return Collections.emptyList();
+    }
+    String key = key(lines);
+    List<String> html = get(key);
+    if (html != null) {
+      hits.incrementAndGet();
+      return html;
+    }
+    misses.incrementAndGet();
+    html = new ArrayList<String>(lines.size());
+    for (SourceLineDoc line : lines) {
+      html.add(decorator.getDecoratedSourceAsHtml(line.source(), line.highlighting(), line.symbols()));
+    }
+    html = Collections.unmodifiableList(html);
+    put(key, html);
+    return html;
+  }
+
+  private static String key(List<SourceLineDoc> lines) {
+    SourceLineDoc first = lines.get(0);
+    long updatedAt = 0L;
+    for (SourceLineDoc line : lines) {
+      Preconditions.checkArgument(first.fileUuid().equals(line.fileUuid()), "Lines must belong to the same file");
+      updatedAt = Math.max(updatedAt, line.updateDate().getTime());
+    }
+    return first.fileUuid() + "|" + updatedAt + "|" + first.line() + "|" + lines.get(lines.size() - 1).line();
+  }
+
+  @CheckForNull
+  private synchronized List<String> get(String key) {
+    return entries.get(key);
+  }
+
+  private synchronized void put(String key, List<String> html) {
+    long weight = weight(html);
+    if (weight > maxChars) {
+      return;
+    }
+    List<String> previous = entries.put(key, html);
+    if (previous != null) {
+      chars -= weight(previous);
+    }
+    chars += weight;
+    Iterator<List<String>> eldest = entries.values().iterator();
+    while (chars > maxChars && eldest.hasNext()) {
+      chars -= weight(eldest.next());
+      eldest.remove();
+    }
+  }
+
+  /**
+   * Each line counts at least for one character, so that empty lines are not free
+   */
+  private static long weight(List<String> html) {
+    long weight = 0L;
+    for (String line : html) {
+      weight += line == null ? 1 : (line.length() + 1);
+    }
+    return weight;
+  }
+
+  public long hitCount() {
+    return hits.get();
+  }
+
+  public long missCount() {
+    return misses.get();
+  }
+
+  /**
+   * Number of characters of the cached HTML code
+   */
+  public synchronized long size() {
+    return chars;
+  }
+
+  public synchronized int entryCount() {
+    return entries.size();
+  }
+}
@@ -20,6 +20,8 @@
 package org.sonar.server.source.index;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
@@ -29,11 +31,20 @@ import org.sonar.api.ServerComponent;
 import org.sonar.server.es.EsClient;
 import org.sonar.server.exceptions.NotFoundException;
 
+import java.util.Iterator;
 import java.util.List;
 
 public class SourceLineIndex implements ServerComponent {
 
-  private static final int MAX_RESULT = 500000;
+  /**
+   * Maximum number of lines returned by {@link #getLines(String, int, int)} and {@link #scrollLines(String, int, int)}
+   */
+  public static final int MAX_RESULT = 500000;
+
+  /**
+   * Number of lines loaded by each request of {@link #scrollLines(String, int, int)}
+   */
+  public static final int PAGE_SIZE = 1000;
 
   private final EsClient esClient;
 
@@ -77,6 +88,34 @@ public class SourceLineIndex implements ServerComponent {
     return lines;
   }
 
+  /**
+   * Same as {@link #getLines(String, int, int)}, except that lines are loaded by pages of {@link #PAGE_SIZE}
+   * lines when iterating, so that a single request does not load all the lines. As for
+   * {@link #getLines(String, int, int)}, the max number of returned lines is {@value #MAX_RESULT}.
+   */
+  public Iterator<SourceLineDoc> scrollLines(final String fileUuid, final int from, int to) {
+    Preconditions.checkArgument(from > 0, "Minimum value for 'from' is 1");
+    Preconditions.checkArgument(to >= from, "'to' must be larger than or equal to 'from'");
+    final int toLimited = (int) Math.min(to, (long) from + MAX_RESULT - 1);
+    return new AbstractIterator<SourceLineDoc>() {
+      private Iterator<SourceLineDoc> page = Iterators.emptyIterator();
+      private int nextLine = from;
+      private boolean lastPage = false;
+
+      @Override
+      protected SourceLineDoc computeNext() {
+        if (!page.hasNext() && !lastPage) {
+          int pageTo = (int) Math.min(toLimited, (long) nextLine + PAGE_SIZE - 1);
+          List<SourceLineDoc> lines = getLines(fileUuid, nextLine, pageTo);
+          lastPage = pageTo == toLimited || lines.size() < 1 + pageTo - nextLine;
+          nextLine = pageTo + 1;
+          page = lines.iterator();
+        }
+        return page.hasNext() ? page.next() : endOfData();
+      }
+    };
+  }
+
   public SourceLineDoc getLine(String fileUuid, int line) {
     Preconditions.checkArgument(line > 0, "Line should be greater than 0");
     SearchRequestBuilder request = esClient.prepareSearch(SourceLineIndexDefinition.INDEX)
@@ -28,6 +28,8 @@ import org.sonar.server.es.BaseIndexer;
 import org.sonar.server.es.BulkIndexer;
 import org.sonar.server.es.EsClient;
 
+import javax.annotation.Nullable;
+
 import java.sql.Connection;
 import java.util.Iterator;
 
@@ -36,6 +38,8 @@ import static org.sonar.server.source.index.SourceLineIndexDefinition.FIELD_PROJ
 
 public class SourceLineIndexer extends BaseIndexer {
 
+  private static final int FILES_PER_CHECKPOINT = 500;
+
   private final DbClient dbClient;
 
   public SourceLineIndexer(DbClient dbClient, EsClient esClient) {
@@ -47,12 +51,14 @@ public class SourceLineIndexer extends BaseIndexer {
   protected long doIndex(long lastUpdatedAt) {
     final BulkIndexer bulk = new BulkIndexer(esClient, SourceLineIndexDefinition.INDEX);
     bulk.setLarge(lastUpdatedAt == 0L);
+    // each line is indexed once, so database reading and indexing can overlap
+    bulk.setConcurrentRequests(lastUpdatedAt == 0L ? BulkIndexer.LARGE_CONCURRENT_REQUESTS : 0);
 
     DbSession dbSession = dbClient.openSession(false);
     Connection dbConnection = dbSession.getConnection();
     try {
       SourceLineResultSetIterator rowIt = SourceLineResultSetIterator.create(dbClient, dbConnection, lastUpdatedAt);
-      long maxUpdatedAt = doIndex(bulk, rowIt);
+      long maxUpdatedAt = doIndex(bulk, rowIt, new CheckpointTracker(bulk, FILES_PER_CHECKPOINT));
       rowIt.close();
       return maxUpdatedAt;
 
@@ -63,14 +69,20 @@ public class SourceLineIndexer extends BaseIndexer {
 
   public long index(Iterator<SourceLineResultSetIterator.SourceFile> sourceFiles) {
     final BulkIndexer bulk = new BulkIndexer(esClient, SourceLineIndexDefinition.INDEX);
-    return doIndex(bulk, sourceFiles);
+    return doIndex(bulk, sourceFiles, null);
   }
 
-  private long doIndex(BulkIndexer bulk, Iterator<SourceLineResultSetIterator.SourceFile> files) {
+  /**
+   * @param checkpoints not null if files are sorted by ascending update date
+   */
+  private long doIndex(BulkIndexer bulk, Iterator<SourceLineResultSetIterator.SourceFile> files, @Nullable CheckpointTracker checkpoints) {
     long maxUpdatedAt = 0L;
     bulk.start();
     while (files.hasNext()) {
       SourceLineResultSetIterator.SourceFile file = files.next();
+      if (checkpoints != null) {
+        checkpoints.beforeAdd(file.getUpdatedAt());
+      }
       for (SourceLineDoc line : file.getLines()) {
         bulk.add(newUpsertRequest(line));
       }
@@ -21,33 +21,22 @@ package org.sonar.server.source.index;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
-import org.apache.commons.lang.math.NumberUtils;
-import org.sonar.api.utils.DateUtils;
-import org.sonar.core.source.db.FileSourceDto;
+import org.sonar.core.source.db.FileSourceData;
+import org.sonar.core.source.db.FileSourceData.Column;
 import org.sonar.server.db.DbClient;
 import org.sonar.server.db.ResultSetIterator;
 import org.sonar.server.db.migrations.SqlUtil;
 
-import javax.annotation.CheckForNull;
-import javax.annotation.Nullable;
-
-import java.io.IOException;
-import java.io.Reader;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Date;
 import java.util.List;
-import java.util.StringTokenizer;
 
 /**
- * Scroll over table FILE_SOURCES and directly parse CSV field required to
+ * Scroll over table FILE_SOURCES and decode the binary data required to
  * populate the index sourcelines
  */
 public class SourceLineResultSetIterator extends ResultSetIterator<SourceLineResultSetIterator.SourceFile> {
@@ -84,16 +73,19 @@ public class SourceLineResultSetIterator extends ResultSetIterator<SourceLineRes
     "project_uuid",
     "file_uuid",
     "updated_at",
-    "data"
+    "binary_data"
   };
 
   private static final String SQL_ALL = "select " + StringUtils.join(FIELDS, ",") + " from file_sources";
 
   private static final String SQL_AFTER_DATE = SQL_ALL + " where updated_at>?";
 
+  // files are sorted by update date so that indexing can be resumed from the last checkpoint, see SourceLineIndexer
+  private static final String SQL_ORDER = " order by updated_at";
+
   public static SourceLineResultSetIterator create(DbClient dbClient, Connection connection, long afterDate) {
     try {
-      String sql = afterDate > 0L ? SQL_AFTER_DATE : SQL_ALL;
+      String sql = (afterDate > 0L ? SQL_AFTER_DATE : SQL_ALL) + SQL_ORDER;
       // rows are big, so they are scrolled once at a time (one row in memory at a time)
       PreparedStatement stmt = dbClient.newScrollingSingleRowSelectStatement(connection, sql);
       if (afterDate > 0L) {
@@ -120,80 +112,51 @@ public class SourceLineResultSetIterator extends ResultSetIterator<SourceLineRes
     Date updatedDate = new Date(updatedAt);
     SourceFile result = new SourceFile(fileUuid, updatedAt);
 
-    Reader csv = rs.getCharacterStream(4);
-    if (csv == null) {
+    // rows are read one at a time, and binary data is compact, so it's simpler to load it at once
+    byte[] bytes = rs.getBytes(4);
+    if (bytes == null || bytes.length == 0) {
       return result;
     }
-
-    int line = 1;
-    CSVParser csvParser = null;
-    try {
-      csvParser = new CSVParser(csv, CSVFormat.DEFAULT);
-
-      for (CSVRecord csvRecord : csvParser) {
-        SourceLineDoc doc = new SourceLineDoc(Maps.<String, Object>newHashMap());
-
-        doc.setProjectUuid(projectUuid);
-        doc.setFileUuid(fileUuid);
-        doc.setLine(line);
-        doc.setUpdateDate(updatedDate);
-        doc.setScmRevision(csvRecord.get(FileSourceDto.CSV_INDEX_SCM_REVISION));
-        doc.setScmAuthor(csvRecord.get(FileSourceDto.CSV_INDEX_SCM_AUTHOR));
-        doc.setScmDate(DateUtils.parseDateTimeQuietly(csvRecord.get(FileSourceDto.CSV_INDEX_SCM_DATE)));
-        // UT
-        doc.setUtLineHits(parseIntegerFromRecord(csvRecord.get(FileSourceDto.CSV_INDEX_UT_LINE_HITS)));
-        doc.setUtConditions(parseIntegerFromRecord(csvRecord.get(FileSourceDto.CSV_INDEX_UT_CONDITIONS)));
-        doc.setUtCoveredConditions(parseIntegerFromRecord(csvRecord.get(FileSourceDto.CSV_INDEX_UT_COVERED_CONDITIONS)));
-        // IT
-        doc.setItLineHits(parseIntegerFromRecord(csvRecord.get(FileSourceDto.CSV_INDEX_IT_LINE_HITS)));
-        doc.setItConditions(parseIntegerFromRecord(csvRecord.get(FileSourceDto.CSV_INDEX_IT_CONDITIONS)));
-        doc.setItCoveredConditions(parseIntegerFromRecord(csvRecord.get(FileSourceDto.CSV_INDEX_IT_COVERED_CONDITIONS)));
-        // OVERALL
-        doc.setOverallLineHits(parseIntegerFromRecord(csvRecord.get(FileSourceDto.CSV_INDEX_OVERALL_LINE_HITS)));
-        doc.setOverallConditions(parseIntegerFromRecord(csvRecord.get(FileSourceDto.CSV_INDEX_OVERALL_CONDITIONS)));
-        doc.setOverallCoveredConditions(parseIntegerFromRecord(csvRecord.get(FileSourceDto.CSV_INDEX_OVERALL_COVERED_CONDITIONS)));
-
-        doc.setHighlighting(csvRecord.get(FileSourceDto.CSV_INDEX_HIGHLIGHTING));
-        doc.setSymbols(csvRecord.get(FileSourceDto.CSV_INDEX_SYMBOLS));
-        doc.setDuplications(parseDuplications(csvRecord.get(FileSourceDto.CSV_INDEX_DUPLICATIONS)));
-
-        // source is always the latest field. All future fields will be added between duplications (14) and source.
-        doc.setSource(csvRecord.get(csvRecord.size()-1));
-
-        result.addLine(doc);
-
-        line++;
-      }
-    } catch (IOException ioError) {
-      throw new IllegalStateException("Impossible to open stream for file_sources.data with file_uuid " + fileUuid, ioError);
-    } catch (ArrayIndexOutOfBoundsException lineError) {
-      throw new IllegalStateException(
-        String.format("Impossible to parse source line data, stuck at line %d", line), lineError);
-    } finally {
-      IOUtils.closeQuietly(csv);
-      IOUtils.closeQuietly(csvParser);
+    FileSourceData data = decode(fileUuid, bytes);
+
+    for (int line = 1; line <= data.lines(); line++) {
+      SourceLineDoc doc = new SourceLineDoc(Maps.<String, Object>newHashMap());
+
+      doc.setProjectUuid(projectUuid);
+      doc.setFileUuid(fileUuid);
+      doc.setLine(line);
+      doc.setUpdateDate(updatedDate);
+      doc.setScmRevision(data.getString(Column.SCM_REVISION, line));
+      doc.setScmAuthor(data.getString(Column.SCM_AUTHOR, line));
+      doc.setScmDate(data.getDate(Column.SCM_DATE, line));
+      // UT
+      doc.setUtLineHits(data.getInteger(Column.UT_LINE_HITS, line));
+      doc.setUtConditions(data.getInteger(Column.UT_CONDITIONS, line));
+      doc.setUtCoveredConditions(data.getInteger(Column.UT_COVERED_CONDITIONS, line));
+      // IT
+      doc.setItLineHits(data.getInteger(Column.IT_LINE_HITS, line));
+      doc.setItConditions(data.getInteger(Column.IT_CONDITIONS, line));
+      doc.setItCoveredConditions(data.getInteger(Column.IT_COVERED_CONDITIONS, line));
+      // OVERALL
+      doc.setOverallLineHits(data.getInteger(Column.OVERALL_LINE_HITS, line));
+      doc.setOverallConditions(data.getInteger(Column.OVERALL_CONDITIONS, line));
+      doc.setOverallCoveredConditions(data.getInteger(Column.OVERALL_COVERED_CONDITIONS, line));
+
+      doc.setHighlighting(data.getString(Column.HIGHLIGHTING, line));
+      doc.setSymbols(data.getString(Column.SYMBOLS, line));
+      doc.setDuplications(data.getIntegers(Column.DUPLICATIONS, line));
+      doc.setSource(data.getString(Column.SOURCE, line));
+
+      result.addLine(doc);
     }
-
     return result;
   }
 
-  private List<Integer> parseDuplications(@Nullable String duplications) {
-    List<Integer> dups = Lists.newArrayList();
-    if (StringUtils.isNotEmpty(duplications)) {
-      StringTokenizer tokenizer = new StringTokenizer(duplications, ",", false);
-      while (tokenizer.hasMoreTokens()) {
-        dups.add(NumberUtils.toInt(tokenizer.nextToken(), -1));
-      }
-    }
-    return dups;
-  }
-
-  @CheckForNull
-  private Integer parseIntegerFromRecord(@Nullable String cellValue) {
-    if (cellValue == null || cellValue.isEmpty()) {
-      return null;
-    } else {
-      return Integer.parseInt(cellValue);
+  private static FileSourceData decode(String fileUuid, byte[] bytes) {
+    try {
+      return FileSourceData.decode(bytes);
+    } catch (IllegalStateException e) {
+      throw new IllegalStateException("Fail to decode file_sources.binary_data with file_uuid " + fileUuid, e);
     }
   }
 }
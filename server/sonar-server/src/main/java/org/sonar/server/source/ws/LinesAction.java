@@ -19,6 +19,7 @@
  */
 package org.sonar.server.source.ws;
 
+import com.google.common.collect.Lists;
 import com.google.common.io.Resources;
 import org.apache.commons.lang.ObjectUtils;
 import org.sonar.api.server.ws.Request;
@@ -31,23 +32,24 @@ import org.sonar.api.web.UserRole;
 import org.sonar.core.component.ComponentDto;
 import org.sonar.server.component.ComponentService;
 import org.sonar.server.exceptions.NotFoundException;
-import org.sonar.server.source.HtmlSourceDecorator;
+import org.sonar.server.source.DecoratedSourceCache;
 import org.sonar.server.source.index.SourceLineDoc;
 import org.sonar.server.source.index.SourceLineIndex;
 import org.sonar.server.user.UserSession;
 
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 
 public class LinesAction implements RequestHandler {
 
   private final SourceLineIndex sourceLineIndex;
-  private final HtmlSourceDecorator htmlSourceDecorator;
+  private final DecoratedSourceCache decoratedSourceCache;
   private final ComponentService componentService;
 
-  public LinesAction(SourceLineIndex sourceLineIndex, HtmlSourceDecorator htmlSourceDecorator, ComponentService componentService) {
+  public LinesAction(SourceLineIndex sourceLineIndex, DecoratedSourceCache decoratedSourceCache, ComponentService componentService) {
     this.sourceLineIndex = sourceLineIndex;
-    this.htmlSourceDecorator = htmlSourceDecorator;
+    this.decoratedSourceCache = decoratedSourceCache;
     this.componentService = componentService;
   }
 
@@ -81,7 +83,7 @@ public class LinesAction implements RequestHandler {
 
     action
       .createParam("to")
-      .setDescription("Last line to return (inclusive)")
+      .setDescription("Last line to return (inclusive). At most " + SourceLineIndex.MAX_RESULT + " lines are returned")
       .setExampleValue("20");
   }
 
@@ -94,23 +96,42 @@ public class LinesAction implements RequestHandler {
     int from = Math.max(request.mandatoryParamAsInt("from"), 1);
     int to = (Integer) ObjectUtils.defaultIfNull(request.paramAsInt("to"), Integer.MAX_VALUE);
 
-    List<SourceLineDoc> sourceLines = sourceLineIndex.getLines(fileUuid, from, to);
-    if (sourceLines.isEmpty()) {
+    Iterator<SourceLineDoc> sourceLines = sourceLineIndex.scrollLines(fileUuid, from, to);
+    if (!sourceLines.hasNext()) {
       throw new NotFoundException("File '" + fileUuid + "' has no sources");
     }
 
     JsonWriter json = response.newJsonWriter().beginObject();
-    writeSource(sourceLines, from, json);
+    writeSource(sourceLines, json);
 
     json.endObject().close();
   }
 
-  private void writeSource(List<SourceLineDoc> lines, int from, JsonWriter json) {
+  /**
+   * Lines are decorated by pages of {@link SourceLineIndex#PAGE_SIZE} lines, which are the entries of
+   * {@link DecoratedSourceCache}. Note that the JSON response is buffered in memory until the end of the request,
+   * so its size is bounded by the max number of lines returned by {@link SourceLineIndex#scrollLines(String, int, int)}.
+   */
+  private void writeSource(Iterator<SourceLineDoc> lines, JsonWriter json) {
     json.name("sources").beginArray();
-    for (SourceLineDoc line: lines) {
+    List<SourceLineDoc> page = Lists.newArrayListWithCapacity(SourceLineIndex.PAGE_SIZE);
+    while (lines.hasNext()) {
+      page.add(lines.next());
+      if (page.size() == SourceLineIndex.PAGE_SIZE || !lines.hasNext()) {
+        writePage(page, json);
+        page.clear();
+      }
+    }
+    json.endArray();
+  }
+
+  private void writePage(List<SourceLineDoc> lines, JsonWriter json) {
+    List<String> html = decoratedSourceCache.getDecoratedSourceAsHtml(lines);
+    for (int i = 0; i < lines.size(); i++) {
+      SourceLineDoc line = lines.get(i);
       json.beginObject()
         .prop("line", line.line())
-        .prop("code", htmlSourceDecorator.getDecoratedSourceAsHtml(line.source(), line.highlighting(), line.symbols()))
+        .prop("code", html.get(i))
         .prop("scmAuthor", line.scmAuthor())
         .prop("scmRevision", line.scmRevision());
       Date scmDate = line.scmDate();
@@ -123,6 +144,5 @@ public class LinesAction implements RequestHandler {
       }
       json.endObject();
     }
-    json.endArray();
   }
 }
@@ -31,6 +31,8 @@ import java.util.Map;
  * This in-memory cache relies on {@link org.sonar.server.util.cache.CacheLoader} to
  * load missing elements.
  * Warning - all searches are kept in memory, even when elements are not found.
+ * <p/>
+ * It is thread-safe. Elements are loaded while holding the lock, so a key is never loaded twice.
  */
 public class MemoryCache<K, V> {
 
@@ -42,7 +44,7 @@ public class MemoryCache<K, V> {
   }
 
   @CheckForNull
-  public V getNullable(K key) {
+  public synchronized V getNullable(K key) {
     V value = map.get(key);
     if (value == null) {
       if (!map.containsKey(key)) {
@@ -65,7 +67,7 @@ public class MemoryCache<K, V> {
    * Get values associated with keys. All the requested keys are included
    * in the Map result. Value is null if the key is not found in cache.
    */
-  public Map<K, V> getAll(Iterable<K> keys) {
+  public synchronized Map<K, V> getAll(Iterable<K> keys) {
     List<K> missingKeys = new ArrayList<>();
     Map<K, V> result = new HashMap<>();
     for (K key : keys) {
@@ -90,7 +92,7 @@ public class MemoryCache<K, V> {
     return result;
   }
 
-  public void clear() {
+  public synchronized void clear() {
     map.clear();
   }
 }
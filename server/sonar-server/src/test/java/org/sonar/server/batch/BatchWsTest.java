@@ -58,7 +58,8 @@ public class BatchWsTest {
     tester = new WsTester(new BatchWs(batchIndex,
       new GlobalRepositoryAction(mock(DbClient.class), mock(PropertiesDao.class)),
       new ProjectRepositoryAction(mock(ProjectRepositoryLoader.class)),
-      new IssuesAction(mock(DbClient.class))));
+      new IssuesAction(mock(DbClient.class)),
+      new LineHashesAction(mock(DbClient.class))));
   }
 
   @Test
@@ -64,7 +64,8 @@ public class IssuesActionTest {
       new BatchIndex(mock(Server.class)),
       new GlobalRepositoryAction(mock(DbClient.class), mock(PropertiesDao.class)),
       new ProjectRepositoryAction(mock(ProjectRepositoryLoader.class)),
-      issuesAction)
+      issuesAction,
+      new LineHashesAction(mock(DbClient.class)))
       );
   }
 
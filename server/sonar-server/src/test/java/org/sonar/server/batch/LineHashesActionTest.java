@@ -0,0 +1,114 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.sonar.server.batch;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.sonar.api.platform.Server;
+import org.sonar.api.web.UserRole;
+import org.sonar.core.persistence.DbTester;
+import org.sonar.core.properties.PropertiesDao;
+import org.sonar.core.source.db.FileSourceDao;
+import org.sonar.server.component.db.ComponentDao;
+import org.sonar.server.db.DbClient;
+import org.sonar.server.exceptions.ForbiddenException;
+import org.sonar.server.user.MockUserSession;
+import org.sonar.server.ws.WsTester;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class LineHashesActionTest {
+
+  private final static String PROJECT_KEY = "struts";
+  private final static String MODULE_KEY = "struts-core";
+
+  @Rule
+  public DbTester db = new DbTester();
+
+  WsTester tester;
+
+  @Before
+  public void before() throws Exception {
+    DbClient dbClient = new DbClient(db.database(), db.myBatis(), new FileSourceDao(db.myBatis()), new ComponentDao());
+
+    tester = new WsTester(new BatchWs(
+      new BatchIndex(mock(Server.class)),
+      new GlobalRepositoryAction(mock(DbClient.class), mock(PropertiesDao.class)),
+      new ProjectRepositoryAction(mock(ProjectRepositoryLoader.class)),
+      new IssuesAction(mock(DbClient.class)),
+      new LineHashesAction(dbClient))
+      );
+  }
+
+  @Test
+  public void return_line_hashes_of_files_directly_attached_to_project() throws Exception {
+    db.prepareDbUnit(getClass(), "shared.xml");
+    MockUserSession.set().setLogin("henry").addComponentPermission(UserRole.CODEVIEWER, PROJECT_KEY, PROJECT_KEY);
+
+    String result = tester.newGetRequest("batch", "line_hashes").setParam("key", PROJECT_KEY).execute().outputAsString();
+
+    assertThat(result).isEqualTo("struts:pom.xml\tabcdef\n");
+  }
+
+  @Test
+  public void return_line_hashes_of_module() throws Exception {
+    db.prepareDbUnit(getClass(), "shared.xml");
+    MockUserSession.set().setLogin("henry").addComponentPermission(UserRole.CODEVIEWER, PROJECT_KEY, MODULE_KEY);
+
+    String result = tester.newGetRequest("batch", "line_hashes").setParam("key", MODULE_KEY).execute().outputAsString();
+
+    assertThat(result).isEqualTo("struts-core:src/main/java/Action.java\t987654,,123456\n" +
+      "struts-core:src/main/java/Bar.java\t112233\n" +
+      // file without line hashes
+      "struts-core:src/main/java/Empty.java\t\n");
+  }
+
+  @Test
+  public void page_line_hashes_by_file_key() throws Exception {
+    db.prepareDbUnit(getClass(), "shared.xml");
+    MockUserSession.set().setLogin("henry").addComponentPermission(UserRole.CODEVIEWER, PROJECT_KEY, MODULE_KEY);
+
+    String result = tester.newGetRequest("batch", "line_hashes").setParam("key", MODULE_KEY).setParam("ps", "1").execute().outputAsString();
+    assertThat(result).isEqualTo("struts-core:src/main/java/Action.java\t987654,,123456\n");
+
+    result = tester.newGetRequest("batch", "line_hashes").setParam("key", MODULE_KEY).setParam("ps", "1")
+      .setParam("after", "struts-core:src/main/java/Action.java").execute().outputAsString();
+    assertThat(result).isEqualTo("struts-core:src/main/java/Bar.java\t112233\n");
+
+    result = tester.newGetRequest("batch", "line_hashes").setParam("key", MODULE_KEY).setParam("ps", "1")
+      .setParam("after", "struts-core:src/main/java/Bar.java").execute().outputAsString();
+    assertThat(result).isEqualTo("struts-core:src/main/java/Empty.java\t\n");
+
+    result = tester.newGetRequest("batch", "line_hashes").setParam("key", MODULE_KEY).setParam("ps", "1")
+      .setParam("after", "struts-core:src/main/java/Empty.java").execute().outputAsString();
+    assertThat(result).isEmpty();
+  }
+
+  @Test(expected = ForbiddenException.class)
+  public void fail_without_code_viewer_permission() throws Exception {
+    db.prepareDbUnit(getClass(), "shared.xml");
+    MockUserSession.set().setLogin("henry").addComponentPermission(UserRole.USER, PROJECT_KEY, PROJECT_KEY);
+
+    tester.newGetRequest("batch", "line_hashes").setParam("key", PROJECT_KEY).execute();
+  }
+}
@@ -44,7 +44,7 @@ public class ProjectRepositoryActionTest {
   @Before
   public void setUp() throws Exception {
     tester = new WsTester(new BatchWs(mock(BatchIndex.class), mock(GlobalRepositoryAction.class),
-      new ProjectRepositoryAction(projectRepositoryLoader), mock(IssuesAction.class)));
+      new ProjectRepositoryAction(projectRepositoryLoader), mock(IssuesAction.class), mock(LineHashesAction.class)));
   }
 
   @Test
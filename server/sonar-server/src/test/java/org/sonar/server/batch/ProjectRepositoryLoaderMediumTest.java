@@ -41,6 +41,7 @@ import org.sonar.core.qualityprofile.db.QualityProfileDto;
 import org.sonar.core.rule.RuleDto;
 import org.sonar.core.rule.RuleParamDto;
 import org.sonar.core.source.db.FileSourceDao;
+import org.sonar.core.source.db.FileSourceData;
 import org.sonar.core.source.db.FileSourceDto;
 import org.sonar.server.component.ComponentTesting;
 import org.sonar.server.db.DbClient;
@@ -766,7 +767,10 @@ public class ProjectRepositoryLoaderMediumTest {
     return new FileSourceDto()
       .setFileUuid(file.uuid())
       .setProjectUuid(file.projectUuid())
-      .setData(",,,,,,,,,,,,,,,unchanged&#13;&#10;,,,,,,,,,,,,,,,content&#13;&#10;")
+      .setBinaryData(FileSourceData.newBuilder(2)
+        .setString(FileSourceData.Column.SOURCE, 1, "unchanged")
+        .setString(FileSourceData.Column.SOURCE, 2, "content")
+        .build().encode())
       .setDataHash("0263047cd758c68c27683625f072f010")
       .setLineHashes("8d7b3d6b83c0a517eac07e1aac94b773")
       .setCreatedAt(new Date().getTime())
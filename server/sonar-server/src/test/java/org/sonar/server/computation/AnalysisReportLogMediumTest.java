@@ -91,6 +91,7 @@ public class AnalysisReportLogMediumTest {
     assertThat(details.get("submittedAt")).isEqualTo("2014-10-15T00:00:00+0200");
     assertThat(details.get("startedAt")).isEqualTo("2014-10-17T00:00:00+0200");
     assertThat(details.get("finishedAt")).isEqualTo("2014-10-18T00:00:00+0200");
+    assertThat(details.get("waitingTime")).isEqualTo(String.valueOf(report.getStartedAt() - report.getCreatedAt()));
   }
 
 }
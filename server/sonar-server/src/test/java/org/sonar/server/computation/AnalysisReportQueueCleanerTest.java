@@ -22,11 +22,15 @@ package org.sonar.server.computation;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.sonar.api.platform.ServerUpgradeStatus;
 import org.sonar.core.persistence.DbSession;
 import org.sonar.server.computation.db.AnalysisReportDao;
 import org.sonar.server.db.DbClient;
 
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
 
 public class AnalysisReportQueueCleanerTest {
@@ -36,6 +40,7 @@ public class AnalysisReportQueueCleanerTest {
   DbClient dbClient;
   AnalysisReportDao analysisReportDao;
   DbSession session;
+  AnalysisReportStorage storage;
 
   @Before
   public void before() {
@@ -43,25 +48,39 @@ public class AnalysisReportQueueCleanerTest {
     serverUpgradeStatus = mock(ServerUpgradeStatus.class);
     dbClient = mock(DbClient.class);
     session = mock(DbSession.class);
+    storage = mock(AnalysisReportStorage.class);
 
     when(dbClient.analysisReportDao()).thenReturn(analysisReportDao);
     when(dbClient.openSession(false)).thenReturn(session);
 
-    sut = new AnalysisReportQueueCleaner(serverUpgradeStatus, dbClient);
+    sut = new AnalysisReportQueueCleaner(serverUpgradeStatus, dbClient, storage);
   }
 
   @Test
   public void start_must_call_dao_clean_update_to_pending_by_default() {
     sut.start();
     verify(analysisReportDao).resetAllToPendingStatus(any(DbSession.class));
+    verify(storage).deleteTemporaryFiles();
     sut.stop();
   }
 
+  @Test
+  public void delete_uploads_idle_for_longer_than_ttl() {
+    long before = System.currentTimeMillis();
+    sut.deleteExpiredUploads();
+
+    ArgumentCaptor<Long> date = ArgumentCaptor.forClass(Long.class);
+    verify(storage).deleteTemporaryFilesNotModifiedSince(date.capture());
+    long ttl = TimeUnit.MINUTES.toMillis(AnalysisReportQueueCleaner.UPLOAD_TTL_MINUTES);
+    assertThat(date.getValue()).isGreaterThanOrEqualTo(before - ttl).isLessThanOrEqualTo(System.currentTimeMillis() - ttl);
+  }
+
   @Test
   public void start_must_call_dao_truncate_when_upgrading() {
     when(serverUpgradeStatus.isUpgraded()).thenReturn(Boolean.TRUE);
     sut.start();
     verify(analysisReportDao).truncate(any(DbSession.class));
+    verify(storage).deleteAll();
     sut.stop();
   }
 }
@@ -50,7 +50,9 @@ public class AnalysisReportQueueMediumTest {
   private static final String DEFAULT_PROJECT_KEY = "123456789-987654321";
 
   @ClassRule
-  public static ServerTester tester = new ServerTester();
+  public static ServerTester tester = new ServerTester()
+    // reports must not be processed by workers
+    .setProperty(ComputationThreadLauncher.PROPERTY_WORKERS, "0");
 
   private AnalysisReportQueue sut;
 
@@ -129,6 +131,24 @@ public class AnalysisReportQueueMediumTest {
     assertThat(thirdBookedReport.getProjectKey()).isEqualTo("3");
   }
 
+  @Test
+  public void record_waiting_time_of_booked_reports() {
+    insertPermissionsForProject(DEFAULT_PROJECT_KEY);
+    insertPermissionsForProject("2");
+    long bookedReports = sut.getBookedReports();
+
+    sut.add(DEFAULT_PROJECT_KEY, 123L, defaultReportData());
+    sut.add("2", 123L, defaultReportData());
+    AnalysisReportDto firstBookedReport = sut.pop();
+    AnalysisReportDto secondBookedReport = sut.pop();
+
+    assertThat(sut.getBookedReports()).isEqualTo(bookedReports + 2);
+    assertThat(sut.getLastWaitingTime()).isEqualTo(secondBookedReport.getStartedAt() - secondBookedReport.getCreatedAt());
+    assertThat(sut.getMaxWaitingTime())
+      .isGreaterThanOrEqualTo(firstBookedReport.getStartedAt() - firstBookedReport.getCreatedAt())
+      .isGreaterThanOrEqualTo(sut.getLastWaitingTime());
+  }
+
   @Test
   public void search_for_available_report_when_no_report_available() {
     AnalysisReportDto nullAnalysisReport = sut.pop();
@@ -17,119 +17,102 @@
  * along with this program; if not, write to the Free Software Foundation,
  * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
  */
-///*
-// * SonarQube, open source software quality management tool.
-// * Copyright (C) 2008-2014 SonarSource
-// * mailto:contact AT sonarsource DOT com
-// *
-// * SonarQube is free software; you can redistribute it and/or
-// * modify it under the terms of the GNU Lesser General Public
-// * License as published by the Free Software Foundation; either
-// * version 3 of the License, or (at your option) any later version.
-// *
-// * SonarQube is distributed in the hope that it will be useful,
-// * but WITHOUT ANY WARRANTY; without even the implied warranty of
-// * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
-// * Lesser General Public License for more details.
-// *
-// * You should have received a copy of the GNU Lesser General Public License
-// * along with this program; if not, write to the Free Software Foundation,
-// * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
-// */
-//
-//package org.sonar.server.computation;
-//
-//import com.google.common.collect.Lists;
-//import org.junit.Before;
-//import org.junit.Ignore;
-//import org.junit.Test;
-//import org.sonar.api.issue.internal.DefaultIssue;
-//import org.sonar.api.rules.RuleFinder;
-//import org.sonar.batch.protocol.output.component.ReportComponent;
-//import org.sonar.core.component.ComponentDto;
-//import org.sonar.core.computation.db.AnalysisReportDto;
-//import org.sonar.core.issue.db.IssueStorage;
-//import org.sonar.core.persistence.DbSession;
-//import org.sonar.core.persistence.MyBatis;
-//
-//import java.io.File;
-//import java.util.List;
-//
-//import static org.assertj.core.api.Assertions.assertThat;
-//import static org.mockito.Matchers.any;
-//import static org.mockito.Mockito.mock;
-//import static org.mockito.Mockito.when;
-//
-//public class AnalysisReportServiceTest {
-//  private AnalysisReportService sut;
-//
-//  private IssueStorage issueStorage;
-//
-//  @Before
-//  public void before() throws Exception {
-//    issueStorage = new FakeIssueStorage();
-//    ComputeEngineIssueStorageFactory issueStorageFactory = mock(ComputeEngineIssueStorageFactory.class);
-//    when(issueStorageFactory.newComputeEngineIssueStorage(any(ComponentDto.class))).thenReturn(issueStorage);
-//    sut = new AnalysisReportService(issueStorageFactory);
-//  }
-//
-//  @Test
-//  public void load_resources() throws Exception {
-//    File dir = new File(getClass().getResource("/org/sonar/server/computation/AnalysisReportServiceTest/report-folder").getFile());
-//    ComputationContext context = new ComputationContext(mock(AnalysisReportDto.class), mock(ComponentDto.class), dir);
-//
-//    sut.initComponents(context);
-//
-//    assertThat(context.getComponents()).hasSize(4);
-//  }
-//
-//  @Test
-//  @Ignore("Temporarily ignored")
-//  public void save_issues() throws Exception {
-//    File dir = new File(getClass().getResource("/org/sonar/server/computation/AnalysisReportServiceTest/report-folder").getFile());
-//    ComputationContext context = new FakeComputationContext(dir);
-//
-//    sut.saveIssues(context);
-//
-//    assertThat(((FakeIssueStorage) issueStorage).issues).hasSize(6);
-//  }
-//
-//  private static class FakeIssueStorage extends IssueStorage {
-//
-//    public List<DefaultIssue> issues = null;
-//
-//    protected FakeIssueStorage() {
-//      super(mock(MyBatis.class), mock(RuleFinder.class));
-//    }
-//
-//    @Override
-//    public void save(Iterable<DefaultIssue> issues) {
-//      this.issues = Lists.newArrayList(issues);
-//    }
-//
-//    @Override
-//    protected void doInsert(DbSession batchSession, long now, DefaultIssue issue) {
-//
-//    }
-//
-//    @Override
-//    protected void doUpdate(DbSession batchSession, long now, DefaultIssue issue) {
-//
-//    }
-//  }
-//
-//  private static class FakeComputationContext extends ComputationContext {
-//
-//    public FakeComputationContext(File reportDir) {
-//      super(mock(AnalysisReportDto.class), mock(ComponentDto.class), reportDir);
-//    }
-//
-//    @Override
-//    public ReportComponent getComponentByBatchId(Long batchId) {
-//      return new ReportComponent()
-//        .setBatchId(123)
-//        .setId(456);
-//    }
-//  }
-//
-//}
+
+package org.sonar.server.computation;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.config.Settings;
+import org.sonar.batch.protocol.output.ReportHelper;
+import org.sonar.batch.protocol.output.component.ReportComponent;
+import org.sonar.batch.protocol.output.component.ReportComponents;
+import org.sonar.batch.protocol.output.issue.ReportIssue;
+import org.sonar.core.component.ComponentDto;
+import org.sonar.core.computation.db.AnalysisReportDto;
+import org.sonar.server.computation.issue.IssueComputation;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class AnalysisReportServiceTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  IssueComputation issueComputation = mock(IssueComputation.class);
+
+  @Test
+  public void digest_components_sequentially_by_default() throws Exception {
+    ComputationContext context = newContext();
+
+    new AnalysisReportService(issueComputation, new Settings()).digest(context);
+
+    verifyDigested(context);
+  }
+
+  @Test
+  public void digest_components_concurrently() throws Exception {
+    ComputationContext context = newContext();
+    Settings settings = new Settings().setProperty(AnalysisReportService.PROPERTY_DIGEST_THREADS, 3);
+
+    new AnalysisReportService(issueComputation, settings).digest(context);
+
+    verifyDigested(context);
+  }
+
+  @Test
+  public void prefetch_line_authors_of_components_with_new_issues() throws Exception {
+    ComputationContext context = newContext();
+
+    new AnalysisReportService(issueComputation, new Settings()).digest(context);
+
+    // FILE_B has no new issues
+    verify(issueComputation).prefetchLineAuthors(Arrays.asList("FILE_A"));
+    verify(issueComputation).clearPrefetchedLineAuthors();
+  }
+
+  @Test
+  public void propagate_failure_of_concurrent_digestion() throws Exception {
+    ComputationContext context = newContext();
+    Settings settings = new Settings().setProperty(AnalysisReportService.PROPERTY_DIGEST_THREADS, 3);
+    doThrow(new IllegalStateException("expected")).when(issueComputation).processComponentIssues(eq("FILE_B"), any(Iterable.class));
+
+    try {
+      new AnalysisReportService(issueComputation, settings).digest(context);
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("expected");
+    }
+  }
+
+  private void verifyDigested(ComputationContext context) {
+    assertThat(context.getComponents()).hasSize(3);
+    verify(issueComputation).processComponentIssues(eq("PROJECT"), any(Iterable.class));
+    verify(issueComputation).processComponentIssues(eq("FILE_A"), any(Iterable.class));
+    verify(issueComputation).processComponentIssues(eq("FILE_B"), any(Iterable.class));
+    verify(issueComputation).afterReportProcessing();
+  }
+
+  private ComputationContext newContext() throws Exception {
+    File dir = temp.newFolder();
+    ReportHelper helper = ReportHelper.create(dir);
+    ReportComponent project = new ReportComponent().setBatchId(1L).setUuid("PROJECT").setType(ReportComponent.Type.PRJ)
+      .addChild(new ReportComponent().setBatchId(2L).setUuid("FILE_A").setType(ReportComponent.Type.FIL))
+      .addChild(new ReportComponent().setBatchId(3L).setUuid("FILE_B").setType(ReportComponent.Type.FIL));
+    helper.saveComponents(new ReportComponents().setRoot(project));
+    helper.saveIssues(1L, Collections.<ReportIssue>emptyList());
+    helper.saveIssues(2L, Arrays.asList(new ReportIssue().setRuleKey("squid", "R1").setComponentBatchId(2L).setNew(true).setLine(3)));
+    helper.saveIssues(3L, Arrays.asList(new ReportIssue().setRuleKey("squid", "R2").setComponentBatchId(3L)));
+    return new ComputationContext(mock(AnalysisReportDto.class), mock(ComponentDto.class), dir);
+  }
+}
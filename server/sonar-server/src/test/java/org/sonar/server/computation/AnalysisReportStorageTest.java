@@ -0,0 +1,141 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.sonar.server.computation;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.config.Settings;
+import org.sonar.process.ProcessConstants;
+
+import java.io.File;
+import java.io.InputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AnalysisReportStorageTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  File dir;
+  AnalysisReportStorage sut;
+
+  @Before
+  public void setUp() throws Exception {
+    dir = new File(temp.newFolder(), "analysis_reports");
+    sut = new AnalysisReportStorage(dir);
+  }
+
+  @Test
+  public void store_report_in_data_dir() throws Exception {
+    File dataDir = temp.newFolder();
+    Settings settings = new Settings().setProperty(ProcessConstants.PATH_DATA, dataDir.getAbsolutePath());
+
+    assertThat(new AnalysisReportStorage(settings).file(12L)).isEqualTo(new File(dataDir, "analysis_reports/12.zip"));
+  }
+
+  @Test
+  public void write_save_then_decompress_report() throws Exception {
+    InputStream zip = getClass().getResource("/org/sonar/server/computation/AnalysisReportStorageTest/zip.zip").openStream();
+    File tempFile;
+    try {
+      tempFile = sut.write(zip);
+    } finally {
+      IOUtils.closeQuietly(zip);
+    }
+    sut.save(tempFile, 1L);
+
+    assertThat(tempFile).doesNotExist();
+    assertThat(sut.file(1L)).exists();
+
+    File toDir = temp.newFolder();
+    sut.decompress(1L, toDir);
+    assertThat(toDir.list()).containsOnly("bar.txt", "dir", "foo.txt");
+  }
+
+  @Test
+  public void do_nothing_when_decompressing_report_without_data() throws Exception {
+    File toDir = temp.newFolder();
+
+    sut.decompress(1L, toDir);
+
+    assertThat(toDir.list()).isEmpty();
+  }
+
+  @Test
+  public void find_temporary_file_by_name() throws Exception {
+    File tempFile = sut.newTemporaryFile("upload");
+    String name = sut.temporaryFileName(tempFile);
+
+    assertThat(name).startsWith("upload").doesNotContain(".");
+    assertThat(sut.temporaryFile(name)).isEqualTo(tempFile);
+    assertThat(sut.temporaryFile("upload123")).isNull();
+    assertThat(sut.temporaryFile("../" + dir.getName() + "/" + name)).isNull();
+  }
+
+  @Test
+  public void delete_report() throws Exception {
+    sut.save(sut.write(IOUtils.toInputStream("report")), 1L);
+
+    sut.delete(1L);
+
+    assertThat(sut.file(1L)).doesNotExist();
+  }
+
+  @Test
+  public void delete_temporary_files() throws Exception {
+    File tempFile = sut.write(IOUtils.toInputStream("uploading"));
+    sut.save(sut.write(IOUtils.toInputStream("report")), 1L);
+
+    sut.deleteTemporaryFiles();
+
+    assertThat(tempFile).doesNotExist();
+    assertThat(sut.file(1L)).exists();
+  }
+
+  @Test
+  public void delete_temporary_files_not_modified_since_date() throws Exception {
+    File idleFile = sut.write(IOUtils.toInputStream("abandoned"));
+    idleFile.setLastModified(1000000000L);
+    File activeFile = sut.write(IOUtils.toInputStream("uploading"));
+    activeFile.setLastModified(3000000000L);
+    sut.save(sut.write(IOUtils.toInputStream("report")), 1L);
+    sut.file(1L).setLastModified(1000000000L);
+
+    sut.deleteTemporaryFilesNotModifiedSince(2000000000L);
+
+    assertThat(idleFile).doesNotExist();
+    assertThat(activeFile).exists();
+    assertThat(sut.file(1L)).exists();
+  }
+
+  @Test
+  public void delete_all() throws Exception {
+    sut.save(sut.write(IOUtils.toInputStream("report")), 1L);
+
+    sut.deleteAll();
+
+    assertThat(dir).doesNotExist();
+  }
+}
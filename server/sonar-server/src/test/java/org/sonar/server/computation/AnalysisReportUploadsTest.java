@@ -0,0 +1,140 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.sonar.server.computation;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.server.exceptions.BadRequestException;
+import org.sonar.server.exceptions.NotFoundException;
+
+import java.io.File;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class AnalysisReportUploadsTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  File dir;
+  AnalysisReportUploads sut;
+
+  @Before
+  public void setUp() throws Exception {
+    dir = temp.newFolder();
+    sut = new AnalysisReportUploads(new AnalysisReportStorage(dir));
+  }
+
+  @Test
+  public void assemble_parts() throws Exception {
+    String uploadId = start("hello ");
+    assertThat(sut.size(uploadId)).isEqualTo(6L);
+
+    assertThat(appendPart(uploadId, 6, "world")).isEqualTo(11L);
+
+    File report = sut.complete(uploadId);
+    assertThat(FileUtils.readFileToString(report)).isEqualTo("hello world");
+    // temporary files of parts are dropped
+    assertThat(dir.list()).containsOnly(report.getName());
+  }
+
+  @Test
+  public void ignore_bytes_already_received() throws Exception {
+    String uploadId = start("hello ");
+
+    // acknowledgement of the first part was lost, part is sent again
+    assertThat(appendPart(uploadId, 0, "hello ")).isEqualTo(6L);
+    assertThat(appendPart(uploadId, 3, "lo world")).isEqualTo(11L);
+
+    assertThat(FileUtils.readFileToString(sut.complete(uploadId))).isEqualTo("hello world");
+  }
+
+  @Test
+  public void fail_if_checksum_does_not_match() throws Exception {
+    String uploadId = start("hello ");
+
+    try {
+      sut.appendPart(uploadId, 6, DigestUtils.md5Hex("world"), IOUtils.toInputStream("worlD"));
+      fail();
+    } catch (BadRequestException e) {
+      assertThat(e.getMessage()).startsWith("Checksum of part at offset 6 does not match");
+    }
+    assertThat(FileUtils.readFileToString(sut.complete(uploadId))).isEqualTo("hello ");
+  }
+
+  @Test
+  public void do_not_start_upload_if_checksum_of_first_part_does_not_match() throws Exception {
+    try {
+      sut.start(0, DigestUtils.md5Hex("hello"), IOUtils.toInputStream("hellO"));
+      fail();
+    } catch (BadRequestException e) {
+      assertThat(e.getMessage()).startsWith("Checksum of part at offset 0 does not match");
+    }
+    assertThat(dir.list()).isEmpty();
+  }
+
+  @Test
+  public void do_not_start_upload_if_first_part_is_not_at_offset_zero() throws Exception {
+    try {
+      sut.start(6, DigestUtils.md5Hex("world"), IOUtils.toInputStream("world"));
+      fail();
+    } catch (BadRequestException e) {
+      assertThat(e.getMessage()).isEqualTo("First part of an upload must be at offset 0, got 6");
+    }
+    assertThat(dir.list()).isEmpty();
+  }
+
+  @Test
+  public void fail_if_part_is_not_contiguous() throws Exception {
+    String uploadId = start("hello ");
+
+    try {
+      appendPart(uploadId, 7, "world");
+      fail();
+    } catch (BadRequestException e) {
+      assertThat(e.getMessage()).isEqualTo("Part at offset 7 is not contiguous, only 6 bytes have been received");
+    }
+  }
+
+  @Test(expected = NotFoundException.class)
+  public void fail_if_upload_does_not_exist() throws Exception {
+    appendPart("upload123", 0, "hello");
+  }
+
+  @Test(expected = NotFoundException.class)
+  public void fail_if_upload_id_is_not_an_upload() throws Exception {
+    sut.complete("../../etc/passwd");
+  }
+
+  private String start(String part) {
+    return sut.start(0, DigestUtils.md5Hex(part), IOUtils.toInputStream(part));
+  }
+
+  private long appendPart(String uploadId, long offset, String part) {
+    return sut.appendPart(uploadId, offset, DigestUtils.md5Hex(part), IOUtils.toInputStream(part));
+  }
+}
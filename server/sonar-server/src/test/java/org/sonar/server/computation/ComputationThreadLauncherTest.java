@@ -17,85 +17,151 @@
  * along with this program; if not, write to the Free Software Foundation,
  * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
  */
-///*
-// * SonarQube, open source software quality management tool.
-// * Copyright (C) 2008-2014 SonarSource
-// * mailto:contact AT sonarsource DOT com
-// *
-// * SonarQube is free software; you can redistribute it and/or
-// * modify it under the terms of the GNU Lesser General Public
-// * License as published by the Free Software Foundation; either
-// * version 3 of the License, or (at your option) any later version.
-// *
-// * SonarQube is distributed in the hope that it will be useful,
-// * but WITHOUT ANY WARRANTY; without even the implied warranty of
-// * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
-// * Lesser General Public License for more details.
-// *
-// * You should have received a copy of the GNU Lesser General Public License
-// * along with this program; if not, write to the Free Software Foundation,
-// * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
-// */
-//
-//package org.sonar.server.computation;
-//
-//import org.junit.After;
-//import org.junit.Before;
-//import org.junit.Rule;
-//import org.junit.Test;
-//import org.junit.rules.DisableOnDebug;
-//import org.junit.rules.TestRule;
-//import org.junit.rules.Timeout;
-//import org.sonar.api.platform.Server;
-//
-//import java.util.concurrent.TimeUnit;
-//
-//import static org.mockito.Mockito.*;
-//
-//public class ComputationThreadLauncherTest {
-//
-//  @Rule
-//  public TestRule timeout = new DisableOnDebug(Timeout.seconds(5));
-//
-//  private ComputationThreadLauncher sut;
-//  private ComputationService service;
-//  private AnalysisReportQueue queue;
-//
-//  @Before
-//  public void before() {
-//    this.service = mock(ComputationService.class);
-//    this.queue = mock(AnalysisReportQueue.class);
-//  }
-//
-//  @After
-//  public void after() {
-//    sut.stop();
-//  }
-//
-//  @Test
-//  public void call_findAndBook_when_launching_a_recurrent_task() throws Exception {
-//    sut = new ComputationThreadLauncher(service, queue, 0, 1, TimeUnit.MILLISECONDS);
-//
-//    sut.onServerStart(mock(Server.class));
-//
-//    sleep();
-//
-//    verify(queue, atLeastOnce()).pop();
-//  }
-//
-//  @Test
-//  public void call_findAndBook_when_executing_task_immediately() throws Exception {
-//    sut = new ComputationThreadLauncher(service, queue, 1, 1, TimeUnit.HOURS);
-//    sut.start();
-//
-//    sut.startAnalysisTaskNow();
-//
-//    sleep();
-//
-//    verify(queue, atLeastOnce()).pop();
-//  }
-//
-//  private void sleep() throws InterruptedException {
-//    TimeUnit.MILLISECONDS.sleep(500L);
-//  }
-//}
+
+package org.sonar.server.computation;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.api.config.PropertyDefinitions;
+import org.sonar.api.config.Settings;
+import org.sonar.api.platform.Server;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ComputationThreadLauncherTest {
+
+  @Rule
+  public TestRule timeout = new DisableOnDebug(Timeout.seconds(5));
+
+  private ComputationThreadLauncher sut;
+  private AnalysisReportQueue queue;
+
+  @Before
+  public void before() throws Exception {
+    this.queue = mock(AnalysisReportQueue.class);
+    when(queue.awaitNewReport(anyLong(), any(TimeUnit.class))).thenAnswer(new WaitUntilTimeout(false));
+  }
+
+  @After
+  public void after() {
+    sut.stop();
+  }
+
+  @Test
+  public void call_findAndBook_when_launching_workers() throws Exception {
+    sut = new ComputationThreadLauncher(queue, 1, 0, 1, 1, TimeUnit.MILLISECONDS);
+
+    sut.onServerStart(mock(Server.class));
+
+    sleep();
+
+    verify(queue, atLeastOnce()).pop();
+  }
+
+  @Test
+  public void each_worker_pops_the_queue() throws Exception {
+    sut = new ComputationThreadLauncher(queue, 3, 0, 1, 1, TimeUnit.HOURS);
+
+    sut.onServerStart(mock(Server.class));
+
+    sleep();
+
+    verify(queue, atLeast(3)).pop();
+  }
+
+  @Test
+  public void pop_again_as_soon_as_a_report_is_added() throws Exception {
+    doReturn(true).doAnswer(new WaitUntilTimeout(false)).when(queue).awaitNewReport(anyLong(), any(TimeUnit.class));
+    sut = new ComputationThreadLauncher(queue, 1, 0, 1, 1, TimeUnit.HOURS);
+
+    sut.onServerStart(mock(Server.class));
+
+    sleep();
+
+    verify(queue, times(2)).pop();
+  }
+
+  @Test
+  public void back_off_when_queue_is_empty() throws Exception {
+    sut = new ComputationThreadLauncher(queue, 1, 0, 10, 40, TimeUnit.MILLISECONDS);
+
+    sut.onServerStart(mock(Server.class));
+
+    sleep();
+
+    InOrder inOrder = inOrder(queue);
+    inOrder.verify(queue).awaitNewReport(10, TimeUnit.MILLISECONDS);
+    inOrder.verify(queue).awaitNewReport(20, TimeUnit.MILLISECONDS);
+    inOrder.verify(queue, atLeastOnce()).awaitNewReport(40, TimeUnit.MILLISECONDS);
+    verify(queue, never()).awaitNewReport(80, TimeUnit.MILLISECONDS);
+  }
+
+  @Test
+  public void number_of_workers_is_configurable() {
+    Settings settings = new Settings();
+    settings.setProperty(ComputationThreadLauncher.PROPERTY_WORKERS, 4);
+    sut = new ComputationThreadLauncher(queue, settings);
+    assertThat(sut.getWorkers()).isEqualTo(4);
+    sut.stop();
+
+    sut = new ComputationThreadLauncher(queue, new Settings(new PropertyDefinitions(ComputationThreadLauncher.class)));
+    assertThat(sut.getWorkers()).isEqualTo(1);
+  }
+
+  @Test
+  public void do_not_pop_the_queue_when_workers_are_disabled() throws Exception {
+    sut = new ComputationThreadLauncher(queue, 0, 0, 1, 1, TimeUnit.MILLISECONDS);
+
+    sut.onServerStart(mock(Server.class));
+
+    sleep();
+
+    verify(queue, never()).pop();
+  }
+
+  /**
+   * Let the workers run, then stop them so that the mock is not used anymore during verifications
+   */
+  private void sleep() throws InterruptedException {
+    TimeUnit.MILLISECONDS.sleep(500L);
+    sut.stop();
+    TimeUnit.MILLISECONDS.sleep(100L);
+  }
+
+  private static class WaitUntilTimeout implements Answer<Boolean> {
+    private final boolean result;
+
+    private WaitUntilTimeout(boolean result) {
+      this.result = result;
+    }
+
+    @Override
+    public Boolean answer(InvocationOnMock invocation) throws Throwable {
+      long timeout = (Long) invocation.getArguments()[0];
+      TimeUnit unit = (TimeUnit) invocation.getArguments()[1];
+      unit.sleep(timeout);
+      return result;
+    }
+  }
+}
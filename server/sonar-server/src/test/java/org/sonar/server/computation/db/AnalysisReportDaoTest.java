@@ -20,13 +20,11 @@
 
 package org.sonar.server.computation.db;
 
-import org.apache.commons.io.IOUtils;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
-import org.junit.rules.TemporaryFolder;
 import org.sonar.api.utils.System2;
 import org.sonar.core.computation.db.AnalysisReportDto;
 import org.sonar.core.persistence.DbSession;
@@ -34,12 +32,14 @@ import org.sonar.core.persistence.DbTester;
 import org.sonar.core.persistence.MyBatis;
 import org.sonar.test.DbTests;
 
-import java.io.File;
-import java.io.InputStream;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.sonar.api.utils.DateUtils.parseDate;
 import static org.sonar.core.computation.db.AnalysisReportDto.Status.PENDING;
@@ -54,9 +54,6 @@ public class AnalysisReportDaoTest {
   @Rule
   public DbTester db = new DbTester();
 
-  @Rule
-  public TemporaryFolder temp = new TemporaryFolder();
-
   private AnalysisReportDao sut;
   private DbSession session;
   private System2 system2;
@@ -87,18 +84,11 @@ public class AnalysisReportDaoTest {
     sut.insert(session, report2);
     session.commit();
 
+    assertThat(report1.getId()).isEqualTo(1L);
+    assertThat(report2.getId()).isEqualTo(2L);
     db.assertDbUnit(getClass(), "insert-result.xml", "analysis_reports");
   }
 
-  @Test
-  public void insert_report_data_do_not_throw_exception() throws Exception {
-    db.prepareDbUnit(getClass(), "empty.xml");
-    AnalysisReportDto report = newDefaultAnalysisReport()
-      .setData(getClass().getResource("/org/sonar/server/computation/db/AnalysisReportDaoTest/zip.zip").openStream());
-
-    sut.insert(session, report);
-  }
-
   @Test
   public void resetAllToPendingStatus() {
     db.prepareDbUnit(getClass(), "update-all-to-status-pending.xml");
@@ -152,6 +142,29 @@ public class AnalysisReportDaoTest {
     assertThat(nextAvailableReport.getProjectKey()).isEqualTo("P2");
   }
 
+  @Test
+  public void pop_lowest_id_of_reports_created_at_the_same_time() {
+    db.prepareDbUnit(getClass(), "pop_other_project_when_oldest_is_booked.xml");
+
+    AnalysisReportDto nextAvailableReport = sut.pop(session);
+
+    assertThat(nextAvailableReport.getId()).isEqualTo(1);
+  }
+
+  @Test
+  public void pop_report_of_other_project_when_oldest_is_booked_by_another_worker() {
+    db.prepareDbUnit(getClass(), "pop_other_project_when_oldest_is_booked.xml");
+    AnalysisReportDao spy = spy(sut);
+    // report 1 is booked by another worker between the selection of candidates and the update
+    doReturn(null).when(spy).tryToPop(session, 1L);
+
+    AnalysisReportDto nextAvailableReport = spy.pop(session);
+
+    assertThat(nextAvailableReport.getId()).isEqualTo(3);
+    // project P1 is busy, so its other report is not tried
+    verify(spy, never()).tryToPop(session, 2L);
+  }
+
   @Test
   public void pop_null_if_no_pending_reports() {
     db.prepareDbUnit(getClass(), "pop_null_if_no_pending_reports.xml");
@@ -162,7 +175,7 @@ public class AnalysisReportDaoTest {
   }
 
   @Test
-  public void getById_maps_all_the_fields_except_the_data() {
+  public void getById_maps_all_the_fields() {
     db.prepareDbUnit(getClass(), "one_analysis_report.xml");
 
     AnalysisReportDto report = sut.selectById(session, 1L);
@@ -173,7 +186,6 @@ public class AnalysisReportDaoTest {
     assertThat(report.getStartedAt()).isEqualTo(parseDate("2014-09-26").getTime());
     assertThat(report.getFinishedAt()).isEqualTo(parseDate("2014-09-27").getTime());
     assertThat(report.getStatus()).isEqualTo(WORKING);
-    assertThat(report.getData()).isNull();
     assertThat(report.getKey()).isEqualTo("1");
   }
 
@@ -223,31 +235,10 @@ public class AnalysisReportDaoTest {
     assertThat(reports).hasSize(3);
   }
 
-  @Test
-  public void insert_and_then_retrieve_report_data_with_decompressed_files_medium_test() throws Exception {
-    // ARRANGE
-    db.prepareDbUnit(getClass(), "empty.xml");
-    AnalysisReportDto report = newDefaultAnalysisReport();
-    InputStream zip = getClass().getResource("/org/sonar/server/computation/db/AnalysisReportDaoTest/zip.zip").openStream();
-    report.setData(zip);
-
-    File toDir = temp.newFolder();
-    sut.insert(session, report);
-    session.commit();
-    IOUtils.closeQuietly(zip);
-
-    // ACT
-    sut.selectAndDecompressToDir(session, 1L, toDir);
-
-    // ASSERT
-    assertThat(toDir.list()).hasSize(3);
-  }
-
   private AnalysisReportDto newDefaultAnalysisReport() {
-    return AnalysisReportDto.newForTests(1L)
+    return new AnalysisReportDto()
       .setProjectKey(DEFAULT_PROJECT_KEY)
       .setSnapshotId(DEFAULT_SNAPSHOT_ID)
-      .setData(null)
       .setStatus(PENDING);
   }
 }
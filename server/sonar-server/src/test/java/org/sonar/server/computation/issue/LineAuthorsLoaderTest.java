@@ -0,0 +1,116 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.issue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.sonar.core.persistence.DbTester;
+import org.sonar.core.source.db.FileSourceDao;
+import org.sonar.core.source.db.FileSourceData;
+import org.sonar.core.source.db.FileSourceData.Column;
+import org.sonar.core.source.db.FileSourceDto;
+import org.sonar.server.db.DbClient;
+import org.sonar.test.DbTests;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Category(DbTests.class)
+public class LineAuthorsLoaderTest {
+
+  @Rule
+  public DbTester dbTester = new DbTester();
+
+  @Test
+  public void load_authors_of_many_files() throws Exception {
+    FileSourceDao dao = new FileSourceDao(dbTester.myBatis());
+    insert(dao, "FILE_A", FileSourceData.newBuilder(3)
+      .setString(Column.SCM_AUTHOR, 1, "charlie")
+      .setString(Column.SCM_AUTHOR, 2, "cabu")
+      .setString(Column.SOURCE, 1, "first line")
+      .setString(Column.SOURCE, 2, "second line")
+      .setString(Column.SOURCE, 3, "third line"));
+    insert(dao, "FILE_B", FileSourceData.newBuilder(1)
+      .setString(Column.SCM_AUTHOR, 1, "wolinski")
+      .setString(Column.SOURCE, 1, "a, b"));
+    DbClient dbClient = new DbClient(dbTester.database(), dbTester.myBatis(), dao);
+
+    Map<String, LineAuthors> result = new LineAuthorsLoader(dbClient).load(Arrays.asList("FILE_A", "FILE_B", "UNKNOWN"));
+
+    assertThat(result.keySet()).containsOnly("FILE_A", "FILE_B");
+    LineAuthors fileA = result.get("FILE_A");
+    assertThat(fileA.size()).isEqualTo(3);
+    assertThat(fileA.get(1)).isEqualTo("charlie");
+    assertThat(fileA.get(2)).isEqualTo("cabu");
+    assertThat(fileA.get(3)).isNull();
+    assertThat(result.get("FILE_B").size()).isEqualTo(1);
+    assertThat(result.get("FILE_B").get(1)).isEqualTo("wolinski");
+  }
+
+  @Test
+  public void do_not_request_db_if_no_files() throws Exception {
+    assertThat(new LineAuthorsLoader(null).load(Collections.<String>emptyList())).isEmpty();
+  }
+
+  @Test
+  public void parse_only_author_column() throws Exception {
+    byte[] data = FileSourceData.newBuilder(5)
+      .setString(Column.SCM_REVISION, 1, "abc")
+      .setString(Column.SCM_AUTHOR, 1, "charlie")
+      .setString(Column.SCM_AUTHOR, 2, "simon \"le\" magnifique")
+      .setString(Column.SCM_AUTHOR, 3, "charlie")
+      .setString(Column.SCM_AUTHOR, 5, "cabu")
+      .setInteger(Column.UT_LINE_HITS, 2, 3)
+      .setString(Column.SOURCE, 1, "quoted, source")
+      .build().encode();
+
+    LineAuthors authors = LineAuthorsLoader.parse(new ByteArrayInputStream(data));
+
+    assertThat(authors.size()).isEqualTo(5);
+    assertThat(authors.get(1)).isEqualTo("charlie");
+    assertThat(authors.get(2)).isEqualTo("simon \"le\" magnifique");
+    assertThat(authors.get(3)).isEqualTo("charlie");
+    // no author
+    assertThat(authors.get(4)).isNull();
+    assertThat(authors.get(5)).isEqualTo("cabu");
+    assertThat(authors.get(0)).isNull();
+    assertThat(authors.get(6)).isNull();
+    assertThat(authors.countAuthors()).isEqualTo(3);
+  }
+
+  @Test
+  public void parse_empty_data() throws Exception {
+    byte[] data = FileSourceData.newBuilder(0).build().encode();
+
+    assertThat(LineAuthorsLoader.parse(new ByteArrayInputStream(data)).size()).isEqualTo(0);
+  }
+
+  private static void insert(FileSourceDao dao, String fileUuid, FileSourceData.Builder data) {
+    dao.insert(new FileSourceDto().setProjectUuid("PROJECT_A").setFileUuid(fileUuid)
+      .setBinaryData(data.build().encode())
+      .setDataHash("hash").setLineHashes("hashes").setSrcHash("123456")
+      .setCreatedAt(1412952242000L).setUpdatedAt(1412952242000L));
+  }
+}
@@ -19,15 +19,27 @@
  */
 package org.sonar.server.computation.issue;
 
+import com.google.common.collect.ImmutableMap;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 import org.sonar.core.persistence.DbTester;
 import org.sonar.core.source.db.FileSourceDao;
+import org.sonar.core.source.db.FileSourceData;
+import org.sonar.core.source.db.FileSourceData.Column;
+import org.sonar.core.source.db.FileSourceDto;
 import org.sonar.server.db.DbClient;
 import org.sonar.test.DbTests;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
 
 @Category(DbTests.class)
 public class SourceLinesCacheTest {
@@ -37,9 +49,8 @@ public class SourceLinesCacheTest {
 
   @Test
   public void load_data() throws Exception {
-    dbTester.prepareDbUnit(getClass(), "load_data.xml");
-    DbClient dbClient = new DbClient(dbTester.database(), dbTester.myBatis(), new FileSourceDao(dbTester.myBatis()));
-    SourceLinesCache cache = new SourceLinesCache(dbClient);
+    DbClient dbClient = prepareDb();
+    SourceLinesCache cache = new SourceLinesCache(new LineAuthorsLoader(dbClient));
     cache.init("FILE_A");
 
     // load data on demand -> still nothing in cache
@@ -60,5 +71,64 @@ public class SourceLinesCacheTest {
     assertThat(cache.countLines()).isEqualTo(0);
   }
 
+  @Test
+  public void current_file_is_specific_to_each_thread() throws Exception {
+    DbClient dbClient = prepareDb();
+    final SourceLinesCache cache = new SourceLinesCache(new LineAuthorsLoader(dbClient));
+    cache.init("FILE_A");
+    assertThat(cache.lineAuthor(1)).isEqualTo("charlie");
+
+    final AtomicInteger otherThreadLines = new AtomicInteger(-1);
+    Thread otherThread = new Thread() {
+      @Override
+      public void run() {
+        otherThreadLines.set(cache.countLines());
+      }
+    };
+    otherThread.start();
+    otherThread.join();
+
+    assertThat(otherThreadLines.get()).isEqualTo(0);
+    assertThat(cache.countLines()).isEqualTo(3);
+  }
+
+  @Test
+  public void use_prefetched_data() throws Exception {
+    LineAuthorsLoader loader = mock(LineAuthorsLoader.class);
+    LineAuthors authors = LineAuthors.builder().addLine("charlie").build();
+    when(loader.load(Arrays.asList("FILE_A", "FILE_B"))).thenReturn(ImmutableMap.of("FILE_A", authors));
+    when(loader.load(Arrays.asList("FILE_B"))).thenReturn(Collections.<String, LineAuthors>emptyMap());
+    SourceLinesCache cache = new SourceLinesCache(loader);
 
+    cache.prefetch(Arrays.asList("FILE_A", "FILE_B"));
+    cache.init("FILE_A");
+    assertThat(cache.countLines()).isEqualTo(1);
+    assertThat(cache.lineAuthor(1)).isEqualTo("charlie");
+
+    // file not in db
+    cache.init("FILE_B");
+    assertThat(cache.lineAuthor(1)).isNull();
+    assertThat(cache.countLines()).isEqualTo(0);
+
+    verify(loader).load(Arrays.asList("FILE_A", "FILE_B"));
+    verify(loader).load(Arrays.asList("FILE_B"));
+    verifyNoMoreInteractions(loader);
+  }
+
+  private DbClient prepareDb() {
+    FileSourceDao dao = new FileSourceDao(dbTester.myBatis());
+    byte[] data = FileSourceData.newBuilder(3)
+      .setString(Column.SCM_AUTHOR, 1, "charlie")
+      .setString(Column.SCM_AUTHOR, 2, "cabu")
+      .setString(Column.SOURCE, 1, "first line")
+      .setString(Column.SOURCE, 2, "second line")
+      .setString(Column.SOURCE, 3, "third line")
+      .build().encode();
+    dao.insert(new FileSourceDto().setProjectUuid("PROJECT_A").setFileUuid("FILE_A")
+      .setBinaryData(data)
+      .setDataHash("0263047cd758c68c27683625f072f010").setSrcHash("123456")
+      .setLineHashes("8d7b3d6b83c0a517eac07e1aac94b773\n9a0364b9e99bb480dd25e1f0284c8555")
+      .setCreatedAt(1412952242000L).setUpdatedAt(1412952242000L));
+    return new DbClient(dbTester.database(), dbTester.myBatis(), dao);
+  }
 }
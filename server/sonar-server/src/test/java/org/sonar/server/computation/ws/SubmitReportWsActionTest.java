@@ -24,9 +24,10 @@ import org.junit.Before;
 import org.junit.Test;
 import org.sonar.api.server.ws.WebService;
 import org.sonar.server.computation.AnalysisReportQueue;
-import org.sonar.server.computation.ComputationThreadLauncher;
+import org.sonar.server.computation.AnalysisReportUploads;
 import org.sonar.server.ws.WsTester;
 
+import java.io.File;
 import java.io.InputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -38,13 +39,14 @@ public class SubmitReportWsActionTest {
   private SubmitReportWsAction sut;
 
   private WsTester wsTester;
-  private ComputationThreadLauncher workerLauncher = mock(ComputationThreadLauncher.class);
   private AnalysisReportQueue queue;
+  private AnalysisReportUploads uploads;
 
   @Before
   public void before() {
     queue = mock(AnalysisReportQueue.class);
-    sut = new SubmitReportWsAction(queue, workerLauncher);
+    uploads = mock(AnalysisReportUploads.class);
+    sut = new SubmitReportWsAction(queue, uploads);
     wsTester = new WsTester(new ComputationWebService(sut));
   }
 
@@ -57,11 +59,11 @@ public class SubmitReportWsActionTest {
 
     WebService.Action action = context.controller("api/computation").action("submit_report");
     assertThat(action).isNotNull();
-    assertThat(action.params()).hasSize(3);
+    assertThat(action.params()).hasSize(4);
   }
 
   @Test
-  public void add_element_to_queue_and_launch_analysis_task() throws Exception {
+  public void add_element_to_queue() throws Exception {
     when(queue.add(any(String.class), anyLong(), any(InputStream.class))).thenReturn("P1");
 
     WsTester.TestRequest request = wsTester
@@ -72,7 +74,6 @@ public class SubmitReportWsActionTest {
     request.execute();
 
     verify(queue).add(eq("P1"), eq(456L), any(InputStream.class));
-    verify(workerLauncher).startAnalysisTaskNow();
   }
 
   @Test
@@ -86,4 +87,20 @@ public class SubmitReportWsActionTest {
       .setParam(SubmitReportWsAction.PARAM_REPORT_DATA, null);
     request.execute().assertJson(getClass(), "submit_report.json", false);
   }
+
+  @Test
+  public void add_uploaded_report_to_queue() throws Exception {
+    File report = new File("upload123.tmp");
+    when(uploads.complete("upload123")).thenReturn(report);
+    when(queue.addUploaded("P1", 456L, report)).thenReturn("P1");
+
+    WsTester.TestRequest request = wsTester
+      .newPostRequest(ComputationWebService.API_ENDPOINT, "submit_report")
+      .setParam(SubmitReportWsAction.PARAM_PROJECT_KEY, "P1")
+      .setParam(SubmitReportWsAction.PARAM_SNAPSHOT, "456")
+      .setParam(SubmitReportWsAction.PARAM_UPLOAD_ID, "upload123");
+    request.execute().assertJson(getClass(), "submit_report.json", false);
+
+    verify(queue, never()).add(anyString(), anyLong(), any(InputStream.class));
+  }
 }
@@ -0,0 +1,129 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.sonar.server.computation.ws;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.api.server.ws.WebService;
+import org.sonar.core.permission.GlobalPermissions;
+import org.sonar.server.computation.AnalysisReportUploads;
+import org.sonar.server.exceptions.ForbiddenException;
+import org.sonar.server.user.MockUserSession;
+import org.sonar.server.ws.WsTester;
+
+import java.io.InputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class UploadReportPartWsActionTest {
+
+  AnalysisReportUploads uploads = mock(AnalysisReportUploads.class);
+  UploadReportPartWsAction sut = new UploadReportPartWsAction(uploads);
+  WsTester wsTester;
+
+  @Before
+  public void before() {
+    wsTester = new WsTester(new ComputationWebService(sut));
+  }
+
+  @Test
+  public void define_metadata() throws Exception {
+    WebService.Action action = wsTester.controller("api/computation").action("upload_report_part");
+
+    assertThat(action).isNotNull();
+    assertThat(action.isPost()).isTrue();
+    assertThat(action.isInternal()).isTrue();
+    assertThat(action.params()).hasSize(4);
+  }
+
+  @Test
+  public void start_upload_with_first_part() throws Exception {
+    MockUserSession.set().setGlobalPermissions(GlobalPermissions.SCAN_EXECUTION);
+    when(uploads.start(eq(0L), eq("abcd"), any(InputStream.class))).thenReturn("upload123");
+    when(uploads.size("upload123")).thenReturn(5L);
+
+    WsTester.Result result = wsTester.newPostRequest(ComputationWebService.API_ENDPOINT, "upload_report_part")
+      .setParam("offset", "0")
+      .setParam("checksum", "abcd")
+      .setParam("part", "hello")
+      .execute();
+
+    result.assertJson("{\"uploadId\": \"upload123\", \"size\": 5}");
+    verify(uploads, never()).appendPart(anyString(), anyLong(), anyString(), any(InputStream.class));
+  }
+
+  @Test
+  public void append_part_to_existing_upload() throws Exception {
+    MockUserSession.set().setGlobalPermissions(GlobalPermissions.SCAN_EXECUTION);
+    when(uploads.appendPart(eq("upload123"), eq(5L), eq("abcd"), any(InputStream.class))).thenReturn(11L);
+
+    WsTester.Result result = wsTester.newPostRequest(ComputationWebService.API_ENDPOINT, "upload_report_part")
+      .setParam("uploadId", "upload123")
+      .setParam("offset", "5")
+      .setParam("checksum", "abcd")
+      .setParam("part", " world")
+      .execute();
+
+    result.assertJson("{\"uploadId\": \"upload123\", \"size\": 11}");
+    verify(uploads, never()).start(anyLong(), anyString(), any(InputStream.class));
+  }
+
+  @Test
+  public void do_not_start_upload_if_part_is_missing() throws Exception {
+    MockUserSession.set().setGlobalPermissions(GlobalPermissions.SCAN_EXECUTION);
+
+    try {
+      wsTester.newPostRequest(ComputationWebService.API_ENDPOINT, "upload_report_part")
+        .setParam("offset", "0")
+        .setParam("checksum", "abcd")
+        .execute();
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e.getMessage()).isEqualTo("Parameter 'part' is missing");
+    }
+    verify(uploads, never()).start(anyLong(), anyString(), any(InputStream.class));
+  }
+
+  @Test(expected = ForbiddenException.class)
+  public void fail_if_no_scan_permission() throws Exception {
+    MockUserSession.set().setGlobalPermissions(GlobalPermissions.PREVIEW_EXECUTION);
+
+    try {
+      wsTester.newPostRequest(ComputationWebService.API_ENDPOINT, "upload_report_part")
+        .setParam("offset", "0")
+        .setParam("checksum", "abcd")
+        .setParam("part", "hello")
+        .execute();
+    } finally {
+      verify(uploads, never()).start(anyLong(), anyString(), any(InputStream.class));
+      verify(uploads, never()).appendPart(anyString(), anyLong(), anyString(), any(InputStream.class));
+    }
+  }
+}
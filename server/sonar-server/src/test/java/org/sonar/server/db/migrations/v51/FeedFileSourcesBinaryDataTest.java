@@ -0,0 +1,98 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.db.migrations.v51;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.sonar.api.utils.DateUtils;
+import org.sonar.core.persistence.DbTester;
+import org.sonar.core.source.db.FileSourceData;
+import org.sonar.core.source.db.FileSourceData.Column;
+import org.sonar.server.db.migrations.DatabaseMigration;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FeedFileSourcesBinaryDataTest {
+
+  @ClassRule
+  public static DbTester db = new DbTester().schema(FeedFileSourcesBinaryDataTest.class, "schema.sql");
+
+  @Test
+  public void convert_csv_to_binary() throws Exception {
+    db.prepareDbUnit(getClass(), "data.xml");
+
+    DatabaseMigration migration = new FeedFileSourcesBinaryData(db.database());
+    migration.execute();
+
+    byte[] bytes = selectBinaryData("FILE1_UUID");
+    FileSourceData data = FileSourceData.decode(bytes);
+    assertThat(data.lines()).isEqualTo(2);
+
+    assertThat(data.getString(Column.SCM_REVISION, 1)).isEqualTo("aef12a");
+    assertThat(data.getString(Column.SCM_AUTHOR, 1)).isEqualTo("alice");
+    assertThat(data.getDate(Column.SCM_DATE, 1)).isEqualTo(DateUtils.parseDateTime("2014-04-25T12:34:56+0100"));
+    assertThat(data.getInteger(Column.UT_LINE_HITS, 1)).isEqualTo(1);
+    assertThat(data.getInteger(Column.UT_CONDITIONS, 1)).isEqualTo(4);
+    assertThat(data.getInteger(Column.UT_COVERED_CONDITIONS, 1)).isEqualTo(2);
+    assertThat(data.getInteger(Column.IT_LINE_HITS, 1)).isEqualTo(2);
+    assertThat(data.getInteger(Column.IT_CONDITIONS, 1)).isEqualTo(5);
+    assertThat(data.getInteger(Column.IT_COVERED_CONDITIONS, 1)).isEqualTo(3);
+    assertThat(data.getInteger(Column.OVERALL_LINE_HITS, 1)).isEqualTo(3);
+    assertThat(data.getInteger(Column.OVERALL_CONDITIONS, 1)).isEqualTo(6);
+    assertThat(data.getInteger(Column.OVERALL_COVERED_CONDITIONS, 1)).isEqualTo(4);
+    assertThat(data.getString(Column.HIGHLIGHTING, 1)).isEqualTo("syntax-highlighting");
+    assertThat(data.getString(Column.SYMBOLS, 1)).isEqualTo("symbol-refs");
+    assertThat(data.getIntegers(Column.DUPLICATIONS, 1)).containsExactly(1, 2);
+    assertThat(data.getString(Column.SOURCE, 1)).isEqualTo("class Foo {");
+
+    assertThat(data.getString(Column.SCM_AUTHOR, 2)).isEqualTo("bob");
+    assertThat(data.getInteger(Column.UT_LINE_HITS, 2)).isNull();
+    assertThat(data.getString(Column.HIGHLIGHTING, 2)).isNull();
+    assertThat(data.getIntegers(Column.DUPLICATIONS, 2)).isEmpty();
+    assertThat(data.getString(Column.SOURCE, 2)).isEqualTo("  // Empty");
+
+    assertThat(db.selectFirst("select data_hash as \"hash\" from file_sources where id=1").get("hash")).isEqualTo(DigestUtils.md5Hex(bytes));
+  }
+
+  @Test
+  public void ignore_empty_files() throws Exception {
+    db.prepareDbUnit(getClass(), "data.xml");
+
+    new FeedFileSourcesBinaryData(db.database()).execute();
+
+    assertThat(selectBinaryData("FILE2_UUID")).isNull();
+  }
+
+  private byte[] selectBinaryData(String fileUuid) throws Exception {
+    try (Connection connection = db.openConnection();
+      PreparedStatement pstmt = connection.prepareStatement("select binary_data from file_sources where file_uuid=?")) {
+      pstmt.setString(1, fileUuid);
+      try (ResultSet rs = pstmt.executeQuery()) {
+        rs.next();
+        return rs.getBytes(1);
+      }
+    }
+  }
+}
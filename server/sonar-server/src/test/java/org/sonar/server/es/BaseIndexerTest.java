@@ -0,0 +1,109 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.es;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import org.elasticsearch.action.index.IndexRequest;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class BaseIndexerTest {
+
+  @Rule
+  public EsTester esTester = new EsTester().addDefinitions(new FakeIndexDefinition());
+
+  @Test
+  public void save_checkpoints_and_resume_interrupted_indexing() throws Exception {
+    // documents are identified by their update date
+    FakeIndexer indexer = new FakeIndexer(Lists.newArrayList(1L, 2L, 2L, 3L, 4L, 5L, 6L, 7L));
+    indexer.failOn = 5L;
+    indexer.start();
+    try {
+      indexer.index();
+      fail();
+    } catch (RuntimeException e) {
+      assertThat(Throwables.getRootCause(e)).hasMessage("Interrupted");
+    }
+    assertThat(checkpoint()).isEqualTo(2L);
+    indexer.stop();
+
+    indexer = new FakeIndexer(Lists.newArrayList(1L, 2L, 2L, 3L, 4L, 5L, 6L, 7L));
+    indexer.start();
+    indexer.index();
+
+    assertThat(indexer.indexed).containsExactly(3L, 4L, 5L, 6L, 7L);
+    assertThat(checkpoint()).isNull();
+    indexer.stop();
+  }
+
+  @Test
+  public void no_checkpoint_on_small_indexing() throws Exception {
+    FakeIndexer indexer = new FakeIndexer(Lists.newArrayList(1L, 2L, 3L));
+    indexer.start();
+    indexer.index();
+
+    assertThat(indexer.indexed).containsExactly(1L, 2L, 3L);
+    assertThat(checkpoint()).isNull();
+    indexer.stop();
+  }
+
+  private Long checkpoint() {
+    return esTester.client().getCheckpoint(FakeIndexDefinition.INDEX, FakeIndexDefinition.TYPE);
+  }
+
+  private class FakeIndexer extends BaseIndexer {
+    private final List<Long> updateDates;
+    private final List<Long> indexed = Lists.newArrayList();
+    private Long failOn = null;
+
+    FakeIndexer(List<Long> updateDates) {
+      super(esTester.client(), 0L, FakeIndexDefinition.INDEX, FakeIndexDefinition.TYPE);
+      this.updateDates = updateDates;
+    }
+
+    @Override
+    protected long doIndex(long lastUpdatedAt) {
+      BulkIndexer bulk = new BulkIndexer(esClient, FakeIndexDefinition.INDEX);
+      CheckpointTracker checkpoints = new CheckpointTracker(bulk, 2);
+      bulk.start();
+      long maxUpdatedAt = 0L;
+      for (Long updatedAt : updateDates) {
+        if (updatedAt > lastUpdatedAt) {
+          if (updatedAt.equals(failOn)) {
+            throw new IllegalStateException("Interrupted");
+          }
+          checkpoints.beforeAdd(updatedAt);
+          bulk.add(new IndexRequest(FakeIndexDefinition.INDEX, FakeIndexDefinition.TYPE)
+            .source(FakeIndexDefinition.newDoc(updatedAt.intValue())));
+          indexed.add(updatedAt);
+          maxUpdatedAt = updatedAt;
+        }
+      }
+      bulk.stop();
+      return maxUpdatedAt;
+    }
+  }
+}
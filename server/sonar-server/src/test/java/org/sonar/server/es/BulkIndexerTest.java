@@ -29,6 +29,7 @@ import org.junit.Rule;
 import org.junit.Test;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
 
 public class BulkIndexerTest {
 
@@ -84,6 +85,49 @@ public class BulkIndexerTest {
     assertThat(replicas()).isEqualTo(1);
   }
 
+  @Test
+  public void send_bulk_requests_in_background() throws Exception {
+    BulkIndexer indexer = new BulkIndexer(esTester.client(), FakeIndexDefinition.INDEX)
+      .setConcurrentRequests(2)
+      .setFlushByteSize(new ByteSizeValue(1, ByteSizeUnit.BYTES).bytes());
+    indexer.start();
+    for (int i = 0; i < 10; i++) {
+      indexer.add(newIndexRequest(i));
+    }
+    // wait for background requests
+    indexer.stop();
+
+    assertThat(count()).isEqualTo(10);
+  }
+
+  @Test
+  public void flush_pending_requests() throws Exception {
+    BulkIndexer indexer = new BulkIndexer(esTester.client(), FakeIndexDefinition.INDEX)
+      .setConcurrentRequests(2)
+      .setFlushByteSize(new ByteSizeValue(500, ByteSizeUnit.BYTES).bytes());
+    indexer.start();
+    for (int i = 0; i < 10; i++) {
+      indexer.add(newIndexRequest(i));
+    }
+    indexer.flush();
+    esTester.client().prepareRefresh(FakeIndexDefinition.INDEX).get();
+    assertThat(count()).isEqualTo(10);
+
+    indexer.add(newIndexRequest(10));
+    indexer.stop();
+    assertThat(count()).isEqualTo(11);
+  }
+
+  @Test
+  public void fail_if_negative_concurrent_requests() throws Exception {
+    try {
+      new BulkIndexer(esTester.client(), FakeIndexDefinition.INDEX).setConcurrentRequests(-1);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("Number of concurrent requests must be positive or zero: -1");
+    }
+  }
+
   private long count() {
     return esTester.countDocuments("fakes", "fake");
   }
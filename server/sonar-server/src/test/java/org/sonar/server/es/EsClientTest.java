@@ -40,6 +40,8 @@ import org.sonar.server.es.request.ProxyRefreshRequestBuilder;
 import org.sonar.server.es.request.ProxySearchRequestBuilder;
 import org.sonar.server.es.request.ProxySearchScrollRequestBuilder;
 
+import java.util.Map;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 public class EsClientTest {
@@ -75,4 +77,27 @@ public class EsClientTest {
 
     client.stop();
   }
+
+  @Test
+  public void save_checkpoint_in_mapping() throws Exception {
+    EsClient client = es.client();
+    client.prepareCreate(FakeIndexDefinition.INDEX).get();
+    client.preparePutMapping(FakeIndexDefinition.INDEX).setType(FakeIndexDefinition.TYPE)
+      .setSource("{\"" + FakeIndexDefinition.TYPE + "\": {\"properties\": {\"intField\": {\"type\": \"integer\"}}}}").get();
+    assertThat(client.getCheckpoint(FakeIndexDefinition.INDEX, FakeIndexDefinition.TYPE)).isNull();
+
+    client.setCheckpoint(FakeIndexDefinition.INDEX, FakeIndexDefinition.TYPE, 1500L);
+    assertThat(client.getCheckpoint(FakeIndexDefinition.INDEX, FakeIndexDefinition.TYPE)).isEqualTo(1500L);
+
+    client.setCheckpoint(FakeIndexDefinition.INDEX, FakeIndexDefinition.TYPE, 3000000000000L);
+    assertThat(client.getCheckpoint(FakeIndexDefinition.INDEX, FakeIndexDefinition.TYPE)).isEqualTo(3000000000000L);
+
+    client.setCheckpoint(FakeIndexDefinition.INDEX, FakeIndexDefinition.TYPE, null);
+    assertThat(client.getCheckpoint(FakeIndexDefinition.INDEX, FakeIndexDefinition.TYPE)).isNull();
+
+    // fields are kept
+    Map<String, Object> source = client.nativeClient().admin().indices().prepareGetMappings(FakeIndexDefinition.INDEX).get()
+      .mappings().get(FakeIndexDefinition.INDEX).get(FakeIndexDefinition.TYPE).sourceAsMap();
+    assertThat((Map) source.get("properties")).containsKey("intField");
+  }
 }
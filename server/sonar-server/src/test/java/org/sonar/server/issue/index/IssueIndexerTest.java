@@ -74,6 +74,28 @@ public class IssueIndexerTest {
     assertThat(esTester.countDocuments("issues", "issue")).isZero();
   }
 
+  @Test
+  public void resume_interrupted_indexing_from_checkpoint() throws Exception {
+    dbTester.prepareDbUnit(getClass(), "index.xml");
+
+    // issues updated at or before the checkpoint are already indexed
+    esTester.client().setCheckpoint(IssueIndexDefinition.INDEX, IssueIndexDefinition.TYPE_ISSUE, 2000000000L);
+    IssueIndexer indexer = createIndexer();
+    indexer.start();
+    indexer.index();
+    assertThat(esTester.countDocuments(IssueIndexDefinition.INDEX, IssueIndexDefinition.TYPE_ISSUE)).isZero();
+    assertThat(esTester.client().getCheckpoint(IssueIndexDefinition.INDEX, IssueIndexDefinition.TYPE_ISSUE)).isNull();
+    indexer.stop();
+
+    esTester.client().setCheckpoint(IssueIndexDefinition.INDEX, IssueIndexDefinition.TYPE_ISSUE, 1999999999L);
+    indexer = createIndexer();
+    indexer.start();
+    indexer.index();
+    assertThat(esTester.countDocuments(IssueIndexDefinition.INDEX, IssueIndexDefinition.TYPE_ISSUE)).isEqualTo(1L);
+    assertThat(esTester.client().getCheckpoint(IssueIndexDefinition.INDEX, IssueIndexDefinition.TYPE_ISSUE)).isNull();
+    indexer.stop();
+  }
+
   private IssueIndexer createIndexer() {
     return new IssueIndexer(new DbClient(dbTester.database(), dbTester.myBatis()), esTester.client());
   }
@@ -0,0 +1,174 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.sonar.server.issue.ws;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.sonar.api.issue.ActionPlan;
+import org.sonar.api.issue.internal.DefaultIssueComment;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.user.User;
+import org.sonar.api.user.UserFinder;
+import org.sonar.core.component.ComponentDto;
+import org.sonar.core.issue.DefaultActionPlan;
+import org.sonar.core.issue.db.IssueChangeDao;
+import org.sonar.core.persistence.DbSession;
+import org.sonar.core.user.DefaultUser;
+import org.sonar.server.component.db.ComponentDao;
+import org.sonar.server.db.DbClient;
+import org.sonar.server.issue.actionplan.ActionPlanService;
+import org.sonar.server.rule.RuleService;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SearchDataLoaderTest {
+
+  DbClient dbClient = mock(DbClient.class);
+  ComponentDao componentDao = mock(ComponentDao.class);
+  IssueChangeDao issueChangeDao = mock(IssueChangeDao.class);
+  UserFinder userFinder = mock(UserFinder.class);
+  ActionPlanService actionPlanService = mock(ActionPlanService.class);
+  RuleService ruleService = mock(RuleService.class);
+  ExecutorService executor = SearchDataLoader.newExecutor(2);
+  SearchDataLoader sut;
+
+  @Before
+  public void setUp() throws Exception {
+    when(dbClient.openSession(false)).thenReturn(mock(DbSession.class));
+    when(dbClient.componentDao()).thenReturn(componentDao);
+    sut = new SearchDataLoader(dbClient, issueChangeDao, userFinder, actionPlanService, ruleService);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void load_data_of_issues() throws Exception {
+    sut.issueKeys().add("ISSUE1");
+    sut.userLogins().addAll(Arrays.asList("simon", "simon"));
+    sut.actionPlanKeys().add("AP1");
+    sut.ruleKeys().add(RuleKey.of("squid", "S001"));
+    sut.componentUuids().add("FILE1");
+    DefaultIssueComment comment = new DefaultIssueComment().setIssueKey("ISSUE1").setUserLogin("julien");
+    when(issueChangeDao.selectCommentsByIssues(any(DbSession.class), eq(Collections.singleton("ISSUE1")))).thenReturn(Arrays.asList(comment));
+    when(userFinder.findByLogins(anyListOf(String.class))).thenReturn(Arrays.<User>asList(new DefaultUser().setLogin("simon"), new DefaultUser().setLogin("julien")));
+    ActionPlan actionPlan = new DefaultActionPlan().setKey("AP1");
+    when(actionPlanService.findByKeys(Collections.singleton("AP1"))).thenReturn(Arrays.asList(actionPlan));
+    ComponentDto file = new ComponentDto().setId(1L).setUuid("FILE1").setProjectUuid("PROJECT1");
+    ComponentDto project = new ComponentDto().setId(2L).setUuid("PROJECT1").setProjectUuid("PROJECT1");
+    when(componentDao.getByUuids(any(DbSession.class), eq(Collections.singleton("FILE1")))).thenReturn(Arrays.asList(file));
+    when(componentDao.getByUuids(any(DbSession.class), eq(Collections.singleton("PROJECT1")))).thenReturn(Arrays.asList(project));
+
+    sut.load(executor);
+
+    assertThat(sut.commentsByIssues().get("ISSUE1")).containsOnly(comment);
+    assertThat(sut.usersByLogin().keySet()).containsOnly("simon", "julien");
+    // logins are deduplicated and include authors of comments
+    ArgumentCaptor<List> logins = ArgumentCaptor.forClass(List.class);
+    verify(userFinder).findByLogins(logins.capture());
+    assertThat(logins.getValue()).hasSize(2).contains("simon", "julien");
+    assertThat(sut.actionPlansByKey()).containsEntry("AP1", actionPlan);
+    assertThat(sut.components()).containsOnly(file, project);
+    assertThat(sut.projects()).containsOnly(project);
+    verify(ruleService).getByKeys(Collections.singleton(RuleKey.of("squid", "S001")));
+  }
+
+  @Test
+  public void do_not_load_rules_if_hidden() throws Exception {
+    sut.setLoadRules(false).load(executor);
+
+    assertThat(sut.rules()).isEmpty();
+    verify(ruleService, never()).getByKeys(anyCollection());
+  }
+
+  @Test
+  public void propagate_failure_of_concurrent_load() throws Exception {
+    when(actionPlanService.findByKeys(anyCollection())).thenThrow(new IllegalStateException("Fail to load action plans"));
+
+    try {
+      sut.load(executor);
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("Fail to load action plans");
+    }
+  }
+
+  @Test
+  public void execute_task_on_calling_thread_when_all_threads_are_busy() throws Exception {
+    ExecutorService singleThread = SearchDataLoader.newExecutor(1);
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch released = new CountDownLatch(1);
+    try {
+      singleThread.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          started.countDown();
+          released.await();
+          return null;
+        }
+      });
+      assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+
+      Thread thread = singleThread.submit(new Callable<Thread>() {
+        @Override
+        public Thread call() {
+          return Thread.currentThread();
+        }
+      }).get(10, TimeUnit.SECONDS);
+
+      assertThat(thread).isSameAs(Thread.currentThread());
+    } finally {
+      released.countDown();
+      singleThread.shutdownNow();
+    }
+  }
+
+  @Test
+  public void execute_task_on_calling_thread_when_executor_is_shut_down() throws Exception {
+    ExecutorService stopped = SearchDataLoader.newExecutor(1);
+    stopped.shutdownNow();
+
+    sut.setLoadRules(false).load(stopped);
+
+    assertThat(sut.actionPlansByKey()).isEmpty();
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.search;
+
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequestBuilder;
+import org.elasticsearch.action.admin.indices.refresh.RefreshResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.client.Client;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.api.platform.ComponentContainer;
+import org.sonar.server.search.action.DeleteKey;
+import org.sonar.server.search.action.IndexAction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IndexQueueTest {
+
+  SearchClient searchClient = mock(SearchClient.class);
+  ComponentContainer container = mock(ComponentContainer.class);
+  RefreshRequestBuilder refreshRequest = mock(RefreshRequestBuilder.class);
+  List<RecordingBulk> bulks = Collections.synchronizedList(new ArrayList<RecordingBulk>());
+  boolean failingBulks = false;
+  IndexQueue queue;
+
+  @Before
+  public void setUp() {
+    Index index = mock(Index.class);
+    when(index.getIndexType()).thenReturn("TESTING");
+    when(index.getIndexName()).thenReturn("TEST");
+    when(container.getComponentsByType(Index.class)).thenReturn(Arrays.asList(index));
+
+    when(searchClient.prepareBulk()).thenAnswer(new Answer<BulkRequestBuilder>() {
+      @Override
+      public BulkRequestBuilder answer(InvocationOnMock invocation) {
+        RecordingBulk bulk = new RecordingBulk();
+        bulks.add(bulk);
+        return bulk;
+      }
+    });
+    when(searchClient.prepareRefresh(anyString())).thenReturn(refreshRequest);
+    when(refreshRequest.setForce(anyBoolean())).thenReturn(refreshRequest);
+    when(refreshRequest.get()).thenReturn(mock(RefreshResponse.class));
+
+    queue = new IndexQueue(searchClient, container);
+    queue.start();
+  }
+
+  @After
+  public void tearDown() {
+    queue.stop();
+  }
+
+  @Test
+  public void do_nothing_on_empty_actions() {
+    queue.enqueue(Collections.<IndexAction<?>>emptyList());
+
+    assertThat(bulks).isEmpty();
+    verify(searchClient, never()).prepareRefresh(anyString());
+  }
+
+  @Test
+  public void split_requests_into_bounded_bulks() {
+    int nbActions = 3 * IndexQueue.MAX_BULK_SIZE + 10;
+    queue.enqueue(deleteActions(nbActions));
+
+    int nbRequests = 0;
+    for (RecordingBulk bulk : bulks) {
+      assertThat(bulk.requests.size()).isLessThanOrEqualTo(IndexQueue.MAX_BULK_SIZE);
+      nbRequests += bulk.requests.size();
+    }
+    assertThat(nbRequests).isEqualTo(nbActions);
+    assertThat(bulks.size()).isGreaterThan(3);
+    verify(searchClient).prepareRefresh("TEST");
+
+    IndexQueue.Stats stats = queue.getStats();
+    assertThat(stats.getBulks()).isEqualTo(bulks.size());
+    assertThat(stats.getPendingActions()).isEqualTo(0);
+    assertThat(stats.getPendingBulks()).isEqualTo(0);
+  }
+
+  @Test
+  public void keep_order_of_requests_on_same_document() {
+    List<IndexAction<?>> actions = new ArrayList<IndexAction<?>>();
+    for (int i = 0; i < 2 * IndexQueue.MAX_BULK_SIZE; i++) {
+      actions.add(new DeleteKey<String>("TESTING", "key" + (i % 10)));
+    }
+    queue.enqueue(actions);
+
+    // requests of a document are sent by the same thread, in a single bulk or in sequential bulks
+    Map<String, RecordingBulk> bulkByDocument = new HashMap<String, RecordingBulk>();
+    Map<String, Integer> countByDocument = new HashMap<String, Integer>();
+    for (RecordingBulk bulk : bulks) {
+      for (ActionRequest request : bulk.requests) {
+        String id = ((DeleteRequest) request).id();
+        RecordingBulk previous = bulkByDocument.put(id, bulk);
+        if (previous != null && previous != bulk) {
+          assertThat(previous.lane).isEqualTo(bulk.lane);
+        }
+        Integer count = countByDocument.get(id);
+        countByDocument.put(id, count == null ? 1 : count + 1);
+      }
+    }
+    assertThat(countByDocument).hasSize(10);
+    for (Integer count : countByDocument.values()) {
+      assertThat(count).isEqualTo(2 * IndexQueue.MAX_BULK_SIZE / 10);
+    }
+  }
+
+  @Test
+  public void fail_if_bulk_has_failures() {
+    failingBulks = true;
+    try {
+      queue.enqueue(deleteActions(10));
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage()).startsWith("Errors while indexing stack");
+    }
+    assertThat(queue.getStats().getPendingActions()).isEqualTo(0);
+    verify(searchClient, never()).prepareRefresh(anyString());
+  }
+
+  private static List<IndexAction<?>> deleteActions(int count) {
+    List<IndexAction<?>> actions = new ArrayList<IndexAction<?>>();
+    for (int i = 0; i < count; i++) {
+      actions.add(new DeleteKey<String>("TESTING", "key" + i));
+    }
+    return actions;
+  }
+
+  private class RecordingBulk extends BulkRequestBuilder {
+    private final List<ActionRequest> requests = new ArrayList<ActionRequest>();
+    private String lane;
+
+    RecordingBulk() {
+      super(mock(Client.class));
+    }
+
+    @Override
+    public BulkRequestBuilder add(DeleteRequest request) {
+      requests.add(request);
+      return super.add(request);
+    }
+
+    @Override
+    public BulkResponse get() {
+      lane = Thread.currentThread().getName();
+      BulkResponse response = mock(BulkResponse.class);
+      when(response.hasFailures()).thenReturn(failingBulks);
+      when(response.buildFailureMessage()).thenReturn("failure");
+      return response;
+    }
+  }
+}
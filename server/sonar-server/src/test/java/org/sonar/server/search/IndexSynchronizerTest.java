@@ -0,0 +1,123 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.search;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.internal.util.reflection.Whitebox;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.core.persistence.DbSession;
+import org.sonar.server.activity.db.ActivityDao;
+import org.sonar.server.activity.index.ActivityIndex;
+import org.sonar.server.db.DbClient;
+import org.sonar.server.issue.index.IssueAuthorizationIndexer;
+import org.sonar.server.issue.index.IssueIndexer;
+import org.sonar.server.qualityprofile.db.ActiveRuleDao;
+import org.sonar.server.qualityprofile.index.ActiveRuleIndex;
+import org.sonar.server.rule.db.RuleDao;
+import org.sonar.server.rule.index.RuleIndex;
+import org.sonar.server.source.index.SourceLineIndexer;
+import org.sonar.server.user.index.UserIndexer;
+
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IndexSynchronizerTest {
+
+  DbClient db = mock(DbClient.class);
+  IndexClient index = mock(IndexClient.class);
+  SourceLineIndexer sourceLineIndexer = mock(SourceLineIndexer.class);
+  IssueAuthorizationIndexer issueAuthorizationIndexer = mock(IssueAuthorizationIndexer.class);
+  IssueIndexer issueIndexer = mock(IssueIndexer.class);
+  UserIndexer userIndexer = mock(UserIndexer.class);
+  RuleDao ruleDao = mock(RuleDao.class);
+  ActiveRuleDao activeRuleDao = mock(ActiveRuleDao.class);
+  ActivityDao activityDao = mock(ActivityDao.class);
+  RuleIndex ruleIndex = mock(RuleIndex.class);
+  ActiveRuleIndex activeRuleIndex = mock(ActiveRuleIndex.class);
+  ActivityIndex activityIndex = mock(ActivityIndex.class);
+  IndexSynchronizer synchronizer;
+
+  @Before
+  public void setUp() {
+    when(db.openSession(false)).thenAnswer(new Answer<DbSession>() {
+      @Override
+      public DbSession answer(InvocationOnMock invocation) {
+        return mock(DbSession.class);
+      }
+    });
+    when(db.ruleDao()).thenReturn(ruleDao);
+    when(db.activeRuleDao()).thenReturn(activeRuleDao);
+    when(db.activityDao()).thenReturn(activityDao);
+    when(index.get(RuleIndex.class)).thenReturn(ruleIndex);
+    when(index.get(ActiveRuleIndex.class)).thenReturn(activeRuleIndex);
+    when(index.get(ActivityIndex.class)).thenReturn(activityIndex);
+    // getIndexType() is final
+    Whitebox.setInternalState(ruleIndex, "indexDefinition", IndexDefinition.RULE);
+    Whitebox.setInternalState(activeRuleIndex, "indexDefinition", IndexDefinition.ACTIVE_RULE);
+    Whitebox.setInternalState(activityIndex, "indexDefinition", IndexDefinition.LOG);
+    when(ruleIndex.getIndexStat()).thenReturn(new IndexStat(null, 0L));
+    when(activeRuleIndex.getIndexStat()).thenReturn(new IndexStat(null, 0L));
+    when(activityIndex.getIndexStat()).thenReturn(new IndexStat(new Date(), 10L));
+    when(activityIndex.getLastSynchronization()).thenReturn(new Date(1500L));
+
+    synchronizer = new IndexSynchronizer(db, index, sourceLineIndexer, issueAuthorizationIndexer, issueIndexer, userIndexer);
+  }
+
+  @Test
+  public void synchronize_all_indices() {
+    synchronizer.execute();
+
+    verify(ruleDao).synchronizeAfter(any(DbSession.class));
+    verify(activeRuleDao).synchronizeAfter(any(DbSession.class));
+    verify(activityDao).synchronizeAfter(any(DbSession.class), eq(new Date(1500L)));
+    verify(sourceLineIndexer).index();
+    verify(userIndexer).index();
+
+    InOrder inOrder = inOrder(issueAuthorizationIndexer, issueIndexer);
+    inOrder.verify(issueAuthorizationIndexer).index();
+    inOrder.verify(issueIndexer).index();
+  }
+
+  @Test
+  public void fail_when_a_task_fails_after_completion_of_others() {
+    doThrow(new IllegalStateException("Fail to index")).when(sourceLineIndexer).index();
+
+    try {
+      synchronizer.execute();
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("Fail to index");
+    }
+    verify(issueIndexer).index();
+    verify(userIndexer).index();
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.sonar.server.source;
+
+import org.junit.Test;
+import org.sonar.server.source.index.SourceLineDoc;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DecoratedSourceCacheTest {
+
+  static final Date UPDATED_AT = new Date(1000L);
+
+  HtmlSourceDecorator decorator = mock(HtmlSourceDecorator.class);
+
+  @Test
+  public void decorate_lines_once() throws Exception {
+    when(decorator.getDecoratedSourceAsHtml("foo", "h", "s")).thenReturn("<span>foo</span>");
+    when(decorator.getDecoratedSourceAsHtml("bar", "h", "s")).thenReturn("<span>bar</span>");
+    DecoratedSourceCache cache = new DecoratedSourceCache(decorator);
+    List<SourceLineDoc> lines = Arrays.asList(line("FILE1", 1, "foo", UPDATED_AT), line("FILE1", 2, "bar", UPDATED_AT));
+
+    assertThat(cache.getDecoratedSourceAsHtml(lines)).containsExactly("<span>foo</span>", "<span>bar</span>");
+    assertThat(cache.getDecoratedSourceAsHtml(lines)).containsExactly("<span>foo</span>", "<span>bar</span>");
+
+    verify(decorator, times(1)).getDecoratedSourceAsHtml("foo", "h", "s");
+    assertThat(cache.hitCount()).isEqualTo(1L);
+    assertThat(cache.missCount()).isEqualTo(1L);
+    assertThat(cache.entryCount()).isEqualTo(1);
+    assertThat(cache.size()).isEqualTo(34L);
+  }
+
+  @Test
+  public void decorate_again_lines_of_updated_file() throws Exception {
+    when(decorator.getDecoratedSourceAsHtml(anyString(), anyString(), anyString())).thenReturn("<span>foo</span>");
+    DecoratedSourceCache cache = new DecoratedSourceCache(decorator);
+
+    cache.getDecoratedSourceAsHtml(Arrays.asList(line("FILE1", 1, "foo", UPDATED_AT)));
+    cache.getDecoratedSourceAsHtml(Arrays.asList(line("FILE1", 1, "foo", new Date(2000L))));
+    // other range of lines
+    cache.getDecoratedSourceAsHtml(Arrays.asList(line("FILE1", 1, "foo", UPDATED_AT), line("FILE1", 2, "foo", UPDATED_AT)));
+
+    assertThat(cache.hitCount()).isEqualTo(0L);
+    assertThat(cache.missCount()).isEqualTo(3L);
+  }
+
+  @Test
+  public void evict_least_recently_used_ranges() throws Exception {
+    when(decorator.getDecoratedSourceAsHtml(anyString(), anyString(), anyString())).thenReturn("123456789");
+    // room for two lines
+    DecoratedSourceCache cache = new DecoratedSourceCache(decorator, 20L);
+
+    cache.getDecoratedSourceAsHtml(Arrays.asList(line("FILE1", 1, "foo", UPDATED_AT)));
+    cache.getDecoratedSourceAsHtml(Arrays.asList(line("FILE2", 1, "foo", UPDATED_AT)));
+    // FILE1 becomes the most recently used
+    cache.getDecoratedSourceAsHtml(Arrays.asList(line("FILE1", 1, "foo", UPDATED_AT)));
+    cache.getDecoratedSourceAsHtml(Arrays.asList(line("FILE3", 1, "foo", UPDATED_AT)));
+    assertThat(cache.entryCount()).isEqualTo(2);
+    assertThat(cache.size()).isEqualTo(20L);
+
+    cache.getDecoratedSourceAsHtml(Arrays.asList(line("FILE1", 1, "foo", UPDATED_AT)));
+    cache.getDecoratedSourceAsHtml(Arrays.asList(line("FILE2", 1, "foo", UPDATED_AT)));
+    assertThat(cache.hitCount()).isEqualTo(2L);
+    assertThat(cache.missCount()).isEqualTo(4L);
+  }
+
+  @Test
+  public void do_not_cache_ranges_bigger_than_cache() throws Exception {
+    when(decorator.getDecoratedSourceAsHtml(anyString(), anyString(), anyString())).thenReturn("123456789");
+    DecoratedSourceCache cache = new DecoratedSourceCache(decorator, 15L);
+
+    assertThat(cache.getDecoratedSourceAsHtml(Arrays.asList(line("FILE1", 1, "foo", UPDATED_AT), line("FILE1", 2, "foo", UPDATED_AT)))).hasSize(2);
+
+    assertThat(cache.entryCount()).isEqualTo(0);
+    assertThat(cache.size()).isEqualTo(0L);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void fail_if_lines_of_different_files() throws Exception {
+    new DecoratedSourceCache(decorator).getDecoratedSourceAsHtml(Arrays.asList(line("FILE1", 1, "foo", UPDATED_AT), line("FILE2", 2, "foo", UPDATED_AT)));
+  }
+
+  private static SourceLineDoc line(String fileUuid, int line, String source, Date updatedAt) {
+    return new SourceLineDoc()
+      .setFileUuid(fileUuid)
+      .setLine(line)
+      .setSource(source)
+      .setHighlighting("h")
+      .setSymbols("s")
+      .setUpdateDate(updatedAt);
+  }
+}
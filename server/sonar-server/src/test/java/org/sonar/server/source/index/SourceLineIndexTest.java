@@ -19,6 +19,10 @@
  */
 package org.sonar.server.source.index;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.index.IndexRequest;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -26,6 +30,8 @@ import org.sonar.api.config.Settings;
 import org.sonar.server.es.EsTester;
 import org.sonar.server.exceptions.NotFoundException;
 
+import java.util.List;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 public class SourceLineIndexTest {
@@ -55,6 +61,30 @@ public class SourceLineIndexTest {
     assertThat(index.getLines("file1", 2, 2)).hasSize(1);
   }
 
+  @Test
+  public void scroll_lines_by_pages() throws Exception {
+    BulkRequestBuilder bulk = es.client().prepareBulk().setRefresh(true);
+    for (int line = 1; line <= 2500; line++) {
+      bulk.add(new IndexRequest(SourceLineIndexDefinition.INDEX, SourceLineIndexDefinition.TYPE).source(ImmutableMap.of(
+        SourceLineIndexDefinition.FIELD_FILE_UUID, "file1",
+        SourceLineIndexDefinition.FIELD_LINE, line,
+        SourceLineIndexDefinition.FIELD_SOURCE, "line " + line)));
+    }
+    bulk.get();
+
+    List<SourceLineDoc> lines = Lists.newArrayList(index.scrollLines("file1", 1, Integer.MAX_VALUE));
+    assertThat(lines).hasSize(2500);
+    assertThat(lines.get(0).line()).isEqualTo(1);
+    assertThat(lines.get(2499).line()).isEqualTo(2500);
+
+    lines = Lists.newArrayList(index.scrollLines("file1", 999, 2001));
+    assertThat(lines).hasSize(1003);
+    assertThat(lines.get(0).line()).isEqualTo(999);
+    assertThat(lines.get(1002).line()).isEqualTo(2001);
+
+    assertThat(index.scrollLines("file2", 1, Integer.MAX_VALUE).hasNext()).isFalse();
+  }
+
   @Test(expected = IllegalArgumentException.class)
   public void should_reject_from_less_than_1() {
     index.getLines("polop", 0, 0);
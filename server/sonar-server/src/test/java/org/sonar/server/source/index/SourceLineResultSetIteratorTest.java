@@ -24,12 +24,18 @@ import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
+import org.sonar.api.utils.DateUtils;
 import org.sonar.core.persistence.DbTester;
+import org.sonar.core.source.db.FileSourceData;
+import org.sonar.core.source.db.FileSourceData.Column;
 import org.sonar.server.db.DbClient;
 import org.sonar.test.DbTests;
 
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.fail;
@@ -58,12 +64,31 @@ public class SourceLineResultSetIteratorTest {
   @Test
   public void should_generate_source_line_documents() throws Exception {
     db.prepareDbUnit(getClass(), "shared.xml");
-    PreparedStatement stmt = connection.prepareStatement("UPDATE file_sources SET data = ? WHERE id=1");
-    stmt.setString(1, "aef12a,alice,2014-04-25T12:34:56+0100,1,0,0,2,0,0,3,0,0,polop,palap,,class Foo {\r\n" +
-      "abe465,bob,2014-07-25T12:34:56+0100,,,,,,,,,,,,,  // Empty\r\n" +
-      "afb789,carol,2014-03-23T12:34:56+0100,,,,,,,,,,,,,}\r\n" +
-      "afb789,carol,2014-03-23T12:34:56+0100,,,,,,,,,,,,,\r\n");
-    stmt.executeUpdate();
+    FileSourceData data = FileSourceData.newBuilder(4)
+      .setString(Column.SCM_REVISION, 1, "aef12a")
+      .setString(Column.SCM_AUTHOR, 1, "alice")
+      .setDate(Column.SCM_DATE, 1, DateUtils.parseDateTime("2014-04-25T12:34:56+0100"))
+      .setInteger(Column.UT_LINE_HITS, 1, 1)
+      .setInteger(Column.UT_CONDITIONS, 1, 0)
+      .setInteger(Column.UT_COVERED_CONDITIONS, 1, 0)
+      .setInteger(Column.IT_LINE_HITS, 1, 2)
+      .setInteger(Column.IT_CONDITIONS, 1, 0)
+      .setInteger(Column.IT_COVERED_CONDITIONS, 1, 0)
+      .setInteger(Column.OVERALL_LINE_HITS, 1, 3)
+      .setInteger(Column.OVERALL_CONDITIONS, 1, 0)
+      .setInteger(Column.OVERALL_COVERED_CONDITIONS, 1, 0)
+      .setString(Column.HIGHLIGHTING, 1, "polop")
+      .setString(Column.SYMBOLS, 1, "palap")
+      .setString(Column.SOURCE, 1, "class Foo {")
+      .setString(Column.SCM_AUTHOR, 2, "bob")
+      .setIntegers(Column.DUPLICATIONS, 2, Arrays.asList(1, 2))
+      .setString(Column.SOURCE, 2, "  // Empty")
+      .setString(Column.SCM_AUTHOR, 3, "carol")
+      .setString(Column.SOURCE, 3, "}")
+      .setString(Column.SCM_AUTHOR, 4, "carol")
+      .setString(Column.SOURCE, 4, "")
+      .build();
+    updateBinaryData(data.encode());
 
     SourceLineResultSetIterator iterator = SourceLineResultSetIterator.create(dbClient, connection, 0L);
     assertThat(iterator.hasNext()).isTrue();
@@ -89,6 +114,16 @@ public class SourceLineResultSetIteratorTest {
     assertThat(firstLine.overallLineHits()).isEqualTo(3);
     assertThat(firstLine.overallConditions()).isEqualTo(0);
     assertThat(firstLine.overallCoveredConditions()).isEqualTo(0);
+    assertThat(firstLine.duplications()).isEmpty();
+
+    SourceLineDoc secondLine = file.getLines().get(1);
+    assertThat(secondLine.line()).isEqualTo(2);
+    assertThat(secondLine.scmAuthor()).isEqualTo("bob");
+    assertThat(secondLine.utLineHits()).isNull();
+    assertThat(secondLine.highlighting()).isNull();
+    assertThat(secondLine.duplications()).containsExactly(1, 2);
+    assertThat(secondLine.source()).isEqualTo("  // Empty");
+    assertThat(file.getLines().get(3).source()).isEmpty();
     iterator.close();
   }
 
@@ -126,12 +161,9 @@ public class SourceLineResultSetIteratorTest {
   }
 
   @Test
-  public void should_fail_on_bad_csv() throws Exception {
+  public void should_fail_on_bad_data() throws Exception {
     db.prepareDbUnit(getClass(), "shared.xml");
-    PreparedStatement stmt = connection.prepareStatement("UPDATE file_sources SET data = ? WHERE id=1");
-    stmt.setString(1, "plouf");
-    stmt.executeUpdate();
-    stmt.close();
+    updateBinaryData("plouf".getBytes(StandardCharsets.UTF_8));
 
     SourceLineResultSetIterator iterator = SourceLineResultSetIterator.create(dbClient, connection, 0L);
     try {
@@ -143,4 +175,11 @@ public class SourceLineResultSetIteratorTest {
     }
     iterator.close();
   }
+
+  private void updateBinaryData(byte[] data) throws SQLException {
+    PreparedStatement stmt = connection.prepareStatement("UPDATE file_sources SET binary_data = ? WHERE id=1");
+    stmt.setBytes(1, data);
+    stmt.executeUpdate();
+    stmt.close();
+  }
 }
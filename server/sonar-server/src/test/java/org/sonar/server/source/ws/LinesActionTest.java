@@ -37,6 +37,7 @@ import org.sonar.server.component.ComponentService;
 import org.sonar.server.exceptions.ForbiddenException;
 import org.sonar.server.exceptions.NotFoundException;
 import org.sonar.server.search.BaseNormalizer;
+import org.sonar.server.source.DecoratedSourceCache;
 import org.sonar.server.source.HtmlSourceDecorator;
 import org.sonar.server.source.index.SourceLineDoc;
 import org.sonar.server.source.index.SourceLineIndex;
@@ -77,7 +78,7 @@ public class LinesActionTest {
         mock(ShowAction.class),
         mock(RawAction.class),
         mock(ScmAction.class),
-        new LinesAction(sourceLineIndex, htmlSourceDecorator, componentService),
+        new LinesAction(sourceLineIndex, new DecoratedSourceCache(htmlSourceDecorator), componentService),
         mock(HashAction.class),
         mock(IndexAction.class)
       )
@@ -145,11 +146,11 @@ public class LinesActionTest {
       .put(SourceLineIndexDefinition.FIELD_DUPLICATIONS, ImmutableList.of())
       .put(BaseNormalizer.UPDATED_AT_FIELD, updatedAt)
       .build());
-    when(sourceLineIndex.getLines(eq(componentUuid), anyInt(), anyInt())).thenReturn(newArrayList(
+    when(sourceLineIndex.scrollLines(eq(componentUuid), anyInt(), anyInt())).thenReturn(newArrayList(
       line1,
       line2,
       line3
-    ));
+    ).iterator());
 
     String componentKey = "componentKey";
     when(componentService.getByUuid(componentUuid)).thenReturn(new ComponentDto().setKey(componentKey));
@@ -163,7 +164,7 @@ public class LinesActionTest {
   @Test
   public void fail_to_show_source_if_no_source_found() throws Exception {
     String componentUuid = "abcd";
-    when(sourceLineIndex.getLines(anyString(), anyInt(), anyInt())).thenReturn(Lists.<SourceLineDoc>newArrayList());
+    when(sourceLineIndex.scrollLines(anyString(), anyInt(), anyInt())).thenReturn(Lists.<SourceLineDoc>newArrayList().iterator());
 
     String componentKey = "componentKey";
     when(componentService.getByUuid(componentUuid)).thenReturn(new ComponentDto().setKey(componentKey));
@@ -201,9 +202,9 @@ public class LinesActionTest {
     when(componentService.getByUuid(fileUuid)).thenReturn(new ComponentDto().setKey(componentKey));
     MockUserSession.set().setLogin("login").addComponentPermission(UserRole.CODEVIEWER, "polop", componentKey);
 
-    when(sourceLineIndex.getLines(fileUuid, 3, 3)).thenReturn(newArrayList(
+    when(sourceLineIndex.scrollLines(fileUuid, 3, 3)).thenReturn(newArrayList(
       new SourceLineDoc(fieldMap)
-    ));
+    ).iterator());
     WsTester.TestRequest request = tester
       .newGetRequest("api/sources", "lines")
       .setParam("uuid", fileUuid)
@@ -75,6 +75,10 @@ class Server
     add_property(sonar_info, 'Automatic User Creation') { sonar_property(org.sonar.api.CoreProperties.CORE_AUTHENTICATOR_CREATE_USERS) }
     add_property(sonar_info, 'Allow Users to Sign Up') { sonar_property(org.sonar.api.CoreProperties.CORE_ALLOW_USERS_TO_SIGNUP_PROPERTY) }
     add_property(sonar_info, 'Force Authentication') { sonar_property(org.sonar.api.CoreProperties.CORE_FORCE_AUTHENTICATION_PROPERTY) }
+    add_property(sonar_info, 'Analysis Reports Started') { analysis_report_queue.getBookedReports() }
+    add_property(sonar_info, 'Analysis Reports Waiting Time (last/max)') { "#{analysis_report_queue.getLastWaitingTime()} ms / #{analysis_report_queue.getMaxWaitingTime()} ms" }
+    add_property(sonar_info, 'Decorated Source Cache (hits/misses)') { "#{decorated_source_cache.hitCount()} / #{decorated_source_cache.missCount()}" }
+    add_property(sonar_info, 'Decorated Source Cache Size') { "#{decorated_source_cache.entryCount()} entries, #{decorated_source_cache.size()} characters" }
     sonar_info
   end
 
@@ -84,6 +88,9 @@ class Server
     node_health = search_health.getClusterHealth()
     add_property(search_info, 'Cluster State') { node_health.isClusterAvailable() ? 'Available' : 'Unavailable' }
     add_property(search_info, 'Number of Nodes') { node_health.getNumberOfNodes() }
+    add_property(search_info, 'Index Queue Pending (actions/bulks)') { "#{index_queue_stats.getPendingActions()} / #{index_queue_stats.getPendingBulks()}" }
+    add_property(search_info, 'Index Queue Bulks Sent') { index_queue_stats.getBulks() }
+    add_property(search_info, 'Index Queue Time (normalization/indexing/refresh)') { "#{index_queue_stats.getNormalizationTime()} ms / #{index_queue_stats.getIndexingTime()} ms / #{index_queue_stats.getRefreshTime()} ms" }
 
     search_health.getIndexHealth().each do |name, index_health|
       add_property(search_info, "#{name} - Document Count") { index_health.getDocumentCount() }
@@ -151,6 +158,18 @@ class Server
     java.lang.System.getProperty(key)
   end
 
+  def analysis_report_queue
+    Java::OrgSonarServerPlatform::Platform.component(Java::OrgSonarServerComputation::AnalysisReportQueue.java_class)
+  end
+
+  def decorated_source_cache
+    Java::OrgSonarServerPlatform::Platform.component(Java::OrgSonarServerSource::DecoratedSourceCache.java_class)
+  end
+
+  def index_queue_stats
+    Java::OrgSonarServerPlatform::Platform.component(Java::OrgSonarServerSearch::IndexQueue.java_class).getStats()
+  end
+
   def add_property(properties, label)
     begin
       value=yield || '-'
@@ -26,6 +26,10 @@ import org.apache.commons.io.Charsets;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.sonar.batch.protocol.GsonHelper;
+import org.sonar.batch.protocol.output.binary.BinaryInput;
+import org.sonar.batch.protocol.output.binary.BinaryOutput;
+import org.sonar.batch.protocol.output.binary.ReportComponentsCodec;
+import org.sonar.batch.protocol.output.binary.ReportIssueCodec;
 import org.sonar.batch.protocol.output.component.ReportComponents;
 import org.sonar.batch.protocol.output.issue.ReportIssue;
 
@@ -35,44 +39,83 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.io.Reader;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
 public class ReportHelper {
 
-  private static final String COMPONENTS_JSON = "components.json";
+  private static final String COMPONENTS = "components.";
   private final File reportRootDir;
+  private final ReportFormat format;
   private final Gson gson = GsonHelper.create();
 
-  private ReportHelper(File reportRootDir) {
+  private ReportHelper(File reportRootDir, ReportFormat format) {
     this.reportRootDir = reportRootDir;
+    this.format = format;
   }
 
   public static ReportHelper create(File workDirectory) {
+    return create(workDirectory, ReportFormat.JSON);
+  }
+
+  /**
+   * @param format the format of the files to be written. Reading supports all the formats.
+   * @since 5.1
+   */
+  public static ReportHelper create(File workDirectory, ReportFormat format) {
     if (!workDirectory.exists() && !workDirectory.mkdirs()) {
       throw new IllegalStateException("Unable to create directory " + workDirectory);
     }
-    return new ReportHelper(workDirectory);
+    return new ReportHelper(workDirectory, format);
   }
 
   public File reportRootDir() {
     return reportRootDir;
   }
 
+  public ReportFormat format() {
+    return format;
+  }
+
   public void saveComponents(ReportComponents components) {
-    File resourcesFile = new File(reportRootDir, COMPONENTS_JSON);
+    File resourcesFile = getComponentsFile(format);
     try {
-      FileUtils.write(resourcesFile, components.toJson());
+      if (format == ReportFormat.BINARY) {
+        try (BinaryOutput output = new BinaryOutput(new FileOutputStream(resourcesFile))) {
+          ReportComponentsCodec.write(components, output);
+        }
+      } else {
+        FileUtils.write(resourcesFile, components.toJson(), Charsets.UTF_8);
+      }
     } catch (IOException e) {
       throw new IllegalStateException("Unable to write components", e);
     }
   }
 
   public void saveIssues(long componentBatchId, Iterable<ReportIssue> issues) {
-    File issuesFile = getIssuesFile(componentBatchId);
+    if (format == ReportFormat.BINARY) {
+      saveBinaryIssues(componentBatchId, issues);
+    } else {
+      saveJsonIssues(componentBatchId, issues);
+    }
+  }
+
+  private void saveBinaryIssues(long componentBatchId, Iterable<ReportIssue> issues) {
+    File issuesFile = getIssuesFile(componentBatchId, ReportFormat.BINARY);
+    try (BinaryOutput output = new BinaryOutput(new FileOutputStream(issuesFile))) {
+      for (ReportIssue reportIssue : issues) {
+        ReportIssueCodec.write(reportIssue, output);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to save issues", e);
+    }
+  }
+
+  private void saveJsonIssues(long componentBatchId, Iterable<ReportIssue> issues) {
+    File issuesFile = getIssuesFile(componentBatchId, ReportFormat.JSON);
     try (OutputStreamWriter out = new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(issuesFile)), "UTF-8")) {
 
       JsonWriter writer = new JsonWriter(out);
@@ -88,8 +131,12 @@ public class ReportHelper {
     }
   }
 
-  private File getIssuesFile(long componentBatchId) {
-    return new File(getComponentFolder(componentBatchId), "issues-" + componentBatchId + ".json");
+  private File getIssuesFile(long componentBatchId, ReportFormat fileFormat) {
+    return new File(getComponentFolder(componentBatchId), "issues-" + componentBatchId + "." + fileFormat.fileExtension());
+  }
+
+  private File getComponentsFile(ReportFormat fileFormat) {
+    return new File(reportRootDir, COMPONENTS + fileFormat.fileExtension());
   }
 
   private File getComponentFolder(long componentBatchId) {
@@ -100,27 +147,91 @@ public class ReportHelper {
     return folder;
   }
 
+  /**
+   * Components are read from the binary file if it exists, else from the JSON file.
+   */
   public ReportComponents getComponents() {
-    File file = new File(reportRootDir, COMPONENTS_JSON);
-
-    try (InputStream resourcesStream = new FileInputStream(file)) {
-      String json = IOUtils.toString(resourcesStream);
-      return ReportComponents.fromJson(json);
+    File binaryFile = getComponentsFile(ReportFormat.BINARY);
+    if (binaryFile.exists()) {
+      try (BinaryInput input = new BinaryInput(new FileInputStream(binaryFile))) {
+        return ReportComponentsCodec.read(input);
+      } catch (IOException e) {
+        throw new IllegalStateException("Failed to read components", e);
+      }
+    }
+    try (Reader reader = new InputStreamReader(new BufferedInputStream(new FileInputStream(getComponentsFile(ReportFormat.JSON))), Charsets.UTF_8)) {
+      return gson.fromJson(reader, ReportComponents.class);
     } catch (IOException e) {
-      throw new IllegalStateException("Failed to read issues", e);
+      throw new IllegalStateException("Failed to read components", e);
     }
   }
 
+  /**
+   * Issues are read from the binary file if it exists, else from the JSON file. They are streamed, so
+   * the returned {@link Iterable} should be iterated only once.
+   */
   public Iterable<ReportIssue> getIssues(final long componentBatchId) {
-
+    final File binaryFile = getIssuesFile(componentBatchId, ReportFormat.BINARY);
+    if (binaryFile.exists()) {
+      return new Iterable<ReportIssue>() {
+        @Override
+        public Iterator<ReportIssue> iterator() {
+          return new BinaryReportIssueIterator(binaryFile);
+        }
+      };
+    }
     return new Iterable<ReportIssue>() {
       @Override
       public Iterator<ReportIssue> iterator() {
-        return new ReportIssueIterator(getIssuesFile(componentBatchId));
+        return new ReportIssueIterator(getIssuesFile(componentBatchId, ReportFormat.JSON));
       }
     };
   }
 
+  private static final class BinaryReportIssueIterator implements Iterator<ReportIssue> {
+
+    private final BinaryInput input;
+    private Boolean hasNext = null;
+
+    public BinaryReportIssueIterator(File issuesFile) {
+      try {
+        input = new BinaryInput(new FileInputStream(issuesFile));
+      } catch (IOException e) {
+        throw new IllegalStateException("Unable to read " + issuesFile, e);
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (hasNext == null) {
+        try {
+          hasNext = input.nextRecord();
+          if (!hasNext) {
+            input.close();
+          }
+        } catch (IOException e) {
+          IOUtils.closeQuietly(input);
+          throw new IllegalStateException("Unable to iterate over binary file ", e);
+        }
+      }
+      return hasNext;
+    }
+
+    @Override
+    public ReportIssue next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      hasNext = null;
+      return ReportIssueCodec.read(input);
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("remove");
+    }
+  }
+
   private final class ReportIssueIterator implements Iterator<ReportIssue> {
 
     private JsonReader reader;
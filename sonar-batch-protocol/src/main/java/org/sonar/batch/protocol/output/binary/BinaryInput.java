@@ -0,0 +1,182 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.protocol.output.binary;
+
+import javax.annotation.CheckForNull;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the streams written by {@link BinaryOutput}. Only the current record is loaded in memory.
+ * @since 5.1
+ */
+public class BinaryInput implements Closeable {
+
+  private final DataInputStream input;
+  private final int version;
+  private byte[] record = new byte[256];
+  private int recordSize = 0;
+  private int position = 0;
+
+  public BinaryInput(InputStream input) throws IOException {
+    this.input = new DataInputStream(new BufferedInputStream(input));
+    int magic;
+    try {
+      magic = this.input.readInt();
+      this.version = this.input.readInt();
+    } catch (EOFException e) {
+      throw new IllegalStateException("Not a binary report: header is missing", e);
+    }
+    if (magic != BinaryOutput.MAGIC) {
+      throw new IllegalStateException("Not a binary report: bad magic number");
+    }
+    if (version < 1 || version > BinaryOutput.VERSION) {
+      throw new IllegalStateException(String.format("Unsupported version of binary report: %d (supported: %d)", version, BinaryOutput.VERSION));
+    }
+  }
+
+  public int version() {
+    return version;
+  }
+
+  /**
+   * Loads the next record. Fields of the previous record that have not been read are skipped.
+   *
+   * @return false if the end of stream is reached
+   */
+  public boolean nextRecord() throws IOException {
+    int first = input.read();
+    if (first < 0) {
+      return false;
+    }
+    int size = (first << 24) | (input.readUnsignedByte() << 16) | (input.readUnsignedByte() << 8) | input.readUnsignedByte();
+    if (size > record.length) {
+      record = new byte[Math.max(size, record.length * 2)];
+    }
+    input.readFully(record, 0, size);
+    recordSize = size;
+    position = 0;
+    return true;
+  }
+
+  public boolean readBoolean() {
+    return readByte() != 0;
+  }
+
+  @CheckForNull
+  public Boolean readNullableBoolean() {
+    int b = readByte();
+    return b == 0 ? null : (b == 2);
+  }
+
+  public int readInt() {
+    return (int) readLong();
+  }
+
+  @CheckForNull
+  public Integer readNullableInt() {
+    return readBoolean() ? readInt() : null;
+  }
+
+  public long readLong() {
+    long raw = readUnsignedVarLong();
+    return (raw >>> 1) ^ -(raw & 1);
+  }
+
+  @CheckForNull
+  public Long readNullableLong() {
+    return readBoolean() ? readLong() : null;
+  }
+
+  @CheckForNull
+  public Double readNullableDouble() {
+    if (!readBoolean()) {
+      return null;
+    }
+    long bits = 0L;
+    for (int i = 0; i < 8; i++) {
+      bits = (bits << 8) | readByte();
+    }
+    return Double.longBitsToDouble(bits);
+  }
+
+  @CheckForNull
+  public String readString() {
+    int length = readInt();
+    if (length < 0) {
+      return null;
+    }
+    checkAvailable(length);
+    String s = new String(record, position, length, StandardCharsets.UTF_8);
+    position += length;
+    return s;
+  }
+
+  @CheckForNull
+  public List<String> readStrings() {
+    int size = readInt();
+    if (size < 0) {
+      return null;
+    }
+    List<String> result = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      result.add(readString());
+    }
+    return result;
+  }
+
+  @Override
+  public void close() throws IOException {
+    input.close();
+  }
+
+  private long readUnsignedVarLong() {
+    long result = 0L;
+    int shift = 0;
+    int b;
+    do {
+      b = readByte();
+      result |= (long) (b & 0x7F) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return result;
+  }
+
+  private int readByte() {
+    checkAvailable(1);
+    int b = record[position] & 0xFF;
+    position++;
+    return b;
+  }
+
+  private void checkAvailable(int length) {
+    if (position + length > recordSize) {
+      throw new IllegalStateException("Corrupted binary report: unexpected end of record");
+    }
+  }
+}
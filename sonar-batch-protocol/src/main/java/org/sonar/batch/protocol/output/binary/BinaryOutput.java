@@ -0,0 +1,143 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.protocol.output.binary;
+
+import javax.annotation.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/**
+ * Writes a stream of records. The stream starts with a header (magic number and version of format), then
+ * each record is prefixed by its size in bytes, so that it can be read without loading the whole stream
+ * and so that readers can ignore the fields they don't know.
+ * <p/>
+ * Fields of the current record are written with the write* methods, then the record is flushed
+ * by {@link #endRecord()}. Integers are encoded as variable-length zigzag integers.
+ * @since 5.1
+ */
+public class BinaryOutput implements Closeable {
+
+  static final int MAGIC = 0x53514250;
+  static final int VERSION = 1;
+
+  private final DataOutputStream output;
+  private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+
+  public BinaryOutput(OutputStream output) throws IOException {
+    this.output = new DataOutputStream(new BufferedOutputStream(output));
+    this.output.writeInt(MAGIC);
+    this.output.writeInt(VERSION);
+  }
+
+  public BinaryOutput writeBoolean(boolean b) {
+    record.write(b ? 1 : 0);
+    return this;
+  }
+
+  public BinaryOutput writeNullableBoolean(@Nullable Boolean b) {
+    record.write(b == null ? 0 : (b ? 2 : 1));
+    return this;
+  }
+
+  public BinaryOutput writeInt(int i) {
+    return writeLong(i);
+  }
+
+  public BinaryOutput writeNullableInt(@Nullable Integer i) {
+    return writeNullableLong(i == null ? null : i.longValue());
+  }
+
+  public BinaryOutput writeLong(long l) {
+    writeUnsignedVarLong((l << 1) ^ (l >> 63));
+    return this;
+  }
+
+  public BinaryOutput writeNullableLong(@Nullable Long l) {
+    writeBoolean(l != null);
+    if (l != null) {
+      writeLong(l);
+    }
+    return this;
+  }
+
+  public BinaryOutput writeNullableDouble(@Nullable Double d) {
+    writeBoolean(d != null);
+    if (d != null) {
+      long bits = Double.doubleToLongBits(d);
+      for (int i = 56; i >= 0; i -= 8) {
+        record.write((int) (bits >>> i));
+      }
+    }
+    return this;
+  }
+
+  /**
+   * UTF-8 bytes prefixed by their length. Length is -1 for null.
+   */
+  public BinaryOutput writeString(@Nullable String s) {
+    if (s == null) {
+      writeInt(-1);
+    } else {
+      byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      writeInt(bytes.length);
+      record.write(bytes, 0, bytes.length);
+    }
+    return this;
+  }
+
+  public BinaryOutput writeStrings(@Nullable Collection<String> strings) {
+    if (strings == null) {
+      writeInt(-1);
+    } else {
+      writeInt(strings.size());
+      for (String s : strings) {
+        writeString(s);
+      }
+    }
+    return this;
+  }
+
+  public void endRecord() throws IOException {
+    output.writeInt(record.size());
+    record.writeTo(output);
+    record.reset();
+  }
+
+  @Override
+  public void close() throws IOException {
+    output.close();
+  }
+
+  private void writeUnsignedVarLong(long value) {
+    long l = value;
+    while ((l & ~0x7FL) != 0L) {
+      record.write((int) ((l & 0x7F) | 0x80));
+      l >>>= 7;
+    }
+    record.write((int) l);
+  }
+}
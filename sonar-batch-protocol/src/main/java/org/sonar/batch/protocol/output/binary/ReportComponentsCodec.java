@@ -0,0 +1,100 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.protocol.output.binary;
+
+import org.sonar.batch.protocol.output.component.ReportComponent;
+import org.sonar.batch.protocol.output.component.ReportComponents;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Date;
+
+/**
+ * The first record contains the analysis date, then there's one record per component, in depth-first order.
+ * Each component record ends with its number of children.
+ * @since 5.1
+ */
+public class ReportComponentsCodec {
+
+  private ReportComponentsCodec() {
+    // only static stuff
+  }
+
+  public static void write(ReportComponents components, BinaryOutput output) throws IOException {
+    Date analysisDate = components.analysisDate();
+    output.writeNullableLong(analysisDate == null ? null : analysisDate.getTime());
+    output.endRecord();
+    writeComponent(components.root(), output);
+  }
+
+  public static ReportComponents read(BinaryInput input) throws IOException {
+    ReportComponents components = new ReportComponents();
+    nextRecord(input);
+    Long analysisDate = input.readNullableLong();
+    components.setAnalysisDate(analysisDate == null ? null : new Date(analysisDate));
+    components.setRoot(readComponent(input));
+    return components;
+  }
+
+  private static void writeComponent(ReportComponent component, BinaryOutput output) throws IOException {
+    Collection<ReportComponent> children = component.children();
+    output
+      .writeLong(component.batchId())
+      .writeInt(component.id())
+      .writeInt(component.snapshotId())
+      .writeString(component.path())
+      .writeString(component.name())
+      .writeString(component.uuid())
+      .writeString(component.type() == null ? null : component.type().name())
+      .writeNullableBoolean(component.isTest())
+      .writeString(component.languageKey())
+      .writeInt(children.size())
+      .endRecord();
+    for (ReportComponent child : children) {
+      writeComponent(child, output);
+    }
+  }
+
+  private static ReportComponent readComponent(BinaryInput input) throws IOException {
+    nextRecord(input);
+    ReportComponent component = new ReportComponent()
+      .setBatchId(input.readLong())
+      .setId(input.readInt())
+      .setSnapshotId(input.readInt())
+      .setPath(input.readString())
+      .setName(input.readString());
+    component.setUuid(input.readString());
+    String type = input.readString();
+    component.setType(type == null ? null : ReportComponent.Type.valueOf(type));
+    component.setTest(input.readNullableBoolean());
+    component.setLanguageKey(input.readString());
+    int nbChildren = input.readInt();
+    for (int i = 0; i < nbChildren; i++) {
+      component.addChild(readComponent(input));
+    }
+    return component;
+  }
+
+  private static void nextRecord(BinaryInput input) throws IOException {
+    if (!input.nextRecord()) {
+      throw new IllegalStateException("Corrupted binary report: missing component");
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.protocol.output.binary;
+
+import org.sonar.batch.protocol.output.issue.ReportIssue;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * One record per issue
+ * @since 5.1
+ */
+public class ReportIssueCodec {
+
+  private ReportIssueCodec() {
+    // only static stuff
+  }
+
+  public static void write(ReportIssue issue, BinaryOutput output) throws IOException {
+    output
+      .writeNullableLong(issue.componentBatchId())
+      .writeString(issue.ruleRepo())
+      .writeString(issue.ruleKey())
+      .writeNullableInt(issue.line())
+      .writeString(issue.message())
+      .writeNullableDouble(issue.effortToFix())
+      .writeString(issue.severity())
+      .writeStrings(issue.tags())
+      .writeBoolean(issue.isNew())
+      .writeString(issue.key())
+      .writeNullableLong(issue.debt())
+      .writeString(issue.resolution())
+      .writeString(issue.status())
+      .writeString(issue.checksum())
+      .writeBoolean(issue.isManualSeverity())
+      .writeString(issue.reporter())
+      .writeString(issue.assignee())
+      .writeString(issue.actionPlanKey())
+      .writeString(issue.issueAttributes())
+      .writeString(issue.authorLogin())
+      .writeNullableLong(toTime(issue.creationDate()))
+      .writeNullableLong(toTime(issue.closeDate()))
+      .writeNullableLong(toTime(issue.updateDate()))
+      .writeNullableLong(issue.selectedAt())
+      .writeString(issue.diffFields())
+      .writeBoolean(issue.isChanged())
+      .endRecord();
+  }
+
+  /**
+   * Reads the current record, see {@link BinaryInput#nextRecord()}
+   */
+  public static ReportIssue read(BinaryInput input) {
+    ReportIssue issue = new ReportIssue()
+      .setComponentBatchId(input.readNullableLong());
+    String ruleRepo = input.readString();
+    return issue
+      .setRuleKey(ruleRepo, input.readString())
+      .setLine(input.readNullableInt())
+      .setMessage(input.readString())
+      .setEffortToFix(input.readNullableDouble())
+      .setSeverity(input.readString())
+      .setTags(input.readStrings())
+      .setNew(input.readBoolean())
+      .setKey(input.readString())
+      .setDebt(input.readNullableLong())
+      .setResolution(input.readString())
+      .setStatus(input.readString())
+      .setChecksum(input.readString())
+      .setManualSeverity(input.readBoolean())
+      .setReporter(input.readString())
+      .setAssignee(input.readString())
+      .setActionPlanKey(input.readString())
+      .setAttributes(input.readString())
+      .setAuthorLogin(input.readString())
+      .setCreationDate(toDate(input.readNullableLong()))
+      .setCloseDate(toDate(input.readNullableLong()))
+      .setUpdateDate(toDate(input.readNullableLong()))
+      .setSelectedAt(input.readNullableLong())
+      .setDiffFields(input.readString())
+      .setChanged(input.readBoolean());
+  }
+
+  @CheckForNull
+  private static Long toTime(@Nullable Date date) {
+    return date == null ? null : date.getTime();
+  }
+
+  @CheckForNull
+  private static Date toDate(@Nullable Long time) {
+    return time == null ? null : new Date(time);
+  }
+}
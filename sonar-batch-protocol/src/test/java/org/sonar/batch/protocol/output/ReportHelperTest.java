@@ -28,7 +28,10 @@ import org.sonar.batch.protocol.output.issue.ReportIssue;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -52,4 +55,52 @@ public class ReportHelperTest {
     assertThat(helper.getIssues(1L)).hasSize(1);
   }
 
+  @Test
+  public void createAndRead_binary_format() throws IOException {
+    ReportHelper helper = ReportHelper.create(temp.newFolder(), ReportFormat.BINARY);
+    Date analysisDate = new Date();
+
+    ReportComponents components = new ReportComponents().setRoot(new ReportComponent().setBatchId(1L).setType(ReportComponent.Type.PRJ)
+      .addChild(new ReportComponent().setBatchId(2L).setPath("src/Foo.java").setTest(false).setLanguageKey("java")));
+    components.setAnalysisDate(analysisDate);
+    helper.saveComponents(components);
+
+    helper.saveIssues(2L, Arrays.asList(new ReportIssue().setRuleKey("foo", "bar").setLine(3), new ReportIssue().setRuleKey("foo", "baz")));
+
+    assertThat(new File(helper.reportRootDir(), "components.bin")).exists();
+    assertThat(new File(helper.reportRootDir(), "components.json")).doesNotExist();
+    assertThat(new File(helper.reportRootDir(), "2/issues-2.bin")).exists();
+
+    ReportComponents read = helper.getComponents();
+    assertThat(read.analysisDate()).isEqualTo(analysisDate);
+    assertThat(read.root().type()).isEqualTo(ReportComponent.Type.PRJ);
+    ReportComponent file = read.root().children().iterator().next();
+    assertThat(file.batchId()).isEqualTo(2L);
+    assertThat(file.path()).isEqualTo("src/Foo.java");
+    assertThat(file.isTest()).isFalse();
+    assertThat(file.languageKey()).isEqualTo("java");
+
+    List<ReportIssue> issues = new ArrayList<>();
+    for (ReportIssue issue : helper.getIssues(2L)) {
+      issues.add(issue);
+    }
+    assertThat(issues).hasSize(2);
+    assertThat(issues.get(0).ruleKey()).isEqualTo("bar");
+    assertThat(issues.get(0).line()).isEqualTo(3);
+    assertThat(issues.get(1).ruleKey()).isEqualTo("baz");
+    assertThat(issues.get(1).line()).isNull();
+  }
+
+  @Test
+  public void read_json_report_whatever_the_format_used_for_writing() throws IOException {
+    File dir = temp.newFolder();
+    ReportHelper jsonHelper = ReportHelper.create(dir);
+    jsonHelper.saveComponents(new ReportComponents().setRoot(new ReportComponent().setBatchId(1L)));
+    jsonHelper.saveIssues(1L, Arrays.asList(new ReportIssue().setRuleKey("foo", "bar")));
+
+    ReportHelper binaryHelper = ReportHelper.create(dir, ReportFormat.BINARY);
+    assertThat(binaryHelper.getComponents().root().batchId()).isEqualTo(1L);
+    assertThat(binaryHelper.getIssues(1L)).hasSize(1);
+  }
+
 }
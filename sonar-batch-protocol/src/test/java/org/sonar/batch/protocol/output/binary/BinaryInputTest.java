@@ -0,0 +1,170 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.protocol.output.binary;
+
+import org.junit.Test;
+import org.sonar.batch.protocol.output.issue.ReportIssue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class BinaryInputTest {
+
+  @Test
+  public void read_written_records() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    BinaryOutput output = new BinaryOutput(bytes);
+    output.writeInt(0).writeInt(-1).writeInt(Integer.MAX_VALUE).writeLong(Long.MIN_VALUE)
+      .writeNullableInt(null).writeNullableLong(42L).writeNullableDouble(3.14).writeNullableDouble(null)
+      .writeBoolean(true).writeNullableBoolean(null).writeNullableBoolean(false)
+      .writeString("éèà").writeString(null).writeString("").writeStrings(Arrays.asList("a", "b")).writeStrings(null)
+      .endRecord();
+    output.writeString("second").endRecord();
+    output.close();
+
+    BinaryInput input = new BinaryInput(new ByteArrayInputStream(bytes.toByteArray()));
+    assertThat(input.version()).isEqualTo(1);
+    assertThat(input.nextRecord()).isTrue();
+    assertThat(input.readInt()).isEqualTo(0);
+    assertThat(input.readInt()).isEqualTo(-1);
+    assertThat(input.readInt()).isEqualTo(Integer.MAX_VALUE);
+    assertThat(input.readLong()).isEqualTo(Long.MIN_VALUE);
+    assertThat(input.readNullableInt()).isNull();
+    assertThat(input.readNullableLong()).isEqualTo(42L);
+    assertThat(input.readNullableDouble()).isEqualTo(3.14);
+    assertThat(input.readNullableDouble()).isNull();
+    assertThat(input.readBoolean()).isTrue();
+    assertThat(input.readNullableBoolean()).isNull();
+    assertThat(input.readNullableBoolean()).isFalse();
+    assertThat(input.readString()).isEqualTo("éèà");
+    assertThat(input.readString()).isNull();
+    assertThat(input.readString()).isEmpty();
+    assertThat(input.readStrings()).containsExactly("a", "b");
+    assertThat(input.readStrings()).isNull();
+
+    assertThat(input.nextRecord()).isTrue();
+    assertThat(input.readString()).isEqualTo("second");
+    assertThat(input.nextRecord()).isFalse();
+    input.close();
+  }
+
+  @Test
+  public void skip_unread_fields_of_record() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    BinaryOutput output = new BinaryOutput(bytes);
+    output.writeString("first").writeString("ignored").endRecord();
+    output.writeString("second").endRecord();
+    output.close();
+
+    BinaryInput input = new BinaryInput(new ByteArrayInputStream(bytes.toByteArray()));
+    input.nextRecord();
+    assertThat(input.readString()).isEqualTo("first");
+    input.nextRecord();
+    assertThat(input.readString()).isEqualTo("second");
+  }
+
+  @Test
+  public void fail_if_not_a_binary_report() throws IOException {
+    try {
+      new BinaryInput(new ByteArrayInputStream("[{\"ruleKey\": \"foo\"}]".getBytes()));
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("Not a binary report: bad magic number");
+    }
+  }
+
+  @Test
+  public void fail_if_unsupported_version() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    new BinaryOutput(bytes).close();
+    byte[] content = bytes.toByteArray();
+    content[7] = 2;
+
+    try {
+      new BinaryInput(new ByteArrayInputStream(content));
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("Unsupported version of binary report: 2 (supported: 1)");
+    }
+  }
+
+  @Test
+  public void fail_if_record_is_truncated() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    BinaryOutput output = new BinaryOutput(bytes);
+    output.writeInt(1).endRecord();
+    output.close();
+
+    BinaryInput input = new BinaryInput(new ByteArrayInputStream(bytes.toByteArray()));
+    input.nextRecord();
+    input.readInt();
+    try {
+      input.readString();
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("Corrupted binary report: unexpected end of record");
+    }
+  }
+
+  @Test
+  public void read_and_write_issue() throws IOException {
+    Date date = new Date();
+    ReportIssue issue = new ReportIssue()
+      .setComponentBatchId(4L)
+      .setRuleKey("repo", "rule")
+      .setMessage("message")
+      .setEffortToFix(2.0)
+      .setTags(Arrays.asList("bug", "security"))
+      .setNew(true)
+      .setDebt(3L)
+      .setCreationDate(date)
+      .setDiffFields("diff")
+      .setChanged(true);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    BinaryOutput output = new BinaryOutput(bytes);
+    ReportIssueCodec.write(issue, output);
+    output.close();
+
+    BinaryInput input = new BinaryInput(new ByteArrayInputStream(bytes.toByteArray()));
+    input.nextRecord();
+    ReportIssue read = ReportIssueCodec.read(input);
+    assertThat(read.componentBatchId()).isEqualTo(4L);
+    assertThat(read.ruleRepo()).isEqualTo("repo");
+    assertThat(read.ruleKey()).isEqualTo("rule");
+    assertThat(read.line()).isNull();
+    assertThat(read.message()).isEqualTo("message");
+    assertThat(read.effortToFix()).isEqualTo(2.0);
+    assertThat(read.tags()).containsExactly("bug", "security");
+    assertThat(read.isNew()).isTrue();
+    assertThat(read.debt()).isEqualTo(3L);
+    assertThat(read.creationDate()).isEqualTo(date);
+    assertThat(read.closeDate()).isNull();
+    assertThat(read.diffFields()).isEqualTo("diff");
+    assertThat(read.isChanged()).isTrue();
+    assertThat(read.isManualSeverity()).isFalse();
+  }
+}
@@ -33,28 +33,39 @@ import org.apache.commons.io.FileUtils;
 import org.picocontainer.Startable;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.BatchComponent;
+import org.sonar.api.utils.MessageException;
 import org.sonar.api.utils.TempFolder;
+import org.sonar.batch.bootstrap.BootstrapProperties;
+
+import javax.annotation.CheckForNull;
 
 import java.io.File;
 import java.util.Properties;
 import java.util.Set;
 
 /**
- * Factory of caches
+ * Factory of caches. Values are stored by Persistit (default) or appended to memory-mapped files,
+ * depending on property {@link #ENGINE_PROPERTY}.
  *
  * @since 3.6
  */
 public class Caches implements BatchComponent, Startable {
 
+  public static final String ENGINE_PROPERTY = "sonar.batch.cache.engine";
+  public static final String PERSISTIT_ENGINE = "persistit";
+  public static final String MMAP_ENGINE = "mmap";
+
   private final Set<String> cacheNames = Sets.newHashSet();
   private File tempDir;
   private Persistit persistit;
   private Volume volume;
+  private MappedStorage mappedStorage;
   private final TempFolder tempFolder;
 
-  public Caches(TempFolder tempFolder) {
+  public Caches(TempFolder tempFolder, BootstrapProperties bootstrapProps) {
     this.tempFolder = tempFolder;
     initPersistit();
+    initMappedStorage(bootstrapProps.property(ENGINE_PROPERTY));
   }
 
   private void initPersistit() {
@@ -79,6 +90,18 @@ public class Caches implements BatchComponent, Startable {
     }
   }
 
+  /**
+   * Persistit is started whatever the engine, as it encodes keys and values of all caches
+   */
+  private void initMappedStorage(@CheckForNull String engine) {
+    if (MMAP_ENGINE.equals(engine)) {
+      mappedStorage = new MappedStorage(new File(tempDir, "mmap"));
+    } else if (engine != null && !PERSISTIT_ENGINE.equals(engine)) {
+      throw MessageException.of(String.format("Unsupported value of property %s: '%s'. Supported values are '%s' and '%s'.",
+        ENGINE_PROPERTY, engine, PERSISTIT_ENGINE, MMAP_ENGINE));
+    }
+  }
+
   public void registerValueCoder(Class<?> clazz, ValueCoder coder) {
     CoderManager cm = persistit.getCoderManager();
     cm.registerValueCoder(clazz, coder);
@@ -88,9 +111,14 @@ public class Caches implements BatchComponent, Startable {
     Preconditions.checkState(volume != null && volume.isOpened(), "Caches are not initialized");
     Preconditions.checkState(!cacheNames.contains(cacheName), "Cache is already created: " + cacheName);
     try {
-      Exchange exchange = persistit.getExchange(volume, cacheName, true);
-      exchange.setMaximumValueSize(Value.MAXIMUM_SIZE);
-      Cache<V> cache = new Cache<V>(cacheName, exchange);
+      Cache<V> cache;
+      if (mappedStorage != null) {
+        cache = new MappedCache<V>(cacheName, persistit, mappedStorage);
+      } else {
+        Exchange exchange = persistit.getExchange(volume, cacheName, true);
+        exchange.setMaximumValueSize(Value.MAXIMUM_SIZE);
+        cache = new PersistitCache<V>(cacheName, exchange);
+      }
       cacheNames.add(cacheName);
       return cache;
     } catch (Exception e) {
@@ -105,6 +133,10 @@ public class Caches implements BatchComponent, Startable {
 
   @Override
   public void stop() {
+    if (mappedStorage != null) {
+      mappedStorage.close();
+      mappedStorage = null;
+    }
     if (persistit != null) {
       try {
         persistit.close(false);
@@ -0,0 +1,195 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.index;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Iterables;
+import com.google.common.primitives.UnsignedBytes;
+import com.persistit.Key;
+import com.persistit.Persistit;
+import com.persistit.Value;
+
+import javax.annotation.CheckForNull;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Cache whose values are appended to {@link MappedStorage}. Keys are kept in memory in an index
+ * sorted like Persistit keys, so that iterations return elements in the same order than {@link PersistitCache}.
+ * Keys and values are encoded by Persistit, so the registered {@link com.persistit.encoding.ValueCoder} apply.
+ * <p/>
+ * The index is a concurrent map, so it can be updated while being iterated.
+ */
+class MappedCache<V> extends Cache<V> {
+
+  private final Persistit persistit;
+  private final MappedStorage storage;
+  private final ConcurrentNavigableMap<byte[], Long> index = new ConcurrentSkipListMap<>(UnsignedBytes.lexicographicalComparator());
+  private final Key key;
+  private final Value value;
+
+  MappedCache(String name, Persistit persistit, MappedStorage storage) {
+    super(name);
+    this.persistit = persistit;
+    this.storage = storage;
+    this.key = new Key(persistit);
+    this.value = newValue();
+  }
+
+  @Override
+  Cache<V> doPut(Object[] parts, V v) {
+    try {
+      byte[] encodedKey = encodeKey(parts);
+      value.clear();
+      value.put(v);
+      index.put(encodedKey, storage.append(value.getEncodedBytes(), value.getEncodedSize()));
+      return this;
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to put element in the cache " + name(), e);
+    }
+  }
+
+  @Override
+  @CheckForNull
+  V doGet(Object[] parts) {
+    try {
+      Long position = index.get(encodeKey(parts));
+      return position == null ? null : this.<V>decodeValue(value, position);
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to get element from cache " + name(), e);
+    }
+  }
+
+  @Override
+  boolean doContainsKey(Object[] parts) {
+    return index.containsKey(encodeKey(parts));
+  }
+
+  @Override
+  boolean doRemove(Object[] parts) {
+    return index.remove(encodeKey(parts)) != null;
+  }
+
+  @Override
+  Cache<V> doClear(Object[] parts) {
+    subKeys(encodeKey(parts), true).clear();
+    return this;
+  }
+
+  @Override
+  public void clear() {
+    index.clear();
+  }
+
+  @Override
+  Set<Object> doKeySet(Object[] parts) {
+    Set<Object> keys = new LinkedHashSet<>();
+    NavigableMap<byte[], Long> subKeys = subKeys(encodeKey(parts), false);
+    Key decoder = new Key(persistit);
+    byte[] encodedKey = subKeys.isEmpty() ? null : subKeys.firstKey();
+    while (encodedKey != null) {
+      setEncodedKey(decoder, encodedKey);
+      decoder.indexTo(parts.length);
+      keys.add(decoder.decode());
+      // skip the other sub-keys of this part
+      encodedKey = subKeys.ceilingKey(upperBound(Arrays.copyOf(encodedKey, decoder.getIndex())));
+    }
+    return keys;
+  }
+
+  @Override
+  Iterable<V> doValues(Object[] parts) {
+    final Value decoder = newValue();
+    return Iterables.transform(subKeys(encodeKey(parts), false).values(), new Function<Long, V>() {
+      @Override
+      public V apply(Long position) {
+        return decodeValue(decoder, position);
+      }
+    });
+  }
+
+  @Override
+  Iterable<Entry<V>> doEntries(Object[] parts) {
+    final Key keyDecoder = new Key(persistit);
+    final Value valueDecoder = newValue();
+    return Iterables.transform(subKeys(encodeKey(parts), false).entrySet(), new Function<Map.Entry<byte[], Long>, Entry<V>>() {
+      @Override
+      public Entry<V> apply(Map.Entry<byte[], Long> input) {
+        setEncodedKey(keyDecoder, input.getKey());
+        Object[] array = new Object[keyDecoder.getDepth()];
+        keyDecoder.indexTo(0);
+        for (int i = 0; i < array.length; i++) {
+          array[i] = keyDecoder.decode();
+        }
+        return new Entry<V>(array, MappedCache.this.<V>decodeValue(valueDecoder, input.getValue()));
+      }
+    });
+  }
+
+  /**
+   * Encoded keys of the sub-keys of the given key, which is a prefix as each part ends with a zero byte
+   */
+  private NavigableMap<byte[], Long> subKeys(byte[] encodedKey, boolean inclusive) {
+    if (encodedKey.length == 0) {
+      return index;
+    }
+    return index.subMap(encodedKey, inclusive, upperBound(encodedKey), false);
+  }
+
+  /**
+   * Smallest key greater than all the keys prefixed by the given key, which ends with a zero byte
+   */
+  private static byte[] upperBound(byte[] encodedKey) {
+    byte[] bound = Arrays.copyOf(encodedKey, encodedKey.length);
+    bound[bound.length - 1]++;
+    return bound;
+  }
+
+  private byte[] encodeKey(Object[] parts) {
+    key.clear();
+    for (Object part : parts) {
+      key.append(part);
+    }
+    return Arrays.copyOf(key.getEncodedBytes(), key.getEncodedSize());
+  }
+
+  private static void setEncodedKey(Key decoder, byte[] encodedKey) {
+    System.arraycopy(encodedKey, 0, decoder.getEncodedBytes(), 0, encodedKey.length);
+    decoder.setEncodedSize(encodedKey.length);
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> T decodeValue(Value decoder, long position) {
+    byte[] bytes = storage.read(position);
+    decoder.clear();
+    decoder.putEncodedBytes(bytes, 0, bytes.length);
+    return (T) decoder.get();
+  }
+
+  private Value newValue() {
+    return new Value(persistit, Value.INITIAL_SIZE, Value.MAXIMUM_SIZE);
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.index;
+
+import com.google.common.base.Preconditions;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only storage of byte arrays in memory-mapped files, shared by all the {@link MappedCache}.
+ * Space of removed or replaced values is not reclaimed, as caches live only during analysis.
+ * <p/>
+ * Each record is stored as its length followed by its bytes. The position of a record
+ * is made of the index of its file (high bits) and its offset in the file (low bits).
+ */
+class MappedStorage {
+
+  static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+  private static final int LENGTH_SIZE = 4;
+
+  private final File dir;
+  private final int segmentSize;
+  private final List<MappedByteBuffer> segments = new ArrayList<>();
+  private MappedByteBuffer current = null;
+
+  MappedStorage(File dir) {
+    this(dir, DEFAULT_SEGMENT_SIZE);
+  }
+
+  MappedStorage(File dir, int segmentSize) {
+    this.dir = dir;
+    this.segmentSize = segmentSize;
+  }
+
+  /**
+   * @return the position of the record, to be used by {@link #read(long)}
+   */
+  synchronized long append(byte[] bytes, int length) {
+    if (current == null || current.remaining() < LENGTH_SIZE + length) {
+      current = newSegment(Math.max(segmentSize, LENGTH_SIZE + length));
+    }
+    long position = ((long) (segments.size() - 1) << 32) | current.position();
+    current.putInt(length);
+    current.put(bytes, 0, length);
+    return position;
+  }
+
+  synchronized byte[] read(long position) {
+    MappedByteBuffer segment = segments.get((int) (position >>> 32));
+    int offset = (int) position;
+    byte[] bytes = new byte[segment.getInt(offset)];
+    // there is no absolute bulk get, so the write position is restored after reading
+    int writePosition = segment.position();
+    segment.position(offset + LENGTH_SIZE);
+    segment.get(bytes);
+    segment.position(writePosition);
+    return bytes;
+  }
+
+  /**
+   * Mapped files are released on garbage collection
+   */
+  synchronized void close() {
+    segments.clear();
+    current = null;
+  }
+
+  private MappedByteBuffer newSegment(int size) {
+    Preconditions.checkState(dir.isDirectory() || dir.mkdirs(), "Fail to create directory " + dir);
+    File file = new File(dir, "segment-" + segments.size() + ".dat");
+    RandomAccessFile raf = null;
+    try {
+      raf = new RandomAccessFile(file, "rw");
+      // mapping is still valid when file is closed
+      MappedByteBuffer segment = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+      segments.add(segment);
+      return segment;
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to map file " + file, e);
+    } finally {
+      IOUtils.closeQuietly(raf);
+    }
+  }
+}
@@ -36,9 +36,9 @@ import org.sonar.api.batch.sensor.duplication.DuplicationGroup.Block;
 import org.sonar.api.batch.sensor.symbol.Symbol;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.measures.Measure;
+import org.sonar.api.utils.DateUtils;
 import org.sonar.api.utils.KeyValueFormat;
 import org.sonar.api.utils.System2;
-import org.sonar.api.utils.text.CsvWriter;
 import org.sonar.batch.ProjectTree;
 import org.sonar.batch.duplication.DuplicationCache;
 import org.sonar.batch.highlighting.SyntaxHighlightingData;
@@ -50,15 +50,16 @@ import org.sonar.batch.symbol.SymbolData;
 import org.sonar.core.persistence.DbSession;
 import org.sonar.core.persistence.MyBatis;
 import org.sonar.core.source.SnapshotDataTypes;
+import org.sonar.core.source.db.FileSourceData;
+import org.sonar.core.source.db.FileSourceData.Column;
 import org.sonar.core.source.db.FileSourceDto;
-import org.sonar.core.source.db.FileSourceMapper;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 
 import java.io.IOException;
-import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
@@ -73,6 +74,16 @@ public class SourcePersister implements ScanPersister {
   private static final Logger LOG = LoggerFactory.getLogger(SourcePersister.class);
 
   private static final String BOM = "\uFEFF";
+  private static final char FINGERPRINT_SEPARATOR = '|';
+  /**
+   * Inserts and updates are committed as soon as the size of pending data exceeds this limit
+   */
+  static final long MAX_PENDING_BYTES = 16L * 1024 * 1024;
+  private static final String[] LINE_METRIC_KEYS = {
+    CoreMetrics.SCM_AUTHORS_BY_LINE_KEY, CoreMetrics.SCM_REVISIONS_BY_LINE_KEY, CoreMetrics.SCM_LAST_COMMIT_DATETIMES_BY_LINE_KEY,
+    CoreMetrics.COVERAGE_LINE_HITS_DATA_KEY, CoreMetrics.CONDITIONS_BY_LINE_KEY, CoreMetrics.COVERED_CONDITIONS_BY_LINE_KEY,
+    CoreMetrics.IT_COVERAGE_LINE_HITS_DATA_KEY, CoreMetrics.IT_CONDITIONS_BY_LINE_KEY, CoreMetrics.IT_COVERED_CONDITIONS_BY_LINE_KEY,
+    CoreMetrics.OVERALL_COVERAGE_LINE_HITS_DATA_KEY, CoreMetrics.OVERALL_CONDITIONS_BY_LINE_KEY, CoreMetrics.OVERALL_COVERED_CONDITIONS_BY_LINE_KEY};
   private final InputPathCache inputPathCache;
   private final MyBatis mybatis;
   private final MeasureCache measureCache;
@@ -99,8 +110,8 @@ public class SourcePersister implements ScanPersister {
 
   @Override
   public void persist() {
-    // Don't use batch insert for file_sources since keeping all data in memory can produce OOM for big files
-    try (DbSession session = mybatis.openSession(false)) {
+    // Batch session is flushed every few statements and whenever pending data becomes too big, to avoid OOM on big files
+    try (DbSession session = mybatis.openSession(true)) {
 
       final Map<String, FileSourceDto> fileSourceDtoByFileUuid = new HashMap<String, FileSourceDto>();
 
@@ -113,56 +124,127 @@ public class SourcePersister implements ScanPersister {
         }
       });
 
-      FileSourceMapper mapper = session.getMapper(FileSourceMapper.class);
-
+      long pendingBytes = 0L;
       for (InputPath inputPath : inputPathCache.all()) {
         if (inputPath instanceof InputFile) {
-          persist(session, mapper, inputPath, fileSourceDtoByFileUuid);
+          pendingBytes += persist(session, inputPath, fileSourceDtoByFileUuid);
+          if (pendingBytes >= MAX_PENDING_BYTES) {
+            session.commit();
+            pendingBytes = 0L;
+          }
         }
       }
+      session.commit();
     } catch (Exception e) {
       throw new IllegalStateException("Unable to save file sources", e);
     }
 
   }
 
-  private void persist(DbSession session, FileSourceMapper mapper, InputPath inputPath, Map<String, FileSourceDto> fileSourceDtoByFileUuid) {
+  /**
+   * @return the approximate number of bytes sent to the database session, 0 if the file is unchanged
+   */
+  private long persist(DbSession session, InputPath inputPath, Map<String, FileSourceDto> fileSourceDtoByFileUuid) {
     DefaultInputFile inputFile = (DefaultInputFile) inputPath;
     LOG.debug("Processing {}", inputFile.absolutePath());
     org.sonar.api.resources.File file = (org.sonar.api.resources.File) resourceCache.get(inputFile.key()).resource();
     String fileUuid = file.getUuid();
     FileSourceDto previous = fileSourceDtoByFileUuid.get(fileUuid);
-    String newData = getSourceData(inputFile);
-    String newDataHash = newData != null ? DigestUtils.md5Hex(newData) : "0";
+    // Must be computed before source data, as duplications are consumed while building lines
+    String newDataHash = computeDataHash(inputFile);
+    if (previous != null && newDataHash.equals(previous.getDataHash())) {
+      // Neither the source nor any of the line data changed, so don't even build the lines
+      return 0L;
+    }
+    byte[] newData = getSourceData(inputFile);
+    String lineHashes = lineHashesAsMd5Hex(inputFile);
     Date now = system2.newDate();
     try {
       if (previous == null) {
         FileSourceDto newFileSource = new FileSourceDto()
           .setProjectUuid(projectTree.getRootProject().getUuid())
           .setFileUuid(fileUuid)
-          .setData(newData)
+          .setBinaryData(newData)
           .setDataHash(newDataHash)
           .setSrcHash(inputFile.hash())
-          .setLineHashes(lineHashesAsMd5Hex(inputFile))
+          .setLineHashes(lineHashes)
           .setCreatedAt(now.getTime())
           .setUpdatedAt(now.getTime());
-        mapper.insert(newFileSource);
-        session.commit();
+        session.insert("org.sonar.core.source.db.FileSourceMapper.insert", newFileSource);
       } else {
-        if (!newDataHash.equals(previous.getDataHash())) {
-          previous
-            .setData(newData)
-            .setLineHashes(lineHashesAsMd5Hex(inputFile))
-            .setDataHash(newDataHash)
-            .setSrcHash(inputFile.hash())
-            .setUpdatedAt(now.getTime());
-          mapper.update(previous);
-          session.commit();
-        }
+        previous
+          .setBinaryData(newData)
+          .setLineHashes(lineHashes)
+          .setDataHash(newDataHash)
+          .setSrcHash(inputFile.hash())
+          .setUpdatedAt(now.getTime());
+        session.update("org.sonar.core.source.db.FileSourceMapper.update", previous);
       }
     } catch (Exception e) {
       throw new IllegalStateException("Unable to save file sources for " + inputPath.absolutePath(), e);
     }
+    return (newData != null ? newData.length : 0) + (lineHashes != null ? lineHashes.length() : 0);
+  }
+
+  /**
+   * Fingerprint of everything {@link #getSourceData(DefaultInputFile)} depends on. It is cheap to compute
+   * compared to the source data itself, so that unchanged files can be skipped without reading them.
+   * @return "0" if the file is empty
+   */
+  String computeDataHash(DefaultInputFile file) {
+    if (file.lines() == 0) {
+      return "0";
+    }
+    StringBuilder sb = new StringBuilder();
+    sb.append(FileSourceData.VERSION).append(FINGERPRINT_SEPARATOR)
+      .append(file.hash()).append(FINGERPRINT_SEPARATOR)
+      .append(file.lines()).append(FINGERPRINT_SEPARATOR)
+      .append(file.language()).append(FINGERPRINT_SEPARATOR);
+    for (String metricKey : LINE_METRIC_KEYS) {
+      for (Measure measure : measureCache.byMetric(file.key(), metricKey)) {
+        sb.append(metricKey).append('=').append(measure.value());
+      }
+      sb.append(FINGERPRINT_SEPARATOR);
+    }
+    SyntaxHighlightingData highlighting = componentDataCache.getData(file.key(), SnapshotDataTypes.SYNTAX_HIGHLIGHTING);
+    if (highlighting != null) {
+      // Otherwise highlighting is computed by colorizers, which only depend on source and language
+      sb.append(highlighting.writeString());
+    }
+    sb.append(FINGERPRINT_SEPARATOR);
+    appendSymbols(sb, loadSymbolReferences(file));
+    sb.append(FINGERPRINT_SEPARATOR);
+    List<DuplicationGroup> duplicationGroups = duplicationCache.byComponent(file.key());
+    if (duplicationGroups != null) {
+      for (DuplicationGroup group : duplicationGroups) {
+        appendBlock(sb, group.originBlock());
+        for (Block dup : group.duplicates()) {
+          appendBlock(sb, dup);
+        }
+        sb.append(';');
+      }
+    }
+    return DigestUtils.md5Hex(sb.toString());
+  }
+
+  private static void appendSymbols(StringBuilder sb, @Nullable SymbolData symbolRefs) {
+    if (symbolRefs == null) {
+      return;
+    }
+    List<Symbol> symbols = sortByDeclaration(symbolRefs.referencesBySymbol().keySet());
+    for (Symbol symbol : symbols) {
+      sb.append(symbol.getDeclarationStartOffset()).append(',').append(symbol.getDeclarationEndOffset());
+      List<Integer> references = new ArrayList<Integer>(symbolRefs.referencesBySymbol().get(symbol));
+      Collections.sort(references);
+      for (Integer reference : references) {
+        sb.append(',').append(reference);
+      }
+      sb.append(';');
+    }
+  }
+
+  private static void appendBlock(StringBuilder sb, Block block) {
+    sb.append(block.resourceKey()).append(',').append(block.startLine()).append(',').append(block.length()).append(',');
   }
 
   @CheckForNull
@@ -181,8 +263,11 @@ public class SourcePersister implements ScanPersister {
     return result.toString();
   }
 
+  /**
+   * @return the lines encoded by {@link FileSourceData#encode()}, or null if the file is empty
+   */
   @CheckForNull
-  String getSourceData(DefaultInputFile file) {
+  byte[] getSourceData(DefaultInputFile file) {
     if (file.lines() == 0) {
       return null;
     }
@@ -211,46 +296,47 @@ public class SourcePersister implements ScanPersister {
     SyntaxHighlightingData highlighting = loadHighlighting(file);
     String[] highlightingPerLine = computeHighlightingPerLine(file, highlighting);
     String[] symbolReferencesPerLine = computeSymbolReferencesPerLine(file, loadSymbolReferences(file));
-    String[] duplicationsPerLine = computeDuplicationsPerLine(file, duplicationCache.byComponent(file.key()));
+    List<List<Integer>> duplicationsPerLine = computeDuplicationsPerLine(file, duplicationCache.byComponent(file.key()));
 
-    StringWriter writer = new StringWriter(file.lines() * 16);
-    CsvWriter csv = CsvWriter.of(writer);
+    FileSourceData.Builder data = FileSourceData.newBuilder(file.lines());
     for (int lineIdx = 1; lineIdx <= file.lines(); lineIdx++) {
-      csv.values(revisionsByLine.get(lineIdx), authorsByLine.get(lineIdx), datesByLine.get(lineIdx),
-        utHitsByLine.get(lineIdx), utCondByLine.get(lineIdx), utCoveredCondByLine.get(lineIdx),
-        itHitsByLine.get(lineIdx), itCondByLine.get(lineIdx), itCoveredCondByLine.get(lineIdx),
-        overallHitsByLine.get(lineIdx), overallCondByLine.get(lineIdx), overallCoveredCondByLine.get(lineIdx),
-        highlightingPerLine[lineIdx - 1], symbolReferencesPerLine[lineIdx - 1], duplicationsPerLine[lineIdx - 1],
-        CharMatcher.anyOf(BOM).removeFrom(lines.get(lineIdx - 1)));
+      data
+        .setString(Column.SCM_REVISION, lineIdx, revisionsByLine.remove(lineIdx))
+        .setString(Column.SCM_AUTHOR, lineIdx, authorsByLine.remove(lineIdx))
+        .setDate(Column.SCM_DATE, lineIdx, DateUtils.parseDateTimeQuietly(datesByLine.remove(lineIdx)))
+        .setInteger(Column.UT_LINE_HITS, lineIdx, parseInteger(utHitsByLine.remove(lineIdx)))
+        .setInteger(Column.UT_CONDITIONS, lineIdx, parseInteger(utCondByLine.remove(lineIdx)))
+        .setInteger(Column.UT_COVERED_CONDITIONS, lineIdx, parseInteger(utCoveredCondByLine.remove(lineIdx)))
+        .setInteger(Column.IT_LINE_HITS, lineIdx, parseInteger(itHitsByLine.remove(lineIdx)))
+        .setInteger(Column.IT_CONDITIONS, lineIdx, parseInteger(itCondByLine.remove(lineIdx)))
+        .setInteger(Column.IT_COVERED_CONDITIONS, lineIdx, parseInteger(itCoveredCondByLine.remove(lineIdx)))
+        .setInteger(Column.OVERALL_LINE_HITS, lineIdx, parseInteger(overallHitsByLine.remove(lineIdx)))
+        .setInteger(Column.OVERALL_CONDITIONS, lineIdx, parseInteger(overallCondByLine.remove(lineIdx)))
+        .setInteger(Column.OVERALL_COVERED_CONDITIONS, lineIdx, parseInteger(overallCoveredCondByLine.remove(lineIdx)))
+        .setString(Column.HIGHLIGHTING, lineIdx, highlightingPerLine[lineIdx - 1])
+        .setString(Column.SYMBOLS, lineIdx, symbolReferencesPerLine[lineIdx - 1])
+        .setIntegers(Column.DUPLICATIONS, lineIdx, duplicationsPerLine.get(lineIdx - 1))
+        .setString(Column.SOURCE, lineIdx, CharMatcher.anyOf(BOM).removeFrom(lines.get(lineIdx - 1)));
       // Free memory
-      revisionsByLine.remove(lineIdx);
-      authorsByLine.remove(lineIdx);
-      datesByLine.remove(lineIdx);
-      utHitsByLine.remove(lineIdx);
-      utCondByLine.remove(lineIdx);
-      utCoveredCondByLine.remove(lineIdx);
-      itHitsByLine.remove(lineIdx);
-      itCondByLine.remove(lineIdx);
-      itCoveredCondByLine.remove(lineIdx);
-      overallHitsByLine.remove(lineIdx);
-      overallCondByLine.remove(lineIdx);
-      overallCoveredCondByLine.remove(lineIdx);
       highlightingPerLine[lineIdx - 1] = null;
       symbolReferencesPerLine[lineIdx - 1] = null;
-      duplicationsPerLine[lineIdx - 1] = null;
+      duplicationsPerLine.set(lineIdx - 1, null);
       lines.set(lineIdx - 1, null);
     }
-    csv.close();
-    return StringUtils.defaultIfEmpty(writer.toString(), null);
+    return data.build().encode();
   }
 
-  private String[] computeDuplicationsPerLine(DefaultInputFile file, List<DuplicationGroup> duplicationGroups) {
-    String[] result = new String[file.lines()];
+  @CheckForNull
+  private static Integer parseInteger(@Nullable String s) {
+    return StringUtils.isEmpty(s) ? null : Integer.parseInt(s);
+  }
+
+  private List<List<Integer>> computeDuplicationsPerLine(DefaultInputFile file, List<DuplicationGroup> duplicationGroups) {
+    List<List<Integer>> dupPerLine = new ArrayList<List<Integer>>(Collections.<List<Integer>>nCopies(file.lines(), null));
     if (duplicationGroups == null) {
-      return result;
+      return dupPerLine;
     }
     List<DuplicationGroup> groups = new LinkedList<DuplicationGroup>(duplicationGroups);
-    StringBuilder[] dupPerLine = new StringBuilder[file.lines()];
     int blockId = 1;
     for (Iterator<DuplicationGroup> it = groups.iterator(); it.hasNext();) {
       DuplicationGroup group = it.next();
@@ -268,24 +354,16 @@ public class SourcePersister implements ScanPersister {
       // Save memory
       it.remove();
     }
-    for (int i = 0; i < file.lines(); i++) {
-      result[i] = dupPerLine[i] != null ? dupPerLine[i].toString() : null;
-      // Save memory
-      dupPerLine[i] = null;
-    }
-    return result;
+    return dupPerLine;
   }
 
-  private void addBlock(int blockId, Block block, StringBuilder[] dupPerLine) {
+  private void addBlock(int blockId, Block block, List<List<Integer>> dupPerLine) {
     int currentLine = block.startLine();
     for (int i = 0; i < block.length(); i++) {
-      if (dupPerLine[currentLine - 1] == null) {
-        dupPerLine[currentLine - 1] = new StringBuilder();
+      if (dupPerLine.get(currentLine - 1) == null) {
+        dupPerLine.set(currentLine - 1, new ArrayList<Integer>());
       }
-      if (dupPerLine[currentLine - 1].length() > 0) {
-        dupPerLine[currentLine - 1].append(',');
-      }
-      dupPerLine[currentLine - 1].append(blockId);
+      dupPerLine.get(currentLine - 1).add(blockId);
       currentLine++;
     }
 
@@ -335,15 +413,7 @@ public class SourcePersister implements ScanPersister {
     StringBuilder[] symbolRefsPerLine = new StringBuilder[file.lines()];
     long[] originalLineOffsets = file.originalLineOffsets();
     int symbolId = 1;
-    List<Symbol> symbols = new ArrayList<Symbol>(symbolRefs.referencesBySymbol().keySet());
-    // Sort symbols to avoid false variation that would lead to an unnecessary update
-    Collections.sort(symbols, new Comparator<Symbol>() {
-      @Override
-      public int compare(Symbol o1, Symbol o2) {
-        return o1.getDeclarationStartOffset() - o2.getDeclarationStartOffset();
-      }
-    });
-    for (Symbol symbol : symbols) {
+    for (Symbol symbol : sortByDeclaration(symbolRefs.referencesBySymbol().keySet())) {
       int declarationStartOffset = symbol.getDeclarationStartOffset();
       int declarationEndOffset = symbol.getDeclarationEndOffset();
       int length = declarationEndOffset - declarationStartOffset;
@@ -363,6 +433,20 @@ public class SourcePersister implements ScanPersister {
     return result;
   }
 
+  /**
+   * Sort symbols to avoid false variation that would lead to an unnecessary update
+   */
+  private static List<Symbol> sortByDeclaration(Collection<? extends Symbol> symbols) {
+    List<Symbol> result = new ArrayList<Symbol>(symbols);
+    Collections.sort(result, new Comparator<Symbol>() {
+      @Override
+      public int compare(Symbol o1, Symbol o2) {
+        return o1.getDeclarationStartOffset() - o2.getDeclarationStartOffset();
+      }
+    });
+    return result;
+  }
+
   private void addSymbol(int symbolId, int startOffset, int endOffset, long[] originalLineOffsets, StringBuilder[] result) {
     int startLine = binarySearchLine(startOffset, originalLineOffsets);
     writeDataPerLine(originalLineOffsets, symbolId, startOffset, endOffset, result, startLine, new SymbolItemWriter());
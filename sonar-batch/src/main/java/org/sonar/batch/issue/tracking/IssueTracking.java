@@ -30,6 +30,7 @@ import org.sonar.api.BatchComponent;
 import org.sonar.api.batch.InstantiationStrategy;
 import org.sonar.api.issue.internal.DefaultIssue;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 
 import java.util.Collection;
@@ -177,7 +178,7 @@ public class IssueTracking implements BatchComponent {
       if (isNotAlreadyMapped(newIssue, result)) {
         mapIssue(
           newIssue,
-          findLastIssueWithSameChecksumAndMessage(newIssue, result.unmatchedByKeyForRule(newIssue.ruleKey()).values()),
+          first(result.unmatchedForRuleAndForChecksumAndForMessage(newIssue.ruleKey(), newIssue.checksum(), newIssue.message())),
           result);
       }
     }
@@ -187,7 +188,7 @@ public class IssueTracking implements BatchComponent {
       if (isNotAlreadyMapped(newIssue, result)) {
         mapIssue(
           newIssue,
-          findLastIssueWithSameLineAndMessage(newIssue, result.unmatchedByKeyForRule(newIssue.ruleKey()).values()),
+          first(result.unmatchedForRuleAndForLineAndForMessage(newIssue.ruleKey(), newIssue.line(), newIssue.message())),
           result);
       }
     }
@@ -198,7 +199,7 @@ public class IssueTracking implements BatchComponent {
       if (isNotAlreadyMapped(newIssue, result)) {
         mapIssue(
           newIssue,
-          findLastIssueWithSameChecksum(newIssue, result.unmatchedByKeyForRule(newIssue.ruleKey()).values()),
+          first(result.unmatchedForRuleAndForChecksum(newIssue.ruleKey(), newIssue.checksum())),
           result);
       }
     }
@@ -237,61 +238,23 @@ public class IssueTracking implements BatchComponent {
     return previousIssuesByLines;
   }
 
-  private PreviousIssue findLastIssueWithSameChecksum(DefaultIssue newIssue, Collection<PreviousIssue> previousIssues) {
-    for (PreviousIssue previousIssue : previousIssues) {
-      if (isSameChecksum(newIssue, previousIssue)) {
-        return previousIssue;
-      }
-    }
-    return null;
-  }
-
-  private PreviousIssue findLastIssueWithSameLineAndMessage(DefaultIssue newIssue, Collection<PreviousIssue> previousIssues) {
-    for (PreviousIssue previousIssue : previousIssues) {
-      if (isSameLine(newIssue, previousIssue) && isSameMessage(newIssue, previousIssue)) {
-        return previousIssue;
-      }
-    }
-    return null;
-  }
-
-  private PreviousIssue findLastIssueWithSameChecksumAndMessage(DefaultIssue newIssue, Collection<PreviousIssue> previousIssues) {
-    for (PreviousIssue previousIssue : previousIssues) {
-      if (isSameChecksum(newIssue, previousIssue) && isSameMessage(newIssue, previousIssue)) {
-        return previousIssue;
-      }
-    }
-    return null;
+  @CheckForNull
+  private static PreviousIssue first(Collection<PreviousIssue> previousIssues) {
+    return previousIssues.isEmpty() ? null : previousIssues.iterator().next();
   }
 
   private PreviousIssue findLastIssueWithSameLineAndChecksum(DefaultIssue newIssue, IssueTrackingResult result) {
-    Collection<PreviousIssue> sameRuleAndSameLineAndSameChecksum = result.unmatchedForRuleAndForLineAndForChecksum(newIssue.ruleKey(), newIssue.line(), newIssue.checksum());
-    if (!sameRuleAndSameLineAndSameChecksum.isEmpty()) {
-      return sameRuleAndSameLineAndSameChecksum.iterator().next();
-    }
-    return null;
+    return first(result.unmatchedForRuleAndForLineAndForChecksum(newIssue.ruleKey(), newIssue.line(), newIssue.checksum()));
   }
 
   private boolean isNotAlreadyMapped(PreviousIssue previousIssue, IssueTrackingResult result) {
-    return result.unmatched().contains(previousIssue);
+    return result.isUnmatched(previousIssue);
   }
 
   private boolean isNotAlreadyMapped(DefaultIssue newIssue, IssueTrackingResult result) {
     return !result.isMatched(newIssue);
   }
 
-  private boolean isSameChecksum(DefaultIssue newIssue, PreviousIssue previousIssue) {
-    return Objects.equal(previousIssue.checksum(), newIssue.checksum());
-  }
-
-  private boolean isSameLine(DefaultIssue newIssue, PreviousIssue previousIssue) {
-    return Objects.equal(previousIssue.line(), newIssue.line());
-  }
-
-  private boolean isSameMessage(DefaultIssue newIssue, PreviousIssue previousIssue) {
-    return Objects.equal(newIssue.message(), previousIssue.message());
-  }
-
   private void mapIssue(DefaultIssue issue, @Nullable PreviousIssue ref, IssueTrackingResult result) {
     if (ref != null) {
       result.setMatch(issue, ref);
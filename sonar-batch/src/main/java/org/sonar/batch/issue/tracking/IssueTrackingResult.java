@@ -20,6 +20,7 @@
 package org.sonar.batch.issue.tracking;
 
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import org.apache.commons.lang.StringUtils;
@@ -28,15 +29,22 @@ import org.sonar.api.rule.RuleKey;
 
 import javax.annotation.Nullable;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 class IssueTrackingResult {
   private final Map<String, PreviousIssue> unmatchedByKey = new HashMap<>();
   private final Map<RuleKey, Map<String, PreviousIssue>> unmatchedByRuleAndKey = new HashMap<>();
   private final Map<RuleKey, Map<Integer, Multimap<String, PreviousIssue>>> unmatchedByRuleAndLineAndChecksum = new HashMap<>();
+  // Indexes used by the passes that ignore lines or checksums. Keys are lists of the compared fields, that can be null.
+  // Unmatched issues are kept in insertion order, so that the first one is returned in case of ambiguity.
+  private final Multimap<List<Object>, PreviousIssue> unmatchedByRuleAndChecksumAndMessage = LinkedHashMultimap.create();
+  private final Multimap<List<Object>, PreviousIssue> unmatchedByRuleAndLineAndMessage = LinkedHashMultimap.create();
+  private final Multimap<List<Object>, PreviousIssue> unmatchedByRuleAndChecksum = LinkedHashMultimap.create();
   private final Map<DefaultIssue, PreviousIssue> matched = Maps.newIdentityHashMap();
 
   Collection<PreviousIssue> unmatched() {
@@ -64,6 +72,22 @@ class IssueTrackingResult {
     return unmatchedForRuleAndLine.get(checksumNotNull);
   }
 
+  Collection<PreviousIssue> unmatchedForRuleAndForChecksumAndForMessage(RuleKey ruleKey, @Nullable String checksum, @Nullable String message) {
+    return unmatchedByRuleAndChecksumAndMessage.get(Arrays.<Object>asList(ruleKey, checksum, message));
+  }
+
+  Collection<PreviousIssue> unmatchedForRuleAndForLineAndForMessage(RuleKey ruleKey, @Nullable Integer line, @Nullable String message) {
+    return unmatchedByRuleAndLineAndMessage.get(Arrays.<Object>asList(ruleKey, line, message));
+  }
+
+  Collection<PreviousIssue> unmatchedForRuleAndForChecksum(RuleKey ruleKey, @Nullable String checksum) {
+    return unmatchedByRuleAndChecksum.get(Arrays.<Object>asList(ruleKey, checksum));
+  }
+
+  boolean isUnmatched(PreviousIssue issue) {
+    return unmatchedByKey.get(issue.key()) == issue;
+  }
+
   Collection<DefaultIssue> matched() {
     return matched.keySet();
   }
@@ -92,6 +116,9 @@ class IssueTrackingResult {
     Multimap<String, PreviousIssue> unmatchedForRuleAndLine = unmatchedForRule.get(lineNotNull);
     String checksumNotNull = StringUtils.defaultString(i.checksum(), "");
     unmatchedForRuleAndLine.put(checksumNotNull, i);
+    unmatchedByRuleAndChecksumAndMessage.put(Arrays.<Object>asList(ruleKey, i.checksum(), i.message()), i);
+    unmatchedByRuleAndLineAndMessage.put(Arrays.<Object>asList(ruleKey, i.line(), i.message()), i);
+    unmatchedByRuleAndChecksum.put(Arrays.<Object>asList(ruleKey, i.checksum()), i);
   }
 
   private Integer lineNotNull(PreviousIssue i) {
@@ -107,5 +134,8 @@ class IssueTrackingResult {
     Integer lineNotNull = lineNotNull(matching);
     String checksumNotNull = StringUtils.defaultString(matching.checksum(), "");
     unmatchedByRuleAndLineAndChecksum.get(ruleKey).get(lineNotNull).get(checksumNotNull).remove(matching);
+    unmatchedByRuleAndChecksumAndMessage.remove(Arrays.<Object>asList(ruleKey, matching.checksum(), matching.message()), matching);
+    unmatchedByRuleAndLineAndMessage.remove(Arrays.<Object>asList(ruleKey, matching.line(), matching.message()), matching);
+    unmatchedByRuleAndChecksum.remove(Arrays.<Object>asList(ruleKey, matching.checksum()), matching);
   }
 }
@@ -50,7 +50,7 @@ public class SourceHashHolder {
       } else if (status == Status.SAME) {
         hashedReference = hashedSource;
       } else {
-        String[] lineHashes = lastSnapshots.getLineHashes(inputFile.key());
+        String[] lineHashes = lastSnapshots.getLineHashes(inputFile.moduleKey(), inputFile.key());
         hashedReference = lineHashes != null ? FileHashes.create(lineHashes) : null;
       }
     }
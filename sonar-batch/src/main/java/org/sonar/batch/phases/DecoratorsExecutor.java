@@ -20,10 +20,13 @@
 package org.sonar.batch.phases;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import org.sonar.api.BatchComponent;
 import org.sonar.api.batch.Decorator;
 import org.sonar.api.batch.DecoratorContext;
 import org.sonar.api.batch.SonarIndex;
+import org.sonar.api.batch.ThreadSafe;
+import org.sonar.api.config.Settings;
 import org.sonar.api.measures.MetricFinder;
 import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Resource;
@@ -39,9 +42,18 @@ import org.sonar.batch.sensor.coverage.CoverageExclusions;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 public class DecoratorsExecutor implements BatchComponent {
 
+  /**
+   * Number of threads used to decorate independent resource subtrees. Decoration is sequential by default.
+   * @since 5.1
+   */
+  public static final String THREADS_PROPERTY = "sonar.decorators.threads";
+
   private DecoratorsSelector decoratorsSelector;
   private SonarIndex index;
   private EventBus eventBus;
@@ -50,10 +62,14 @@ public class DecoratorsExecutor implements BatchComponent {
   private MeasureCache measureCache;
   private MetricFinder metricFinder;
   private final DuplicationCache duplicationCache;
+  private final Settings settings;
+  // Guards index, caches and event listeners, which are not thread-safe, during parallel decoration
+  private final Object lock = new Object();
 
   public DecoratorsExecutor(BatchExtensionDictionnary batchExtDictionnary,
     Project project, SonarIndex index, EventBus eventBus, CoverageExclusions coverageFilter, MeasureCache measureCache, MetricFinder metricFinder,
-    DuplicationCache duplicationCache) {
+    DuplicationCache duplicationCache, Settings settings) {
+    this.settings = settings;
     this.measureCache = measureCache;
     this.metricFinder = metricFinder;
     this.duplicationCache = duplicationCache;
@@ -67,7 +83,12 @@ public class DecoratorsExecutor implements BatchComponent {
   public void execute() {
     Collection<Decorator> decorators = decoratorsSelector.select(project);
     eventBus.fireEvent(new DecoratorsPhaseEvent(Lists.newArrayList(decorators), true));
-    ((DefaultDecoratorContext) decorateResource(project, decorators, true)).end();
+    int threads = settings.getInt(THREADS_PROPERTY);
+    if (threads > 1) {
+      decorateConcurrently(decorators, threads);
+    } else {
+      ((DefaultDecoratorContext) decorateResource(project, decorators, true)).end();
+    }
     eventBus.fireEvent(new DecoratorsPhaseEvent(Lists.newArrayList(decorators), false));
   }
 
@@ -89,11 +110,89 @@ public class DecoratorsExecutor implements BatchComponent {
     return context;
   }
 
-  void executeDecorator(Decorator decorator, DefaultDecoratorContext context, Resource resource) {
+  /**
+   * Sibling subtrees are decorated on a fork-join pool, and a resource is decorated once all its children are.
+   * Decorators annotated with {@link ThreadSafe} run concurrently, the other ones are executed one at a time.
+   * Execution of thread-safe decorators is not notified to {@link org.sonar.api.batch.events.DecoratorExecutionHandler}s,
+   * as they expect a single decorator to be running.
+   */
+  private void decorateConcurrently(Collection<Decorator> decorators, int threads) {
+    Set<Decorator> threadSafeDecorators = Sets.newHashSet();
+    for (Decorator decorator : decorators) {
+      if (decorator.getClass().isAnnotationPresent(ThreadSafe.class)) {
+        threadSafeDecorators.add(decorator);
+      }
+    }
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      pool.invoke(new DecorateTask(project, decorators, threadSafeDecorators, true)).end();
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private class DecorateTask extends RecursiveTask<DefaultDecoratorContext> {
+    private final Resource resource;
+    private final Collection<Decorator> decorators;
+    private final Set<Decorator> threadSafeDecorators;
+    private final boolean executeDecorators;
+
+    DecorateTask(Resource resource, Collection<Decorator> decorators, Set<Decorator> threadSafeDecorators, boolean executeDecorators) {
+      this.resource = resource;
+      this.decorators = decorators;
+      this.threadSafeDecorators = threadSafeDecorators;
+      this.executeDecorators = executeDecorators;
+    }
+
+    @Override
+    protected DefaultDecoratorContext compute() {
+      List<DecorateTask> childrenTasks = Lists.newArrayList();
+      synchronized (lock) {
+        for (Resource child : index.getChildren(resource)) {
+          boolean isModule = child instanceof Project;
+          childrenTasks.add(new DecorateTask(child, decorators, threadSafeDecorators, !isModule));
+        }
+      }
+      invokeAll(childrenTasks);
+
+      DefaultDecoratorContext context;
+      synchronized (lock) {
+        List<DecoratorContext> childrenContexts = Lists.newArrayList();
+        for (DecorateTask childTask : childrenTasks) {
+          childrenContexts.add(childTask.join().end());
+        }
+        context = new DefaultDecoratorContext(resource, index, childrenContexts, measureCache, metricFinder, duplicationCache, coverageFilter);
+        context.init();
+      }
+      if (executeDecorators) {
+        DecoratorContext synchronizedContext = new SynchronizedDecoratorContext(context, lock);
+        for (Decorator decorator : decorators) {
+          if (threadSafeDecorators.contains(decorator)) {
+            executeDecorator(decorator, synchronizedContext, resource, false);
+          } else {
+            synchronized (lock) {
+              executeDecorator(decorator, context, resource, true);
+            }
+          }
+        }
+      }
+      return context;
+    }
+  }
+
+  void executeDecorator(Decorator decorator, DecoratorContext context, Resource resource) {
+    executeDecorator(decorator, context, resource, true);
+  }
+
+  private void executeDecorator(Decorator decorator, DecoratorContext context, Resource resource, boolean fireEvents) {
     try {
-      eventBus.fireEvent(new DecoratorExecutionEvent(decorator, true));
+      if (fireEvents) {
+        eventBus.fireEvent(new DecoratorExecutionEvent(decorator, true));
+      }
       decorator.decorate(resource, context);
-      eventBus.fireEvent(new DecoratorExecutionEvent(decorator, false));
+      if (fireEvents) {
+        eventBus.fireEvent(new DecoratorExecutionEvent(decorator, false));
+      }
 
     } catch (MessageException e) {
       throw e;
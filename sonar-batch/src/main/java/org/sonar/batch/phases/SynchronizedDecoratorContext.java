@@ -0,0 +1,190 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.phases;
+
+import com.google.common.collect.Lists;
+import org.sonar.api.batch.DecoratorContext;
+import org.sonar.api.batch.Event;
+import org.sonar.api.design.Dependency;
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.measures.Measure;
+import org.sonar.api.measures.MeasuresFilter;
+import org.sonar.api.measures.MeasuresFilters;
+import org.sonar.api.measures.Metric;
+import org.sonar.api.resources.Project;
+import org.sonar.api.resources.Resource;
+import org.sonar.api.rules.Violation;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Context given to thread-safe decorators during parallel decoration. Measures of the resource and of its
+ * children are only accessed by the current thread, but the calls that reach the shared index or caches
+ * are guarded by the lock of {@link DecoratorsExecutor}.
+ */
+class SynchronizedDecoratorContext implements DecoratorContext {
+
+  private final DecoratorContext delegate;
+  private final Object lock;
+
+  SynchronizedDecoratorContext(DecoratorContext delegate, Object lock) {
+    this.delegate = delegate;
+    this.lock = lock;
+  }
+
+  @Override
+  public Project getProject() {
+    synchronized (lock) {
+      return delegate.getProject();
+    }
+  }
+
+  @Override
+  public Resource getResource() {
+    return delegate.getResource();
+  }
+
+  @Override
+  public List<DecoratorContext> getChildren() {
+    List<DecoratorContext> children = Lists.newArrayList();
+    for (DecoratorContext child : delegate.getChildren()) {
+      children.add(new SynchronizedDecoratorContext(child, lock));
+    }
+    return children;
+  }
+
+  @Override
+  public Measure getMeasure(Metric metric) {
+    return getMeasures(MeasuresFilters.metric(metric));
+  }
+
+  @Override
+  public <M> M getMeasures(MeasuresFilter<M> filter) {
+    if (isDuplicationsData(filter)) {
+      synchronized (lock) {
+        return delegate.getMeasures(filter);
+      }
+    }
+    return delegate.getMeasures(filter);
+  }
+
+  @Override
+  public Collection<Measure> getChildrenMeasures(MeasuresFilter filter) {
+    if (isDuplicationsData(filter)) {
+      synchronized (lock) {
+        return delegate.getChildrenMeasures(filter);
+      }
+    }
+    return delegate.getChildrenMeasures(filter);
+  }
+
+  @Override
+  public Collection<Measure> getChildrenMeasures(Metric metric) {
+    return getChildrenMeasures(MeasuresFilters.metric(metric));
+  }
+
+  /**
+   * Duplications data is not stored in context but read from {@link org.sonar.batch.duplication.DuplicationCache}
+   */
+  private static boolean isDuplicationsData(MeasuresFilter filter) {
+    return filter instanceof MeasuresFilters.MetricFilter
+      && CoreMetrics.DUPLICATIONS_DATA_KEY.equals(((MeasuresFilters.MetricFilter) filter).filterOnMetricKey());
+  }
+
+  @Override
+  public DecoratorContext saveMeasure(Measure measure) {
+    delegate.saveMeasure(measure);
+    return this;
+  }
+
+  @Override
+  public DecoratorContext saveMeasure(Metric metric, Double value) {
+    delegate.saveMeasure(metric, value);
+    return this;
+  }
+
+  @Override
+  public Dependency saveDependency(Dependency dependency) {
+    synchronized (lock) {
+      return delegate.saveDependency(dependency);
+    }
+  }
+
+  @Override
+  public Set<Dependency> getDependencies() {
+    synchronized (lock) {
+      return delegate.getDependencies();
+    }
+  }
+
+  @Override
+  public Collection<Dependency> getIncomingDependencies() {
+    synchronized (lock) {
+      return delegate.getIncomingDependencies();
+    }
+  }
+
+  @Override
+  public Collection<Dependency> getOutgoingDependencies() {
+    synchronized (lock) {
+      return delegate.getOutgoingDependencies();
+    }
+  }
+
+  @Override
+  public DecoratorContext saveViolation(Violation violation, boolean force) {
+    synchronized (lock) {
+      delegate.saveViolation(violation, force);
+    }
+    return this;
+  }
+
+  @Override
+  public DecoratorContext saveViolation(Violation violation) {
+    synchronized (lock) {
+      delegate.saveViolation(violation);
+    }
+    return this;
+  }
+
+  @Override
+  public List<Event> getEvents() {
+    synchronized (lock) {
+      return delegate.getEvents();
+    }
+  }
+
+  @Override
+  public Event createEvent(String name, String description, String category, Date date) {
+    synchronized (lock) {
+      return delegate.createEvent(name, description, category, date);
+    }
+  }
+
+  @Override
+  public void deleteEvent(Event event) {
+    synchronized (lock) {
+      delegate.deleteEvent(event);
+    }
+  }
+}
@@ -21,6 +21,10 @@ package org.sonar.batch.report;
 
 import com.github.kevinsawicki.http.HttpRequest;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,17 +38,55 @@ import org.sonar.api.utils.ZipUtils;
 import org.sonar.batch.bootstrap.AnalysisMode;
 import org.sonar.batch.bootstrap.ServerClient;
 import org.sonar.batch.index.ResourceCache;
+import org.sonar.batch.protocol.output.ReportFormat;
 import org.sonar.batch.protocol.output.ReportHelper;
 
+import javax.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.security.MessageDigest;
+import java.util.zip.Deflater;
 
 public class PublishReportJob implements BatchComponent {
 
   private static final Logger LOG = LoggerFactory.getLogger(PublishReportJob.class);
 
+  /**
+   * Format of the report files, "json" (default) or "binary"
+   */
+  static final String REPORT_FORMAT_PROPERTY = "sonar.report.format";
+
+  /**
+   * Compression level of the report zip, from 0 (no compression, less CPU) to 9 (best compression, less bandwidth).
+   * Default is the zlib default.
+   */
+  static final String COMPRESSION_LEVEL_PROPERTY = "sonar.report.compressionLevel";
+
+  /**
+   * Size in megabytes of the parts of reports that are uploaded in several requests. Smaller reports are
+   * uploaded in a single request. Zero disables the upload in parts.
+   */
+  static final String UPLOAD_PART_SIZE_PROPERTY = "sonar.report.upload.partSize";
+  static final int UPLOAD_PART_SIZE_DEFAULT_VALUE = 10;
+
+  /**
+   * Number of times the upload of a part is attempted again after a failure
+   */
+  static final String UPLOAD_RETRIES_PROPERTY = "sonar.report.upload.retries";
+  static final int UPLOAD_RETRIES_DEFAULT_VALUE = 3;
+
+  /**
+   * Delay before the first new attempt to upload a part. It is doubled after each failure, up to
+   * {@link #UPLOAD_MAX_RETRY_DELAY_MILLIS}, so that a transient network failure has time to go away.
+   */
+  static final long UPLOAD_RETRY_DELAY_MILLIS = 1000L;
+  static final long UPLOAD_MAX_RETRY_DELAY_MILLIS = 30000L;
+
   private final ServerClient serverClient;
   private final Server server;
   private final Settings settings;
@@ -76,7 +118,12 @@ public class PublishReportJob implements BatchComponent {
     // If this is a preview analysis then we should not upload reports
     if (!analysisMode.isPreview()) {
       File report = prepareReport();
-      uploadMultiPartReport(report);
+      int partSize = uploadPartSize();
+      if (partSize > 0 && report.length() > partSize) {
+        uploadReportInParts(report, partSize);
+      } else {
+        uploadMultiPartReport(report);
+      }
     }
     logSuccess(LoggerFactory.getLogger(getClass()));
   }
@@ -84,13 +131,13 @@ public class PublishReportJob implements BatchComponent {
   private File prepareReport() {
     try {
       File reportDir = temp.newDir("batch-report");
-      ReportHelper reportHelper = ReportHelper.create(reportDir);
+      ReportHelper reportHelper = ReportHelper.create(reportDir, reportFormat());
       for (ReportPublisher publisher : publishers) {
         publisher.export(reportHelper);
       }
 
       File reportZip = temp.newFile("batch-report", ".zip");
-      ZipUtils.zipDir(reportDir, reportZip);
+      ZipUtils.zipDir(reportDir, reportZip, compressionLevel());
       FileUtils.deleteDirectory(reportDir);
       return reportZip;
     } catch (IOException e) {
@@ -98,22 +145,154 @@ public class PublishReportJob implements BatchComponent {
     }
   }
 
+  @VisibleForTesting
+  ReportFormat reportFormat() {
+    String format = settings.getString(REPORT_FORMAT_PROPERTY);
+    if (format == null) {
+      return ReportFormat.JSON;
+    }
+    for (ReportFormat reportFormat : ReportFormat.values()) {
+      if (reportFormat.name().equalsIgnoreCase(format)) {
+        return reportFormat;
+      }
+    }
+    throw new IllegalArgumentException(String.format("Unsupported value of property %s: %s", REPORT_FORMAT_PROPERTY, format));
+  }
+
+  @VisibleForTesting
+  int compressionLevel() {
+    if (!settings.hasKey(COMPRESSION_LEVEL_PROPERTY)) {
+      return Deflater.DEFAULT_COMPRESSION;
+    }
+    int level = settings.getInt(COMPRESSION_LEVEL_PROPERTY);
+    if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+      throw new IllegalArgumentException(String.format("Value of property %s must be between 0 and 9: %d", COMPRESSION_LEVEL_PROPERTY, level));
+    }
+    return level;
+  }
+
+  /**
+   * @return size of parts in bytes, 0 if the report must be uploaded in a single request
+   */
+  @VisibleForTesting
+  int uploadPartSize() {
+    int megabytes = settings.hasKey(UPLOAD_PART_SIZE_PROPERTY) ? settings.getInt(UPLOAD_PART_SIZE_PROPERTY) : UPLOAD_PART_SIZE_DEFAULT_VALUE;
+    return Math.max(0, megabytes) * 1024 * 1024;
+  }
+
+  private int uploadRetries() {
+    return settings.hasKey(UPLOAD_RETRIES_PROPERTY) ? Math.max(0, settings.getInt(UPLOAD_RETRIES_PROPERTY)) : UPLOAD_RETRIES_DEFAULT_VALUE;
+  }
+
   @VisibleForTesting
   void uploadMultiPartReport(File report) {
     LOG.debug("Publish results");
-    URL url;
+    URL url = url(submitReportPath());
+    HttpRequest request = newPostRequest(url);
+    request.part("report", null, "application/octet-stream", report);
+    checkResponse(request, url);
+  }
+
+  /**
+   * Uploads the report in several parts, each one being verified by the server with its MD5 checksum.
+   * A part that fails is uploaded again, without restarting the whole upload.
+   */
+  @VisibleForTesting
+  void uploadReportInParts(File report, int partSize) {
+    LOG.debug("Publish results in parts of {} bytes", partSize);
+    byte[] buffer = new byte[partSize];
+    String uploadId = null;
+    long offset = 0L;
+    try (RandomAccessFile input = new RandomAccessFile(report, "r")) {
+      while (offset < input.length()) {
+        input.seek(offset);
+        int length = (int) Math.min(partSize, input.length() - offset);
+        input.readFully(buffer, 0, length);
+        JsonObject json = uploadPart(uploadId, offset, buffer, length);
+        uploadId = json.get("uploadId").getAsString();
+        offset = json.get("size").getAsLong();
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to read report " + report, e);
+    }
+    URL url = url(submitReportPath() + "&uploadId=" + ServerClient.encodeForUrl(uploadId));
+    checkResponse(newPostRequest(url), url);
+  }
+
+  private JsonObject uploadPart(@Nullable String uploadId, long offset, byte[] buffer, int length) {
+    MessageDigest md5 = DigestUtils.getMd5Digest();
+    md5.update(buffer, 0, length);
+    String checksum = Hex.encodeHexString(md5.digest());
+    StringBuilder path = new StringBuilder("/api/computation/upload_report_part?offset=").append(offset).append("&checksum=").append(checksum);
+    if (uploadId != null) {
+      path.append("&uploadId=").append(ServerClient.encodeForUrl(uploadId));
+    }
+    URL url = url(path.toString());
+    int retries = uploadRetries();
+    for (int attempt = 0;; attempt++) {
+      try {
+        HttpRequest request = newPostRequest(url);
+        request.part("part", null, "application/octet-stream", new ByteArrayInputStream(buffer, 0, length));
+        if (request.ok() || attempt >= retries || isAuthorizationError(request.code())) {
+          checkResponse(request, url);
+          return new JsonParser().parse(request.body()).getAsJsonObject();
+        }
+        LOG.warn("Fail to upload part of report at offset {} [code={}], retrying", offset, request.code());
+      } catch (HttpRequest.HttpRequestException e) {
+        if (attempt >= retries) {
+          throw new IllegalStateException("Fail to upload part of report at offset " + offset, e);
+        }
+        LOG.warn("Fail to upload part of report at offset {}, retrying: {}", offset, e.getMessage());
+      }
+      waitBeforeRetry(attempt);
+    }
+  }
+
+  private static void waitBeforeRetry(int attempt) {
+    try {
+      Thread.sleep(retryDelayMillis(attempt));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while uploading report", e);
+    }
+  }
+
+  /**
+   * @param attempt number of the failed attempt, starting from 0
+   */
+  @VisibleForTesting
+  static long retryDelayMillis(int attempt) {
+    // no overflow, as the max delay is reached after a few attempts
+    return Math.min(UPLOAD_MAX_RETRY_DELAY_MILLIS, UPLOAD_RETRY_DELAY_MILLIS << Math.min(attempt, 16));
+  }
+
+  private String submitReportPath() {
+    int snapshotId = resourceCache.get(project.getEffectiveKey()).snapshotId();
+    return "/api/computation/submit_report?projectKey=" + project.getEffectiveKey() + "&snapshot=" + snapshotId;
+  }
+
+  private URL url(String path) {
     try {
-      int snapshotId = resourceCache.get(project.getEffectiveKey()).snapshotId();
-      url = new URL(serverClient.getURL() + "/api/computation/submit_report?projectKey=" + project.getEffectiveKey() + "&snapshot=" + snapshotId);
+      return new URL(serverClient.getURL() + path);
     } catch (MalformedURLException e) {
       throw new IllegalArgumentException("Invalid URL", e);
     }
+  }
+
+  private HttpRequest newPostRequest(URL url) {
     HttpRequest request = HttpRequest.post(url);
     request.trustAllCerts();
     request.trustAllHosts();
     request.header("User-Agent", String.format("SonarQube %s", server.getVersion()));
     request.basic(serverClient.getLogin(), serverClient.getPassword());
-    request.part("report", null, "application/octet-stream", report);
+    return request;
+  }
+
+  private static boolean isAuthorizationError(int responseCode) {
+    return responseCode == 401 || responseCode == 403;
+  }
+
+  private void checkResponse(HttpRequest request, URL url) {
     if (!request.ok()) {
       int responseCode = request.code();
       if (responseCode == 401) {
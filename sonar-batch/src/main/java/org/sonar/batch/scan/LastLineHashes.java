@@ -19,33 +19,98 @@
  */
 package org.sonar.batch.scan;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Iterators;
+import com.google.common.io.InputSupplier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.BatchComponent;
 import org.sonar.api.utils.TimeProfiler;
 import org.sonar.batch.bootstrap.ServerClient;
+import org.sonar.batch.index.Cache;
+import org.sonar.batch.index.Caches;
 
+import javax.annotation.CheckForNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Line hashes of the last analysis. They are only needed for the files having the status CHANGED, so they are
+ * loaded module by module, the first time a changed file of the module is tracked, with a few paged requests
+ * instead of one request per file. They are then kept in a cache.
+ */
 public class LastLineHashes implements BatchComponent {
 
   private static final Logger LOG = LoggerFactory.getLogger(LastLineHashes.class);
 
+  static final int PAGE_SIZE = 1000;
+
   private final ServerClient server;
+  private final Caches caches;
+  private final Set<String> loadedModuleKeys = new HashSet<>();
+  private Cache<String> hashesByFileKey;
 
-  public LastLineHashes(ServerClient server) {
+  public LastLineHashes(ServerClient server, Caches caches) {
     this.server = server;
+    this.caches = caches;
   }
 
-  public String[] getLineHashes(String fileKey) {
-    String hashesFromWs = loadHashesFromWs(fileKey);
-    return Iterators.toArray(Splitter.on('\n').split(hashesFromWs).iterator(), String.class);
+  /**
+   * @param moduleKey key, with branch, of the module the file is directly attached to
+   * @return null if the file was not analyzed before
+   */
+  @CheckForNull
+  public String[] getLineHashes(String moduleKey, String fileKey) {
+    if (hashesByFileKey == null) {
+      hashesByFileKey = caches.createCache("lastLineHashes");
+    }
+    if (loadedModuleKeys.add(moduleKey)) {
+      loadHashesFromWs(moduleKey);
+    }
+    String hashes = hashesByFileKey.get(fileKey);
+    if (hashes == null) {
+      return null;
+    }
+    return Iterators.toArray(Splitter.on(',').split(hashes).iterator(), String.class);
   }
 
-  private String loadHashesFromWs(String fileKey) {
-    TimeProfiler profiler = new TimeProfiler(LOG).start("Load previous line hashes of: " + fileKey).setLevelToDebug();
+  private void loadHashesFromWs(String moduleKey) {
+    TimeProfiler profiler = new TimeProfiler(LOG).start("Load previous line hashes of module " + moduleKey).setLevelToDebug();
     try {
-      return server.request("/api/sources/hash?key=" + ServerClient.encodeForUrl(fileKey));
+      String lastFileKey = null;
+      int loaded;
+      do {
+        String url = "/batch/line_hashes?key=" + ServerClient.encodeForUrl(moduleKey) + "&ps=" + PAGE_SIZE;
+        if (lastFileKey != null) {
+          url += "&after=" + ServerClient.encodeForUrl(lastFileKey);
+        }
+        loaded = 0;
+        InputSupplier<InputStream> request = server.doRequest(url, "GET", null);
+        try (InputStream is = request.getInput(); BufferedReader reader = new BufferedReader(new InputStreamReader(is, Charsets.UTF_8))) {
+          String line = reader.readLine();
+          while (line != null) {
+            int separator = line.lastIndexOf('\t');
+            if (separator > 0) {
+              // files without hashes, like empty files, are returned too, so that only the last page is partial
+              lastFileKey = line.substring(0, separator);
+              String hashes = line.substring(separator + 1);
+              if (!hashes.isEmpty()) {
+                hashesByFileKey.put(lastFileKey, hashes);
+              }
+              loaded++;
+            }
+            line = reader.readLine();
+          }
+        }
+      } while (loaded == PAGE_SIZE);
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to get previous line hashes of module " + moduleKey, e);
     } finally {
       profiler.stop();
     }
@@ -19,22 +19,18 @@
  */
 package org.sonar.batch.scan.filesystem;
 
-import com.google.common.base.Charsets;
-import com.google.common.primitives.Longs;
 import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
-import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -46,39 +42,59 @@ class FileMetadata {
   private static final char LINE_FEED = '\n';
   private static final char CARRIAGE_RETURN = '\r';
   private static final char BOM = '\uFEFF';
+  private static final char NULL_CHAR = '\u0000';
+  private static final byte UNMAPPABLE_CHAR = '?';
+
+  private static final int BUFFER_SIZE = 8 * 1024;
+  // A char is encoded with at most 3 bytes in UTF-8
+  private static final int MAX_BYTES_PER_CHAR = 3;
 
   /**
    * Compute hash of a file ignoring line ends differences.
    * Maximum performance is needed.
    */
   Metadata read(File file, Charset encoding) {
+    try (Reader reader = new InputStreamReader(new FileInputStream(file), encoding)) {
+      return read(reader);
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format("Fail to read file '%s' with encoding '%s'", file.getAbsolutePath(), encoding), e);
+    }
+  }
+
+  /**
+   * Chars are decoded by blocks, then encoded in UTF-8 into reusable buffers that are flushed to the digests
+   * once per block.
+   */
+  private static Metadata read(Reader reader) throws IOException {
+    char[] chars = new char[BUFFER_SIZE];
+    byte[] globalBytes = new byte[BUFFER_SIZE * MAX_BYTES_PER_CHAR];
+    byte[] lineBytes = new byte[BUFFER_SIZE * MAX_BYTES_PER_CHAR];
+    int globalLength = 0;
+    int lineLength = 0;
+    MessageDigest globalMd5Digest = DigestUtils.getMd5Digest();
+    MessageDigest lineMd5Digest = DigestUtils.getMd5Digest();
+
     long currentOriginalOffset = 0;
-    List<Long> originalLineOffsets = new ArrayList<Long>();
-    List<Object> lineHashes = new ArrayList<Object>();
+    // First offset of first line is always 0
+    long[] originalLineOffsets = new long[64];
+    List<byte[]> lineHashes = new ArrayList<byte[]>();
     int lines = 1;
-    char c = (char) 0;
-    try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), encoding))) {
-      MessageDigest globalMd5Digest = DigestUtils.getMd5Digest();
-      MessageDigest lineMd5Digest = DigestUtils.getMd5Digest();
-      int i = reader.read();
-      boolean afterCR = false;
-      // First offset of first line is always 0
-      originalLineOffsets.add(0L);
-      boolean blankline = true;
-      while (i != -1) {
-        c = (char) i;
+    boolean afterCR = false;
+    boolean blankline = true;
+    int read = reader.read(chars);
+    while (read != -1) {
+      for (int i = 0; i < read; i++) {
+        char c = chars[i];
         if (c == BOM) {
           // Ignore
-          i = reader.read();
           continue;
         }
         currentOriginalOffset++;
         if (afterCR) {
           afterCR = false;
           if (c == LINE_FEED) {
-            originalLineOffsets.set(originalLineOffsets.size() - 1, originalLineOffsets.get(originalLineOffsets.size() - 1) + 1);
+            originalLineOffsets[lines - 1]++;
             // Ignore
-            i = reader.read();
             continue;
           }
         }
@@ -87,43 +103,62 @@ class FileMetadata {
           c = LINE_FEED;
         }
         if (c == LINE_FEED) {
+          if (lines == originalLineOffsets.length) {
+            originalLineOffsets = Arrays.copyOf(originalLineOffsets, lines * 2);
+          }
+          originalLineOffsets[lines] = currentOriginalOffset;
           lines++;
-          originalLineOffsets.add(currentOriginalOffset);
-          lineHashes.add(blankline ? null : lineMd5Digest.digest());
-          blankline = true;
-        } else {
-          if (!Character.isWhitespace(c)) {
-            blankline = false;
-            updateDigestUTF8Char(c, lineMd5Digest);
+          if (blankline) {
+            lineHashes.add(null);
+          } else {
+            lineMd5Digest.update(lineBytes, 0, lineLength);
+            lineLength = 0;
+            lineHashes.add(lineMd5Digest.digest());
           }
+          blankline = true;
+        } else if (!Character.isWhitespace(c)) {
+          blankline = false;
+          lineLength = encodeUTF8Char(c, lineBytes, lineLength);
         }
-        updateDigestUTF8Char(c, globalMd5Digest);
-        i = reader.read();
-      }
-      if (c != (char) -1) {
-        // Last line
-        lineHashes.add(blankline ? null : lineMd5Digest.digest());
+        globalLength = encodeUTF8Char(c, globalBytes, globalLength);
       }
-      boolean empty = lines == 1 && blankline;
-      String filehash = empty ? null : Hex.encodeHexString(globalMd5Digest.digest());
-      return new Metadata(lines, filehash, originalLineOffsets, lineHashes.toArray(new byte[0][]), empty);
-
-    } catch (IOException e) {
-      throw new IllegalStateException(String.format("Fail to read file '%s' with encoding '%s'", file.getAbsolutePath(), encoding), e);
+      globalMd5Digest.update(globalBytes, 0, globalLength);
+      globalLength = 0;
+      lineMd5Digest.update(lineBytes, 0, lineLength);
+      lineLength = 0;
+      read = reader.read(chars);
     }
+    // Last line
+    lineHashes.add(blankline ? null : lineMd5Digest.digest());
+    boolean empty = lines == 1 && blankline;
+    String filehash = empty ? null : Hex.encodeHexString(globalMd5Digest.digest());
+    return new Metadata(lines, filehash, Arrays.copyOf(originalLineOffsets, lines), lineHashes.toArray(new byte[0][]), empty);
   }
 
-  private void updateDigestUTF8Char(char c, MessageDigest md5Digest) {
-    CharBuffer cb = CharBuffer.allocate(1);
-    cb.put(c);
-    cb.flip();
-    ByteBuffer bb = Charsets.UTF_8.encode(cb);
-    byte[] array = bb.array();
-    for (int i = 0; i < array.length; i++) {
-      if (array[i] != 0) {
-        md5Digest.update(array[i]);
-      }
+  /**
+   * Encode a single char the same way as {@link java.nio.charset.Charset#encode(java.nio.CharBuffer)} does,
+   * so that hashes are unchanged: surrogates are encoded separately, so they are unmappable,
+   * and null chars are ignored.
+   * @return the new length of the buffer
+   */
+  private static int encodeUTF8Char(char c, byte[] bytes, int length) {
+    int index = length;
+    if (c == NULL_CHAR) {
+      return index;
+    }
+    if (c < 0x80) {
+      bytes[index++] = (byte) c;
+    } else if (c < 0x800) {
+      bytes[index++] = (byte) (0xc0 | (c >> 6));
+      bytes[index++] = (byte) (0x80 | (c & 0x3f));
+    } else if (Character.isSurrogate(c)) {
+      bytes[index++] = UNMAPPABLE_CHAR;
+    } else {
+      bytes[index++] = (byte) (0xe0 | (c >> 12));
+      bytes[index++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+      bytes[index++] = (byte) (0x80 | (c & 0x3f));
     }
+    return index;
   }
 
   static class Metadata {
@@ -133,11 +168,11 @@ class FileMetadata {
     final byte[][] lineHashes;
     final boolean empty;
 
-    private Metadata(int lines, String hash, List<Long> originalLineOffsets, byte[][] lineHashes, boolean empty) {
+    Metadata(int lines, String hash, long[] originalLineOffsets, byte[][] lineHashes, boolean empty) {
       this.lines = lines;
       this.hash = hash;
       this.empty = empty;
-      this.originalLineOffsets = Longs.toArray(originalLineOffsets);
+      this.originalLineOffsets = originalLineOffsets;
       this.lineHashes = lineHashes;
     }
   }
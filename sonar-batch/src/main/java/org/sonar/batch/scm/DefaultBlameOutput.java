@@ -33,20 +33,28 @@ import org.sonar.batch.util.ProgressReport;
 import javax.annotation.Nullable;
 
 import java.text.Normalizer;
+import java.util.Collections;
 import java.util.Date;
-import java.util.HashSet;
 import java.util.List;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
+/**
+ * Blame results can be reported by any thread. They are queued and the measures are saved by the thread
+ * executing the sensor when calling {@link #flush()}, as the measure cache must not be shared between threads.
+ */
 class DefaultBlameOutput implements BlameOutput {
 
   private static final Pattern NON_ASCII_CHARS = Pattern.compile("[^\\x00-\\x7F]");
   private static final Pattern ACCENT_CODES = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
 
   private final SensorContext context;
-  private final Set<InputFile> allFilesToBlame = new HashSet<InputFile>();
+  private final Set<InputFile> allFilesToBlame = Collections.newSetFromMap(new ConcurrentHashMap<InputFile, Boolean>());
+  private final Queue<FileBlame> pendingResults = new ConcurrentLinkedQueue<FileBlame>();
   private ProgressReport progressReport;
   private int count;
   private int total;
@@ -61,7 +69,7 @@ class DefaultBlameOutput implements BlameOutput {
   }
 
   @Override
-  public synchronized void blameResult(InputFile file, List<BlameLine> lines) {
+  public void blameResult(InputFile file, List<BlameLine> lines) {
     Preconditions.checkNotNull(file);
     Preconditions.checkNotNull(lines);
     Preconditions.checkArgument(allFilesToBlame.contains(file), "It was not expected to blame file " + file.relativePath());
@@ -80,10 +88,21 @@ class DefaultBlameOutput implements BlameOutput {
       revisions.add(lineNumber, line.revision());
       lineNumber++;
     }
-    ScmSensor.saveMeasures(context, file, authors.buildData(), dates.buildData(), revisions.buildData());
+    pendingResults.add(new FileBlame(file, authors.buildData(), dates.buildData(), revisions.buildData()));
     allFilesToBlame.remove(file);
-    count++;
-    progressReport.message(count + "/" + total + " files analyzed, last one was " + file.absolutePath());
+  }
+
+  /**
+   * Save measures of the files blamed since last call.
+   */
+  void flush() {
+    FileBlame result = pendingResults.poll();
+    while (result != null) {
+      ScmSensor.saveMeasures(context, result.file, result.authors, result.dates, result.revisions);
+      count++;
+      progressReport.message(count + "/" + total + " files analyzed, last one was " + result.file.absolutePath());
+      result = pendingResults.poll();
+    }
   }
 
   private String normalizeString(@Nullable String inputString) {
@@ -109,9 +128,24 @@ class DefaultBlameOutput implements BlameOutput {
   }
 
   public void finish() {
+    flush();
     if (!allFilesToBlame.isEmpty()) {
       throw new IllegalStateException("Some files were not blamed");
     }
     progressReport.stop(count + "/" + count + " files analyzed");
   }
+
+  private static class FileBlame {
+    private final InputFile file;
+    private final String authors;
+    private final String dates;
+    private final String revisions;
+
+    FileBlame(InputFile file, String authors, String dates, String revisions) {
+      this.file = file;
+      this.authors = authors;
+      this.dates = dates;
+      this.revisions = revisions;
+    }
+  }
 }
@@ -139,6 +139,24 @@ public final class ScmConfiguration implements BatchComponent, Startable {
     return settings.getBoolean(CoreProperties.SCM_DISABLED_KEY);
   }
 
+  /**
+   * Number of files blamed concurrently, see {@link CoreProperties#SCM_BLAME_THREADS_KEY}.
+   */
+  public int blameThreads() {
+    int threads = settings.getInt(CoreProperties.SCM_BLAME_THREADS_KEY);
+    return threads > 0 ? threads : (Runtime.getRuntime().availableProcessors() + 1);
+  }
+
+  /**
+   * Maximum time in seconds allowed to blame a single file, zero or negative if there is no limit.
+   */
+  public int blameTimeout() {
+    if (settings.hasKey(CoreProperties.SCM_BLAME_TIMEOUT_KEY)) {
+      return settings.getInt(CoreProperties.SCM_BLAME_TIMEOUT_KEY);
+    }
+    return CoreProperties.SCM_BLAME_TIMEOUT_DEFAULT_VALUE;
+  }
+
   @Override
   public void stop() {
     // Nothing to do
@@ -19,14 +19,18 @@
  */
 package org.sonar.batch.scm;
 
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.CoreProperties;
+import org.sonar.api.batch.ThreadSafe;
 import org.sonar.api.batch.bootstrap.ProjectDefinition;
 import org.sonar.api.batch.fs.FileSystem;
 import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.fs.InputFile.Status;
 import org.sonar.api.batch.fs.internal.DefaultInputFile;
+import org.sonar.api.batch.scm.BlameCommand;
 import org.sonar.api.batch.sensor.Sensor;
 import org.sonar.api.batch.sensor.SensorContext;
 import org.sonar.api.batch.sensor.SensorDescriptor;
@@ -37,14 +41,29 @@ import org.sonar.batch.protocol.input.FileData;
 import org.sonar.batch.protocol.input.ProjectRepository;
 import org.sonar.core.DryRunIncompatible;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @DryRunIncompatible
 public final class ScmSensor implements Sensor {
 
   private static final Logger LOG = LoggerFactory.getLogger(ScmSensor.class);
 
+  /**
+   * Period of saving of blame results when all the files are blamed by a single call
+   */
+  private static final long FLUSH_PERIOD_IN_MILLISECONDS = 500L;
+
   private final ProjectDefinition projectDefinition;
   private final ScmConfiguration configuration;
   private final FileSystem fs;
@@ -82,12 +101,110 @@ public final class ScmSensor implements Sensor {
       LOG.info("SCM provider for this project is: " + configuration.provider().key());
       TimeProfiler profiler = new TimeProfiler().start("Retrieve SCM blame information");
       DefaultBlameOutput output = new DefaultBlameOutput(context, filesToBlame);
-      configuration.provider().blameCommand().blame(new DefaultBlameInput(fs, filesToBlame), output);
+      blame(configuration.provider().blameCommand(), filesToBlame, output);
       output.finish();
       profiler.stop();
     }
   }
 
+  private void blame(BlameCommand blameCommand, List<InputFile> filesToBlame, DefaultBlameOutput output) {
+    if (blameCommand.getClass().isAnnotationPresent(ThreadSafe.class)) {
+      blameConcurrently(blameCommand, filesToBlame, output);
+    } else {
+      blameAtOnce(blameCommand, filesToBlame, output);
+    }
+  }
+
+  /**
+   * Each file is blamed by its own call to the {@link BlameCommand}, so that slow files are spread over
+   * the pool of threads and a blame run that hangs can be detected. The timeout of a run starts when
+   * the results of the previous files have been collected.
+   */
+  private void blameConcurrently(BlameCommand blameCommand, List<InputFile> filesToBlame, DefaultBlameOutput output) {
+    int threads = configuration.blameThreads();
+    ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setNameFormat("scm-blame-%d").setDaemon(true).build());
+    try {
+      Map<InputFile, Future<Void>> tasks = new LinkedHashMap<InputFile, Future<Void>>();
+      for (InputFile f : filesToBlame) {
+        tasks.put(f, executor.submit(new BlameTask(blameCommand, Collections.singletonList(f), output)));
+      }
+      for (Map.Entry<InputFile, Future<Void>> task : tasks.entrySet()) {
+        await(task.getKey(), task.getValue(), configuration.blameTimeout());
+        output.flush();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Commands that are not declared {@link ThreadSafe} are called once with all the files, without timeout.
+   * The call is executed by another thread, so that the results reported so far are saved while waiting for it.
+   */
+  private void blameAtOnce(BlameCommand blameCommand, List<InputFile> filesToBlame, DefaultBlameOutput output) {
+    ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("scm-blame-%d").setDaemon(true).build());
+    try {
+      Future<Void> task = executor.submit(new BlameTask(blameCommand, filesToBlame, output));
+      while (!isDone(task)) {
+        output.flush();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static boolean isDone(Future<Void> task) {
+    try {
+      task.get(FLUSH_PERIOD_IN_MILLISECONDS, TimeUnit.MILLISECONDS);
+      return true;
+    } catch (TimeoutException e) {
+      return false;
+    } catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause());
+      throw new IllegalStateException("Fail to blame files", e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while blaming files", e);
+    }
+  }
+
+  private static void await(InputFile file, Future<Void> task, int timeoutInSeconds) {
+    try {
+      if (timeoutInSeconds > 0) {
+        task.get(timeoutInSeconds, TimeUnit.SECONDS);
+      } else {
+        task.get();
+      }
+    } catch (TimeoutException e) {
+      task.cancel(true);
+      throw new IllegalStateException("Blame of file " + file.relativePath() + " did not complete within " + timeoutInSeconds + " seconds", e);
+    } catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause());
+      throw new IllegalStateException("Fail to blame file " + file.relativePath(), e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while blaming file " + file.relativePath(), e);
+    }
+  }
+
+  private class BlameTask implements Callable<Void> {
+    private final BlameCommand blameCommand;
+    private final List<InputFile> files;
+    private final DefaultBlameOutput output;
+
+    BlameTask(BlameCommand blameCommand, List<InputFile> files, DefaultBlameOutput output) {
+      this.blameCommand = blameCommand;
+      this.files = files;
+      this.output = output;
+    }
+
+    @Override
+    public Void call() {
+      blameCommand.blame(new DefaultBlameInput(fs, files), output);
+      return null;
+    }
+  }
+
   private void copyPreviousMeasuresForUnmodifiedFiles(final SensorContext context, List<InputFile> filesToBlame, InputFile f) {
     FileData fileData = projectReferentials.fileData(projectDefinition.getKeyWithBranch(), f.relativePath());
 
@@ -26,6 +26,7 @@ import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.sonar.api.CoreProperties;
+import org.sonar.api.utils.MessageException;
 import org.sonar.batch.bootstrap.BootstrapProperties;
 import org.sonar.batch.bootstrap.TempFolderProvider;
 
@@ -42,9 +43,15 @@ public class CachesTest {
   public static TemporaryFolder temp = new TemporaryFolder();
 
   public static Caches createCacheOnTemp(TemporaryFolder temp) {
+    return createCacheOnTemp(temp, Caches.PERSISTIT_ENGINE);
+  }
+
+  public static Caches createCacheOnTemp(TemporaryFolder temp, String engine) {
     try {
-      BootstrapProperties bootstrapProps = new BootstrapProperties(ImmutableMap.of(CoreProperties.WORKING_DIRECTORY, temp.newFolder().getAbsolutePath()));
-      return new Caches(new TempFolderProvider().provide(bootstrapProps));
+      BootstrapProperties bootstrapProps = new BootstrapProperties(ImmutableMap.of(
+        CoreProperties.WORKING_DIRECTORY, temp.newFolder().getAbsolutePath(),
+        Caches.ENGINE_PROPERTY, engine));
+      return new Caches(new TempFolderProvider().provide(bootstrapProps), bootstrapProps);
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
@@ -80,7 +87,7 @@ public class CachesTest {
   public void should_create_cache() throws Exception {
     caches.start();
     Cache<Element> cache = caches.createCache("foo");
-    assertThat(cache).isNotNull();
+    assertThat(cache).isInstanceOf(PersistitCache.class);
   }
 
   @Test
@@ -95,6 +102,26 @@ public class CachesTest {
     }
   }
 
+  @Test
+  public void should_create_mapped_cache() throws Exception {
+    caches.stop();
+    caches = createCacheOnTemp(temp, Caches.MMAP_ENGINE);
+    caches.start();
+    Cache<Element> cache = caches.createCache("foo");
+    assertThat(cache).isInstanceOf(MappedCache.class);
+  }
+
+  @Test
+  public void fail_if_unknown_engine() throws Exception {
+    caches.stop();
+    try {
+      createCacheOnTemp(temp, "unknown");
+      fail();
+    } catch (MessageException e) {
+      assertThat(e).hasMessage("Unsupported value of property sonar.batch.cache.engine: 'unknown'. Supported values are 'persistit' and 'mmap'.");
+    }
+  }
+
   static class Element implements Serializable {
 
   }
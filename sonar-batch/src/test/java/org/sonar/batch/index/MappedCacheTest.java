@@ -0,0 +1,95 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.index;
+
+import com.google.common.base.Strings;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Same behavior than Persistit caches
+ */
+public class MappedCacheTest extends CacheTest {
+
+  @Override
+  protected Caches createCaches() {
+    return CachesTest.createCacheOnTemp(temp, Caches.MMAP_ENGINE);
+  }
+
+  @Test
+  public void replace_value() throws Exception {
+    Cache<String> cache = caches.createCache("capitals");
+    cache.put("europe", "france", "lyon");
+    cache.put("europe", "france", "paris");
+
+    assertThat(cache.get("europe", "france")).isEqualTo("paris");
+    assertThat(cache.values()).containsExactly("paris");
+  }
+
+  @Test
+  public void non_string_keys_are_sorted_like_persistit() throws Exception {
+    Cache<String> cache = caches.createCache("numbers");
+    cache.put(10, "ten");
+    cache.put(-1, "minus one");
+    cache.put(2, "two");
+
+    assertThat(cache.keySet()).containsExactly(-1, 2, 10);
+    assertThat(cache.values()).containsExactly("minus one", "two", "ten");
+  }
+
+  @Test
+  public void put_while_iterating() throws Exception {
+    Cache<String> cache = caches.createCache("capitals");
+    cache.put("europe", "france", "paris");
+    cache.put("europe", "italy", "rome");
+
+    for (String capital : cache.values("europe")) {
+      cache.put("asia", capital, capital);
+    }
+    assertThat(cache.keySet("asia")).containsOnly("paris", "rome");
+  }
+
+  @Test
+  public void store_values_bigger_than_storage_segment() throws Exception {
+    MappedStorage storage = new MappedStorage(temp.newFolder(), 32);
+    byte[] big = Strings.repeat("x", 100).getBytes();
+    long first = storage.append("abc".getBytes(), 3);
+    long second = storage.append(big, big.length);
+    long third = storage.append("def".getBytes(), 3);
+
+    assertThat(storage.read(first)).isEqualTo("abc".getBytes());
+    assertThat(storage.read(second)).isEqualTo(big);
+    assertThat(storage.read(third)).isEqualTo("def".getBytes());
+    storage.close();
+  }
+
+  @Test
+  public void files_are_in_temp_dir() throws Exception {
+    Cache<String> cache = caches.createCache("capitals");
+    cache.put("france", "paris");
+
+    File dir = new File(caches.tempDir(), "mmap");
+    assertThat(Arrays.asList(dir.list())).containsExactly("segment-0.dat");
+  }
+}
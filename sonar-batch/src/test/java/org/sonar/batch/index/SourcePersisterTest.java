@@ -47,6 +47,8 @@ import org.sonar.batch.symbol.DefaultSymbolTableBuilder;
 import org.sonar.core.persistence.AbstractDaoTestCase;
 import org.sonar.core.source.SnapshotDataTypes;
 import org.sonar.core.source.db.FileSourceDao;
+import org.sonar.core.source.db.FileSourceData;
+import org.sonar.core.source.db.FileSourceData.Column;
 import org.sonar.core.source.db.FileSourceDto;
 
 import java.io.IOException;
@@ -107,6 +109,7 @@ public class SourcePersisterTest extends AbstractDaoTestCase {
     java.io.File sameFile = new java.io.File(basedir, relativePathSame);
     FileUtils.write(sameFile, "unchanged\ncontent");
     DefaultInputFile inputFileNew = new DefaultInputFile(PROJECT_KEY, relativePathSame).setLines(2).setAbsolutePath(sameFile.getAbsolutePath())
+      .setHash("123456")
       .setLineHashes(new byte[][] {md5("unchanged"), md5("ncontent")});
     when(inputPathCache.all()).thenReturn(Arrays.<InputPath>asList(inputFileNew));
 
@@ -116,6 +119,54 @@ public class SourcePersisterTest extends AbstractDaoTestCase {
     checkTables("testPersistDontTouchUnchanged", "file_sources");
   }
 
+  @Test
+  public void testDontReadUnchangedFile() throws Exception {
+    setupData("file_sources");
+    when(system2.newDate()).thenReturn(DateUtils.parseDateTime("2014-10-29T16:44:02+0100"));
+
+    String relativePathSame = "src/same.java";
+    // File is not on disk, so it would fail if lines were built
+    DefaultInputFile inputFileNew = new DefaultInputFile(PROJECT_KEY, relativePathSame).setLines(2)
+      .setAbsolutePath(new java.io.File(basedir, relativePathSame).getAbsolutePath())
+      .setHash("123456")
+      .setLineHashes(new byte[][] {md5("unchanged"), md5("ncontent")});
+    when(inputPathCache.all()).thenReturn(Arrays.<InputPath>asList(inputFileNew));
+
+    mockResourceCache(relativePathSame, PROJECT_KEY, "uuidsame");
+
+    sourcePersister.persist();
+    checkTables("testPersistDontTouchUnchanged", "file_sources");
+  }
+
+  @Test
+  public void testPersistUpdateChangedLineMeasures() throws Exception {
+    setupData("file_sources");
+    Date now = DateUtils.parseDateTime("2014-10-29T16:44:02+0100");
+    when(system2.newDate()).thenReturn(now);
+
+    String relativePathSame = "src/same.java";
+    java.io.File sameFile = new java.io.File(basedir, relativePathSame);
+    FileUtils.write(sameFile, "unchanged\ncontent");
+    DefaultInputFile inputFileNew = new DefaultInputFile(PROJECT_KEY, relativePathSame).setLines(2).setAbsolutePath(sameFile.getAbsolutePath())
+      .setHash("123456")
+      .setLineHashes(new byte[][] {md5("unchanged"), md5("ncontent")});
+    when(inputPathCache.all()).thenReturn(Arrays.<InputPath>asList(inputFileNew));
+    when(measureCache.byMetric(PROJECT_KEY + ":" + relativePathSame, CoreMetrics.SCM_AUTHORS_BY_LINE_KEY))
+      .thenReturn(Arrays.asList(new Measure(CoreMetrics.SCM_AUTHORS_BY_LINE, "1=julien;2=simon")));
+
+    mockResourceCache(relativePathSame, PROJECT_KEY, "uuidsame");
+
+    String expectedDataHash = sourcePersister.computeDataHash(inputFileNew);
+    sourcePersister.persist();
+
+    FileSourceDto fileSourceDto = new FileSourceDao(getMyBatis()).select("uuidsame");
+    assertThat(fileSourceDto.getUpdatedAt()).isEqualTo(now.getTime());
+    assertThat(fileSourceDto.getDataHash()).isEqualTo(expectedDataHash).isNotEqualTo("681898615d1a4af66ccbd102a50bf6ad");
+    FileSourceData data = FileSourceData.decode(fileSourceDto.getBinaryData());
+    assertThat(data.getString(Column.SCM_AUTHOR, 1)).isEqualTo("julien");
+    assertThat(data.getString(Column.SCM_AUTHOR, 2)).isEqualTo("simon");
+  }
+
   @Test
   public void testPersistUpdateChanged() throws Exception {
     setupData("file_sources");
@@ -127,22 +178,26 @@ public class SourcePersisterTest extends AbstractDaoTestCase {
     FileUtils.write(sameFile, "changed\ncontent");
     DefaultInputFile inputFileNew = new DefaultInputFile(PROJECT_KEY, relativePathSame).setLines(2)
       .setAbsolutePath(sameFile.getAbsolutePath())
-      .setHash("123456")
+      .setHash("987654")
       .setLineHashes(new byte[][] {md5("changed"), md5("content")});
     when(inputPathCache.all()).thenReturn(Arrays.<InputPath>asList(inputFileNew));
 
     mockResourceCache(relativePathSame, PROJECT_KEY, "uuidsame");
 
+    String expectedDataHash = sourcePersister.computeDataHash(inputFileNew);
     sourcePersister.persist();
 
     FileSourceDto fileSourceDto = new FileSourceDao(getMyBatis()).select("uuidsame");
     assertThat(fileSourceDto.getCreatedAt()).isEqualTo(DateUtils.parseDateTime("2014-10-10T16:44:02+0200").getTime());
     assertThat(fileSourceDto.getUpdatedAt()).isEqualTo(now.getTime());
-    assertThat(fileSourceDto.getData()).isEqualTo(
-      ",,,,,,,,,,,,,,,changed\r\n,,,,,,,,,,,,,,,content\r\n");
+    FileSourceData data = FileSourceData.decode(fileSourceDto.getBinaryData());
+    assertThat(data.lines()).isEqualTo(2);
+    assertThat(data.getString(Column.SOURCE, 1)).isEqualTo("changed");
+    assertThat(data.getString(Column.SOURCE, 2)).isEqualTo("content");
+    assertThat(data.getString(Column.SCM_AUTHOR, 1)).isNull();
     assertThat(fileSourceDto.getLineHashes()).isEqualTo(md5Hex("changed") + "\n" + md5Hex("content"));
-    assertThat(fileSourceDto.getDataHash()).isEqualTo("d1a4dd62422639f665a8d80b37c59f8d");
-    assertThat(fileSourceDto.getSrcHash()).isEqualTo("123456");
+    assertThat(fileSourceDto.getDataHash()).isEqualTo(expectedDataHash);
+    assertThat(fileSourceDto.getSrcHash()).isEqualTo("987654");
   }
 
   @Test
@@ -180,14 +235,20 @@ public class SourcePersisterTest extends AbstractDaoTestCase {
 
     mockResourceCache(relativePathNew, PROJECT_KEY, "uuidnew");
 
+    String expectedDataHash = sourcePersister.computeDataHash(inputFileNew);
     sourcePersister.persist();
     FileSourceDto fileSourceDto = new FileSourceDao(getMyBatis()).select("uuidnew");
     assertThat(fileSourceDto.getCreatedAt()).isEqualTo(now.getTime());
     assertThat(fileSourceDto.getUpdatedAt()).isEqualTo(now.getTime());
-    assertThat(fileSourceDto.getData()).isEqualTo(
-      ",,,,,,,,,,,,,,,foo\r\n,,,,,,,,,,,,,,,bar\r\n,,,,,,,,,,,,,,,biz\r\n");
+    FileSourceData data = FileSourceData.decode(fileSourceDto.getBinaryData());
+    assertThat(data.lines()).isEqualTo(3);
+    assertThat(data.getString(Column.SOURCE, 1)).isEqualTo("foo");
+    assertThat(data.getString(Column.SOURCE, 2)).isEqualTo("bar");
+    assertThat(data.getString(Column.SOURCE, 3)).isEqualTo("biz");
+    assertThat(data.getString(Column.SCM_AUTHOR, 1)).isNull();
+    assertThat(data.getString(Column.HIGHLIGHTING, 1)).isNull();
     assertThat(fileSourceDto.getLineHashes()).isEqualTo(md5Hex("foo") + "\n" + md5Hex("bar") + "\n" + md5Hex("biz"));
-    assertThat(fileSourceDto.getDataHash()).isEqualTo("a34ed99cc7d27150c82f5cba2b22b665");
+    assertThat(fileSourceDto.getDataHash()).isEqualTo(expectedDataHash);
 
   }
 
@@ -263,17 +324,36 @@ public class SourcePersisterTest extends AbstractDaoTestCase {
       .addDuplicate(new DuplicationGroup.Block("anotherFile2", 13, 2));
     when(duplicationCache.byComponent(fileKey)).thenReturn(Arrays.asList(group1, group2));
 
+    String expectedDataHash = sourcePersister.computeDataHash(inputFileNew);
     sourcePersister.persist();
 
     FileSourceDto fileSourceDto = new FileSourceDao(getMyBatis()).select("uuidnew");
     assertThat(fileSourceDto.getCreatedAt()).isEqualTo(now.getTime());
     assertThat(fileSourceDto.getUpdatedAt()).isEqualTo(now.getTime());
     assertThat(fileSourceDto.getLineHashes()).isEqualTo(md5Hex("foo") + "\n" + md5Hex("bar") + "\n" + md5Hex("biz"));
-    assertThat(fileSourceDto.getData()).isEqualTo(
-      "123,julien,2014-10-11T16:44:02+0100,1,4,2,2,5,3,3,6,4,\"0,3,a\",\"1,2,1;0,2,2\",\"1,3\",foo\r\n"
-        + "234,simon,2014-10-12T16:44:02+0100,,,,,,,,,,\"0,1,cd\",\"0,1,1;0,2,2\",3,bar\r\n"
-        + "345,julien,2014-10-13T16:44:02+0100,0,,,0,,,0,,,\"0,9,c\",\"4,5,1;0,2,2\",2,biz\r\n");
-    assertThat(fileSourceDto.getDataHash()).isEqualTo("26930cf0250d525b04083185ff24a046");
+    FileSourceData data = FileSourceData.decode(fileSourceDto.getBinaryData());
+    assertThat(data.lines()).isEqualTo(3);
+    assertLine(data, 1, "123", "julien", "2014-10-11T16:44:02+0100", new Integer[] {1, 4, 2, 2, 5, 3, 3, 6, 4}, "0,3,a", "1,2,1;0,2,2", "foo", 1, 3);
+    assertLine(data, 2, "234", "simon", "2014-10-12T16:44:02+0100", new Integer[9], "0,1,cd", "0,1,1;0,2,2", "bar", 3);
+    assertLine(data, 3, "345", "julien", "2014-10-13T16:44:02+0100", new Integer[] {0, null, null, 0, null, null, 0, null, null}, "0,9,c", "4,5,1;0,2,2", "biz", 2);
+    assertThat(fileSourceDto.getDataHash()).isEqualTo(expectedDataHash);
+  }
+
+  private void assertLine(FileSourceData data, int line, String revision, String author, String date, Integer[] coverage,
+    String highlighting, String symbols, String source, Integer... duplications) {
+    assertThat(data.getString(Column.SCM_REVISION, line)).isEqualTo(revision);
+    assertThat(data.getString(Column.SCM_AUTHOR, line)).isEqualTo(author);
+    assertThat(data.getDate(Column.SCM_DATE, line)).isEqualTo(DateUtils.parseDateTime(date));
+    Column[] coverageColumns = {Column.UT_LINE_HITS, Column.UT_CONDITIONS, Column.UT_COVERED_CONDITIONS,
+      Column.IT_LINE_HITS, Column.IT_CONDITIONS, Column.IT_COVERED_CONDITIONS,
+      Column.OVERALL_LINE_HITS, Column.OVERALL_CONDITIONS, Column.OVERALL_COVERED_CONDITIONS};
+    for (int i = 0; i < coverageColumns.length; i++) {
+      assertThat(data.getInteger(coverageColumns[i], line)).as(coverageColumns[i].name()).isEqualTo(coverage[i]);
+    }
+    assertThat(data.getString(Column.HIGHLIGHTING, line)).isEqualTo(highlighting);
+    assertThat(data.getString(Column.SYMBOLS, line)).isEqualTo(symbols);
+    assertThat(data.getIntegers(Column.DUPLICATIONS, line)).containsExactly(duplications);
+    assertThat(data.getString(Column.SOURCE, line)).isEqualTo(source);
   }
 
   @Test
@@ -50,7 +50,7 @@ public class InitialOpenIssuesStackTest {
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
-    return new Caches(new TempFolderProvider().provide(bootstrapSettings));
+    return new Caches(new TempFolderProvider().provide(bootstrapSettings), bootstrapSettings);
   }
 
   InitialOpenIssuesStack stack;
@@ -0,0 +1,92 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.issue.tracking;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.issue.internal.DefaultIssue;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.core.issue.db.IssueDto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tracking of a file with many issues of the same rule, for each pass that does not rely on line and checksum.
+ * Benchmarks are executed only with the profile runBenchmarks (mvn test -DrunBenchmarks).
+ */
+public class IssueTrackingBenchmarkTest {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(IssueTrackingBenchmarkTest.class);
+  private static final int ISSUES = 10000;
+  private static final RuleKey RULE_KEY = RuleKey.of("squid", "AvoidCycle");
+
+  private final IssueTracking tracking = new IssueTracking();
+
+  @Test
+  public void match_on_checksum_and_message() {
+    benchmark("checksum and message", 1, "checksum", "message");
+  }
+
+  @Test
+  public void match_on_line_and_message() {
+    benchmark("line and message", 0, "new checksum", "message");
+  }
+
+  @Test
+  public void match_on_checksum() {
+    benchmark("checksum", 1, "checksum", "new message");
+  }
+
+  private void benchmark(String label, int lineShift, String newChecksumPrefix, String newMessagePrefix) {
+    List<PreviousIssue> previousIssues = new ArrayList<PreviousIssue>();
+    List<DefaultIssue> newIssues = new ArrayList<DefaultIssue>();
+    for (int i = 1; i <= ISSUES; i++) {
+      previousIssues.add(newPreviousIssue(i, i, "checksum" + i, "message" + i));
+      newIssues.add(new DefaultIssue().setKey("new" + i).setRuleKey(RULE_KEY).setLine(i + lineShift)
+        .setChecksum(newChecksumPrefix + i).setMessage(newMessagePrefix + i));
+    }
+
+    long start = System.currentTimeMillis();
+    IssueTrackingResult result = new IssueTrackingResult();
+    tracking.mapIssues(newIssues, previousIssues, null, result);
+    LOGGER.info(String.format("%d issues tracked on %s in %d ms", ISSUES, label, System.currentTimeMillis() - start));
+
+    assertThat(result.matched()).hasSize(ISSUES);
+    assertThat(result.unmatched()).isEmpty();
+    for (int i = 0; i < ISSUES; i++) {
+      assertThat(result.matching(newIssues.get(i))).isSameAs(previousIssues.get(i));
+    }
+  }
+
+  private static PreviousIssue newPreviousIssue(long id, int line, String checksum, String message) {
+    IssueDto dto = new IssueDto();
+    dto.setId(id);
+    dto.setKee(Long.toString(id));
+    dto.setLine(line);
+    dto.setMessage(message);
+    dto.setRuleKey(RULE_KEY.repository(), RULE_KEY.rule());
+    dto.setChecksum(checksum);
+    return new PreviousIssueFromDb(dto);
+  }
+}
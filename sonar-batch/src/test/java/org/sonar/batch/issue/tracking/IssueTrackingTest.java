@@ -38,6 +38,7 @@ import org.sonar.core.issue.db.IssueDto;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 
 import static com.google.common.collect.Lists.newArrayList;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -310,6 +311,39 @@ public class IssueTrackingTest {
     assertThat(result.matching(newIssue5)).isSameAs(referenceIssue1);
   }
 
+  @Test
+  public void match_many_issues_of_same_rule_on_checksum_and_message() {
+    verifyManyIssuesAreMatched(1, "checksum", "message");
+  }
+
+  @Test
+  public void match_many_issues_of_same_rule_on_line_and_message() {
+    verifyManyIssuesAreMatched(0, "new checksum", "message");
+  }
+
+  @Test
+  public void match_many_issues_of_same_rule_on_checksum() {
+    verifyManyIssuesAreMatched(1, "checksum", "new message");
+  }
+
+  private void verifyManyIssuesAreMatched(int lineShift, String newChecksumPrefix, String newMessagePrefix) {
+    RuleKey ruleKey = RuleKey.of("squid", "AvoidCycle");
+    List<PreviousIssue> referenceIssues = newArrayList();
+    List<DefaultIssue> newIssues = newArrayList();
+    for (int i = 1; i <= 100; i++) {
+      referenceIssues.add(newReferenceIssue("message" + i, i, "squid", "AvoidCycle", "checksum" + i));
+      newIssues.add(newDefaultIssue(newMessagePrefix + i, i + lineShift, ruleKey, newChecksumPrefix + i));
+    }
+
+    IssueTrackingResult result = new IssueTrackingResult();
+    tracking.mapIssues(newIssues, referenceIssues, null, result);
+
+    assertThat(result.unmatched()).isEmpty();
+    for (int i = 0; i < newIssues.size(); i++) {
+      assertThat(result.matching(newIssues.get(i))).isSameAs(referenceIssues.get(i));
+    }
+  }
+
   @Test
   public void dont_load_checksum_if_no_new_issue() throws Exception {
     sourceHashHolder = mock(SourceHashHolder.class);
@@ -347,8 +381,9 @@ public class IssueTrackingTest {
     DefaultInputFile inputFile = mock(DefaultInputFile.class);
     byte[][] hashes = computeHashes(load(newSource));
     when(inputFile.lineHashes()).thenReturn(hashes);
+    when(inputFile.moduleKey()).thenReturn("foo");
     when(inputFile.key()).thenReturn("foo:Action.java");
-    when(lastSnapshots.getLineHashes("foo:Action.java")).thenReturn(computeHexHashes(load(reference)));
+    when(lastSnapshots.getLineHashes("foo", "foo:Action.java")).thenReturn(computeHexHashes(load(reference)));
     sourceHashHolder = new SourceHashHolder(inputFile, lastSnapshots);
   }
 
@@ -56,6 +56,7 @@ public class SourceHashHolderTest {
     assertThat(sourceHashHolder.getHashedSource().getHash(1)).isEqualTo(md5Hex(source));
     assertThat(sourceHashHolder.getHashedSource().getHash(2)).isEqualTo("");
     verify(file).lineHashes();
+    verify(file).moduleKey();
     verify(file).key();
     verify(file).status();
 
@@ -68,12 +69,13 @@ public class SourceHashHolderTest {
     final String source = "source";
     String key = "foo:src/Foo.java";
     when(file.lineHashes()).thenReturn(new byte[][] {md5(source)});
+    when(file.moduleKey()).thenReturn("foo");
     when(file.key()).thenReturn(key);
     when(file.status()).thenReturn(InputFile.Status.CHANGED);
-    when(lastSnapshots.getLineHashes(key)).thenReturn(new String[] {md5Hex(source)});
+    when(lastSnapshots.getLineHashes("foo", key)).thenReturn(new String[] {md5Hex(source)});
 
     assertThat(sourceHashHolder.getHashedReference().getHash(1)).isEqualTo(md5Hex(source));
-    verify(lastSnapshots).getLineHashes(key);
+    verify(lastSnapshots).getLineHashes("foo", key);
 
     assertThat(sourceHashHolder.getHashedReference().getHash(1)).isEqualTo(md5Hex(source));
     Mockito.verifyNoMoreInteractions(lastSnapshots);
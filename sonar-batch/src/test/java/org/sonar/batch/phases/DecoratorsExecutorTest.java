@@ -20,10 +20,19 @@
 package org.sonar.batch.phases;
 
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.sonar.api.batch.Decorator;
 import org.sonar.api.batch.DecoratorContext;
 import org.sonar.api.batch.SonarIndex;
+import org.sonar.api.batch.ThreadSafe;
+import org.sonar.api.config.Settings;
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.measures.Measure;
+import org.sonar.api.measures.MeasureUtils;
 import org.sonar.api.measures.MetricFinder;
+import org.sonar.api.resources.Directory;
 import org.sonar.api.resources.File;
 import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Resource;
@@ -35,11 +44,18 @@ import org.sonar.batch.events.EventBus;
 import org.sonar.batch.scan.measure.MeasureCache;
 import org.sonar.batch.sensor.coverage.CoverageExclusions;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class DecoratorsExecutorTest {
 
@@ -67,7 +83,7 @@ public class DecoratorsExecutorTest {
     doThrow(new SonarException()).when(decorator).decorate(any(Resource.class), any(DecoratorContext.class));
 
     DecoratorsExecutor executor = new DecoratorsExecutor(mock(BatchExtensionDictionnary.class), new Project("key"), mock(SonarIndex.class),
-      mock(EventBus.class), mock(CoverageExclusions.class), mock(MeasureCache.class), mock(MetricFinder.class), mock(DuplicationCache.class));
+      mock(EventBus.class), mock(CoverageExclusions.class), mock(MeasureCache.class), mock(MetricFinder.class), mock(DuplicationCache.class), new Settings());
     try {
       executor.executeDecorator(decorator, mock(DefaultDecoratorContext.class), File.create("src/org/foo/Bar.java", "org/foo/Bar.java", null, false));
       fail("Exception has not been thrown");
@@ -77,6 +93,76 @@ public class DecoratorsExecutorTest {
     }
   }
 
+  @Test
+  public void decorate_sibling_resources_concurrently() {
+    Project project = new Project("key");
+    Directory dir1 = Directory.create("src/dir1");
+    Directory dir2 = Directory.create("src/dir2");
+    File file1 = File.create("src/dir1/File1.java");
+    File file2 = File.create("src/dir1/File2.java");
+    File file3 = File.create("src/dir2/File3.java");
+    SonarIndex index = mock(SonarIndex.class);
+    when(index.getChildren(any(Resource.class))).thenReturn(Collections.<Resource>emptyList());
+    when(index.getChildren(project)).thenReturn(Arrays.<Resource>asList(dir1, dir2));
+    when(index.getChildren(dir1)).thenReturn(Arrays.<Resource>asList(file1, file2));
+    when(index.getChildren(dir2)).thenReturn(Arrays.<Resource>asList(file3));
+    MeasureCache measureCache = mock(MeasureCache.class);
+    when(measureCache.byResource(any(Resource.class))).thenReturn(Collections.<Measure>emptyList());
+    MetricFinder metricFinder = mock(MetricFinder.class);
+    when(metricFinder.findByKey(CoreMetrics.FILES_KEY)).thenReturn(CoreMetrics.FILES);
+    CoverageExclusions coverageExclusions = mock(CoverageExclusions.class);
+    when(coverageExclusions.accept(any(Resource.class), any(Measure.class))).thenReturn(true);
+    FilesCounter filesCounter = new FilesCounter();
+    ResourcesCounter resourcesCounter = new ResourcesCounter();
+    BatchExtensionDictionnary dictionnary = mock(BatchExtensionDictionnary.class);
+    when(dictionnary.select(Decorator.class, project, false, null)).thenReturn(Arrays.<Decorator>asList(filesCounter, resourcesCounter));
+    when(dictionnary.sort(any(Collection.class))).thenAnswer(new Answer<Object>() {
+      @Override
+      public Object answer(InvocationOnMock invocation) {
+        return invocation.getArguments()[0];
+      }
+    });
+    Settings settings = new Settings();
+    settings.setProperty(DecoratorsExecutor.THREADS_PROPERTY, 4);
+
+    new DecoratorsExecutor(dictionnary, project, index, mock(EventBus.class), coverageExclusions, measureCache, metricFinder,
+      mock(DuplicationCache.class), settings).execute();
+
+    ArgumentCaptor<Measure> measure = ArgumentCaptor.forClass(Measure.class);
+    verify(measureCache).put(eq(dir1), measure.capture());
+    assertThat(measure.getValue().getValue()).isEqualTo(2.0);
+    verify(measureCache).put(eq(project), measure.capture());
+    assertThat(measure.getValue().getValue()).isEqualTo(3.0);
+    assertThat(resourcesCounter.count).isEqualTo(6);
+  }
+
+  @ThreadSafe
+  static class FilesCounter implements Decorator {
+    public void decorate(Resource resource, DecoratorContext context) {
+      if (Resource.QUALIFIER_FILE.equals(resource.getQualifier())) {
+        context.saveMeasure(CoreMetrics.FILES, 1.0);
+      } else {
+        context.saveMeasure(CoreMetrics.FILES, MeasureUtils.sum(false, context.getChildrenMeasures(CoreMetrics.FILES)));
+      }
+    }
+
+    public boolean shouldExecuteOnProject(Project project) {
+      return true;
+    }
+  }
+
+  static class ResourcesCounter implements Decorator {
+    int count = 0;
+
+    public void decorate(Resource resource, DecoratorContext context) {
+      count++;
+    }
+
+    public boolean shouldExecuteOnProject(Project project) {
+      return true;
+    }
+  }
+
   static class Decorator1 implements Decorator {
     public void decorate(Resource resource, DecoratorContext context) {
     }
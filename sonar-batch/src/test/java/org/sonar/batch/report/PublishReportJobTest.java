@@ -19,8 +19,15 @@
  */
 package org.sonar.batch.report;
 
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.slf4j.Logger;
 import org.sonar.api.CoreProperties;
 import org.sonar.api.config.Settings;
@@ -29,15 +36,30 @@ import org.sonar.api.resources.Project;
 import org.sonar.api.utils.TempFolder;
 import org.sonar.batch.bootstrap.AnalysisMode;
 import org.sonar.batch.bootstrap.ServerClient;
+import org.sonar.batch.index.BatchResource;
 import org.sonar.batch.index.ResourceCache;
+import org.sonar.batch.protocol.output.ReportFormat;
 import org.sonar.jpa.test.AbstractDbUnitTestCase;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class PublishReportJobTest extends AbstractDbUnitTestCase {
 
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
   private AnalysisMode mode;
 
   ResourceCache resourceCache = mock(ResourceCache.class);
@@ -74,4 +96,140 @@ public class PublishReportJobTest extends AbstractDbUnitTestCase {
     verify(logger).info("ANALYSIS SUCCESSFUL");
   }
 
+  @Test
+  public void report_format_is_json_by_default() throws Exception {
+    Settings settings = new Settings();
+    PublishReportJob job = new PublishReportJob(settings, mock(ServerClient.class), mock(Server.class), new Project("struts"), mode, mock(TempFolder.class), resourceCache);
+
+    assertThat(job.reportFormat()).isEqualTo(ReportFormat.JSON);
+
+    settings.setProperty(PublishReportJob.REPORT_FORMAT_PROPERTY, "binary");
+    assertThat(job.reportFormat()).isEqualTo(ReportFormat.BINARY);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void fail_if_unsupported_report_format() throws Exception {
+    Settings settings = new Settings().setProperty(PublishReportJob.REPORT_FORMAT_PROPERTY, "xml");
+    PublishReportJob job = new PublishReportJob(settings, mock(ServerClient.class), mock(Server.class), new Project("struts"), mode, mock(TempFolder.class), resourceCache);
+
+    job.reportFormat();
+  }
+
+  @Test
+  public void compression_level_is_zlib_default_by_default() throws Exception {
+    Settings settings = new Settings();
+    PublishReportJob job = new PublishReportJob(settings, mock(ServerClient.class), mock(Server.class), new Project("struts"), mode, mock(TempFolder.class), resourceCache);
+
+    assertThat(job.compressionLevel()).isEqualTo(Deflater.DEFAULT_COMPRESSION);
+
+    settings.setProperty(PublishReportJob.COMPRESSION_LEVEL_PROPERTY, "1");
+    assertThat(job.compressionLevel()).isEqualTo(1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void fail_if_invalid_compression_level() throws Exception {
+    Settings settings = new Settings().setProperty(PublishReportJob.COMPRESSION_LEVEL_PROPERTY, "10");
+    PublishReportJob job = new PublishReportJob(settings, mock(ServerClient.class), mock(Server.class), new Project("struts"), mode, mock(TempFolder.class), resourceCache);
+
+    job.compressionLevel();
+  }
+
+  @Test
+  public void upload_part_size_in_megabytes() throws Exception {
+    Settings settings = new Settings();
+    PublishReportJob job = new PublishReportJob(settings, mock(ServerClient.class), mock(Server.class), new Project("struts"), mode, mock(TempFolder.class), resourceCache);
+
+    assertThat(job.uploadPartSize()).isEqualTo(10 * 1024 * 1024);
+
+    settings.setProperty(PublishReportJob.UPLOAD_PART_SIZE_PROPERTY, "0");
+    assertThat(job.uploadPartSize()).isEqualTo(0);
+  }
+
+  @Test
+  public void double_retry_delay_up_to_max() {
+    assertThat(PublishReportJob.retryDelayMillis(0)).isEqualTo(1000L);
+    assertThat(PublishReportJob.retryDelayMillis(1)).isEqualTo(2000L);
+    assertThat(PublishReportJob.retryDelayMillis(2)).isEqualTo(4000L);
+    assertThat(PublishReportJob.retryDelayMillis(5)).isEqualTo(30000L);
+    assertThat(PublishReportJob.retryDelayMillis(100)).isEqualTo(30000L);
+  }
+
+  @Test
+  public void upload_report_in_parts_and_retry_failed_part() throws Exception {
+    String content = "0123456789abcdefghijklmnopqrstuvwxyz";
+    File report = temp.newFile();
+    FileUtils.write(report, content);
+    ReportServer reportServer = new ReportServer(content, 15);
+    reportServer.start();
+    try {
+      ServerClient serverClient = mock(ServerClient.class);
+      when(serverClient.getURL()).thenReturn("http://localhost:" + reportServer.getPort());
+      BatchResource batchResource = mock(BatchResource.class);
+      when(batchResource.snapshotId()).thenReturn(123);
+      when(resourceCache.get("struts")).thenReturn(batchResource);
+      PublishReportJob job = new PublishReportJob(new Settings(), serverClient, mock(Server.class), new Project("struts"), mode, mock(TempFolder.class), resourceCache);
+
+      job.uploadReportInParts(report, 15);
+
+      assertThat(reportServer.requests).containsExactly(
+        "/api/computation/upload_report_part offset=0",
+        "/api/computation/upload_report_part offset=15 uploadId=upload1",
+        "/api/computation/upload_report_part offset=15 uploadId=upload1",
+        "/api/computation/upload_report_part offset=30 uploadId=upload1",
+        "/api/computation/submit_report uploadId=upload1");
+    } finally {
+      reportServer.stop();
+    }
+  }
+
+  /**
+   * Fake server that fails the first attempt to upload the second part
+   */
+  private static class ReportServer {
+    private final String content;
+    private final int partSize;
+    private final List<String> requests = new ArrayList<String>();
+    private org.eclipse.jetty.server.Server server;
+
+    ReportServer(String content, int partSize) {
+      this.content = content;
+      this.partSize = partSize;
+    }
+
+    void start() throws Exception {
+      server = new org.eclipse.jetty.server.Server(0);
+      server.setHandler(new AbstractHandler() {
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException {
+          String uploadId = request.getParameter("uploadId");
+          if (target.endsWith("upload_report_part")) {
+            int offset = Integer.parseInt(request.getParameter("offset"));
+            requests.add(target + " offset=" + offset + (uploadId == null ? "" : " uploadId=" + uploadId));
+            String part = content.substring(offset, Math.min(content.length(), offset + partSize));
+            String body = IOUtils.toString(baseRequest.getInputStream());
+            if (offset == partSize && requests.size() == 2) {
+              response.setStatus(500);
+            } else if (body.contains(part) && request.getParameter("checksum").equals(DigestUtils.md5Hex(part))) {
+              IOUtils.write("{\"uploadId\": \"upload1\", \"size\": " + (offset + part.length()) + "}", response.getOutputStream());
+            } else {
+              response.setStatus(400);
+            }
+          } else {
+            requests.add(target + " uploadId=" + uploadId);
+            IOUtils.write("{\"key\": \"P1\"}", response.getOutputStream());
+          }
+          baseRequest.setHandled(true);
+        }
+      });
+      server.start();
+    }
+
+    int getPort() {
+      return server.getConnectors()[0].getLocalPort();
+    }
+
+    void stop() throws Exception {
+      server.stop();
+    }
+  }
 }
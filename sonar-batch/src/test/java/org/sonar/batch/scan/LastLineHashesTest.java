@@ -19,19 +19,27 @@
  */
 package org.sonar.batch.scan;
 
+import com.google.common.base.Charsets;
+import com.google.common.io.InputSupplier;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
-import org.sonar.api.utils.HttpDownloader;
+import org.junit.rules.TemporaryFolder;
 import org.sonar.batch.bootstrap.ServerClient;
+import org.sonar.batch.index.Caches;
+import org.sonar.batch.index.CachesTest;
 
-import java.net.URI;
-import java.net.URISyntaxException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -40,43 +48,121 @@ public class LastLineHashesTest {
   @Rule
   public ExpectedException thrown = ExpectedException.none();
 
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private Caches caches;
+  private ServerClient server;
+
   @Before
   public void before() {
+    caches = CachesTest.createCacheOnTemp(temp);
+    caches.start();
+    server = mock(ServerClient.class);
+  }
+
+  @After
+  public void after() {
+    caches.stop();
+  }
+
+  @Test
+  public void should_download_hashes_of_module_at_once() {
+    mockResponse("myproject:org/foo/Bar.c\tae12,,43fb\nmyproject:org/foo/Foo Bar.c\t12ab\n");
+
+    LastLineHashes lastSnapshots = new LastLineHashes(server, caches);
+
+    assertThat(lastSnapshots.getLineHashes("myproject", "myproject:org/foo/Bar.c")).containsExactly("ae12", "", "43fb");
+    assertThat(lastSnapshots.getLineHashes("myproject", "myproject:org/foo/Foo Bar.c")).containsExactly("12ab");
+    assertThat(lastSnapshots.getLineHashes("myproject", "myproject:org/foo/Unknown.c")).isNull();
+    verify(server, times(1)).doRequest(anyString(), eq("GET"), eq((Integer) null));
+    verify(server).doRequest("/batch/line_hashes?key=myproject&ps=1000", "GET", null);
   }
 
   @Test
-  public void should_download_source_from_ws_if_preview_mode() {
-    ServerClient server = mock(ServerClient.class);
-    when(server.request(anyString())).thenReturn("ae12\n\n43fb");
+  public void should_download_hashes_of_each_module_once() {
+    mockResponse("");
 
-    LastLineHashes lastSnapshots = new LastLineHashes(server);
+    LastLineHashes lastSnapshots = new LastLineHashes(server, caches);
+    lastSnapshots.getLineHashes("core", "core:Foo.c");
+    lastSnapshots.getLineHashes("core", "core:Bar.c");
+    lastSnapshots.getLineHashes("web", "web:Foo.c");
 
-    String[] hashes = lastSnapshots.getLineHashes("myproject:org/foo/Bar.c");
-    assertThat(hashes).containsOnly("ae12", "", "43fb");
-    verify(server).request("/api/sources/hash?key=myproject%3Aorg%2Ffoo%2FBar.c");
+    verify(server, times(2)).doRequest(anyString(), eq("GET"), eq((Integer) null));
+    verify(server).doRequest("/batch/line_hashes?key=core&ps=1000", "GET", null);
+    verify(server).doRequest("/batch/line_hashes?key=web&ps=1000", "GET", null);
   }
 
   @Test
-  public void should_download_source_with_space_from_ws_if_preview_mode() {
-    ServerClient server = mock(ServerClient.class);
-    when(server.request(anyString())).thenReturn("ae12\n\n43fb");
+  public void should_request_next_page_after_last_file_key_of_full_page() {
+    StringBuilder fullPage = new StringBuilder();
+    for (int i = 0; i < LastLineHashes.PAGE_SIZE; i++) {
+      fullPage.append(String.format("foo:File%04d.c\tab%d\n", i, i));
+    }
+    when(server.doRequest("/batch/line_hashes?key=foo&ps=1000", "GET", null)).thenReturn(response(fullPage.toString()));
+    when(server.doRequest("/batch/line_hashes?key=foo&ps=1000&after=foo%3AFile0999.c", "GET", null)).thenReturn(response("foo:Last.c\tcd\n"));
+
+    LastLineHashes lastSnapshots = new LastLineHashes(server, caches);
+
+    assertThat(lastSnapshots.getLineHashes("foo", "foo:File0000.c")).containsExactly("ab0");
+    assertThat(lastSnapshots.getLineHashes("foo", "foo:File0999.c")).containsExactly("ab999");
+    assertThat(lastSnapshots.getLineHashes("foo", "foo:Last.c")).containsExactly("cd");
+    verify(server, times(2)).doRequest(anyString(), eq("GET"), eq((Integer) null));
+  }
 
-    LastLineHashes lastSnapshots = new LastLineHashes(server);
+  @Test
+  public void should_request_next_page_when_full_page_contains_files_without_hashes() {
+    StringBuilder fullPage = new StringBuilder();
+    for (int i = 0; i < LastLineHashes.PAGE_SIZE; i++) {
+      // empty files have no line hashes
+      fullPage.append(String.format("foo:File%04d.c\t%s\n", i, i == 10 ? "" : "ab"));
+    }
+    when(server.doRequest("/batch/line_hashes?key=foo&ps=1000", "GET", null)).thenReturn(response(fullPage.toString()));
+    when(server.doRequest("/batch/line_hashes?key=foo&ps=1000&after=foo%3AFile0999.c", "GET", null)).thenReturn(response("foo:Last.c\tcd\n"));
+
+    LastLineHashes lastSnapshots = new LastLineHashes(server, caches);
+
+    assertThat(lastSnapshots.getLineHashes("foo", "foo:File0010.c")).isNull();
+    assertThat(lastSnapshots.getLineHashes("foo", "foo:Last.c")).containsExactly("cd");
+    verify(server, times(2)).doRequest(anyString(), eq("GET"), eq((Integer) null));
+  }
 
-    String[] hashes = lastSnapshots.getLineHashes("myproject:org/foo/Foo Bar.c");
-    assertThat(hashes).containsOnly("ae12", "", "43fb");
-    verify(server).request("/api/sources/hash?key=myproject%3Aorg%2Ffoo%2FFoo+Bar.c");
+  @Test
+  public void should_encode_module_key() {
+    mockResponse("");
+
+    new LastLineHashes(server, caches).getLineHashes("my project", "my project:Foo.c");
+
+    verify(server).doRequest("/batch/line_hashes?key=my+project&ps=1000", "GET", null);
   }
 
   @Test
-  public void should_fail_to_download_source_from_ws() throws URISyntaxException {
-    ServerClient server = mock(ServerClient.class);
-    when(server.request(anyString())).thenThrow(new HttpDownloader.HttpException(new URI(""), 500));
+  public void should_fail_to_download_hashes_from_ws() {
+    when(server.doRequest(anyString(), anyString(), eq((Integer) null))).thenReturn(new InputSupplier<InputStream>() {
+      @Override
+      public InputStream getInput() throws IOException {
+        throw new IOException("Server error");
+      }
+    });
+
+    LastLineHashes lastSnapshots = new LastLineHashes(server, caches);
+
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Unable to get previous line hashes of module foo");
+    lastSnapshots.getLineHashes("foo", "foo:Bar.c");
+  }
 
-    LastLineHashes lastSnapshots = new LastLineHashes(server);
+  private void mockResponse(String response) {
+    when(server.doRequest(anyString(), anyString(), eq((Integer) null))).thenReturn(response(response));
+  }
 
-    thrown.expect(HttpDownloader.HttpException.class);
-    lastSnapshots.getLineHashes("foo");
+  private static InputSupplier<InputStream> response(final String response) {
+    return new InputSupplier<InputStream>() {
+      @Override
+      public InputStream getInput() {
+        return new ByteArrayInputStream(response.getBytes(Charsets.UTF_8));
+      }
+    };
   }
 
 }
@@ -0,0 +1,153 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.scan.filesystem;
+
+import com.google.common.base.Charsets;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Former implementation of {@link FileMetadata#read(File, Charset)}, which encoded chars one by one. It is the reference
+ * used to check and to benchmark {@link FileMetadata}.
+ */
+class CharByCharFileMetadata {
+
+  private CharByCharFileMetadata() {
+  }
+
+  /**
+   * Writes a file containing all the special cases: EOLs, BOM, whitespaces, non-ASCII, surrogates and null chars.
+   */
+  static void writeSample(File file, int lines, Charset charset) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    sb.append('\uFEFF');
+    for (int i = 0; i < lines; i++) {
+      switch (i % 8) {
+        case 0:
+          sb.append("public class Foo").append(i).append(" {\n");
+          break;
+        case 1:
+          sb.append("  \t  \r\n");
+          break;
+        case 2:
+          sb.append("  // caf\u00E9 \u00E0 la cr\u00E8me \u20AC\r");
+          break;
+        case 3:
+          sb.append("\n");
+          break;
+        case 4:
+          sb.append("  String s = \"\uD83D\uDE00\u0000\";\r\n");
+          break;
+        case 5:
+          sb.append("  int i = ").append(i).append(";\uFEFF\n");
+          break;
+        case 6:
+          sb.append("  \u65E5\u672C\u8A9E\r\r\n");
+          break;
+        default:
+          sb.append("}");
+          break;
+      }
+    }
+    // Characters that are not mappable in the charset are written as '?'
+    FileUtils.write(file, sb.toString(), charset);
+  }
+
+  static FileMetadata.Metadata read(File file, Charset encoding) throws IOException {
+    long currentOriginalOffset = 0;
+    List<Long> originalLineOffsets = new ArrayList<Long>();
+    List<byte[]> lineHashes = new ArrayList<byte[]>();
+    int lines = 1;
+    try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), encoding))) {
+      MessageDigest globalMd5Digest = DigestUtils.getMd5Digest();
+      MessageDigest lineMd5Digest = DigestUtils.getMd5Digest();
+      int i = reader.read();
+      boolean afterCR = false;
+      originalLineOffsets.add(0L);
+      boolean blankline = true;
+      while (i != -1) {
+        char c = (char) i;
+        if (c == '\uFEFF') {
+          i = reader.read();
+          continue;
+        }
+        currentOriginalOffset++;
+        if (afterCR) {
+          afterCR = false;
+          if (c == '\n') {
+            originalLineOffsets.set(originalLineOffsets.size() - 1, originalLineOffsets.get(originalLineOffsets.size() - 1) + 1);
+            i = reader.read();
+            continue;
+          }
+        }
+        if (c == '\r') {
+          afterCR = true;
+          c = '\n';
+        }
+        if (c == '\n') {
+          lines++;
+          originalLineOffsets.add(currentOriginalOffset);
+          lineHashes.add(blankline ? null : lineMd5Digest.digest());
+          blankline = true;
+        } else if (!Character.isWhitespace(c)) {
+          blankline = false;
+          updateDigestUTF8Char(c, lineMd5Digest);
+        }
+        updateDigestUTF8Char(c, globalMd5Digest);
+        i = reader.read();
+      }
+      lineHashes.add(blankline ? null : lineMd5Digest.digest());
+      boolean empty = lines == 1 && blankline;
+      String filehash = empty ? null : Hex.encodeHexString(globalMd5Digest.digest());
+      long[] offsets = new long[originalLineOffsets.size()];
+      for (int j = 0; j < offsets.length; j++) {
+        offsets[j] = originalLineOffsets.get(j);
+      }
+      return new FileMetadata.Metadata(lines, filehash, offsets, lineHashes.toArray(new byte[0][]), empty);
+    }
+  }
+
+  private static void updateDigestUTF8Char(char c, MessageDigest md5Digest) {
+    CharBuffer cb = CharBuffer.allocate(1);
+    cb.put(c);
+    cb.flip();
+    ByteBuffer bb = Charsets.UTF_8.encode(cb);
+    byte[] array = bb.array();
+    for (int i = 0; i < array.length; i++) {
+      if (array[i] != 0) {
+        md5Digest.update(array[i]);
+      }
+    }
+  }
+}
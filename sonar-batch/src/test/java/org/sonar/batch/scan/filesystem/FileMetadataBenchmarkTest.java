@@ -0,0 +1,68 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.scan.filesystem;
+
+import com.google.common.base.Charsets;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+
+/**
+ * Compares the duration of {@link FileMetadata} with the former implementation on a big file. Benchmarks are
+ * executed only with the profile runBenchmarks (mvn test -DrunBenchmarks).
+ */
+public class FileMetadataBenchmarkTest {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(FileMetadataBenchmarkTest.class);
+  private static final int LINES = 100000;
+  private static final int RUNS = 3;
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void benchmark() throws Exception {
+    File file = temp.newFile();
+    CharByCharFileMetadata.writeSample(file, LINES, Charsets.UTF_8);
+    long fileSize = file.length();
+
+    // Warm-up
+    CharByCharFileMetadata.read(file, Charsets.UTF_8);
+    new FileMetadata().read(file, Charsets.UTF_8);
+
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < RUNS; i++) {
+      CharByCharFileMetadata.read(file, Charsets.UTF_8);
+    }
+    long charByCharDuration = (System.currentTimeMillis() - start) / RUNS;
+
+    start = System.currentTimeMillis();
+    for (int i = 0; i < RUNS; i++) {
+      new FileMetadata().read(file, Charsets.UTF_8);
+    }
+    long duration = (System.currentTimeMillis() - start) / RUNS;
+
+    LOGGER.info(String.format("Metadata of %d bytes computed in %d ms (%d ms char by char)", fileSize, duration, charByCharDuration));
+  }
+}
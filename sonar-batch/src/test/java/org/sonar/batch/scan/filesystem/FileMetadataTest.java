@@ -27,6 +27,7 @@ import org.junit.rules.ExpectedException;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
+import java.nio.charset.Charset;
 
 import static org.apache.commons.codec.digest.DigestUtils.md5;
 import static org.apache.commons.codec.digest.DigestUtils.md5Hex;
@@ -243,4 +244,21 @@ public class FileMetadataTest {
     assertThat(hash1).isNotEqualTo(hash2);
   }
 
+
+  @Test
+  public void same_metadata_than_char_by_char_implementation() throws Exception {
+    for (Charset charset : new Charset[] {Charsets.UTF_8, Charsets.UTF_16, Charsets.ISO_8859_1}) {
+      File file = temp.newFile();
+      CharByCharFileMetadata.writeSample(file, 1000, charset);
+
+      FileMetadata.Metadata expected = CharByCharFileMetadata.read(file, charset);
+      FileMetadata.Metadata metadata = new FileMetadata().read(file, charset);
+
+      assertThat(metadata.lines).isEqualTo(expected.lines);
+      assertThat(metadata.hash).isEqualTo(expected.hash);
+      assertThat(metadata.empty).isEqualTo(expected.empty);
+      assertThat(metadata.originalLineOffsets).isEqualTo(expected.originalLineOffsets);
+      assertThat(metadata.lineHashes).isEqualTo(expected.lineHashes);
+    }
+  }
 }
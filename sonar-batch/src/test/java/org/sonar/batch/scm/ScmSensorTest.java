@@ -0,0 +1,207 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.scm;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.api.CoreProperties;
+import org.sonar.api.batch.ThreadSafe;
+import org.sonar.api.batch.bootstrap.ProjectDefinition;
+import org.sonar.api.batch.bootstrap.ProjectReactor;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.DefaultFileSystem;
+import org.sonar.api.batch.fs.internal.DefaultInputFile;
+import org.sonar.api.batch.scm.BlameCommand;
+import org.sonar.api.batch.scm.BlameLine;
+import org.sonar.api.batch.scm.ScmProvider;
+import org.sonar.api.batch.sensor.SensorContext;
+import org.sonar.api.batch.sensor.SensorStorage;
+import org.sonar.api.batch.sensor.measure.Measure;
+import org.sonar.api.batch.sensor.measure.internal.DefaultMeasure;
+import org.sonar.api.config.Settings;
+import org.sonar.batch.protocol.input.ProjectRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ScmSensorTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  private ProjectDefinition projectDefinition;
+  private Settings settings;
+  private DefaultFileSystem fs;
+  private SensorContext context;
+  private SensorStorage storage;
+
+  @Before
+  public void prepare() throws Exception {
+    projectDefinition = ProjectDefinition.create().setKey("foo").setBaseDir(temp.newFolder());
+    settings = new Settings();
+    settings.setProperty(CoreProperties.SCM_PROVIDER_KEY, "fake");
+    fs = new DefaultFileSystem();
+    for (int i = 0; i < 4; i++) {
+      fs.add(new DefaultInputFile("foo", "src/Foo" + i + ".xoo").setLines(1));
+    }
+    storage = mock(SensorStorage.class);
+    context = mock(SensorContext.class);
+    when(context.newMeasure()).thenAnswer(new Answer<Measure>() {
+      @Override
+      public Measure answer(InvocationOnMock invocation) {
+        return new DefaultMeasure(storage);
+      }
+    });
+  }
+
+  @Test
+  public void blame_files_concurrently_if_command_is_thread_safe() {
+    settings.setProperty(CoreProperties.SCM_BLAME_THREADS_KEY, 4);
+    ConcurrentBlameCommand blameCommand = new ConcurrentBlameCommand(4);
+
+    sensor(blameCommand).execute(context);
+
+    assertThat(blameCommand.threads).hasSize(4);
+    assertThat(blameCommand.filesPerCall).containsOnly(1);
+    verify(storage, times(12)).store(any(DefaultMeasure.class));
+  }
+
+  @Test
+  public void blame_all_files_at_once_if_command_is_not_thread_safe() {
+    settings.setProperty(CoreProperties.SCM_BLAME_THREADS_KEY, 4);
+    final List<Integer> filesPerCall = new ArrayList<Integer>();
+
+    sensor(new BlameCommand() {
+      @Override
+      public void blame(BlameInput input, BlameOutput output) {
+        int files = 0;
+        for (InputFile f : input.filesToBlame()) {
+          output.blameResult(f, Arrays.asList(new BlameLine().revision("1").author("guy")));
+          files++;
+        }
+        filesPerCall.add(files);
+      }
+    }).execute(context);
+
+    assertThat(filesPerCall).containsExactly(4);
+    verify(storage, times(12)).store(any(DefaultMeasure.class));
+  }
+
+  @Test
+  public void fail_if_blame_exceeds_timeout() {
+    settings.setProperty(CoreProperties.SCM_BLAME_TIMEOUT_KEY, 1);
+
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("did not complete within 1 seconds");
+
+    sensor(new SlowBlameCommand()).execute(context);
+  }
+
+  @Test
+  public void propagate_blame_failure() {
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Unable to blame");
+
+    sensor(new BlameCommand() {
+      @Override
+      public void blame(BlameInput input, BlameOutput output) {
+        throw new IllegalStateException("Unable to blame");
+      }
+    }).execute(context);
+  }
+
+  private ScmSensor sensor(final BlameCommand blameCommand) {
+    ScmProvider provider = new ScmProvider() {
+      @Override
+      public String key() {
+        return "fake";
+      }
+
+      @Override
+      public BlameCommand blameCommand() {
+        return blameCommand;
+      }
+    };
+    ScmConfiguration configuration = new ScmConfiguration(new ProjectReactor(projectDefinition), settings, provider);
+    configuration.start();
+    return new ScmSensor(projectDefinition, configuration, new ProjectRepository(), fs);
+  }
+
+  @ThreadSafe
+  private static class ConcurrentBlameCommand extends BlameCommand {
+    private final CountDownLatch allStarted;
+    private final Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+    private final Set<Integer> filesPerCall = Collections.synchronizedSet(new HashSet<Integer>());
+
+    ConcurrentBlameCommand(int threads) {
+      this.allStarted = new CountDownLatch(threads);
+    }
+
+    @Override
+    public void blame(BlameInput input, BlameOutput output) {
+      threads.add(Thread.currentThread().getName());
+      allStarted.countDown();
+      try {
+        allStarted.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+      int files = 0;
+      for (InputFile f : input.filesToBlame()) {
+        output.blameResult(f, Arrays.asList(new BlameLine().revision("1").author("guy")));
+        files++;
+      }
+      filesPerCall.add(files);
+    }
+  }
+
+  @ThreadSafe
+  private static class SlowBlameCommand extends BlameCommand {
+    @Override
+    public void blame(BlameInput input, BlameOutput output) {
+      try {
+        Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+      } catch (InterruptedException e) {
+        // cancelled by the sensor
+      }
+    }
+  }
+}
@@ -23,15 +23,11 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Objects;
 
 import javax.annotation.CheckForNull;
-import javax.annotation.Nullable;
-
-import java.io.InputStream;
 
 public class AnalysisReportDto {
   private Long id;
   private String projectKey;
   private Status status;
-  private InputStream data;
   private Long snapshotId;
   private Long createdAt;
   private Long updatedAt;
@@ -72,15 +68,6 @@ public class AnalysisReportDto {
     this.status = Status.SUCCESS;
   }
 
-  public InputStream getData() {
-    return data;
-  }
-
-  public AnalysisReportDto setData(@Nullable InputStream data) {
-    this.data = data;
-    return this;
-  }
-
   public String getKey() {
     return String.valueOf(getId());
   }
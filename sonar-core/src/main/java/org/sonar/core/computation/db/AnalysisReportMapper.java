@@ -26,7 +26,7 @@ import java.util.List;
 public interface AnalysisReportMapper {
   List<AnalysisReportDto> selectByProjectKey(String projectKey);
 
-  List<Long> selectAvailables(
+  List<AnalysisReportDto> selectAvailables(
     @Param("availableStatus") AnalysisReportDto.Status availableStatus,
     @Param("busyStatus") AnalysisReportDto.Status busyStatus);
 
@@ -34,6 +34,8 @@ public interface AnalysisReportMapper {
 
   void truncate();
 
+  void insert(AnalysisReportDto report);
+
   int update(AnalysisReportDto report);
 
   int updateWithBookingReport(@Param("id") Long id, @Param("startedAt") long startedAt,
@@ -102,6 +102,18 @@ public final class DataCleanerProperties {
         .category(CoreProperties.CATEGORY_GENERAL)
         .subCategory(CoreProperties.SUBCATEGORY_DATABASE_CLEANER)
         .index(6)
+        .build(),
+
+      PropertyDefinition.builder(DbCleanerConstants.MAX_PURGE_DURATION_IN_MINUTES)
+        .defaultValue("0")
+        .name("Maximum duration of snapshot purge")
+        .description("Number of minutes after which the purge of old snapshots stops. The remaining snapshots are purged by the next analyses. "
+          + "Zero means no limit.")
+        .type(PropertyType.INTEGER)
+        .onQualifiers(Qualifiers.PROJECT)
+        .category(CoreProperties.CATEGORY_GENERAL)
+        .subCategory(CoreProperties.SUBCATEGORY_DATABASE_CLEANER)
+        .index(7)
         .build()
       );
   }
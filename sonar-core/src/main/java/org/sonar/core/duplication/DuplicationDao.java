@@ -19,12 +19,15 @@
  */
 package org.sonar.core.duplication;
 
+import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.SqlSession;
 import org.sonar.api.BatchComponent;
 import org.sonar.api.ServerComponent;
 import org.sonar.core.persistence.DbSession;
 import org.sonar.core.persistence.MyBatis;
 
+import javax.annotation.Nullable;
+
 import java.util.Collection;
 import java.util.List;
 
@@ -46,6 +49,21 @@ public class DuplicationDao implements BatchComponent, ServerComponent {
     }
   }
 
+  /**
+   * Streams the blocks of other projects that share a hash with at least one block of the given project snapshot.
+   * Unlike {@link #selectCandidates(int, Integer, String)}, candidates of all the files of the project are
+   * loaded by a single request.
+   */
+  public void selectCandidatesOfProject(int projectSnapshotId, @Nullable Integer lastSnapshotId, String language, ResultHandler handler) {
+    SqlSession session = mybatis.openSession(false);
+    try {
+      DuplicationMapper mapper = session.getMapper(DuplicationMapper.class);
+      mapper.selectCandidatesOfProject(projectSnapshotId, lastSnapshotId, language, handler);
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
+
   /**
    * Insert rows in the table DUPLICATIONS_INDEX.
    * Note that generated ids are not returned.
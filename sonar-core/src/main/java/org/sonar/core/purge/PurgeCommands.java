@@ -20,137 +20,203 @@
 package org.sonar.core.purge;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
 import org.apache.ibatis.session.SqlSession;
+import org.sonar.core.persistence.MyBatis;
+
+import javax.annotation.Nullable;
 
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 class PurgeCommands {
 
   private static final int MAX_SNAPSHOTS_PER_QUERY = 1000;
   private static final int MAX_RESOURCES_PER_QUERY = 1000;
 
-  private final SqlSession session;
-  private final PurgeMapper purgeMapper;
-  private final PurgeProfiler profiler;
-
-  PurgeCommands(SqlSession session, PurgeMapper purgeMapper, PurgeProfiler profiler) {
-    this.session = session;
-    this.purgeMapper = purgeMapper;
-    this.profiler = profiler;
-  }
-
-  @VisibleForTesting
-  PurgeCommands(SqlSession session, PurgeProfiler profiler) {
-    this(session, session.getMapper(PurgeMapper.class), profiler);
-  }
+  private static final TableDeletion RESOURCE_LINKS = new TableDeletion("deleteResourceLinks (project_links)") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> resourceIds) {
+      mapper.deleteResourceLinks(resourceIds);
+    }
+  };
 
-  List<Long> selectSnapshotIds(PurgeSnapshotQuery query) {
-    return purgeMapper.selectSnapshotIds(query);
-  }
+  private static final TableDeletion RESOURCE_PROPERTIES = new TableDeletion("deleteResourceProperties (properties)") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> resourceIds) {
+      mapper.deleteResourceProperties(resourceIds);
+    }
+  };
 
-  void deleteResources(List<Long> resourceIds) {
-    List<List<Long>> resourceIdsPartition = Lists.partition(resourceIds, MAX_RESOURCES_PER_QUERY);
-    // Note : do not merge the delete statements into a single loop of resource ids. It's
-    // voluntarily grouped by tables in order to benefit from JDBC batch mode.
-    // Batch requests can only relate to the same PreparedStatement.
+  private static final TableDeletion RESOURCE_INDEX = new TableDeletion("deleteResourceIndex (resource_index)") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> resourceIds) {
+      mapper.deleteResourceIndex(resourceIds);
+    }
+  };
 
-    for (List<Long> partResourceIds : resourceIdsPartition) {
-      deleteSnapshots(purgeMapper.selectSnapshotIdsByResource(partResourceIds));
+  private static final TableDeletion RESOURCE_GROUP_ROLES = new TableDeletion("deleteResourceGroupRoles (group_roles)") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> resourceIds) {
+      mapper.deleteResourceGroupRoles(resourceIds);
     }
+  };
 
-    // possible missing optimization: filter requests according to resource scope
+  private static final TableDeletion RESOURCE_USER_ROLES = new TableDeletion("deleteResourceUserRoles (user_roles)") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> resourceIds) {
+      mapper.deleteResourceUserRoles(resourceIds);
+    }
+  };
 
-    profiler.start("deleteResourceLinks (project_links)");
-    for (List<Long> partResourceIds : resourceIdsPartition) {
-      purgeMapper.deleteResourceLinks(partResourceIds);
+  private static final TableDeletion RESOURCE_MANUAL_MEASURES = new TableDeletion("deleteResourceManualMeasures (manual_measures)") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> resourceIds) {
+      mapper.deleteResourceManualMeasures(resourceIds);
     }
-    session.commit();
-    profiler.stop();
+  };
+
+  private static final TableDeletion RESOURCE_ISSUES = new TableDeletion("deleteResourceIssues (issue_changes, issues)") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> resourceIds) {
+      // changes are selected through their issues, so they must be deleted first
+      mapper.deleteResourceIssueChanges(resourceIds);
+      mapper.deleteResourceIssues(resourceIds);
+    }
+  };
 
-    profiler.start("deleteResourceProperties (properties)");
-    for (List<Long> partResourceIds : resourceIdsPartition) {
-      purgeMapper.deleteResourceProperties(partResourceIds);
+  private static final TableDeletion RESOURCE_ACTION_PLANS = new TableDeletion("deleteResourceActionPlans (action_plans)") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> resourceIds) {
+      mapper.deleteResourceActionPlans(resourceIds);
     }
-    session.commit();
-    profiler.stop();
+  };
 
-    profiler.start("deleteResourceIndex (resource_index)");
-    for (List<Long> partResourceIds : resourceIdsPartition) {
-      purgeMapper.deleteResourceIndex(partResourceIds);
+  private static final TableDeletion RESOURCE_EVENTS = new TableDeletion("deleteResourceEvents (events)") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> resourceIds) {
+      mapper.deleteResourceEvents(resourceIds);
     }
-    session.commit();
-    profiler.stop();
+  };
 
-    profiler.start("deleteResourceGroupRoles (group_roles)");
-    for (List<Long> partResourceIds : resourceIdsPartition) {
-      purgeMapper.deleteResourceGroupRoles(partResourceIds);
+  private static final TableDeletion RESOURCE_GRAPHS = new TableDeletion("deleteResourceGraphs (graphs)") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> resourceIds) {
+      mapper.deleteResourceGraphs(resourceIds);
     }
-    session.commit();
-    profiler.stop();
+  };
 
-    profiler.start("deleteResourceUserRoles (user_roles)");
-    for (List<Long> partResourceIds : resourceIdsPartition) {
-      purgeMapper.deleteResourceUserRoles(partResourceIds);
+  private static final TableDeletion AUTHORS = new TableDeletion("deleteAuthors (authors)") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> resourceIds) {
+      mapper.deleteAuthors(resourceIds);
     }
-    session.commit();
-    profiler.stop();
+  };
 
-    profiler.start("deleteResourceManualMeasures (manual_measures)");
-    for (List<Long> partResourceIds : resourceIdsPartition) {
-      purgeMapper.deleteResourceManualMeasures(partResourceIds);
+  private static final TableDeletion RESOURCES = new TableDeletion("deleteResource (projects)") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> resourceIds) {
+      mapper.deleteResource(resourceIds);
     }
-    session.commit();
-    profiler.stop();
+  };
 
-    profiler.start("deleteResourceIssueChanges (issue_changes)");
-    for (List<Long> partResourceIds : resourceIdsPartition) {
-      purgeMapper.deleteResourceIssueChanges(partResourceIds);
+  private static final TableDeletion SNAPSHOT_DEPENDENCIES = new TableDeletion("deleteSnapshotDependencies (dependencies)") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> snapshotIds) {
+      // SONAR-4586
+      // On MsSQL, the maximum number of parameters allowed in a query is 2000, so we have to execute 3 queries instead of one with 3 or
+      // inside
+      mapper.deleteSnapshotDependenciesFromSnapshotId(snapshotIds);
+      mapper.deleteSnapshotDependenciesToSnapshotId(snapshotIds);
+      mapper.deleteSnapshotDependenciesProjectSnapshotId(snapshotIds);
     }
-    session.commit();
-    profiler.stop();
+  };
 
-    profiler.start("deleteResourceIssues (issues)");
-    for (List<Long> partResourceIds : resourceIdsPartition) {
-      purgeMapper.deleteResourceIssues(partResourceIds);
+  private static final TableDeletion SNAPSHOT_DUPLICATIONS = new TableDeletion("deleteSnapshotDuplications (duplications_index)") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> snapshotIds) {
+      mapper.deleteSnapshotDuplications(snapshotIds);
     }
-    session.commit();
-    profiler.stop();
+  };
 
-    profiler.start("deleteResourceActionPlans (action_plans)");
-    for (List<Long> partResourceIds : resourceIdsPartition) {
-      purgeMapper.deleteResourceActionPlans(partResourceIds);
+  private static final TableDeletion SNAPSHOT_EVENTS = new TableDeletion("deleteSnapshotEvents (events)") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> snapshotIds) {
+      mapper.deleteSnapshotEvents(snapshotIds);
     }
-    session.commit();
-    profiler.stop();
+  };
 
-    profiler.start("deleteResourceEvents (events)");
-    for (List<Long> partResourceIds : resourceIdsPartition) {
-      purgeMapper.deleteResourceEvents(partResourceIds);
+  private static final TableDeletion SNAPSHOT_MEASURES = new TableDeletion("deleteSnapshotMeasures (project_measures)") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> snapshotIds) {
+      mapper.deleteSnapshotMeasures(snapshotIds);
     }
-    session.commit();
-    profiler.stop();
+  };
 
-    profiler.start("deleteResourceGraphs (graphs)");
-    for (List<Long> partResourceIds : resourceIdsPartition) {
-      purgeMapper.deleteResourceGraphs(partResourceIds);
+  private static final TableDeletion SNAPSHOT_GRAPHS = new TableDeletion("deleteSnapshotGraphs (graphs)") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> snapshotIds) {
+      mapper.deleteSnapshotGraphs(snapshotIds);
     }
-    session.commit();
-    profiler.stop();
+  };
 
-    profiler.start("deleteResource (projects)");
-    for (List<Long> partResourceIds : resourceIdsPartition) {
-      purgeMapper.deleteResource(partResourceIds);
+  private static final TableDeletion SNAPSHOTS = new TableDeletion("deleteSnapshot (snapshots)") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> snapshotIds) {
+      mapper.deleteSnapshot(snapshotIds);
     }
-    session.commit();
-    profiler.stop();
+  };
+
+  private final SqlSession session;
+  private final PurgeMapper purgeMapper;
+  private final PurgeProfiler profiler;
+  private final MyBatis mybatis;
+  private final ExecutorService executor;
+
+  PurgeCommands(SqlSession session, PurgeMapper purgeMapper, PurgeProfiler profiler) {
+    this(session, purgeMapper, profiler, null, null);
+  }
+
+  /**
+   * When an executor is given, independent tables are purged concurrently, each one in its own session opened from mybatis.
+   */
+  PurgeCommands(SqlSession session, PurgeMapper purgeMapper, PurgeProfiler profiler, @Nullable MyBatis mybatis, @Nullable ExecutorService executor) {
+    this.session = session;
+    this.purgeMapper = purgeMapper;
+    this.profiler = profiler;
+    this.mybatis = mybatis;
+    this.executor = mybatis == null ? null : executor;
+  }
+
+  @VisibleForTesting
+  PurgeCommands(SqlSession session, PurgeProfiler profiler) {
+    this(session, session.getMapper(PurgeMapper.class), profiler);
+  }
+
+  List<Long> selectSnapshotIds(PurgeSnapshotQuery query) {
+    return purgeMapper.selectSnapshotIds(query);
+  }
+
+  void deleteResources(List<Long> resourceIds) {
+    List<List<Long>> resourceIdsPartition = Lists.partition(resourceIds, MAX_RESOURCES_PER_QUERY);
+    // Note : do not merge the delete statements into a single loop of resource ids. It's
+    // voluntarily grouped by tables in order to benefit from JDBC batch mode.
+    // Batch requests can only relate to the same PreparedStatement.
 
-    profiler.start("deleteAuthors (authors)");
     for (List<Long> partResourceIds : resourceIdsPartition) {
-      purgeMapper.deleteAuthors(partResourceIds);
+      deleteSnapshots(purgeMapper.selectSnapshotIdsByResource(partResourceIds));
     }
-    session.commit();
-    profiler.stop();
+
+    // possible missing optimization: filter requests according to resource scope
+
+    deleteTables(resourceIdsPartition, RESOURCE_LINKS, RESOURCE_PROPERTIES, RESOURCE_INDEX, RESOURCE_GROUP_ROLES, RESOURCE_USER_ROLES,
+      RESOURCE_MANUAL_MEASURES, RESOURCE_ISSUES, RESOURCE_ACTION_PLANS, RESOURCE_EVENTS, RESOURCE_GRAPHS, AUTHORS);
+
+    // resources are deleted last, so that a failure of the previous deletions can be fixed by deleting them again
+    deleteTables(resourceIdsPartition, RESOURCES);
   }
 
   void deleteSnapshots(final PurgeSnapshotQuery query) {
@@ -162,32 +228,9 @@ class PurgeCommands {
 
     List<List<Long>> snapshotIdsPartition = Lists.partition(snapshotIds, MAX_SNAPSHOTS_PER_QUERY);
 
-    deleteSnapshotDependencies(snapshotIdsPartition);
-
-    deleteSnapshotDuplications(snapshotIdsPartition);
+    deleteTables(snapshotIdsPartition, SNAPSHOT_DEPENDENCIES, SNAPSHOT_DUPLICATIONS, SNAPSHOT_EVENTS, SNAPSHOT_MEASURES, SNAPSHOT_GRAPHS);
 
-    profiler.start("deleteSnapshotEvents (events)");
-    for (List<Long> partSnapshotIds : snapshotIdsPartition) {
-      purgeMapper.deleteSnapshotEvents(partSnapshotIds);
-    }
-    session.commit();
-    profiler.stop();
-
-    profiler.start("deleteSnapshotMeasures (project_measures)");
-    for (List<Long> partSnapshotIds : snapshotIdsPartition) {
-      purgeMapper.deleteSnapshotMeasures(partSnapshotIds);
-    }
-    session.commit();
-    profiler.stop();
-
-    deleteSnapshotGraphs(snapshotIdsPartition);
-
-    profiler.start("deleteSnapshot (snapshots)");
-    for (List<Long> partSnapshotIds : snapshotIdsPartition) {
-      purgeMapper.deleteSnapshot(partSnapshotIds);
-    }
-    session.commit();
-    profiler.stop();
+    deleteTables(snapshotIdsPartition, SNAPSHOTS);
   }
 
   void purgeSnapshots(final PurgeSnapshotQuery query) {
@@ -199,19 +242,14 @@ class PurgeCommands {
     // note that events are not deleted
     List<List<Long>> snapshotIdsPartition = Lists.partition(snapshotIds, MAX_SNAPSHOTS_PER_QUERY);
 
-    deleteSnapshotDependencies(snapshotIdsPartition);
-
-    deleteSnapshotDuplications(snapshotIdsPartition);
-
-    deleteSnapshotGraphs(snapshotIdsPartition);
-
-    profiler.start("deleteSnapshotWastedMeasures (project_measures)");
-    List<Long> metricIdsWithoutHistoricalData = purgeMapper.selectMetricIdsWithoutHistoricalData();
-    for (List<Long> partSnapshotIds : snapshotIdsPartition) {
-      purgeMapper.deleteSnapshotWastedMeasures(partSnapshotIds, metricIdsWithoutHistoricalData);
-    }
-    session.commit();
-    profiler.stop();
+    final List<Long> metricIdsWithoutHistoricalData = purgeMapper.selectMetricIdsWithoutHistoricalData();
+    TableDeletion wastedMeasures = new TableDeletion("deleteSnapshotWastedMeasures (project_measures)") {
+      @Override
+      void delete(PurgeMapper mapper, List<Long> partSnapshotIds) {
+        mapper.deleteSnapshotWastedMeasures(partSnapshotIds, metricIdsWithoutHistoricalData);
+      }
+    };
+    deleteTables(snapshotIdsPartition, SNAPSHOT_DEPENDENCIES, SNAPSHOT_DUPLICATIONS, SNAPSHOT_GRAPHS, wastedMeasures);
 
     profiler.start("updatePurgeStatusToOne (snapshots)");
     for (Long snapshotId : snapshotIds) {
@@ -221,42 +259,77 @@ class PurgeCommands {
     profiler.stop();
   }
 
-  private void deleteSnapshotGraphs(final List<List<Long>> snapshotIdsPartition) {
-    profiler.start("deleteSnapshotGraphs (graphs)");
-    for (List<Long> partSnapshotIds : snapshotIdsPartition) {
-      purgeMapper.deleteSnapshotGraphs(partSnapshotIds);
-    }
+  public void deleteFileSources(String rootUuid) {
+    profiler.start("deleteFileSources (file_sources)");
+    purgeMapper.deleteFileSourcesByProjectUuid(rootUuid);
     session.commit();
     profiler.stop();
   }
 
-  private void deleteSnapshotDuplications(final List<List<Long>> snapshotIdsPartition) {
-    profiler.start("deleteSnapshotDuplications (duplications_index)");
-    for (List<Long> partSnapshotIds : snapshotIdsPartition) {
-      purgeMapper.deleteSnapshotDuplications(partSnapshotIds);
+  /**
+   * The given deletions must not depend on each other. They are executed one after the other in the current session,
+   * or concurrently in separate sessions when an executor is available.
+   */
+  private void deleteTables(final List<List<Long>> idsPartition, TableDeletion... deletions) {
+    if (executor == null || deletions.length < 2) {
+      for (TableDeletion deletion : deletions) {
+        deleteTable(session, purgeMapper, idsPartition, deletion);
+      }
+      return;
     }
+
+    // other sessions must not wait for the locks held by the current one
     session.commit();
-    profiler.stop();
+    List<Future<?>> futures = Lists.newArrayList();
+    try {
+      for (final TableDeletion deletion : deletions) {
+        futures.add(executor.submit(new Runnable() {
+          @Override
+          public void run() {
+            SqlSession tableSession = mybatis.openSession(true);
+            try {
+              deleteTable(tableSession, tableSession.getMapper(PurgeMapper.class), idsPartition, deletion);
+            } finally {
+              MyBatis.closeQuietly(tableSession);
+            }
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while purging tables", e);
+    } catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause());
+      throw new IllegalStateException("Fail to purge tables", e.getCause());
+    } finally {
+      for (Future<?> future : futures) {
+        future.cancel(true);
+      }
+    }
   }
 
-  private void deleteSnapshotDependencies(final List<List<Long>> snapshotIdsPartition) {
-    profiler.start("deleteSnapshotDependencies (dependencies)");
-    for (List<Long> partSnapshotIds : snapshotIdsPartition) {
-      // SONAR-4586
-      // On MsSQL, the maximum number of parameters allowed in a query is 2000, so we have to execute 3 queries instead of one with 3 or
-      // inside
-      purgeMapper.deleteSnapshotDependenciesFromSnapshotId(partSnapshotIds);
-      purgeMapper.deleteSnapshotDependenciesToSnapshotId(partSnapshotIds);
-      purgeMapper.deleteSnapshotDependenciesProjectSnapshotId(partSnapshotIds);
+  /**
+   * Each partition is committed separately, so that locks are never held on more than one partition of rows.
+   */
+  private void deleteTable(SqlSession tableSession, PurgeMapper mapper, List<List<Long>> idsPartition, TableDeletion deletion) {
+    profiler.start(deletion.name);
+    for (List<Long> partIds : idsPartition) {
+      deletion.delete(mapper, partIds);
+      tableSession.commit();
     }
-    session.commit();
     profiler.stop();
   }
 
-  public void deleteFileSources(String rootUuid) {
-    profiler.start("deleteFileSources (file_sources)");
-    purgeMapper.deleteFileSourcesByProjectUuid(rootUuid);
-    session.commit();
-    profiler.stop();
+  private abstract static class TableDeletion {
+    private final String name;
+
+    TableDeletion(String name) {
+      this.name = name;
+    }
+
+    abstract void delete(PurgeMapper mapper, List<Long> ids);
   }
 }
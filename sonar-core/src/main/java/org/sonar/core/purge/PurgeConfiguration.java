@@ -35,17 +35,29 @@ public class PurgeConfiguration {
   private final long rootProjectId;
   private final String[] scopesWithoutHistoricalData;
   private final int maxAgeInDaysOfClosedIssues;
+  private final int maxPurgeDurationInMinutes;
   private final System2 system2;
 
   public PurgeConfiguration(long rootProjectId, String[] scopesWithoutHistoricalData, int maxAgeInDaysOfClosedIssues) {
-    this(rootProjectId, scopesWithoutHistoricalData, maxAgeInDaysOfClosedIssues, System2.INSTANCE);
+    this(rootProjectId, scopesWithoutHistoricalData, maxAgeInDaysOfClosedIssues, 0);
+  }
+
+  public PurgeConfiguration(long rootProjectId, String[] scopesWithoutHistoricalData, int maxAgeInDaysOfClosedIssues, int maxPurgeDurationInMinutes) {
+    this(rootProjectId, scopesWithoutHistoricalData, maxAgeInDaysOfClosedIssues, maxPurgeDurationInMinutes, System2.INSTANCE);
   }
 
   @VisibleForTesting
   PurgeConfiguration(long rootProjectId, String[] scopesWithoutHistoricalData, int maxAgeInDaysOfClosedIssues, System2 system2) {
+    this(rootProjectId, scopesWithoutHistoricalData, maxAgeInDaysOfClosedIssues, 0, system2);
+  }
+
+  @VisibleForTesting
+  PurgeConfiguration(long rootProjectId, String[] scopesWithoutHistoricalData, int maxAgeInDaysOfClosedIssues, int maxPurgeDurationInMinutes,
+    System2 system2) {
     this.rootProjectId = rootProjectId;
     this.scopesWithoutHistoricalData = scopesWithoutHistoricalData;
     this.maxAgeInDaysOfClosedIssues = maxAgeInDaysOfClosedIssues;
+    this.maxPurgeDurationInMinutes = maxPurgeDurationInMinutes;
     this.system2 = system2;
   }
 
@@ -54,7 +66,8 @@ public class PurgeConfiguration {
     if (settings.getBoolean(DbCleanerConstants.PROPERTY_CLEAN_DIRECTORY)) {
       scopes = new String[] {Scopes.DIRECTORY, Scopes.FILE};
     }
-    return new PurgeConfiguration(resourceId, scopes, settings.getInt(DbCleanerConstants.DAYS_BEFORE_DELETING_CLOSED_ISSUES));
+    return new PurgeConfiguration(resourceId, scopes, settings.getInt(DbCleanerConstants.DAYS_BEFORE_DELETING_CLOSED_ISSUES),
+      settings.getInt(DbCleanerConstants.MAX_PURGE_DURATION_IN_MINUTES));
   }
 
   public long rootProjectId() {
@@ -65,6 +78,18 @@ public class PurgeConfiguration {
     return scopesWithoutHistoricalData;
   }
 
+  /**
+   * Time after which the purge of snapshots stops. The remaining snapshots are purged by the next executions.
+   * Returns null if duration is not limited.
+   */
+  @CheckForNull
+  public Date purgeDeadline(Date start) {
+    if (maxPurgeDurationInMinutes > 0) {
+      return DateUtils.addMinutes(start, maxPurgeDurationInMinutes);
+    }
+    return null;
+  }
+
   @CheckForNull
   public Date maxLiveDateOfClosedIssues() {
     return maxLiveDateOfClosedIssues(new Date(system2.now()));
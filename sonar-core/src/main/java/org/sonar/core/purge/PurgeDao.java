@@ -20,6 +20,7 @@
 package org.sonar.core.purge;
 
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.ibatis.session.ResultContext;
 import org.apache.ibatis.session.ResultHandler;
@@ -32,16 +33,26 @@ import org.sonar.core.persistence.MyBatis;
 import org.sonar.core.resource.ResourceDao;
 import org.sonar.core.resource.ResourceDto;
 
+import javax.annotation.Nullable;
+
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * @since 2.14
  */
 public class PurgeDao {
   private static final Logger LOG = LoggerFactory.getLogger(PurgeDao.class);
+
+  /**
+   * Maximum number of tables purged concurrently
+   */
+  private static final int MAX_CONCURRENT_DELETIONS = 4;
+
   private final MyBatis mybatis;
   private final ResourceDao resourceDao;
   private final System2 system2;
@@ -67,12 +78,18 @@ public class PurgeDao {
 
   public void purge(DbSession session, PurgeConfiguration conf, PurgeListener purgeListener) {
     PurgeMapper mapper = session.getMapper(PurgeMapper.class);
-    PurgeCommands commands = new PurgeCommands(session, mapper, profiler);
     List<ResourceDto> projects = getProjects(conf.rootProjectId(), session);
-    for (ResourceDto project : projects) {
-      LOG.info("-> Clean " + project.getLongName() + " [id=" + project.getId() + "]");
-      deleteAbortedBuilds(project, commands);
-      purge(project, conf.scopesWithoutHistoricalData(), commands);
+    Date deadline = conf.purgeDeadline(new Date(system2.now()));
+    ExecutorService executor = newExecutor();
+    try {
+      PurgeCommands commands = new PurgeCommands(session, mapper, profiler, mybatis, executor);
+      for (ResourceDto project : projects) {
+        LOG.info("-> Clean " + project.getLongName() + " [id=" + project.getId() + "]");
+        deleteAbortedBuilds(project, commands);
+        purge(project, conf.scopesWithoutHistoricalData(), commands, deadline);
+      }
+    } finally {
+      executor.shutdownNow();
     }
     for (ResourceDto project : projects) {
       disableOrphanResources(project, session, mapper, purgeListener);
@@ -80,6 +97,13 @@ public class PurgeDao {
     deleteOldClosedIssues(conf, mapper);
   }
 
+  private static ExecutorService newExecutor() {
+    return Executors.newFixedThreadPool(MAX_CONCURRENT_DELETIONS, new ThreadFactoryBuilder()
+      .setNameFormat("purge-%d")
+      .setDaemon(true)
+      .build());
+  }
+
   private void deleteOldClosedIssues(PurgeConfiguration conf, PurgeMapper mapper) {
     Date toDate = conf.maxLiveDateOfClosedIssues();
     mapper.deleteOldClosedIssueChanges(conf.rootProjectId(), toDate);
@@ -105,14 +129,19 @@ public class PurgeDao {
     return !commands.selectSnapshotIds(query).isEmpty();
   }
 
-  private void purge(ResourceDto project, String[] scopesWithoutHistoricalData, PurgeCommands purgeCommands) {
+  private void purge(ResourceDto project, String[] scopesWithoutHistoricalData, PurgeCommands purgeCommands, @Nullable Date deadline) {
     List<Long> projectSnapshotIds = purgeCommands.selectSnapshotIds(
       PurgeSnapshotQuery.create()
         .setResourceId(project.getId())
         .setIslast(false)
         .setNotPurged(true)
       );
-    for (final Long projectSnapshotId : projectSnapshotIds) {
+    for (int i = 0; i < projectSnapshotIds.size(); i++) {
+      if (deadline != null && system2.now() > deadline.getTime()) {
+        LOG.info("<- Maximum duration of purge is reached, " + (projectSnapshotIds.size() - i) + " snapshots will be cleaned by next analysis");
+        return;
+      }
+      Long projectSnapshotId = projectSnapshotIds.get(i);
       LOG.info("<- Clean snapshot " + projectSnapshotId);
       if (!ArrayUtils.isEmpty(scopesWithoutHistoricalData)) {
         PurgeSnapshotQuery query = PurgeSnapshotQuery.create()
@@ -166,11 +195,14 @@ public class PurgeDao {
   public PurgeDao deleteResourceTree(IdUuidPair rootIdUuid) {
     final DbSession session = mybatis.openSession(true);
     final PurgeMapper mapper = session.getMapper(PurgeMapper.class);
+    ExecutorService executor = newExecutor();
     try {
-      deleteProject(rootIdUuid.getId(), mapper, new PurgeCommands(session, profiler));
-      deleteFileSources(rootIdUuid.getUuid(), new PurgeCommands(session, profiler));
+      PurgeCommands commands = new PurgeCommands(session, mapper, profiler, mybatis, executor);
+      deleteProject(rootIdUuid.getId(), mapper, commands);
+      deleteFileSources(rootIdUuid.getUuid(), commands);
       return this;
     } finally {
+      executor.shutdownNow();
       MyBatis.closeQuietly(session);
     }
   }
@@ -31,11 +31,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
+/**
+ * Cumulates the durations of purge steps. Steps can be profiled concurrently from several threads.
+ */
 public class PurgeProfiler {
 
-  private Map<String, Long> durations = new HashMap<String, Long>();
-  private long startTime;
-  private String currentTable;
+  private final Map<String, Long> durations = new HashMap<String, Long>();
+  private final ThreadLocal<Long> startTime = new ThreadLocal<Long>();
+  private final ThreadLocal<String> currentTable = new ThreadLocal<String>();
   private final Clock clock;
 
   public PurgeProfiler() {
@@ -47,27 +50,29 @@ public class PurgeProfiler {
     this.clock = clock;
   }
 
-  public void reset() {
+  public synchronized void reset() {
     durations.clear();
   }
 
   void start(String table) {
-    this.startTime = clock.now();
-    this.currentTable = table;
+    startTime.set(clock.now());
+    currentTable.set(table);
   }
 
   void stop() {
-    final Long cumulatedDuration;
-    if (durations.containsKey(currentTable)) {
-      cumulatedDuration = durations.get(currentTable);
-    } else {
-      cumulatedDuration = 0L;
+    String table = currentTable.get();
+    long duration = clock.now() - startTime.get();
+    synchronized (this) {
+      Long cumulatedDuration = durations.get(table);
+      durations.put(table, cumulatedDuration == null ? duration : (cumulatedDuration + duration));
     }
-    durations.put(currentTable, cumulatedDuration + (clock.now() - startTime));
   }
 
   public void dump(long totalTime, Logger logger) {
-    List<Entry<String, Long>> data = new ArrayList<Map.Entry<String, Long>>(durations.entrySet());
+    List<Entry<String, Long>> data;
+    synchronized (this) {
+      data = new ArrayList<Map.Entry<String, Long>>(new HashMap<String, Long>(durations).entrySet());
+    }
     Collections.sort(data, new Comparator<Entry<String, Long>>() {
       @Override
       public int compare(Entry<String, Long> o1, Entry<String, Long> o2) {
@@ -21,6 +21,7 @@
 package org.sonar.core.source.db;
 
 import com.google.common.base.Function;
+import com.google.common.collect.Iterables;
 import org.apache.commons.dbutils.DbUtils;
 import org.apache.commons.io.IOUtils;
 import org.sonar.api.BatchComponent;
@@ -30,15 +31,25 @@ import org.sonar.core.persistence.DbSession;
 import org.sonar.core.persistence.MyBatis;
 
 import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
 
+import java.io.InputStream;
 import java.io.Reader;
+import java.io.StringReader;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
 
 public class FileSourceDao implements BatchComponent, ServerComponent, DaoComponent {
 
+  /**
+   * Max number of files requested at once, as some databases limit the size of the IN clause
+   */
+  static final int MAX_UUIDS_PER_REQUEST = 1000;
+
   private final MyBatis mybatis;
 
   public FileSourceDao(MyBatis myBatis) {
@@ -56,10 +67,45 @@ public class FileSourceDao implements BatchComponent, ServerComponent, DaoCompon
     }
   }
 
-  public <T> void readDataStream(String fileUuid, Function<Reader, T> function) {
+  /**
+   * Streams the column BINARY_DATA of a file, which can be decoded by {@link FileSourceData#decode(InputStream, FileSourceData.Column...)}.
+   * The function is not called if the file is unknown or has no data.
+   */
+  public <T> void readDataStream(String fileUuid, Function<InputStream, T> function) {
+    DbSession dbSession = mybatis.openSession(false);
+    Connection connection = dbSession.getConnection();
+    PreparedStatement pstmt = null;
+    ResultSet rs = null;
+    InputStream input = null;
+    try {
+      pstmt = connection.prepareStatement("SELECT binary_data FROM file_sources WHERE file_uuid = ?");
+      pstmt.setString(1, fileUuid);
+      rs = pstmt.executeQuery();
+      if (rs.next()) {
+        input = rs.getBinaryStream(1);
+        if (input != null) {
+          function.apply(input);
+        }
+      }
+    } catch (SQLException e) {
+      throw new IllegalStateException("Fail to read FILE_SOURCES.BINARY_DATA of file " + fileUuid, e);
+    } finally {
+      IOUtils.closeQuietly(input);
+      DbUtils.closeQuietly(connection, pstmt, rs);
+      MyBatis.closeQuietly(dbSession);
+    }
+  }
+
+  /**
+   * Streams the column BINARY_DATA of many files with a single request per batch of {@value #MAX_UUIDS_PER_REQUEST} files,
+   * instead of one request per file. Unknown files are ignored.
+   */
+  public void readDataStreams(Collection<String> fileUuids, DataStreamHandler handler) {
     DbSession dbSession = mybatis.openSession(false);
     try {
-      readColumnStream(dbSession, fileUuid, function, "data");
+      for (List<String> partition : Iterables.partition(fileUuids, MAX_UUIDS_PER_REQUEST)) {
+        readDataStreams(dbSession, partition, handler);
+      }
     } finally {
       MyBatis.closeQuietly(dbSession);
     }
@@ -69,6 +115,44 @@ public class FileSourceDao implements BatchComponent, ServerComponent, DaoCompon
     readColumnStream(dbSession, fileUuid, function, "line_hashes");
   }
 
+  /**
+   * Streams the column LINE_HASHES of the files directly attached to a module, sorted by file key, with a single
+   * request returning at most {@code pageSize} files. The next page starts after the last key of the previous one.
+   * Files without line hashes, for example empty files, are handled with an empty reader, so that a page is
+   * complete whenever other files follow.
+   */
+  public void readLineHashesStreamsByModuleUuid(DbSession dbSession, String moduleUuid, @Nullable String afterFileKey, int pageSize,
+    LineHashesHandler handler) {
+    Connection connection = dbSession.getConnection();
+    PreparedStatement pstmt = null;
+    ResultSet rs = null;
+    try {
+      // no empty string as lower bound of the first page, as it is considered as null by Oracle
+      pstmt = connection.prepareStatement("SELECT p.kee, fs.line_hashes FROM file_sources fs INNER JOIN projects p ON p.uuid = fs.file_uuid "
+        + "WHERE p.module_uuid = ?" + (afterFileKey == null ? "" : " AND p.kee > ?") + " ORDER BY p.kee");
+      pstmt.setString(1, moduleUuid);
+      if (afterFileKey != null) {
+        pstmt.setString(2, afterFileKey);
+      }
+      pstmt.setMaxRows(pageSize);
+      rs = pstmt.executeQuery();
+      while (rs.next()) {
+        String fileKey = rs.getString(1);
+        Reader reader = rs.getCharacterStream(2);
+        try {
+          handler.handle(fileKey, reader == null ? new StringReader("") : reader);
+        } finally {
+          IOUtils.closeQuietly(reader);
+        }
+      }
+    } catch (SQLException e) {
+      throw new IllegalStateException("Fail to read FILE_SOURCES.LINE_HASHES of module " + moduleUuid, e);
+    } finally {
+      DbUtils.closeQuietly(rs);
+      DbUtils.closeQuietly(pstmt);
+    }
+  }
+
   public void insert(FileSourceDto dto) {
     DbSession session = mybatis.openSession(false);
     try {
@@ -109,4 +193,55 @@ public class FileSourceDao implements BatchComponent, ServerComponent, DaoCompon
       DbUtils.closeQuietly(connection, pstmt, rs);
     }
   }
+
+  private void readDataStreams(DbSession dbSession, List<String> fileUuids, DataStreamHandler handler) {
+    Connection connection = dbSession.getConnection();
+    PreparedStatement pstmt = null;
+    ResultSet rs = null;
+    try {
+      StringBuilder sql = new StringBuilder("SELECT file_uuid, binary_data FROM file_sources WHERE file_uuid IN (");
+      for (int i = 0; i < fileUuids.size(); i++) {
+        sql.append(i == 0 ? "?" : ",?");
+      }
+      sql.append(")");
+      pstmt = connection.prepareStatement(sql.toString());
+      for (int i = 0; i < fileUuids.size(); i++) {
+        pstmt.setString(i + 1, fileUuids.get(i));
+      }
+      rs = pstmt.executeQuery();
+      while (rs.next()) {
+        String fileUuid = rs.getString(1);
+        InputStream input = rs.getBinaryStream(2);
+        try {
+          if (input != null) {
+            handler.handle(fileUuid, input);
+          }
+        } finally {
+          IOUtils.closeQuietly(input);
+        }
+      }
+    } catch (SQLException e) {
+      throw new IllegalStateException("Fail to read FILE_SOURCES.BINARY_DATA of " + fileUuids.size() + " files", e);
+    } finally {
+      // connection is released when closing the session, as it is shared by all the partitions
+      DbUtils.closeQuietly(rs);
+      DbUtils.closeQuietly(pstmt);
+    }
+  }
+
+  public interface LineHashesHandler {
+    /**
+     * Called once per file. The reader, which returns the hashes separated by new lines, is empty if the file
+     * has no line hashes. It is closed when method returns.
+     */
+    void handle(String fileKey, Reader lineHashes);
+  }
+
+  public interface DataStreamHandler {
+    /**
+     * Called once per file having data. The stream, which can be decoded by
+     * {@link FileSourceData#decode(InputStream, FileSourceData.Column...)}, is closed when method returns.
+     */
+    void handle(String fileUuid, InputStream data);
+  }
 }
@@ -0,0 +1,460 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.core.source.db;
+
+import com.google.common.base.Preconditions;
+import org.apache.commons.io.IOUtils;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Lines of a source file, as stored in column FILE_SOURCES.BINARY_DATA.
+ * <p/>
+ * Values are grouped by column rather than by line, and each column is compressed
+ * separately. That allows to decode only the columns that are needed, for example the
+ * SCM authors, without inflating nor parsing the other ones, like source code or highlighting.
+ * <p/>
+ * Format, version {@value #VERSION} :
+ * <pre>
+ *   byte        version
+ *   varint      number of lines
+ *   varint      number of columns
+ *   for each column :
+ *     byte      column id, see {@link Column#id()}
+ *     varint    number of compressed bytes
+ *     bytes     values of all the lines, deflated
+ * </pre>
+ * Columns without any values are not written. Within a column, a value is written per line :
+ * <ul>
+ *   <li>{@link Type#STRING} : varint of the number of UTF-8 bytes plus one, followed by the bytes. 0 means null.</li>
+ *   <li>{@link Type#INTEGER} and {@link Type#DATE} : zigzag-encoded varint of the value (milliseconds for dates) plus one. 0 means null.</li>
+ *   <li>{@link Type#INTEGER_LIST} : varint of the number of values, followed by the zigzag-encoded varints of the values.</li>
+ * </ul>
+ * Readers ignore the columns they do not know, so that columns can be added without changing the version.
+ *
+ * @since 5.1
+ */
+public final class FileSourceData {
+
+  public static final int VERSION = 1;
+
+  public enum Type {
+    STRING, INTEGER, DATE, INTEGER_LIST
+  }
+
+  public enum Column {
+    SCM_REVISION(1, Type.STRING),
+    SCM_AUTHOR(2, Type.STRING),
+    SCM_DATE(3, Type.DATE),
+    UT_LINE_HITS(4, Type.INTEGER),
+    UT_CONDITIONS(5, Type.INTEGER),
+    UT_COVERED_CONDITIONS(6, Type.INTEGER),
+    IT_LINE_HITS(7, Type.INTEGER),
+    IT_CONDITIONS(8, Type.INTEGER),
+    IT_COVERED_CONDITIONS(9, Type.INTEGER),
+    OVERALL_LINE_HITS(10, Type.INTEGER),
+    OVERALL_CONDITIONS(11, Type.INTEGER),
+    OVERALL_COVERED_CONDITIONS(12, Type.INTEGER),
+    HIGHLIGHTING(13, Type.STRING),
+    SYMBOLS(14, Type.STRING),
+    DUPLICATIONS(15, Type.INTEGER_LIST),
+    SOURCE(16, Type.STRING);
+
+    private final int id;
+    private final Type type;
+
+    Column(int id, Type type) {
+      this.id = id;
+      this.type = type;
+    }
+
+    /**
+     * Persisted identifier of the column. It must never change.
+     */
+    public int id() {
+      return id;
+    }
+
+    public Type type() {
+      return type;
+    }
+
+    @CheckForNull
+    static Column byId(int id) {
+      for (Column column : values()) {
+        if (column.id == id) {
+          return column;
+        }
+      }
+      return null;
+    }
+  }
+
+  private final int lines;
+  // values per column ordinal, null if the column has no values
+  private final Object[][] columns;
+
+  private FileSourceData(int lines, Object[][] columns) {
+    this.lines = lines;
+    this.columns = columns;
+  }
+
+  public static Builder newBuilder(int lines) {
+    return new Builder(lines);
+  }
+
+  public int lines() {
+    return lines;
+  }
+
+  /**
+   * @param line starts at 1
+   */
+  @CheckForNull
+  public String getString(Column column, int line) {
+    return (String) get(column, Type.STRING, line);
+  }
+
+  /**
+   * @param line starts at 1
+   */
+  @CheckForNull
+  public Integer getInteger(Column column, int line) {
+    return (Integer) get(column, Type.INTEGER, line);
+  }
+
+  /**
+   * @param line starts at 1
+   */
+  @CheckForNull
+  public Date getDate(Column column, int line) {
+    Long time = (Long) get(column, Type.DATE, line);
+    return time != null ? new Date(time) : null;
+  }
+
+  /**
+   * @param line starts at 1
+   * @return the values of the line, empty if none
+   */
+  public List<Integer> getIntegers(Column column, int line) {
+    int[] values = (int[]) get(column, Type.INTEGER_LIST, line);
+    if (values == null) {
+      return Collections.emptyList();
+    }
+    Integer[] result = new Integer[values.length];
+    for (int i = 0; i < values.length; i++) {
+      result[i] = values[i];
+    }
+    return Arrays.asList(result);
+  }
+
+  @CheckForNull
+  private Object get(Column column, Type expectedType, int line) {
+    Preconditions.checkArgument(column.type == expectedType, "Column %s is not of type %s", column, expectedType);
+    Preconditions.checkArgument(line >= 1 && line <= lines, "Line %s does not exist, file has %s lines", line, lines);
+    Object[] values = columns[column.ordinal()];
+    return values != null ? values[line - 1] : null;
+  }
+
+  public byte[] encode() {
+    try {
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      output.write(VERSION);
+      writeVarint(output, lines);
+      int nbColumns = 0;
+      for (Object[] values : columns) {
+        if (values != null) {
+          nbColumns++;
+        }
+      }
+      writeVarint(output, nbColumns);
+      ByteArrayOutputStream columnBytes = new ByteArrayOutputStream();
+      for (Column column : Column.values()) {
+        Object[] values = columns[column.ordinal()];
+        if (values != null) {
+          columnBytes.reset();
+          encodeColumn(column, values, columnBytes);
+          output.write(column.id);
+          writeVarint(output, columnBytes.size());
+          columnBytes.writeTo(output);
+        }
+      }
+      return output.toByteArray();
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to encode file source data", e);
+    }
+  }
+
+  private static void encodeColumn(Column column, Object[] values, OutputStream output) throws IOException {
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      DeflaterOutputStream deflated = new DeflaterOutputStream(output, deflater, 4096);
+      for (Object value : values) {
+        writeValue(deflated, column.type, value);
+      }
+      deflated.finish();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static void writeValue(OutputStream output, Type type, @Nullable Object value) throws IOException {
+    switch (type) {
+      case STRING:
+        if (value == null) {
+          writeVarint(output, 0);
+        } else {
+          byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+          writeVarint(output, bytes.length + 1L);
+          output.write(bytes);
+        }
+        break;
+      case INTEGER:
+        writeVarint(output, value == null ? 0L : (zigzag((Integer) value) + 1L));
+        break;
+      case DATE:
+        writeVarint(output, value == null ? 0L : (zigzag((Long) value) + 1L));
+        break;
+      case INTEGER_LIST:
+        int[] ints = value == null ? new int[0] : (int[]) value;
+        writeVarint(output, ints.length);
+        for (int i : ints) {
+          writeVarint(output, zigzag(i));
+        }
+        break;
+      default:
+        throw new IllegalStateException("Unsupported type: " + type);
+    }
+  }
+
+  /**
+   * Decodes the given columns only. All the columns are decoded if none are given. Values of the other
+   * columns are null.
+   * <p/>
+   * The stream is read but not closed.
+   */
+  public static FileSourceData decode(InputStream input, Column... requestedColumns) {
+    Set<Column> decodedColumns = requestedColumns.length == 0 ? EnumSet.allOf(Column.class) : EnumSet.of(requestedColumns[0], requestedColumns);
+    try {
+      int version = input.read();
+      if (version != VERSION) {
+        throw new IllegalStateException("Unsupported version of file source data: " + version);
+      }
+      int lines = (int) readVarint(input);
+      int nbColumns = (int) readVarint(input);
+      Object[][] columns = new Object[Column.values().length][];
+      for (int i = 0; i < nbColumns; i++) {
+        int id = input.read();
+        long size = readVarint(input);
+        Column column = Column.byId(id);
+        if (column != null && decodedColumns.contains(column)) {
+          byte[] compressed = new byte[(int) size];
+          IOUtils.readFully(input, compressed);
+          columns[column.ordinal()] = decodeColumn(column, lines, compressed);
+        } else {
+          IOUtils.skipFully(input, size);
+        }
+      }
+      return new FileSourceData(lines, columns);
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to decode file source data", e);
+    }
+  }
+
+  public static FileSourceData decode(byte[] bytes, Column... requestedColumns) {
+    return decode(new ByteArrayInputStream(bytes), requestedColumns);
+  }
+
+  private static Object[] decodeColumn(Column column, int lines, byte[] compressed) throws IOException {
+    Object[] values = newValues(column, lines);
+    InputStream input = new InflaterInputStream(new ByteArrayInputStream(compressed));
+    try {
+      for (int i = 0; i < lines; i++) {
+        values[i] = readValue(input, column.type);
+      }
+    } finally {
+      IOUtils.closeQuietly(input);
+    }
+    return values;
+  }
+
+  @CheckForNull
+  private static Object readValue(InputStream input, Type type) throws IOException {
+    long l;
+    switch (type) {
+      case STRING:
+        l = readVarint(input);
+        if (l == 0L) {
+          return null;
+        }
+        byte[] bytes = new byte[(int) (l - 1)];
+        IOUtils.readFully(input, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+      case INTEGER:
+        l = readVarint(input);
+        return l == 0L ? null : (int) unzigzag(l - 1);
+      case DATE:
+        l = readVarint(input);
+        return l == 0L ? null : unzigzag(l - 1);
+      case INTEGER_LIST:
+        int size = (int) readVarint(input);
+        if (size == 0) {
+          return null;
+        }
+        int[] ints = new int[size];
+        for (int i = 0; i < size; i++) {
+          ints[i] = (int) unzigzag(readVarint(input));
+        }
+        return ints;
+      default:
+        throw new IllegalStateException("Unsupported type: " + type);
+    }
+  }
+
+  private static Object[] newValues(Column column, int lines) {
+    switch (column.type) {
+      case STRING:
+        return new String[lines];
+      case INTEGER:
+        return new Integer[lines];
+      case DATE:
+        return new Long[lines];
+      default:
+        return new int[lines][];
+    }
+  }
+
+  private static long zigzag(long l) {
+    return (l << 1) ^ (l >> 63);
+  }
+
+  private static long unzigzag(long l) {
+    return (l >>> 1) ^ -(l & 1);
+  }
+
+  private static void writeVarint(OutputStream output, long value) throws IOException {
+    long l = value;
+    while ((l & ~0x7FL) != 0L) {
+      output.write((int) ((l & 0x7F) | 0x80));
+      l >>>= 7;
+    }
+    output.write((int) l);
+  }
+
+  private static long readVarint(InputStream input) throws IOException {
+    long result = 0L;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = input.read();
+      if (b < 0) {
+        throw new EOFException("Unexpected end of file source data");
+      }
+      result |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return result;
+      }
+    }
+    throw new IllegalStateException("Malformed varint in file source data");
+  }
+
+  public static class Builder {
+    private final int lines;
+    private final Object[][] columns = new Object[Column.values().length][];
+
+    private Builder(int lines) {
+      this.lines = lines;
+    }
+
+    /**
+     * @param line starts at 1
+     */
+    public Builder setString(Column column, int line, @Nullable String value) {
+      return set(column, Type.STRING, line, value);
+    }
+
+    /**
+     * @param line starts at 1
+     */
+    public Builder setInteger(Column column, int line, @Nullable Integer value) {
+      return set(column, Type.INTEGER, line, value);
+    }
+
+    /**
+     * @param line starts at 1
+     */
+    public Builder setDate(Column column, int line, @Nullable Date value) {
+      return set(column, Type.DATE, line, value != null ? value.getTime() : null);
+    }
+
+    /**
+     * @param line starts at 1
+     */
+    public Builder setIntegers(Column column, int line, @Nullable List<Integer> values) {
+      int[] ints = null;
+      if (values != null && !values.isEmpty()) {
+        ints = new int[values.size()];
+        for (int i = 0; i < ints.length; i++) {
+          ints[i] = values.get(i);
+        }
+      }
+      return set(column, Type.INTEGER_LIST, line, ints);
+    }
+
+    private Builder set(Column column, Type expectedType, int line, @Nullable Object value) {
+      Preconditions.checkArgument(column.type == expectedType, "Column %s is not of type %s", column, expectedType);
+      Preconditions.checkArgument(line >= 1 && line <= lines, "Line %s does not exist, file has %s lines", line, lines);
+      if (value != null) {
+        Object[] values = columns[column.ordinal()];
+        if (values == null) {
+          values = newValues(column, lines);
+          columns[column.ordinal()] = values;
+        }
+        values[line - 1] = value;
+      } else if (columns[column.ordinal()] != null) {
+        columns[column.ordinal()][line - 1] = null;
+      }
+      return this;
+    }
+
+    /**
+     * The builder must not be used anymore after this call, as values are not copied.
+     */
+    public FileSourceData build() {
+      return new FileSourceData(lines, columns);
+    }
+  }
+}
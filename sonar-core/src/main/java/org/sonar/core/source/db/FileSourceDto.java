@@ -24,28 +24,12 @@ import javax.annotation.Nullable;
 
 public class FileSourceDto {
 
-  public static final int CSV_INDEX_SCM_REVISION = 0;
-  public static final int CSV_INDEX_SCM_AUTHOR = 1;
-  public static final int CSV_INDEX_SCM_DATE = 2;
-  public static final int CSV_INDEX_UT_LINE_HITS = 3;
-  public static final int CSV_INDEX_UT_CONDITIONS = 4;
-  public static final int CSV_INDEX_UT_COVERED_CONDITIONS = 5;
-  public static final int CSV_INDEX_IT_LINE_HITS = 6;
-  public static final int CSV_INDEX_IT_CONDITIONS = 7;
-  public static final int CSV_INDEX_IT_COVERED_CONDITIONS = 8;
-  public static final int CSV_INDEX_OVERALL_LINE_HITS = 9;
-  public static final int CSV_INDEX_OVERALL_CONDITIONS = 10;
-  public static final int CSV_INDEX_OVERALL_COVERED_CONDITIONS = 11;
-  public static final int CSV_INDEX_HIGHLIGHTING = 12;
-  public static final int CSV_INDEX_SYMBOLS = 13;
-  public static final int CSV_INDEX_DUPLICATIONS = 14;
-
   private Long id;
   private String projectUuid;
   private String fileUuid;
   private long createdAt;
   private long updatedAt;
-  private String data;
+  private byte[] binaryData;
   private String lineHashes;
   private String dataHash;
   private String srcHash;
@@ -77,13 +61,16 @@ public class FileSourceDto {
     return this;
   }
 
+  /**
+   * Lines of the file, encoded by {@link FileSourceData#encode()}
+   */
   @CheckForNull
-  public String getData() {
-    return data;
+  public byte[] getBinaryData() {
+    return binaryData;
   }
 
-  public FileSourceDto setData(@Nullable String data) {
-    this.data = data;
+  public FileSourceDto setBinaryData(@Nullable byte[] binaryData) {
+    this.binaryData = binaryData;
     return this;
   }
 
@@ -97,6 +84,10 @@ public class FileSourceDto {
     return this;
   }
 
+  /**
+   * Fingerprint of the inputs of {@link #getBinaryData()} (source hash, line measures, highlighting,
+   * symbols and duplications), computed by batch. It is not the hash of the binary data itself.
+   */
   public String getDataHash() {
     return dataHash;
   }
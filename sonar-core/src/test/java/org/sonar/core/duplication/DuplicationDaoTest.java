@@ -19,10 +19,13 @@
  */
 package org.sonar.core.duplication;
 
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
 import org.junit.Before;
 import org.junit.Test;
 import org.sonar.core.persistence.AbstractDaoTestCase;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -57,6 +60,33 @@ public class DuplicationDaoTest extends AbstractDaoTestCase {
     assertThat(blocks.size(), is(2));
   }
 
+  @Test
+  public void select_candidates_of_project() throws Exception {
+    setupData("shouldGetByHash");
+
+    final List<DuplicationUnitDto> blocks = new ArrayList<DuplicationUnitDto>();
+    ResultHandler handler = new ResultHandler() {
+      @Override
+      public void handleResult(ResultContext context) {
+        blocks.add((DuplicationUnitDto) context.getResultObject());
+      }
+    };
+    dao.selectCandidatesOfProject(9, 7, "java", handler);
+    assertThat(blocks.size(), is(1));
+
+    DuplicationUnitDto block = blocks.get(0);
+    assertThat(block.getResourceKey(), is("bar-last"));
+    assertThat(block.getHash(), is("aa"));
+    assertThat(block.getIndexInFile(), is(0));
+    assertThat(block.getStartLine(), is(1));
+    assertThat(block.getEndLine(), is(2));
+
+    // check null for lastSnapshotId
+    blocks.clear();
+    dao.selectCandidatesOfProject(9, null, "java", handler);
+    assertThat(blocks.size(), is(2));
+  }
+
   @Test
   public void shouldInsert() throws Exception {
     setupData("shouldInsert");
@@ -27,6 +27,8 @@ import org.sonar.core.persistence.MyBatis;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static com.google.common.collect.Lists.newArrayList;
 
@@ -125,6 +127,35 @@ public class PurgeCommandsTest extends AbstractDaoTestCase {
     assertEmptyTables("projects", "snapshots", "events", "issues", "issue_changes", "authors");
   }
 
+  @Test
+  public void delete_resource_concurrently() {
+    setupData("shouldDeleteResource");
+    SqlSession session = getMyBatis().openSession();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      new PurgeCommands(session, session.getMapper(PurgeMapper.class), profiler, getMyBatis(), executor).deleteResources(Arrays.asList(1L));
+    } finally {
+      executor.shutdownNow();
+      MyBatis.closeQuietly(session);
+    }
+    assertEmptyTables("projects", "snapshots", "events", "issues", "issue_changes", "authors");
+  }
+
+  @Test
+  public void delete_snapshot_concurrently() {
+    setupData("shouldDeleteSnapshot");
+
+    SqlSession session = getMyBatis().openSession();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      new PurgeCommands(session, session.getMapper(PurgeMapper.class), profiler, getMyBatis(), executor).deleteSnapshots(PurgeSnapshotQuery.create().setId(5L));
+    } finally {
+      executor.shutdownNow();
+      MyBatis.closeQuietly(session);
+    }
+    checkTables("shouldDeleteSnapshot", "snapshots", "project_measures", "duplications_index", "events", "dependencies");
+  }
+
   /**
    * Test that SQL queries execution do not fail with a huge number of parameter
    */
@@ -47,4 +47,12 @@ public class PurgeConfigurationTest {
     assertThat(toDate.getMonth()).isEqualTo(3); // means April
     assertThat(toDate.getDate()).isEqualTo(18);
   }
+
+  @Test
+  public void purge_deadline() throws Exception {
+    Date start = DateUtils.parseDateTime("2013-05-18T10:00:00+0200");
+
+    assertThat(new PurgeConfiguration(1L, new String[0], 30).purgeDeadline(start)).isNull();
+    assertThat(new PurgeConfiguration(1L, new String[0], 30, 15).purgeDeadline(start)).isEqualTo(DateUtils.parseDateTime("2013-05-18T10:15:00+0200"));
+  }
 }
@@ -77,6 +77,16 @@ public class PurgeDaoTest extends AbstractDaoTestCase {
     checkTables("shouldPurgeProject", "projects", "snapshots");
   }
 
+  @Test
+  public void stop_purge_when_max_duration_is_reached() {
+    setupData("shouldPurgeProject");
+    when(system2.now()).thenReturn(1450000000000L, 1450000000000L + 2 * 60 * 1000L);
+
+    sut.purge(new PurgeConfiguration(1L, new String[0], 30, 1, system2), PurgeListener.EMPTY);
+
+    checkTables("stop_purge_when_max_duration_is_reached", "projects", "snapshots");
+  }
+
   @Test
   public void delete_file_sources_of_disabled_resources() {
     setupData("delete_file_sources_of_disabled_resources");
@@ -30,8 +30,15 @@ import org.sonar.core.persistence.AbstractDaoTestCase;
 import org.sonar.core.persistence.DbSession;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -58,7 +65,7 @@ public class FileSourceDaoTest extends AbstractDaoTestCase {
 
     FileSourceDto fileSourceDto = dao.select("ab12");
 
-    assertThat(fileSourceDto.getData()).isEqualTo("aef12a,alice,2014-04-25T12:34:56+0100,,class Foo");
+    assertThat(new String(fileSourceDto.getBinaryData(), StandardCharsets.UTF_8)).isEqualTo("some data");
     assertThat(fileSourceDto.getDataHash()).isEqualTo("hash");
     assertThat(fileSourceDto.getProjectUuid()).isEqualTo("abcd");
     assertThat(fileSourceDto.getFileUuid()).isEqualTo("ab12");
@@ -70,10 +77,36 @@ public class FileSourceDaoTest extends AbstractDaoTestCase {
   public void select_data() throws Exception {
     setupData("shared");
 
-    StringParser stringParser = new StringParser();
-    dao.readDataStream("ab12", stringParser);
+    BytesParser parser = new BytesParser();
+    dao.readDataStream("ab12", parser);
+
+    assertThat(parser.result).isEqualTo("some data");
+  }
+
+  @Test
+  public void select_data_of_many_files() throws Exception {
+    setupData("shared");
 
-    assertThat(stringParser.getResult()).isEqualTo("aef12a,alice,2014-04-25T12:34:56+0100,,class Foo");
+    MapHandler handler = new MapHandler();
+    dao.readDataStreams(Arrays.asList("ab12", "unknown"), handler);
+
+    assertThat(handler.result).hasSize(1);
+    assertThat(handler.result.get("ab12")).isEqualTo("some data");
+  }
+
+  @Test
+  public void select_data_of_many_files_in_many_requests() throws Exception {
+    setupData("shared");
+
+    List<String> uuids = new ArrayList<>();
+    for (int i = 0; i < FileSourceDao.MAX_UUIDS_PER_REQUEST + 10; i++) {
+      uuids.add("unknown" + i);
+    }
+    uuids.add("ab12");
+    MapHandler handler = new MapHandler();
+    dao.readDataStreams(uuids, handler);
+
+    assertThat(handler.result.keySet()).containsOnly("ab12");
   }
 
   @Test
@@ -96,11 +129,57 @@ public class FileSourceDaoTest extends AbstractDaoTestCase {
     assertThat(stringParser.getResult()).isEmpty();
   }
 
+  @Test
+  public void select_line_hashes_of_module() throws Exception {
+    setupData("line_hashes_of_many_files");
+
+    LineHashesMapHandler handler = new LineHashesMapHandler();
+    dao.readLineHashesStreamsByModuleUuid(session, "abcd", null, 100, handler);
+
+    assertThat(handler.result).hasSize(3);
+    assertThat(handler.result.get("struts:Action.java")).isEqualTo("a1\n\nb2");
+    assertThat(handler.result.get("struts:Bar.java")).isEqualTo("d4");
+    // file without line hashes
+    assertThat(handler.result.get("struts:Empty.java")).isEmpty();
+  }
+
+  @Test
+  public void page_line_hashes_of_module() throws Exception {
+    setupData("line_hashes_of_many_files");
+
+    LineHashesMapHandler handler = new LineHashesMapHandler();
+    dao.readLineHashesStreamsByModuleUuid(session, "abcd", null, 1, handler);
+    assertThat(handler.result.keySet()).containsOnly("struts:Action.java");
+
+    handler = new LineHashesMapHandler();
+    dao.readLineHashesStreamsByModuleUuid(session, "abcd", "struts:Action.java", 1, handler);
+    assertThat(handler.result.keySet()).containsOnly("struts:Bar.java");
+
+    handler = new LineHashesMapHandler();
+    dao.readLineHashesStreamsByModuleUuid(session, "abcd", "struts:Bar.java", 1, handler);
+    assertThat(handler.result.keySet()).containsOnly("struts:Empty.java");
+
+    handler = new LineHashesMapHandler();
+    dao.readLineHashesStreamsByModuleUuid(session, "abcd", "struts:Empty.java", 1, handler);
+    assertThat(handler.result).isEmpty();
+  }
+
+  @Test
+  public void select_line_hashes_of_sub_module() throws Exception {
+    setupData("line_hashes_of_many_files");
+
+    LineHashesMapHandler handler = new LineHashesMapHandler();
+    dao.readLineHashesStreamsByModuleUuid(session, "bcde", null, 100, handler);
+
+    assertThat(handler.result.keySet()).containsOnly("struts-core:Core.java");
+  }
+
   @Test
   public void insert() throws Exception {
     setupData("shared");
 
-    dao.insert(new FileSourceDto().setProjectUuid("prj").setFileUuid("file").setData("bla bla")
+    dao.insert(new FileSourceDto().setProjectUuid("prj").setFileUuid("file")
+      .setBinaryData("bla bla".getBytes(StandardCharsets.UTF_8))
       .setDataHash("hash2")
       .setLineHashes("foo\nbar")
       .setSrcHash("hache")
@@ -115,7 +194,7 @@ public class FileSourceDaoTest extends AbstractDaoTestCase {
     setupData("shared");
 
     dao.update(new FileSourceDto().setId(101L).setProjectUuid("prj").setFileUuid("file")
-      .setData("updated data")
+      .setBinaryData("updated data".getBytes(StandardCharsets.UTF_8))
       .setDataHash("hash2")
       .setSrcHash("123456")
       .setLineHashes("foo2\nbar2")
@@ -124,6 +203,46 @@ public class FileSourceDaoTest extends AbstractDaoTestCase {
     checkTable("update", "file_sources");
   }
 
+  static class MapHandler implements FileSourceDao.DataStreamHandler {
+    Map<String, String> result = new HashMap<>();
+
+    @Override
+    public void handle(String fileUuid, InputStream data) {
+      try {
+        result.put(fileUuid, IOUtils.toString(data, StandardCharsets.UTF_8));
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  static class LineHashesMapHandler implements FileSourceDao.LineHashesHandler {
+    Map<String, String> result = new HashMap<>();
+
+    @Override
+    public void handle(String fileKey, Reader lineHashes) {
+      try {
+        result.put(fileKey, IOUtils.toString(lineHashes));
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  static class BytesParser implements Function<InputStream, String> {
+    String result = null;
+
+    @Override
+    public String apply(InputStream input) {
+      try {
+        result = IOUtils.toString(input, StandardCharsets.UTF_8);
+        return result;
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
   class StringParser implements Function<Reader, String> {
 
     String result = "";
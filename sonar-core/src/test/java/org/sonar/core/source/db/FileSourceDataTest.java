@@ -0,0 +1,157 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.core.source.db;
+
+import org.junit.Test;
+import org.sonar.core.source.db.FileSourceData.Column;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class FileSourceDataTest {
+
+  @Test
+  public void encode_and_decode_all_columns() throws Exception {
+    Date date = new Date(1416238020000L);
+    FileSourceData data = FileSourceData.newBuilder(3)
+      .setString(Column.SCM_REVISION, 1, "aef12a")
+      .setString(Column.SCM_AUTHOR, 1, "alice")
+      .setDate(Column.SCM_DATE, 1, date)
+      .setInteger(Column.UT_LINE_HITS, 1, 0)
+      .setInteger(Column.UT_CONDITIONS, 1, 4)
+      .setInteger(Column.UT_COVERED_CONDITIONS, 1, 2)
+      .setInteger(Column.IT_LINE_HITS, 2, 12345678)
+      .setInteger(Column.OVERALL_LINE_HITS, 3, -1)
+      .setString(Column.HIGHLIGHTING, 1, "0,5,k")
+      .setString(Column.SYMBOLS, 1, "0,5,1")
+      .setIntegers(Column.DUPLICATIONS, 2, Arrays.asList(1, 3))
+      .setString(Column.SOURCE, 1, "class Foo {")
+      .setString(Column.SOURCE, 2, "  // été")
+      .setString(Column.SOURCE, 3, "")
+      .build();
+
+    FileSourceData decoded = FileSourceData.decode(data.encode());
+
+    assertThat(decoded.lines()).isEqualTo(3);
+    assertThat(decoded.getString(Column.SCM_REVISION, 1)).isEqualTo("aef12a");
+    assertThat(decoded.getString(Column.SCM_AUTHOR, 1)).isEqualTo("alice");
+    assertThat(decoded.getString(Column.SCM_AUTHOR, 2)).isNull();
+    assertThat(decoded.getDate(Column.SCM_DATE, 1)).isEqualTo(date);
+    assertThat(decoded.getDate(Column.SCM_DATE, 2)).isNull();
+    assertThat(decoded.getInteger(Column.UT_LINE_HITS, 1)).isEqualTo(0);
+    assertThat(decoded.getInteger(Column.UT_LINE_HITS, 2)).isNull();
+    assertThat(decoded.getInteger(Column.UT_CONDITIONS, 1)).isEqualTo(4);
+    assertThat(decoded.getInteger(Column.UT_COVERED_CONDITIONS, 1)).isEqualTo(2);
+    assertThat(decoded.getInteger(Column.IT_LINE_HITS, 2)).isEqualTo(12345678);
+    assertThat(decoded.getInteger(Column.IT_CONDITIONS, 2)).isNull();
+    assertThat(decoded.getInteger(Column.OVERALL_LINE_HITS, 3)).isEqualTo(-1);
+    assertThat(decoded.getString(Column.HIGHLIGHTING, 1)).isEqualTo("0,5,k");
+    assertThat(decoded.getString(Column.SYMBOLS, 1)).isEqualTo("0,5,1");
+    assertThat(decoded.getIntegers(Column.DUPLICATIONS, 1)).isEmpty();
+    assertThat(decoded.getIntegers(Column.DUPLICATIONS, 2)).containsExactly(1, 3);
+    assertThat(decoded.getString(Column.SOURCE, 1)).isEqualTo("class Foo {");
+    assertThat(decoded.getString(Column.SOURCE, 2)).isEqualTo("  // été");
+    assertThat(decoded.getString(Column.SOURCE, 3)).isEqualTo("");
+  }
+
+  @Test
+  public void decode_only_requested_columns() throws Exception {
+    byte[] bytes = FileSourceData.newBuilder(1)
+      .setString(Column.SCM_AUTHOR, 1, "alice")
+      .setInteger(Column.UT_LINE_HITS, 1, 3)
+      .setString(Column.SOURCE, 1, "class Foo {")
+      .build().encode();
+
+    FileSourceData decoded = FileSourceData.decode(bytes, Column.SCM_AUTHOR);
+
+    assertThat(decoded.getString(Column.SCM_AUTHOR, 1)).isEqualTo("alice");
+    assertThat(decoded.getInteger(Column.UT_LINE_HITS, 1)).isNull();
+    assertThat(decoded.getString(Column.SOURCE, 1)).isNull();
+  }
+
+  @Test
+  public void columns_without_values_are_not_encoded() throws Exception {
+    byte[] empty = FileSourceData.newBuilder(1000).build().encode();
+    byte[] nulls = FileSourceData.newBuilder(1000)
+      .setString(Column.SCM_AUTHOR, 1, null)
+      .setInteger(Column.UT_LINE_HITS, 500, null)
+      .build().encode();
+
+    assertThat(nulls).isEqualTo(empty);
+    // version, number of lines and number of columns
+    assertThat(empty).hasSize(4);
+    assertThat(FileSourceData.decode(empty).lines()).isEqualTo(1000);
+  }
+
+  @Test
+  public void ignore_unknown_columns() throws Exception {
+    byte[] bytes = {
+      FileSourceData.VERSION,
+      // 1 line
+      1,
+      // 2 columns
+      2,
+      // column with unknown id 99 and 2 bytes
+      99, 2, 42, 42,
+      // column SCM_AUTHOR, not compressed
+    };
+    byte[] author = FileSourceData.newBuilder(1).setString(Column.SCM_AUTHOR, 1, "alice").build().encode();
+    // skip header of the encoded author column: version, lines and number of columns
+    byte[] concat = Arrays.copyOf(bytes, bytes.length + author.length - 3);
+    System.arraycopy(author, 3, concat, bytes.length, author.length - 3);
+
+    FileSourceData decoded = FileSourceData.decode(concat);
+
+    assertThat(decoded.getString(Column.SCM_AUTHOR, 1)).isEqualTo("alice");
+  }
+
+  @Test
+  public void fail_to_decode_unsupported_version() throws Exception {
+    try {
+      FileSourceData.decode(new byte[] {42, 0, 0});
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("Unsupported version of file source data: 42");
+    }
+  }
+
+  @Test
+  public void fail_if_column_has_not_expected_type() throws Exception {
+    try {
+      FileSourceData.newBuilder(1).setInteger(Column.SCM_AUTHOR, 1, 3);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("Column SCM_AUTHOR is not of type INTEGER");
+    }
+  }
+
+  @Test
+  public void fail_if_line_does_not_exist() throws Exception {
+    try {
+      FileSourceData.newBuilder(2).build().getString(Column.SOURCE, 3);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("Line 3 does not exist, file has 2 lines");
+    }
+  }
+}
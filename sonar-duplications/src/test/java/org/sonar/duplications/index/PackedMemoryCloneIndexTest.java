@@ -24,7 +24,13 @@ import org.junit.Test;
 import org.sonar.duplications.block.Block;
 import org.sonar.duplications.block.ByteArray;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.sameInstance;
@@ -109,6 +115,29 @@ public class PackedMemoryCloneIndexTest {
     index.getBySequenceHash(new ByteArray(1L));
   }
 
+  @Test
+  public void query_concurrently() throws Exception {
+    for (int i = 0; i < 1000; i++) {
+      index.insert(newBlock("r" + (i % 100), i % 10));
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+    for (int i = 0; i < 100; i++) {
+      final int query = i;
+      futures.add(executor.submit(new Callable<Integer>() {
+        @Override
+        public Integer call() {
+          return index.getBySequenceHash(new ByteArray((long) (query % 10))).size() + index.getByResourceId("r" + query).size();
+        }
+      }));
+    }
+    for (Future<Integer> future : futures) {
+      assertThat(future.get(), is(100 + 10));
+    }
+    executor.shutdown();
+  }
+
   private static Block newBlock(String resourceId, long hash) {
     return Block.builder()
         .setResourceId(resourceId)
@@ -553,6 +553,25 @@ public interface CoreProperties {
    */
   String SCM_PROVIDER_KEY = "sonar.scm.provider";
 
+  /**
+   * Number of threads used to blame files, when the {@link org.sonar.api.batch.scm.BlameCommand} is annotated with
+   * {@link org.sonar.api.batch.ThreadSafe}. Any value lower than 1 means one thread per available processor, plus one.
+   * @since 5.1
+   */
+  String SCM_BLAME_THREADS_KEY = "sonar.scm.blame.threads";
+
+  /**
+   * Maximum time in seconds allowed to blame a single file, when the {@link org.sonar.api.batch.scm.BlameCommand} is
+   * annotated with {@link org.sonar.api.batch.ThreadSafe}. Any value lower than 1 disables the timeout.
+   * @since 5.1
+   */
+  String SCM_BLAME_TIMEOUT_KEY = "sonar.scm.blame.timeout";
+
+  /**
+   * @since 5.1
+   */
+  int SCM_BLAME_TIMEOUT_DEFAULT_VALUE = 600;
+
   /**
    * @since 5.1
    */
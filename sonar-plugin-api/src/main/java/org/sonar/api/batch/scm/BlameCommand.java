@@ -34,8 +34,12 @@ import java.util.List;
 public abstract class BlameCommand implements BatchComponent {
 
   /**
-   * Compute blame of the provided files. 
-   * Computation can be done in parallel if this is more efficient.
+   * Compute blame of the provided files.
+   * By default this method is called once with all the files. Since 5.1, if the implementation is annotated with
+   * {@link org.sonar.api.batch.ThreadSafe}, the batch instead calls it concurrently from several threads
+   * (see {@link org.sonar.api.CoreProperties#SCM_BLAME_THREADS_KEY}), with a single file each time. Such an implementation
+   * must not parallelize work itself, and should open expensive resources, like a connection to the repository,
+   * once for all the calls, then release them in {@link org.picocontainer.Startable#stop()}.
    * If there is an error that prevent to blame a file then an exception should be raised. If 
    * one file is new or contains local modifications then an exception should be raised.
    */
@@ -24,6 +24,7 @@ import org.picocontainer.Characteristics;
 import org.picocontainer.ComponentAdapter;
 import org.picocontainer.DefaultPicoContainer;
 import org.picocontainer.MutablePicoContainer;
+import org.picocontainer.PicoContainer;
 import org.picocontainer.behaviors.OptInCaching;
 import org.picocontainer.lifecycle.ReflectionLifecycleStrategy;
 import org.picocontainer.monitors.NullComponentMonitor;
@@ -63,9 +64,22 @@ public class ComponentContainer implements BatchComponent, ServerComponent {
    * Create child container
    */
   protected ComponentContainer(ComponentContainer parent) {
+    this(parent, true);
+  }
+
+  /**
+   * Create child container. When not attached, the child is not registered in its parent, so that
+   * several children can live concurrently. Such a child must be stopped explicitly.
+   * @since 5.1
+   */
+  protected ComponentContainer(ComponentContainer parent, boolean attached) {
     this.parent = parent;
-    this.pico = parent.pico.makeChildContainer();
-    this.parent.child = this;
+    if (attached) {
+      this.pico = parent.pico.makeChildContainer();
+      this.parent.child = this;
+    } else {
+      this.pico = createPicoContainer(parent.pico);
+    }
     this.propertyDefinitions = parent.propertyDefinitions;
     this.componentKeys = new ComponentKeys();
     addSingleton(this);
@@ -129,7 +143,7 @@ public class ComponentContainer implements BatchComponent, ServerComponent {
       }
     } finally {
       removeChild();
-      if (parent != null) {
+      if (parent != null && parent.child == this) {
         parent.removeChild();
       }
     }
@@ -229,9 +243,22 @@ public class ComponentContainer implements BatchComponent, ServerComponent {
     return new ComponentContainer(this);
   }
 
+  /**
+   * Child container which is not registered in this container. Contrary to {@link #createChild()},
+   * several detached children can be used at the same time, for example by concurrent workers.
+   * @since 5.1
+   */
+  public ComponentContainer createDetachedChild() {
+    return new ComponentContainer(this, false);
+  }
+
   static MutablePicoContainer createPicoContainer() {
+    return createPicoContainer(null);
+  }
+
+  private static MutablePicoContainer createPicoContainer(@Nullable PicoContainer parent) {
     ReflectionLifecycleStrategy lifecycleStrategy = new ReflectionLifecycleStrategy(new NullComponentMonitor(), "start", "stop", "close");
-    return new DefaultPicoContainer(new OptInCaching(), lifecycleStrategy, null);
+    return new DefaultPicoContainer(new OptInCaching(), lifecycleStrategy, parent);
   }
 
   public ComponentContainer getParent() {
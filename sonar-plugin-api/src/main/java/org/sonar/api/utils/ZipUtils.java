@@ -24,6 +24,7 @@ import org.apache.commons.io.IOUtils;
 
 import java.io.*;
 import java.util.Enumeration;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
@@ -149,11 +150,21 @@ public final class ZipUtils {
   }
 
   public static void zipDir(File dir, File zip) throws IOException {
+    zipDir(dir, zip, Deflater.DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * @param compressionLevel the compression level, from 0 (no compression) to 9 (best compression),
+   *                         or {@link Deflater#DEFAULT_COMPRESSION}
+   * @since 5.1
+   */
+  public static void zipDir(File dir, File zip, int compressionLevel) throws IOException {
     OutputStream out = null;
     ZipOutputStream zout = null;
     try {
       out = FileUtils.openOutputStream(zip);
       zout = new ZipOutputStream(out);
+      zout.setLevel(compressionLevel);
       zip(dir, zout);
 
     } finally {
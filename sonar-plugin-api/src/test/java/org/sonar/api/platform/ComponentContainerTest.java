@@ -136,6 +136,29 @@ public class ComponentContainerTest {
     assertThat(parent.getChild()).isNull();
   }
 
+  @Test
+  public void detached_children_are_not_registered_in_parent() {
+    ComponentContainer parent = new ComponentContainer();
+    parent.addSingleton(StartableComponent.class);
+    parent.startComponents();
+
+    ComponentContainer child1 = parent.createDetachedChild();
+    child1.addSingleton(SimpleComponent.class);
+    ComponentContainer child2 = parent.createDetachedChild();
+    child2.addSingleton(SimpleComponent.class);
+
+    assertThat(parent.getChild()).isNull();
+    assertThat(child1.getParent()).isSameAs(parent);
+    assertThat(child1.getComponentByType(StartableComponent.class)).isSameAs(parent.getComponentByType(StartableComponent.class));
+    assertThat(child1.getComponentByType(SimpleComponent.class)).isNotSameAs(child2.getComponentByType(SimpleComponent.class));
+    assertThat(parent.getComponentByType(SimpleComponent.class)).isNull();
+
+    child1.startComponents();
+    child1.stopComponents();
+    assertThat(parent.getComponentByType(StartableComponent.class).stopped).isFalse();
+    parent.stopComponents();
+  }
+
   @Test
   public void shouldForwardStartAndStopToDescendants() {
     ComponentContainer grandParent = new ComponentContainer();
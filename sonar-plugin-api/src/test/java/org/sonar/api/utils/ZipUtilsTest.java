@@ -21,12 +21,16 @@ package org.sonar.api.utils;
 
 import com.google.common.collect.Iterators;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Iterator;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -34,6 +38,9 @@ import static org.assertj.core.api.Assertions.assertThat;
 
 public class ZipUtilsTest {
 
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
   @Test
   public void shouldZipDirectory() throws IOException {
     File foo = FileUtils.toFile(getClass().getResource("/org/sonar/api/utils/ZipUtilsTest/shouldZipDirectory/foo.txt"));
@@ -48,6 +55,23 @@ public class ZipUtilsTest {
     assertThat(zipEntries).hasSize(4);
   }
 
+  @Test
+  public void zip_directory_with_compression_level() throws IOException {
+    File dir = temp.newFolder();
+    FileUtils.write(new File(dir, "foo.txt"), StringUtils.repeat("foo", 1000));
+    File stored = temp.newFile("stored.zip");
+    File compressed = temp.newFile("compressed.zip");
+
+    ZipUtils.zipDir(dir, stored, Deflater.NO_COMPRESSION);
+    ZipUtils.zipDir(dir, compressed, Deflater.BEST_COMPRESSION);
+
+    assertThat(stored.length()).isGreaterThan(3000L);
+    assertThat(compressed.length()).isLessThan(1000L);
+    File toDir = temp.newFolder();
+    ZipUtils.unzip(stored, toDir);
+    assertThat(FileUtils.readFileToString(new File(toDir, "foo.txt"))).isEqualTo(StringUtils.repeat("foo", 1000));
+  }
+
   @Test
   public void shouldUnzipFile() throws IOException {
     File zip = FileUtils.toFile(getClass().getResource("/org/sonar/api/utils/ZipUtilsTest/shouldUnzipFile.zip"));